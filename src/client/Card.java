@@ -1,5 +1,7 @@
 package client;
 
+import common.CardData;
+
 import javax.imageio.ImageIO;
 import javax.swing.*;
 import java.awt.*;
@@ -7,17 +9,15 @@ import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.awt.geom.RoundRectangle2D;
 import java.awt.image.BufferedImage;
-import java.io.File;
 import java.io.IOException;
 
 // client.Card class is a button representing a card on the players hand
 public class Card extends JPanel {
-    private final int value;        // The value of the card in terms of the game rules
-    private final char suit;        // The suit of the card, i.e. diamond, spades etc.
-    private final int number;       // The actual value on the card
-    private BufferedImage image;
-    private Image scaledImage;
-    private final String filePath;
+    // decoded and scaled once per card, rather than for every card panel
+    private static final Image[] IMAGES = new Image[52];
+
+    private final CardData data;
+    private final Image scaledImage;
     private int cardWidth = 80;
     private int cardHeight = 120;
     private boolean isSelected = false;
@@ -26,39 +26,49 @@ public class Card extends JPanel {
 
     // Constructor with parameters, sets values of card
     public Card(int number, char s){
+        this(CardData.of(number, s));
+    }
+
+    public Card(CardData data) {
         setOpaque(false);
-        this.number = number;
-        this.suit = s;
-        if(this.number == 2) {
-            this.value = 15;
-        } else if (this.number == 3 && this.suit  == 'C') {
-            this.value = 16;
-        } else {
-            this.value = number;
-        }
+        this.data = data;
+        this.scaledImage = imageOf(data, cardWidth, cardHeight);
+    }
 
-        this.filePath = "/cardimages/" + this.suit + this.number + ".png"; // Filepath
-        try {
-            image =ImageIO.read(
-                    ClientMain.class.getResourceAsStream(filePath)
-            );  // Read the image
-            scaledImage = image.getScaledInstance(cardWidth,cardHeight,Image.SCALE_SMOOTH);
-        } catch (IOException ex) {
-            ex.printStackTrace();
+    private static synchronized Image imageOf(CardData card, int width, int height) {
+        Image image = IMAGES[card.toByte()];
+        if (image == null) {
+            String filePath = "/cardimages/" + card.getSuit() + card.getNumber() + ".png"; // Filepath
+            try {
+                BufferedImage full = ImageIO.read(
+                        ClientMain.class.getResourceAsStream(filePath)
+                );  // Read the image
+                image = full.getScaledInstance(width, height, Image.SCALE_SMOOTH);
+                IMAGES[card.toByte()] = image;
+            } catch (IOException ex) {
+                ex.printStackTrace();
+            }
         }
+        return image;
+    }
 
+    /**
+     * @return CardData the canonical card shown by this panel
+     */
+    public CardData getData() {
+        return data;
     }
 
     public int getValue() {
-        return value;
+        return data.getValue();     // The value of the card in terms of the game rules
     }
 
     public int getNumber() {
-        return this.number;
+        return data.getNumber();    // The actual value on the card
     }
 
     public char getSuit() {
-        return suit;
+        return data.getSuit();      // The suit of the card, i.e. diamond, spades etc.
     }
 
     @Override       // If the card is not selected -> paint normally, else paint with overlay
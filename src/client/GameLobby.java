@@ -97,6 +97,7 @@ public class GameLobby extends JFrame {
     private String playerToken;
     private SettingsIO settingsIO = new SettingsIO();
     private String defaultServer = "play.daifugo.no";
+    private boolean binaryProtocol;   // framed binary codec, needs a server supporting it
     public Font westernFont;
     public Font normalFont;
 
@@ -117,6 +118,7 @@ public class GameLobby extends JFrame {
             serverAddress = defaultServer;
         }
         newServerAddressTextField.setText(serverAddress);
+        binaryProtocol = Boolean.parseBoolean(settingsIO.prop.getProperty("binaryProtocol", "false"));
 
 
         InputStream is = ClientMain.class.getResourceAsStream("/fonts/OldTownRegular.ttf");
@@ -140,7 +142,7 @@ public class GameLobby extends JFrame {
         }
 
         try {
-            conn = new ClientConnection(serverAddress);
+            conn = new ClientConnection(serverAddress, binaryProtocol, binaryProtocol);
             Message response = conn.sendMessage(new Message(MessageType.CONNECT));
             if (response.isError()) {
                 LOGGER.warning("Failed to connect with session: " + response.getErrorMessage());
@@ -820,7 +822,7 @@ public class GameLobby extends JFrame {
                 serverAddress = defaultServer;
             }
             try {
-                conn = new ClientConnection(serverAddress);
+                conn = new ClientConnection(serverAddress, binaryProtocol, binaryProtocol);
                 Message response;
                 response = conn.sendMessage(new Message(MessageType.CONNECT));
                 if (response.isError()){
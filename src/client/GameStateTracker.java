@@ -26,6 +26,7 @@ public interface GameStateTracker {
     List<Card> getCardsOnTable();
     boolean startGame();
     boolean stopGame();
+    boolean addBot();
     boolean isStarted();
     int getCardsInTrick();
     int getRoundNo();
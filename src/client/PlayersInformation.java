@@ -94,6 +94,9 @@ public class PlayersInformation extends JPanel {
             if(noOfCards != 0 && stateTracker.isStarted()) {
                 playerInformationTxt += " - " + noOfCards;
             }
+            if (player.isConnectionLost()) {
+                playerInformationTxt += " - AWAY";
+            }
             if (player.hasPassed()) {
                 playerInformationTxt += " - PASS";
                 playerInfo[i].setBackground(passColor);
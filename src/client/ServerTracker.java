@@ -2,6 +2,7 @@ package client;
 
 import client.networking.ClientConnection;
 import common.GameState;
+import common.GameStateDelta;
 import common.PlayerData;
 import common.Role;
 import common.Trick;
@@ -13,7 +14,10 @@ import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import static client.GameLobby.LOGGER;
@@ -24,10 +28,14 @@ public class ServerTracker implements GameStateTracker {
     private Callable<Void> guiCallback;
     private GameState state;
     private final long heartbeatInterval = 100;
+    private final long keepaliveInterval = Protocol.KEEPALIVE_INTERVAL;
+    private final BlockingQueue<Message> events = new LinkedBlockingQueue<>();
+    private boolean pushed;     // server pushes game changes, so heartbeats are keepalives
 
     private final HeartbeatThread backgroundThread;
 
     private boolean cancelled;
+    private boolean resync;     // a delta didn't fit our state, so ask for a full one
     private Callable<Void> connectionLost;
 
 
@@ -44,21 +52,39 @@ public class ServerTracker implements GameStateTracker {
 
         public void sendStopSignal() {
             running = false;
+            events.add(new Message(MessageType.OK));    // wakes a thread waiting for events
         }
 
         public void run() {
 
             Message response;
+            long lastHeartbeat = 0;
 
             while (running) {
                 try {
+                    // with pushed events, heartbeats are only needed as keepalive
+                    Message event = null;
+                    long untilKeepalive = lastHeartbeat + keepaliveInterval - System.currentTimeMillis();
+                    if (pushed && untilKeepalive > 0)
+                        event = events.poll(untilKeepalive, TimeUnit.MILLISECONDS);
+                    if (!running)
+                        break;
+
+                    long heldVersion;
                     synchronized (ServerTracker.this) {
-                        LOGGER.fine("Sending heartbeat");
-                        long timestamp = Instant.now().toEpochMilli();
-                        response = connection.sendMessage(
-                                new HeartbeatMessage(timestamp)
-                        );
+                        if (event != null && updateState(event))
+                            continue;
+                        heldVersion = resync ? HeartbeatMessage.RESYNC : state.getVersion();
+                    }
+
+                    // polling, keepalive, or asking about an event we couldn't use.
+                    // Sent without holding the tracker, so user actions don't queue behind it
+                    LOGGER.fine("Sending heartbeat");
+                    long timestamp = Instant.now().toEpochMilli();
+                    lastHeartbeat = timestamp;
+                    response = connection.sendMessage(new HeartbeatMessage(timestamp, heldVersion));
 
+                    synchronized (ServerTracker.this) {
                         if (response.isError()) {
                             LOGGER.warning(
                                     "Received error: " + response.getErrorMessage()
@@ -73,16 +99,11 @@ public class ServerTracker implements GameStateTracker {
 
                         }
 
-                        if (response.getMessageType() == MessageType.GAME_STATE) {
-                            GameStateResponse tmp = (GameStateResponse) response;
-                            state = tmp.getState();
-                            guiCallback.call();
-                        }
-
-
-                }
+                        updateState(response);
+                    }
 
-                Thread.sleep(heartbeatInterval);
+                    if (!pushed)
+                        Thread.sleep(heartbeatInterval);
                 } catch (Exception e) {
                     LOGGER.warning("Heartbeat resulted in exception: " + Arrays.toString(e.getStackTrace()));
                     try {
@@ -99,9 +120,61 @@ public class ServerTracker implements GameStateTracker {
 
     }
 
+    /**
+     * Takes a new state or state delta into use. Must hold the tracker's lock.
+     * @param msg Message from the server
+     * @return false if the message didn't bring us up to date
+     */
+    private boolean updateState(Message msg) throws Exception {
+        if (msg.getMessageType() == MessageType.GAME_STATE) {
+            GameState received = ((GameStateResponse) msg).getState();
+            if (received.getVersion() < state.getVersion())
+                return true;    // overtaken by a response we already have
+
+            state = received;
+            resync = false;
+            guiCallback.call();
+            return true;
+        }
+
+        if (msg.getMessageType() == MessageType.GAME_STATE_DELTA) {
+            GameStateDelta delta = ((GameStateDeltaResponse) msg).getDelta();
+            if (delta.getVersion() <= state.getVersion())
+                return true;
+
+            if (delta.getBaseVersion() != state.getVersion()) {
+                LOGGER.info("Missed game state " + delta.getBaseVersion() + ", resyncing");
+                resync = true;
+                return false;
+            }
+
+            state = state.apply(delta);
+            guiCallback.call();
+            return true;
+        }
+
+        // e.g. a cancelled game, which the next heartbeat finds out about
+        return msg.getMessageType() == MessageType.HEARTBEAT;
+    }
+
+    /**
+     * Asks the server to push game changes, falling back to polling
+     * with heartbeats if it doesn't know how
+     */
+    private void subscribe() {
+        try {
+            Message response = connection.sendMessage(MessageType.SUBSCRIBE);
+            pushed = !response.isError();
+        } catch (Exception e) {
+            LOGGER.warning("Failed to subscribe to game events: " + e.getMessage());
+        }
+        LOGGER.info(pushed ? "Receiving pushed game events" : "Polling for game state");
+    }
+
     public ServerTracker(ClientConnection connection, GameState state) {
         this.connection = connection;
         this.state = state;
+        connection.startEventReader(events::add);
         backgroundThread = new HeartbeatThread();
         cancelled = false;
     }
@@ -114,6 +187,7 @@ public class ServerTracker implements GameStateTracker {
     @Override
     public void registerCallback(Callable<Void> func) {
         guiCallback = func;
+        subscribe();
         backgroundThread.start();
     }
 
@@ -156,12 +230,10 @@ public class ServerTracker implements GameStateTracker {
     @Override
     public void cancelGame() {
         try {
-            synchronized (this) {
-                Message response = connection.sendMessage(new Message(MessageType.CANCEL_GAME));
-                if (response.isError()) {
-                    LOGGER.warning("Failed to cancel game: " + response.getErrorMessage());
-                    return;
-                }
+            Message response = connection.sendMessage(new Message(MessageType.CANCEL_GAME));
+            if (response.isError()) {
+                LOGGER.warning("Failed to cancel game: " + response.getErrorMessage());
+                return;
             }
         } catch (IOException | ClassNotFoundException e) {
             LOGGER.warning("Exception during cancellation of game: " + e.getMessage());
@@ -179,12 +251,10 @@ public class ServerTracker implements GameStateTracker {
     @Override
     public void leaveGame() {
         LOGGER.info("Entered leave game");
-        synchronized (this) {
-            try {
-                Message response = connection.sendMessage(MessageType.LEAVE_GAME);
-            } catch (IOException | ClassNotFoundException e) {
-                e.printStackTrace();
-            }
+        try {
+            connection.sendMessage(MessageType.LEAVE_GAME);
+        } catch (IOException | ClassNotFoundException e) {
+            e.printStackTrace();
         }
 
         try {
@@ -200,7 +270,7 @@ public class ServerTracker implements GameStateTracker {
         synchronized (this) {
             try {
                 return state.getHand()
-                        .stream().map(card -> new Card(card.getNumber(), card.getSuit()))
+                        .stream().map(Card::new)
                         .collect(Collectors.toList());
             } catch (Exception e) {
                 LOGGER.warning(e.getStackTrace().toString());
@@ -211,67 +281,61 @@ public class ServerTracker implements GameStateTracker {
 
     @Override
     public void passTurn() {
-        synchronized (this) {
-            Message response = null;
-            try {
-                response = connection.sendMessage(new PassTurn());
-                if(response.isError())
-                    LOGGER.warning(response.getErrorMessage());
-
-                GameStateResponse tmp = (GameStateResponse) response;
-                state = tmp.getState();
-                guiCallback.call();
+        Message response = null;
+        try {
+            response = connection.sendMessage(new PassTurn());
+            if(response.isError())
+                LOGGER.warning(response.getErrorMessage());
 
-            } catch (Exception e) {
-                e.printStackTrace();
+            synchronized (this) {
+                updateState(response);
             }
+
+        } catch (Exception e) {
+            e.printStackTrace();
         }
     }
 
 
     @Override
     public boolean playCards(List<Card> playedCards) {
-        synchronized (this) {
-            Message response = null;
-            try {
-                response = connection.sendMessage(new PlayCardsRequest(playedCards));
-                if (response.isError()) {
-                    LOGGER.warning("Tracker received error playing cards: " + response.getErrorMessage());
-                    return false;
-                }
-
-            } catch (Exception e) {
-                LOGGER.warning(e.getMessage());
+        Message response = null;
+        try {
+            response = connection.sendMessage(new PlayCardsRequest(playedCards));
+            if (response.isError()) {
+                LOGGER.warning("Tracker received error playing cards: " + response.getErrorMessage());
                 return false;
             }
-            return true;
+
+        } catch (Exception e) {
+            LOGGER.warning(e.getMessage());
+            return false;
         }
+        return true;
     }
 
     @Override
     public boolean giveCards(List<Card> cards) {
-        synchronized (this) {
-            Message response = null;
-            try {
-                response = connection.sendMessage(new GiveCardsRequest(cards));
-                if(response.isError()) {
-                    LOGGER.warning("Error giving cards: " + response.getErrorMessage());
-                    return false;
-                }
-
-            } catch (Exception e) {
-                LOGGER.warning("Exception giving cards: " + e.toString());
+        Message response = null;
+        try {
+            response = connection.sendMessage(new GiveCardsRequest(cards));
+            if(response.isError()) {
+                LOGGER.warning("Error giving cards: " + response.getErrorMessage());
                 return false;
             }
-            return true;
+
+        } catch (Exception e) {
+            LOGGER.warning("Exception giving cards: " + e.toString());
+            return false;
         }
+        return true;
     }
 
     @Override
     public List<Card> getCardsOnTable() {
         synchronized (this) {
             return state.getTopCards()
-                    .stream().map(card -> new Card(card.getNumber(), card.getSuit()))
+                    .stream().map(Card::new)
                     .collect(Collectors.toList());
         }
     }
@@ -279,42 +343,52 @@ public class ServerTracker implements GameStateTracker {
     @Override
     public boolean startGame() {
         LOGGER.info("Entered servertrackers startgame");
-        synchronized (this) {
-            LOGGER.info("Entered synchronized block");
-            Message response = null;
-            try {
-                LOGGER.info("Sending start game message..");
-                response = connection.sendMessage(MessageType.START_GAME);
-                if(response.isError()){
-                    LOGGER.warning("Sending start message failed: " + response.getErrorMessage());
-                    return false;
-                } else {
-                    LOGGER.info("Start sent successfully");
-                }
-
-            } catch (Exception e) {
-                LOGGER.warning("Starting game resulted in exception: " + e.getMessage());
+        Message response = null;
+        try {
+            LOGGER.info("Sending start game message..");
+            response = connection.sendMessage(MessageType.START_GAME);
+            if(response.isError()){
+                LOGGER.warning("Sending start message failed: " + response.getErrorMessage());
                 return false;
+            } else {
+                LOGGER.info("Start sent successfully");
             }
-            return true;
+
+        } catch (Exception e) {
+            LOGGER.warning("Starting game resulted in exception: " + e.getMessage());
+            return false;
         }
+        return true;
     }
 
     @Override
     public boolean stopGame() {
-        synchronized (this) {
-            Message response = null;
-            try {
-                response = connection.sendMessage(MessageType.STOP_GAME);
-                if(response.isError())
-                    return false;
+        Message response = null;
+        try {
+            response = connection.sendMessage(MessageType.STOP_GAME);
+            if(response.isError())
+                return false;
 
-            } catch (Exception e) {
-                e.printStackTrace();
+        } catch (Exception e) {
+            e.printStackTrace();
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean addBot() {
+        try {
+            Message response = connection.sendMessage(MessageType.ADD_BOT);
+            if (response.isError()) {
+                LOGGER.warning("Adding bot failed: " + response.getErrorMessage());
                 return false;
             }
-            return true;
+        } catch (Exception e) {
+            LOGGER.warning("Adding bot resulted in exception: " + e.getMessage());
+            return false;
         }
+        return true;
     }
 
     @Override
@@ -9,7 +9,9 @@ public class SettingsIO {
     public void saveSettings(String serverAddress, String nickName){
         try (OutputStream output = new FileOutputStream("./config.properties")) {
 
+            // keeping any other settings, such as binaryProtocol
             Properties prop = new Properties();
+            prop.putAll(this.prop);
 
             // set the properties value
             prop.setProperty("serverAddress", serverAddress);
@@ -17,6 +17,7 @@ public class Table extends JPanel {
     private GameStateTracker stateTracker;
     private Logger LOGGER;
     private JButton startBtn;
+    private JButton addBotBtn;
     private final int TABLE_WIDTH;
     private final int TABLE_HEIGHT;
     private final GameLobby gameLobby;
@@ -54,6 +55,9 @@ public class Table extends JPanel {
                 startBtn.setEnabled(true);
         }
 
+        if (addBotBtn != null)
+            addBotBtn.setEnabled(!stateTracker.isStarted() && stateTracker.getPlayerList().size() < 8);
+
         if (statusString != null)
             statusString.setVisible(false);
 
@@ -293,6 +297,11 @@ public class Table extends JPanel {
             startBtn.setEnabled(false);
             add(startBtn);
             startBtn.addActionListener(e -> startGame());
+
+            addBotBtn = new JButton("Add bot");
+            addBotBtn.setBounds(f_width-150,150, 100,50);
+            add(addBotBtn);
+            addBotBtn.addActionListener(e -> addBot());
         }
 
         startString = new JLabel("Waiting for game to start");
@@ -373,6 +382,16 @@ public class Table extends JPanel {
         }
     }
 
+    private void addBot() {
+        if (!stateTracker.addBot())
+            JOptionPane.showMessageDialog(
+                    this,
+                    "No more players can join this game.",
+                    "Unable to add bot",
+                    JOptionPane.ERROR_MESSAGE
+            );
+    }
+
     public void showScoreBoard() {
         if(stateTracker.getPlayerList().size() >= 3) {
             int scoreBoardHeight = (stateTracker.getPlayerList().size() * 20 + 60);
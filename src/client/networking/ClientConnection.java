@@ -4,21 +4,217 @@ import protocol.*;
 
 import java.net.*;
 import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
 
 public class ClientConnection {
     private final Socket clientSocket;
-    private final ObjectOutputStream out;
-    private final ObjectInputStream in;
+    private final boolean framed;
+    private FrameCodec codec;
+    private ManagedObjectOutputStream out;
+    private ObjectInputStream in;
+    private DataOutputStream frameOut;
+    private DataInputStream frameIn;
+
+    // once the reader thread runs, responses are matched to requests by ID
+    private final Object writeLock = new Object();
+    private Thread reader;
+    private volatile Consumer<Message> eventListener;
+    private final Map<Integer, CompletableFuture<Message>> pending = new LinkedHashMap<>();
+    private int lastRequestID = 0;
+    private volatile IOException readerFailure;
 
     public ClientConnection(String address) throws IOException {
+        this(address, false);
+    }
+
+    /**
+     * @param address String server address
+     * @param framed boolean, true to send length-prefixed frames instead of
+     *               one long object stream, as expected by reactor servers
+     */
+    public ClientConnection(String address, boolean framed) throws IOException {
+        this(address, framed, false);
+    }
+
+    /**
+     * @param address String server address
+     * @param framed boolean, true to send length-prefixed frames
+     * @param binary boolean, true to use the binary codec instead of Java
+     *               serialization inside the frames. Only used when framed.
+     */
+    public ClientConnection(String address, boolean framed, boolean binary) throws IOException {
+        this.framed = framed;
         clientSocket = new Socket(address, Protocol.PORT);
         clientSocket.setSoTimeout(Protocol.SOCKET_TIMEOUT);
-        out = new ObjectOutputStream(clientSocket.getOutputStream());
-        in = new ObjectInputStream(clientSocket.getInputStream());
+        clientSocket.setTcpNoDelay(Protocol.TCP_NO_DELAY);
+        if (framed) {
+            codec = new FrameCodec(binary);
+            frameOut = new DataOutputStream(new BufferedOutputStream(clientSocket.getOutputStream()));
+            frameIn = new DataInputStream(new BufferedInputStream(clientSocket.getInputStream()));
+        } else {
+            out = new ManagedObjectOutputStream(
+                    new BufferedOutputStream(clientSocket.getOutputStream())
+            );
+            out.flush();    // the stream header, which the server waits for
+            in = new ObjectInputStream(new BufferedInputStream(clientSocket.getInputStream()));
+        }
     }
 
+    /**
+     * Sends a request and waits for its response. Safe to call from several
+     * threads once the reader thread has been started.
+     */
     public Message sendMessage(Message msg) throws ClassNotFoundException, IOException {
-        out.writeObject(msg);
+        synchronized (writeLock) {
+            if (reader == null) {
+                write(msg);
+                return read();
+            }
+        }
+
+        try {
+            return sendAsync(msg).get();
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException("Interrupted waiting for response");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof TimeoutException)
+                throw new SocketTimeoutException("No response from server");
+            if (e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Sends a request without waiting for the response, so that several
+     * requests can be in flight at once. Starts the reader thread if needed.
+     * @param msg Message to send, which is given a request ID
+     * @return CompletableFuture completed with the response, or exceptionally
+     *         if the connection fails or the server doesn't answer in time
+     */
+    public CompletableFuture<Message> sendAsync(Message msg) {
+        CompletableFuture<Message> response = new CompletableFuture<>();
+        int id;
+        synchronized (writeLock) {
+            startReader();
+            if (readerFailure != null) {
+                response.completeExceptionally(readerFailure);
+                return response;
+            }
+
+            id = ++lastRequestID == 0 ? ++lastRequestID : lastRequestID;
+            msg.setRequestID(id);
+            synchronized (pending) {
+                pending.put(id, response);
+            }
+            try {
+                write(msg);
+            } catch (IOException e) {
+                synchronized (pending) {
+                    pending.remove(id);
+                }
+                response.completeExceptionally(e);
+                return response;
+            }
+        }
+
+        return response
+                .orTimeout(Protocol.SOCKET_TIMEOUT, TimeUnit.MILLISECONDS)
+                .whenComplete((r, e) -> {
+                    synchronized (pending) {
+                        pending.remove(id);
+                    }
+                });
+    }
+
+    /**
+     * Passes game events pushed by the server to the listener, instead of
+     * taking them for responses. Must be called before subscribing.
+     * @param listener Consumer of the events, called on the reader thread
+     */
+    public void startEventReader(Consumer<Message> listener) {
+        eventListener = listener;
+        synchronized (writeLock) {
+            startReader();
+        }
+    }
+
+    // call with the write lock held, so no synchronous request is half done
+    private void startReader() {
+        if (reader != null)
+            return;
+
+        reader = new Thread(this::readResponses, "ClientConnection-reader");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    private void readResponses() {
+        try {
+            // requests time out on their own, and events may be far apart
+            clientSocket.setSoTimeout(0);
+            while (true) {
+                Message msg = read();
+                if (msg.getMessageType() == MessageType.GAME_EVENT) {
+                    Consumer<Message> listener = eventListener;
+                    if (listener != null)
+                        listener.accept(((GameEventMessage) msg).getEvent());
+                    continue;
+                }
+
+                // servers answer in order, so unnumbered responses go to the oldest request
+                CompletableFuture<Message> request;
+                synchronized (pending) {
+                    int id = msg.getRequestID();
+                    if (id == 0 && !pending.isEmpty())
+                        id = pending.keySet().iterator().next();
+                    request = pending.remove(id);
+                }
+                if (request != null)
+                    request.complete(msg);
+                // otherwise a response to a request that already timed out
+            }
+        } catch (IOException | ClassNotFoundException e) {
+            readerFailure = e instanceof IOException
+                    ? (IOException) e
+                    : new IOException("Unreadable message from server", e);
+
+            List<CompletableFuture<Message>> failed;
+            synchronized (pending) {
+                failed = new ArrayList<>(pending.values());
+                pending.clear();
+            }
+            for (CompletableFuture<Message> request : failed)
+                request.completeExceptionally(readerFailure);
+        }
+    }
+
+    private void write(Message msg) throws IOException {
+        if (framed) {
+            codec.write(frameOut, msg);
+            return;
+        }
+
+        // entering or leaving a game, so nothing sent so far will be sent again
+        switch (msg.getMessageType()) {
+            case NEW_GAME, JOIN_GAME, LEAVE_GAME, CANCEL_GAME -> out.requestReset();
+        }
+        out.writeMessage(msg);
+    }
+
+    /**
+     * @return long objects retained by the object stream handle tables,
+     *         or 0 on framed connections, which keep none
+     */
+    public long getRetainedHandles() {
+        return out == null ? 0 : out.getRetainedHandles();
+    }
+
+    private Message read() throws IOException, ClassNotFoundException {
+        if (framed)
+            return codec.read(frameIn);
         return (Message) in.readObject();
     }
 
@@ -28,8 +224,13 @@ public class ClientConnection {
 
     public void disconnect() throws IOException, ClassNotFoundException {
         sendMessage(new Message(MessageType.DISCONNECT));
-        in.close();
-        out.close();
+        if (framed) {
+            frameIn.close();
+            frameOut.close();
+        } else {
+            in.close();
+            out.close();
+        }
         clientSocket.close();
     }
 }
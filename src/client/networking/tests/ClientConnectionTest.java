@@ -2,14 +2,20 @@ package client.networking.tests;
 
 import client.networking.ClientConnection;
 import protocol.ErrorMessage;
+import protocol.HeartbeatMessage;
 import protocol.Message;
 import protocol.MessageType;
+import protocol.NewGameMessage;
 import protocol.Protocol;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 import server.Server;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -51,4 +57,43 @@ class ClientConnectionTest {
         assertEquals("Non-implemented request type", response.getErrorMessage());
     }
 
-}
\ No newline at end of file
+    @Test
+    public void pipelinedRequestsGetTheirOwnResponses() throws Exception {
+        ClientConnection host = new ClientConnection("localhost");
+        host.sendMessage(new Message(MessageType.CONNECT));
+        host.sendMessage(new NewGameMessage("listed game", null));
+
+        ClientConnection connection = new ClientConnection("localhost", true);
+        connection.sendMessage(new Message(MessageType.CONNECT));
+
+        // all in flight before the first response is read
+        List<Message> requests = new ArrayList<>();
+        List<CompletableFuture<Message>> responses = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            requests.add(i % 2 == 0
+                    ? new HeartbeatMessage(i)
+                    : new Message(MessageType.GET_GAME_LIST)
+            );
+            responses.add(connection.sendAsync(requests.get(i)));
+        }
+
+        for (int i = 0; i < responses.size(); i++) {
+            Message response = responses.get(i).get(5, TimeUnit.SECONDS);
+            assertEquals(requests.get(i).getRequestID(), response.getRequestID());
+            if (i % 2 == 0) {
+                assertEquals(MessageType.HEARTBEAT, response.getMessageType());
+            } else {
+                assertEquals(MessageType.GAME_LIST_RESPONSE, response.getMessageType());
+            }
+        }
+
+        // and synchronous requests still work alongside
+        assertEquals(
+                MessageType.GAME_LIST_RESPONSE,
+                connection.sendMessage(MessageType.GET_GAME_LIST).getMessageType()
+        );
+        connection.disconnect();
+        host.disconnect();
+    }
+
+}
@@ -1,15 +1,34 @@
 package common;
 
-import java.io.Serializable;
+import java.io.*;
+import java.util.*;
 
+/**
+ * A playing card. There is one instance per card, looked up with of() or
+ * fromByte(), so cards can be compared and shared without allocating.
+ */
 public class CardData implements Serializable {
+    private static final long serialVersionUID = -5029640565850979649L;
+
     private final int number;
     private final int value;
     private final char suit;
+    private final transient byte ordinal;   // only read from the canonical instances
+
+    // suit order used for the single byte card encoding
+    private static final String SUITS = "HSCD";
 
-    public CardData(int number, char suit) {
+    private static final CardData[] DECK = new CardData[52];
+
+    static {
+        for (int i = 0; i < DECK.length; i++)
+            DECK[i] = new CardData(i % 13 + 2, SUITS.charAt(i / 13));
+    }
+
+    private CardData(int number, char suit) {
         this.number = number;
         this.suit = suit;
+        this.ordinal = (byte) (SUITS.indexOf(suit) * 13 + number - 2);
 
         if(this.number == 2) {
             this.value = 15;
@@ -20,6 +39,34 @@ public class CardData implements Serializable {
         }
     }
 
+    /**
+     * @param number int number on the card, 2 to 14
+     * @param suit char H(earts), S(pades), C(lubs) or D(iamonds)
+     * @return CardData the canonical instance of the card
+     */
+    public static CardData of(int number, char suit) {
+        int suitIndex = SUITS.indexOf(suit);
+        if (suitIndex < 0 || number < 2 || number > 14)
+            throw new IllegalArgumentException("Invalid card: " + number + suit);
+        return DECK[suitIndex * 13 + number - 2];
+    }
+
+    /**
+     * @return List of all 52 cards, in encoding order
+     */
+    public static List<CardData> deck() {
+        return new ArrayList<>(Arrays.asList(DECK));
+    }
+
+    // deserialized cards are replaced by the canonical instance
+    private Object readResolve() throws ObjectStreamException {
+        try {
+            return of(number, suit);
+        } catch (IllegalArgumentException e) {
+            throw new InvalidObjectException(e.getMessage());
+        }
+    }
+
     public char getSuit() {
         return suit;
     }
@@ -31,4 +78,55 @@ public class CardData implements Serializable {
     public int getValue() {
         return value;
     }
+
+    /**
+     * Encodes the card as a single byte in 0..51
+     * @return byte suit index * 13 + (number - 2)
+     */
+    public byte toByte() {
+        return ordinal;
+    }
+
+    /**
+     * Decodes a card encoded by toByte()
+     * @param b byte in 0..51
+     * @return CardData
+     */
+    public static CardData fromByte(byte b) {
+        if (b < 0 || b >= 52)
+            throw new IllegalArgumentException("Invalid card byte: " + b);
+        return DECK[b];
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof CardData && ((CardData) o).ordinal == ordinal;
+    }
+
+    @Override
+    public int hashCode() {
+        return ordinal;
+    }
+
+    @Override
+    public String toString() {
+        return "" + number + suit;
+    }
+
+    /**
+     * Writes a list of cards as a count followed by one byte per card
+     */
+    public static void writeCards(DataOutput out, List<CardData> cards) throws IOException {
+        out.writeByte(cards.size());
+        for (CardData card : cards)
+            out.writeByte(card.toByte());
+    }
+
+    public static List<CardData> readCards(DataInput in) throws IOException {
+        int count = in.readUnsignedByte();
+        List<CardData> cards = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+            cards.add(fromByte(in.readByte()));
+        return cards;
+    }
 }
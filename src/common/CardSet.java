@@ -0,0 +1,151 @@
+package common;
+
+import java.io.*;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * A set of cards as one bit per card in a long, at the card's toByte()
+ * index, so lookups, updates and counts are single bit operations.
+ */
+public class CardSet implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    // the bit of each suit for one number, i.e. the 2s
+    private static final long NUMBER_MASK = 1L | 1L << 13 | 1L << 26 | 1L << 39;
+    private static final long FULL_DECK = (1L << 52) - 1;
+
+    private long bits;
+
+    public CardSet() {
+    }
+
+    /**
+     * @param bits long with bit i set for the card encoded as byte i
+     */
+    public CardSet(long bits) {
+        if ((bits & ~FULL_DECK) != 0)
+            throw new IllegalArgumentException("Invalid card bits: " + Long.toHexString(bits));
+        this.bits = bits;
+    }
+
+    public static CardSet of(Collection<CardData> cards) {
+        CardSet set = new CardSet();
+        for (CardData card : cards)
+            set.add(card);
+        return set;
+    }
+
+    private static long bit(CardData card) {
+        return 1L << card.toByte();
+    }
+
+    public long getBits() {
+        return bits;
+    }
+
+    public boolean contains(CardData card) {
+        return (bits & bit(card)) != 0;
+    }
+
+    /**
+     * @return true if every card of the other set is in this one
+     */
+    public boolean containsAll(CardSet other) {
+        return (other.bits & ~bits) == 0;
+    }
+
+    /**
+     * @return true if the card wasn't already in the set
+     */
+    public boolean add(CardData card) {
+        long before = bits;
+        bits |= bit(card);
+        return bits != before;
+    }
+
+    public void addAll(CardSet other) {
+        bits |= other.bits;
+    }
+
+    /**
+     * @return true if the card was in the set
+     */
+    public boolean remove(CardData card) {
+        long before = bits;
+        bits &= ~bit(card);
+        return bits != before;
+    }
+
+    public void removeAll(CardSet other) {
+        bits &= ~other.bits;
+    }
+
+    public int size() {
+        return Long.bitCount(bits);
+    }
+
+    public boolean isEmpty() {
+        return bits == 0;
+    }
+
+    /**
+     * @param number int card number, 2 to 14
+     * @return int cards of that number in the set, whatever their suit
+     */
+    public int countOfNumber(int number) {
+        return Long.bitCount(bits & NUMBER_MASK << (number - 2));
+    }
+
+    public CardSet copy() {
+        return new CardSet(bits);
+    }
+
+    /**
+     * @return List of CardData in encoding order, i.e. by suit, then number
+     */
+    public List<CardData> toList() {
+        List<CardData> cards = new ArrayList<>(size());
+        for (long rest = bits; rest != 0; rest &= rest - 1)
+            cards.add(CardData.fromByte((byte) Long.numberOfTrailingZeros(rest)));
+        return cards;
+    }
+
+    /**
+     * Writes the set in the same format as CardData.writeCards()
+     */
+    public void write(DataOutput out) throws IOException {
+        out.writeByte(size());
+        for (long rest = bits; rest != 0; rest &= rest - 1)
+            out.writeByte(Long.numberOfTrailingZeros(rest));
+    }
+
+    public static CardSet read(DataInput in) throws IOException {
+        CardSet set = new CardSet();
+        int count = in.readUnsignedByte();
+        for (int i = 0; i < count; i++) {
+            int index = in.readByte();
+            if (index < 0 || index >= 52)
+                throw new IOException("Invalid card byte: " + index);
+            set.bits |= 1L << index;
+        }
+        return set;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof CardSet && ((CardSet) o).bits == bits;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(bits);
+    }
+
+    @Override
+    public String toString() {
+        return toList().stream()
+                .map(CardData::toString)
+                .collect(Collectors.joining(" ", "[", "]"));
+    }
+}
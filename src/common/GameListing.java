@@ -1,8 +1,10 @@
 package common;
 
-import java.io.Serializable;
+import java.io.*;
 
 public class GameListing implements Serializable {
+    private static final long serialVersionUID = -3472692174869707293L;
+
     private final String ID;
     private final String title;
     private final String owner;
@@ -49,4 +51,24 @@ public class GameListing implements Serializable {
     public boolean hasPassword() {
         return passwordProtected;
     }
+
+    public void write(DataOutput out) throws IOException {
+        out.writeUTF(ID);
+        out.writeUTF(title);
+        out.writeUTF(owner);
+        out.writeByte(numberOfPlayers);
+        out.writeBoolean(passwordProtected);
+        out.writeBoolean(inProgress);
+    }
+
+    public static GameListing read(DataInput in) throws IOException {
+        return new GameListing(
+                in.readUTF(),
+                in.readUTF(),
+                in.readUTF(),
+                in.readUnsignedByte(),
+                in.readBoolean(),
+                in.readBoolean()
+        );
+    }
 }
@@ -3,12 +3,14 @@ package common;
 import server.*;
 import server.exceptions.*;
 
-import java.io.Serializable;
+import java.io.*;
 import java.util.*;
 
 import static server.Server.SERVER_LOGGER;
 
 public class GameState implements Serializable {
+    private static final long serialVersionUID = -4508257882285928556L;
+
     private List<PlayerData> players;
     private List<CardData> hand;
 
@@ -29,10 +31,18 @@ public class GameState implements Serializable {
     private Role role;
     private Trick lastTrick;
     private int outCount;
+    private long version;
 
 
-    public GameState(Game game, UserSession session) throws UserSessionError {
+    private GameState() {
+    }
 
+    /**
+     * Copies the game as seen by a player. Must be called from the game's
+     * mailbox, as Game.stateFor() does, so that nothing changes meanwhile.
+     */
+    public GameState(Game game, UserSession session) throws UserSessionError {
+        this.version = game.getStateVersion();
         this.playerNick = session.getNick();
         this.ownerNick = game.getOwnerNick();
         this.gameTitle = game.getTitle();
@@ -49,13 +59,13 @@ public class GameState implements Serializable {
         this.lastTrick = game.getLastTrickTriggered();
 
         try {
-            hand = new ArrayList<>(game.getPlayerHand(session.getID()));
+            hand = game.getPlayerHand(session.getID()).toList();
         } catch (Exception ignored) {
             hand = new ArrayList<>();
         }
         if (!hand.isEmpty())
             for (CardData c : hand) {
-                SERVER_LOGGER.fine("added to " + playerNick + "'s hand for sending: " + c.getNumber()+c.getSuit());
+                SERVER_LOGGER.fine(() -> "added to " + playerNick + "'s hand for sending: " + c.getNumber()+c.getSuit());
             }
 
         Map<UUID, PlayerObject> playerMap = new HashMap<>(game.getPlayers());
@@ -70,7 +80,8 @@ public class GameState implements Serializable {
                     tmp.hasPassed(),
                     tmp.getRole(),
                     (int) tmp.getLatency(),
-                    tmp.getPreviousRoles()
+                    tmp.getPreviousRoles(),
+                    tmp.isConnectionLost()
             ));
 
             if (id == session.getID())
@@ -154,4 +165,212 @@ public class GameState implements Serializable {
         return this.gameTitle;
     }
 
+    /**
+     * @return long version of the game state this was copied from
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Finds the fields that changed since a previously sent state
+     * @param previous GameState the client has acknowledged
+     * @return GameStateDelta that turns previous into this state
+     */
+    public GameStateDelta diff(GameState previous) {
+        GameStateDelta delta = new GameStateDelta(previous.version, version);
+
+        if (!samePlayers(previous.players, players)) {
+            delta.changed |= GameStateDelta.PLAYERS;
+            delta.players = players;
+        } else {
+            List<GameStateDelta.PlayerChange> changes = new ArrayList<>();
+            for (int i = 0; i < players.size(); i++) {
+                GameStateDelta.PlayerChange change = GameStateDelta.PlayerChange.between(
+                        i, previous.players.get(i), players.get(i)
+                );
+                if (change != null)
+                    changes.add(change);
+            }
+            if (!changes.isEmpty()) {
+                delta.changed |= GameStateDelta.PLAYER_CHANGES;
+                delta.playerChanges = changes;
+            }
+        }
+
+        if (!GameStateDelta.sameCards(previous.hand, hand)) {
+            delta.changed |= GameStateDelta.HAND;
+            delta.hand = hand;
+        }
+        if (previous.started != started) {
+            delta.changed |= GameStateDelta.STARTED;
+            delta.started = started;
+        }
+        if (previous.currentPlayer != currentPlayer) {
+            delta.changed |= GameStateDelta.CURRENT_PLAYER;
+            delta.currentPlayer = currentPlayer;
+        }
+        if (!previous.ownerNick.equals(ownerNick)) {
+            delta.changed |= GameStateDelta.OWNER_NICK;
+            delta.ownerNick = ownerNick;
+        }
+        if (!previous.playerNick.equals(playerNick)) {
+            delta.changed |= GameStateDelta.PLAYER_NICK;
+            delta.playerNick = playerNick;
+        }
+        if (previous.cardsInTrick != cardsInTrick) {
+            delta.changed |= GameStateDelta.CARDS_IN_TRICK;
+            delta.cardsInTrick = cardsInTrick;
+        }
+        if (previous.cardsOnTable != cardsOnTable) {
+            delta.changed |= GameStateDelta.CARDS_ON_TABLE;
+            delta.cardsOnTable = cardsOnTable;
+        }
+        if (previous.faceDownCards != faceDownCards) {
+            delta.changed |= GameStateDelta.FACE_DOWN_CARDS;
+            delta.faceDownCards = faceDownCards;
+        }
+        if (!GameStateDelta.sameCards(previous.topCards, topCards)) {
+            delta.changed |= GameStateDelta.TOP_CARDS;
+            delta.topCards = topCards;
+        }
+        if (previous.tradingPhase != tradingPhase) {
+            delta.changed |= GameStateDelta.TRADING_PHASE;
+            delta.tradingPhase = tradingPhase;
+        }
+        if (previous.roundNo != roundNo) {
+            delta.changed |= GameStateDelta.ROUND_NO;
+            delta.roundNo = roundNo;
+        }
+        if (previous.mustTrade != mustTrade) {
+            delta.changed |= GameStateDelta.MUST_TRADE;
+            delta.mustTrade = mustTrade;
+        }
+        if (previous.role != role) {
+            delta.changed |= GameStateDelta.ROLE;
+            delta.role = role;
+        }
+        if (previous.lastTrick != lastTrick) {
+            delta.changed |= GameStateDelta.LAST_TRICK;
+            delta.lastTrick = lastTrick;
+        }
+        if (previous.outCount != outCount) {
+            delta.changed |= GameStateDelta.OUT_COUNT;
+            delta.outCount = outCount;
+        }
+
+        return delta;
+    }
+
+    /**
+     * Builds the next state from this one and a delta based on it
+     * @param delta GameStateDelta with base version equal to this version
+     * @return GameState at the version of the delta
+     * @throws IllegalArgumentException if the delta is based on another version
+     */
+    public GameState apply(GameStateDelta delta) {
+        if (delta.getBaseVersion() != version)
+            throw new IllegalArgumentException(
+                    "Delta based on version " + delta.getBaseVersion() + ", have " + version
+            );
+
+        GameState next = new GameState();
+        next.version = delta.getVersion();
+        next.gameID = gameID;
+        next.gameTitle = gameTitle;
+
+        if (delta.has(GameStateDelta.PLAYERS)) {
+            next.players = new ArrayList<>(delta.players);
+        } else {
+            next.players = new ArrayList<>(players);
+            if (delta.has(GameStateDelta.PLAYER_CHANGES))
+                for (GameStateDelta.PlayerChange change : delta.playerChanges)
+                    next.players.set(change.index, change.applyTo(players.get(change.index)));
+        }
+
+        next.hand = delta.has(GameStateDelta.HAND) ? delta.hand : hand;
+        next.started = delta.has(GameStateDelta.STARTED) ? delta.started : started;
+        next.currentPlayer = delta.has(GameStateDelta.CURRENT_PLAYER) ? delta.currentPlayer : currentPlayer;
+        next.ownerNick = delta.has(GameStateDelta.OWNER_NICK) ? delta.ownerNick : ownerNick;
+        next.playerNick = delta.has(GameStateDelta.PLAYER_NICK) ? delta.playerNick : playerNick;
+        next.cardsInTrick = delta.has(GameStateDelta.CARDS_IN_TRICK) ? delta.cardsInTrick : cardsInTrick;
+        next.cardsOnTable = delta.has(GameStateDelta.CARDS_ON_TABLE) ? delta.cardsOnTable : cardsOnTable;
+        next.faceDownCards = delta.has(GameStateDelta.FACE_DOWN_CARDS) ? delta.faceDownCards : faceDownCards;
+        next.topCards = delta.has(GameStateDelta.TOP_CARDS) ? delta.topCards : topCards;
+        next.tradingPhase = delta.has(GameStateDelta.TRADING_PHASE) ? delta.tradingPhase : tradingPhase;
+        next.roundNo = delta.has(GameStateDelta.ROUND_NO) ? delta.roundNo : roundNo;
+        next.mustTrade = delta.has(GameStateDelta.MUST_TRADE) ? delta.mustTrade : mustTrade;
+        next.role = delta.has(GameStateDelta.ROLE) ? delta.role : role;
+        next.lastTrick = delta.has(GameStateDelta.LAST_TRICK) ? delta.lastTrick : lastTrick;
+        next.outCount = delta.has(GameStateDelta.OUT_COUNT) ? delta.outCount : outCount;
+        return next;
+    }
+
+    // same players in the same seats
+    private static boolean samePlayers(List<PlayerData> a, List<PlayerData> b) {
+        if (a.size() != b.size())
+            return false;
+        for (int i = 0; i < a.size(); i++)
+            if (!a.get(i).getNick().equals(b.get(i).getNick()))
+                return false;
+        return true;
+    }
+
+    /**
+     * Writes the state field by field, for the binary wire codec
+     */
+    public void write(DataOutput out) throws IOException {
+        out.writeByte(players.size());
+        for (PlayerData player : players)
+            player.write(out);
+        CardData.writeCards(out, hand);
+
+        out.writeBoolean(started);
+        out.writeByte(currentPlayer);
+        out.writeLong(gameID.getMostSignificantBits());
+        out.writeLong(gameID.getLeastSignificantBits());
+        out.writeUTF(gameTitle);
+        out.writeUTF(ownerNick);
+        out.writeUTF(playerNick);
+        out.writeByte(cardsInTrick);
+        out.writeByte(cardsOnTable);
+        out.writeByte(faceDownCards);
+        CardData.writeCards(out, topCards);
+        out.writeBoolean(tradingPhase);
+        out.writeInt(roundNo);
+        out.writeBoolean(mustTrade);
+        out.writeByte(role.ordinal());
+        out.writeByte(lastTrick.ordinal());
+        out.writeByte(outCount);
+        out.writeLong(version);
+    }
+
+    public static GameState read(DataInput in) throws IOException {
+        GameState state = new GameState();
+
+        int playerCount = in.readUnsignedByte();
+        state.players = new ArrayList<>(playerCount);
+        for (int i = 0; i < playerCount; i++)
+            state.players.add(PlayerData.read(in));
+        state.hand = CardData.readCards(in);
+
+        state.started = in.readBoolean();
+        state.currentPlayer = in.readByte();
+        state.gameID = new UUID(in.readLong(), in.readLong());
+        state.gameTitle = in.readUTF();
+        state.ownerNick = in.readUTF();
+        state.playerNick = in.readUTF();
+        state.cardsInTrick = in.readUnsignedByte();
+        state.cardsOnTable = in.readUnsignedByte();
+        state.faceDownCards = in.readUnsignedByte();
+        state.topCards = CardData.readCards(in);
+        state.tradingPhase = in.readBoolean();
+        state.roundNo = in.readInt();
+        state.mustTrade = in.readBoolean();
+        state.role = Role.values()[in.readUnsignedByte()];
+        state.lastTrick = Trick.values()[in.readUnsignedByte()];
+        state.outCount = in.readUnsignedByte();
+        state.version = in.readLong();
+        return state;
+    }
 }
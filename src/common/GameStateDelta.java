@@ -0,0 +1,318 @@
+package common;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * The fields of a GameState that changed between two state versions, as
+ * produced by GameState.diff() and consumed by GameState.apply().
+ *
+ * Only fields flagged in the change mask carry meaning. Players are sent
+ * per player and per field while the seating stays the same, and as a
+ * complete list when someone joins, leaves or the turn order changes.
+ */
+public class GameStateDelta implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    static final int PLAYERS = 1;
+    static final int PLAYER_CHANGES = 1 << 1;
+    static final int HAND = 1 << 2;
+    static final int STARTED = 1 << 3;
+    static final int CURRENT_PLAYER = 1 << 4;
+    static final int OWNER_NICK = 1 << 5;
+    static final int PLAYER_NICK = 1 << 6;
+    static final int CARDS_IN_TRICK = 1 << 7;
+    static final int CARDS_ON_TABLE = 1 << 8;
+    static final int FACE_DOWN_CARDS = 1 << 9;
+    static final int TOP_CARDS = 1 << 10;
+    static final int TRADING_PHASE = 1 << 11;
+    static final int ROUND_NO = 1 << 12;
+    static final int MUST_TRADE = 1 << 13;
+    static final int ROLE = 1 << 14;
+    static final int LAST_TRICK = 1 << 15;
+    static final int OUT_COUNT = 1 << 16;
+
+    final long baseVersion;
+    final long version;
+    int changed;
+
+    List<PlayerData> players;
+    List<PlayerChange> playerChanges;
+    List<CardData> hand;
+    boolean started;
+    int currentPlayer;
+    String ownerNick;
+    String playerNick;
+    int cardsInTrick;
+    int cardsOnTable;
+    int faceDownCards;
+    List<CardData> topCards;
+    boolean tradingPhase;
+    int roundNo;
+    boolean mustTrade;
+    Role role;
+    Trick lastTrick;
+    int outCount;
+
+    GameStateDelta(long baseVersion, long version) {
+        this.baseVersion = baseVersion;
+        this.version = version;
+        this.changed = 0;
+    }
+
+    /**
+     * @return long version of the state this delta must be applied to
+     */
+    public long getBaseVersion() {
+        return baseVersion;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    boolean has(int field) {
+        return (changed & field) != 0;
+    }
+
+    static boolean sameCards(List<CardData> a, List<CardData> b) {
+        if (a.size() != b.size())
+            return false;
+        for (int i = 0; i < a.size(); i++)
+            if (a.get(i).toByte() != b.get(i).toByte())
+                return false;
+        return true;
+    }
+
+
+    /**
+     * Changed fields of a single player, who keeps their seat
+     */
+    static class PlayerChange implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        static final int CARDS = 1;
+        static final int PASSED = 1 << 1;
+        static final int ROLE = 1 << 2;
+        static final int LATENCY = 1 << 3;
+        static final int ROLES_APPENDED = 1 << 4;
+        static final int ROLES_REPLACED = 1 << 5;
+        static final int CONNECTION = 1 << 6;
+
+        final int index;
+        int changed;
+        int numberOfCards;
+        boolean passed;
+        Role role;
+        int latency;
+        boolean connectionLost;
+        List<Role> roles;   // new roles when appended, all roles when replaced
+
+        PlayerChange(int index) {
+            this.index = index;
+        }
+
+        /**
+         * @return null if the player is unchanged
+         */
+        static PlayerChange between(int index, PlayerData from, PlayerData to) {
+            PlayerChange change = new PlayerChange(index);
+
+            if (from.getNumberOfCards() != to.getNumberOfCards()) {
+                change.changed |= CARDS;
+                change.numberOfCards = to.getNumberOfCards();
+            }
+            if (from.hasPassed() != to.hasPassed()) {
+                change.changed |= PASSED;
+                change.passed = to.hasPassed();
+            }
+            if (from.getRole() != to.getRole()) {
+                change.changed |= ROLE;
+                change.role = to.getRole();
+            }
+            if (from.getLatency() != to.getLatency()) {
+                change.changed |= LATENCY;
+                change.latency = (int) to.getLatency();
+            }
+            if (from.isConnectionLost() != to.isConnectionLost()) {
+                change.changed |= CONNECTION;
+                change.connectionLost = to.isConnectionLost();
+            }
+
+            List<Role> oldRoles = from.getPreviousRoles();
+            List<Role> newRoles = to.getPreviousRoles();
+            if (!oldRoles.equals(newRoles)) {
+                if (newRoles.size() > oldRoles.size()
+                        && newRoles.subList(0, oldRoles.size()).equals(oldRoles)) {
+                    change.changed |= ROLES_APPENDED;
+                    change.roles = new ArrayList<>(newRoles.subList(oldRoles.size(), newRoles.size()));
+                } else {
+                    change.changed |= ROLES_REPLACED;
+                    change.roles = newRoles;
+                }
+            }
+
+            return change.changed == 0 ? null : change;
+        }
+
+        PlayerData applyTo(PlayerData player) {
+            List<Role> roles = player.getPreviousRoles();
+            if ((changed & ROLES_APPENDED) != 0)
+                roles.addAll(this.roles);
+            else if ((changed & ROLES_REPLACED) != 0)
+                roles = new ArrayList<>(this.roles);
+
+            return new PlayerData(
+                    player.getNick(),
+                    (changed & CARDS) != 0 ? numberOfCards : player.getNumberOfCards(),
+                    (changed & PASSED) != 0 ? passed : player.hasPassed(),
+                    (changed & ROLE) != 0 ? role : player.getRole(),
+                    (changed & LATENCY) != 0 ? latency : (int) player.getLatency(),
+                    roles,
+                    (changed & CONNECTION) != 0 ? connectionLost : player.isConnectionLost()
+            );
+        }
+
+        void write(DataOutput out) throws IOException {
+            out.writeByte(index);
+            out.writeByte(changed);
+            if ((changed & CARDS) != 0)
+                out.writeByte(numberOfCards);
+            if ((changed & PASSED) != 0)
+                out.writeBoolean(passed);
+            if ((changed & ROLE) != 0)
+                out.writeByte(role.ordinal());
+            if ((changed & LATENCY) != 0)
+                out.writeInt(latency);
+            if ((changed & CONNECTION) != 0)
+                out.writeBoolean(connectionLost);
+            if ((changed & (ROLES_APPENDED | ROLES_REPLACED)) != 0) {
+                out.writeInt(roles.size());
+                for (Role r : roles)
+                    out.writeByte(r.ordinal());
+            }
+        }
+
+        static PlayerChange read(DataInput in) throws IOException {
+            PlayerChange change = new PlayerChange(in.readUnsignedByte());
+            change.changed = in.readUnsignedByte();
+            if ((change.changed & CARDS) != 0)
+                change.numberOfCards = in.readUnsignedByte();
+            if ((change.changed & PASSED) != 0)
+                change.passed = in.readBoolean();
+            if ((change.changed & ROLE) != 0)
+                change.role = Role.values()[in.readUnsignedByte()];
+            if ((change.changed & LATENCY) != 0)
+                change.latency = in.readInt();
+            if ((change.changed & CONNECTION) != 0)
+                change.connectionLost = in.readBoolean();
+            if ((change.changed & (ROLES_APPENDED | ROLES_REPLACED)) != 0) {
+                int count = in.readInt();
+                change.roles = new ArrayList<>();
+                for (int i = 0; i < count; i++)
+                    change.roles.add(Role.values()[in.readUnsignedByte()]);
+            }
+            return change;
+        }
+    }
+
+
+    /**
+     * Writes the delta for the binary wire codec, skipping unchanged fields
+     */
+    public void write(DataOutput out) throws IOException {
+        out.writeLong(baseVersion);
+        out.writeLong(version);
+        out.writeInt(changed);
+
+        if (has(PLAYERS)) {
+            out.writeByte(players.size());
+            for (PlayerData player : players)
+                player.write(out);
+        }
+        if (has(PLAYER_CHANGES)) {
+            out.writeByte(playerChanges.size());
+            for (PlayerChange change : playerChanges)
+                change.write(out);
+        }
+        if (has(HAND))
+            CardData.writeCards(out, hand);
+        if (has(STARTED))
+            out.writeBoolean(started);
+        if (has(CURRENT_PLAYER))
+            out.writeByte(currentPlayer);
+        if (has(OWNER_NICK))
+            out.writeUTF(ownerNick);
+        if (has(PLAYER_NICK))
+            out.writeUTF(playerNick);
+        if (has(CARDS_IN_TRICK))
+            out.writeByte(cardsInTrick);
+        if (has(CARDS_ON_TABLE))
+            out.writeByte(cardsOnTable);
+        if (has(FACE_DOWN_CARDS))
+            out.writeByte(faceDownCards);
+        if (has(TOP_CARDS))
+            CardData.writeCards(out, topCards);
+        if (has(TRADING_PHASE))
+            out.writeBoolean(tradingPhase);
+        if (has(ROUND_NO))
+            out.writeInt(roundNo);
+        if (has(MUST_TRADE))
+            out.writeBoolean(mustTrade);
+        if (has(ROLE))
+            out.writeByte(role.ordinal());
+        if (has(LAST_TRICK))
+            out.writeByte(lastTrick.ordinal());
+        if (has(OUT_COUNT))
+            out.writeByte(outCount);
+    }
+
+    public static GameStateDelta read(DataInput in) throws IOException {
+        GameStateDelta delta = new GameStateDelta(in.readLong(), in.readLong());
+        delta.changed = in.readInt();
+
+        if (delta.has(PLAYERS)) {
+            int count = in.readUnsignedByte();
+            delta.players = new ArrayList<>(count);
+            for (int i = 0; i < count; i++)
+                delta.players.add(PlayerData.read(in));
+        }
+        if (delta.has(PLAYER_CHANGES)) {
+            int count = in.readUnsignedByte();
+            delta.playerChanges = new ArrayList<>(count);
+            for (int i = 0; i < count; i++)
+                delta.playerChanges.add(PlayerChange.read(in));
+        }
+        if (delta.has(HAND))
+            delta.hand = CardData.readCards(in);
+        if (delta.has(STARTED))
+            delta.started = in.readBoolean();
+        if (delta.has(CURRENT_PLAYER))
+            delta.currentPlayer = in.readByte();
+        if (delta.has(OWNER_NICK))
+            delta.ownerNick = in.readUTF();
+        if (delta.has(PLAYER_NICK))
+            delta.playerNick = in.readUTF();
+        if (delta.has(CARDS_IN_TRICK))
+            delta.cardsInTrick = in.readUnsignedByte();
+        if (delta.has(CARDS_ON_TABLE))
+            delta.cardsOnTable = in.readUnsignedByte();
+        if (delta.has(FACE_DOWN_CARDS))
+            delta.faceDownCards = in.readUnsignedByte();
+        if (delta.has(TOP_CARDS))
+            delta.topCards = CardData.readCards(in);
+        if (delta.has(TRADING_PHASE))
+            delta.tradingPhase = in.readBoolean();
+        if (delta.has(ROUND_NO))
+            delta.roundNo = in.readInt();
+        if (delta.has(MUST_TRADE))
+            delta.mustTrade = in.readBoolean();
+        if (delta.has(ROLE))
+            delta.role = Role.values()[in.readUnsignedByte()];
+        if (delta.has(LAST_TRICK))
+            delta.lastTrick = Trick.values()[in.readUnsignedByte()];
+        if (delta.has(OUT_COUNT))
+            delta.outCount = in.readUnsignedByte();
+        return delta;
+    }
+}
@@ -1,12 +1,14 @@
 package common;
 
-import java.io.Serializable;
+import java.io.*;
 import java.util.ArrayList;
 import java.util.List;
 
 import static client.GameLobby.LOGGER;
 
 public class PlayerData implements Serializable {
+    private static final long serialVersionUID = -1641307134884639177L;
+
     private String nick;
     private long latency;
     private int numberOfCards;
@@ -25,6 +27,23 @@ public class PlayerData implements Serializable {
             Role role,
             int latency,
             List<Role> previousRoles
+    ) {
+        // negative latency value is lost connection
+        this(nick, numberOfCards, passed, role, latency, previousRoles, latency < 0);
+    }
+
+    /**
+     * @param connectionLost boolean, true while the player's seat is held
+     *                       for them, and the autopilot plays in their place
+     */
+    public PlayerData(
+            String nick,
+            int numberOfCards,
+            boolean passed,
+            Role role,
+            int latency,
+            List<Role> previousRoles,
+            boolean connectionLost
     ) {
        this.nick = nick;
        this.passed = passed;
@@ -36,9 +55,7 @@ public class PlayerData implements Serializable {
        outCount = 0;
        outOfRound = false;
        this.previousRoles = previousRoles;
-
-       // negative latency value is lost connection
-       connectionLost = latency < 0;
+       this.connectionLost = connectionLost;
     }
 
     public void setOutOfRound(boolean outOfRound) {
@@ -73,6 +90,10 @@ public class PlayerData implements Serializable {
         return role;
     }
 
+    public boolean isConnectionLost() {
+        return connectionLost;
+    }
+
     public void setConnectionLost(boolean connectionLost) {
         this.connectionLost = connectionLost;
     }
@@ -111,39 +132,46 @@ public class PlayerData implements Serializable {
     }
 
     public boolean assignRoleFewPlayers() {
-        mustTrade = true;
-        if (outCount == 1) {
-            role = Role.PRESIDENT;
-        } else if (outCount == 3) {
-            role = Role.BUM;
-        } else {
-            role = Role.NEUTRAL;
-            mustTrade = false;
-        }
-        previousRoles.add(role);
-
-        return mustTrade;
+        return assignRole(3);
     }
 
-
     public boolean assignRoleManyPlayers(int playerAmount) {
-        mustTrade = true;
-        if (outCount == 1) {
-            role = Role.PRESIDENT;
-        } else if (outCount == 2) {
-            role = Role.VICE_PRESIDENT;
-        } else if (outCount == playerAmount - 1) {
-            role = Role.VICE_BUM;
-        } else if (outCount == playerAmount) {
-            role = Role.BUM;
-        } else {
-            role = Role.NEUTRAL;
-            mustTrade = false;
-        }
+        return assignRole(playerAmount);
+    }
+
+    private boolean assignRole(int playerAmount) {
+        role = roleFor(outCount, playerAmount);
+        mustTrade = role != Role.NEUTRAL;
         previousRoles.add(role);
         return mustTrade;
     }
 
+    /**
+     * The role earned by going out in a given place
+     * @param outCount int place the player went out in, from 1
+     * @param playerAmount int players in the round
+     * @return Role for the next round
+     */
+    public static Role roleFor(int outCount, int playerAmount) {
+        if (playerAmount == 3) {
+            if (outCount == 1)
+                return Role.PRESIDENT;
+            if (outCount == 3)
+                return Role.BUM;
+            return Role.NEUTRAL;
+        }
+
+        if (outCount == 1)
+            return Role.PRESIDENT;
+        if (outCount == 2)
+            return Role.VICE_PRESIDENT;
+        if (outCount == playerAmount - 1)
+            return Role.VICE_BUM;
+        if (outCount == playerAmount)
+            return Role.BUM;
+        return Role.NEUTRAL;
+    }
+
     public boolean hasToTrade() {
         return mustTrade;
     }
@@ -155,4 +183,72 @@ public class PlayerData implements Serializable {
     public List<Role> getPreviousRoles(){
         return new ArrayList<>(previousRoles);
     }
+
+    /**
+     * Writes the fields that are sent to clients as part of a GameState
+     */
+    public void write(DataOutput out) throws IOException {
+        out.writeUTF(nick);
+        out.writeByte(numberOfCards);
+        out.writeBoolean(passed);
+        out.writeByte(role.ordinal());
+        out.writeInt((int) latency);
+        out.writeBoolean(connectionLost);
+        out.writeInt(previousRoles.size());
+        for (Role r : previousRoles)
+            out.writeByte(r.ordinal());
+    }
+
+    public static PlayerData read(DataInput in) throws IOException {
+        String nick = in.readUTF();
+        int numberOfCards = in.readUnsignedByte();
+        boolean passed = in.readBoolean();
+        Role role = Role.values()[in.readUnsignedByte()];
+        int latency = in.readInt();
+        boolean connectionLost = in.readBoolean();
+        int roleCount = in.readInt();
+        List<Role> previousRoles = new ArrayList<>();   // grown as read, as the count comes off the wire
+        for (int i = 0; i < roleCount; i++)
+            previousRoles.add(Role.values()[in.readUnsignedByte()]);
+
+        return new PlayerData(nick, numberOfCards, passed, role, latency, previousRoles, connectionLost);
+    }
+
+    /**
+     * Writes every field that matters to the game, for the server's
+     * snapshots. Latency and the connection are left out, as neither
+     * outlives a restart.
+     */
+    public void writeState(DataOutput out) throws IOException {
+        out.writeUTF(nick);
+        out.writeByte(numberOfCards);
+        out.writeBoolean(passed);
+        out.writeByte(role.ordinal());
+        out.writeBoolean(outOfRound);
+        out.writeByte(outCount);
+        out.writeBoolean(mustTrade);
+        out.writeInt(previousRoles.size());
+        for (Role r : previousRoles)
+            out.writeByte(r.ordinal());
+    }
+
+    public static PlayerData readState(DataInput in) throws IOException {
+        String nick = in.readUTF();
+        int numberOfCards = in.readUnsignedByte();
+        boolean passed = in.readBoolean();
+        Role role = Role.values()[in.readUnsignedByte()];
+        boolean outOfRound = in.readBoolean();
+        int outCount = in.readUnsignedByte();
+        boolean mustTrade = in.readBoolean();
+        int roleCount = in.readInt();
+        List<Role> previousRoles = new ArrayList<>(roleCount);
+        for (int i = 0; i < roleCount; i++)
+            previousRoles.add(Role.values()[in.readUnsignedByte()]);
+
+        PlayerData data = new PlayerData(nick, numberOfCards, passed, role, 0, previousRoles);
+        data.outOfRound = outOfRound;
+        data.outCount = outCount;
+        data.mustTrade = mustTrade;
+        return data;
+    }
 }
@@ -0,0 +1,108 @@
+package common.rules;
+
+import java.util.SplittableRandom;
+
+/**
+ * What one player can know of a round in progress: their own hand, the
+ * public state of the trick, and how many cards each other seat holds,
+ * but not which. Bots search over this by determinizing it, i.e. dealing
+ * the unseen cards out at random into concrete Rounds.
+ *
+ * Immutable, so one can be shared by search threads.
+ */
+public final class InformationSet {
+
+    private final Round known;      // the round, with every other hand emptied
+    private final int observer;
+    private final byte[] unseen;    // ordinals of the cards held by the other seats
+    private final int[] handSizes;
+
+    private InformationSet(Round known, int observer, byte[] unseen, int[] handSizes) {
+        this.known = known;
+        this.observer = observer;
+        this.unseen = unseen;
+        this.handSizes = handSizes;
+    }
+
+    /**
+     * Takes the observer's view of a round, forgetting the other hands
+     * @param round Round with every hand filled in, which is not kept
+     * @param observer int seat of the player
+     */
+    public static InformationSet of(Round round, int observer) {
+        int players = round.getPlayers();
+        Round known = new Round(players);
+        known.copyFrom(round);
+
+        long others = 0;
+        int[] handSizes = new int[players];
+        for (int seat = 0; seat < players; seat++) {
+            if (seat == observer)
+                continue;
+            long hand = round.getHand(seat);
+            others |= hand;
+            handSizes[seat] = Long.bitCount(hand);
+            known.setHand(seat, 0);
+        }
+
+        byte[] unseen = new byte[Long.bitCount(others)];
+        for (int i = 0; others != 0; i++, others &= others - 1)
+            unseen[i] = (byte) Long.numberOfTrailingZeros(others);
+        return new InformationSet(known, observer, unseen, handSizes);
+    }
+
+    /**
+     * Deals the unseen cards out at random, in the numbers each seat holds
+     * @param into Round to fill, with as many players as this one
+     * @param scratch byte[] of at least 52, overwritten
+     * @param random SplittableRandom of the calling thread
+     */
+    public void determinize(Round into, byte[] scratch, SplittableRandom random) {
+        into.copyFrom(known);
+        int remaining = unseen.length;
+        System.arraycopy(unseen, 0, scratch, 0, remaining);
+
+        // a partial shuffle, drawing each hand from the end of the scratch array
+        for (int seat = 0; seat < handSizes.length; seat++) {
+            long hand = 0;
+            for (int n = 0; n < handSizes[seat]; n++) {
+                int i = random.nextInt(remaining--);
+                hand |= 1L << scratch[i];
+                scratch[i] = scratch[remaining];
+            }
+            if (seat != observer)
+                into.setHand(seat, hand);
+        }
+    }
+
+    /**
+     * @return boolean whether at most one other seat holds cards, which
+     *         then must be every card the observer cannot see
+     */
+    public boolean isFullyKnown() {
+        int holding = 0;
+        for (int seat = 0; seat < handSizes.length; seat++)
+            if (seat != observer && handSizes[seat] > 0)
+                holding++;
+        return holding <= 1;
+    }
+
+    public int getObserver() {
+        return observer;
+    }
+
+    /**
+     * @return Round as the observer sees it, with the other hands empty.
+     *         Not to be modified.
+     */
+    public Round getRound() {
+        return known;
+    }
+
+    /**
+     * @return int cards held by the seat
+     */
+    public int getHandSize(int seat) {
+        return seat == observer ? Long.bitCount(known.getHand(seat)) : handSizes[seat];
+    }
+}
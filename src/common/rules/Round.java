@@ -0,0 +1,229 @@
+package common.rules;
+
+import common.Trick;
+
+import java.util.Arrays;
+
+/**
+ * Compact state of one round, for bots and simulators to play out
+ * quickly. Follows the same turn order as server.Game: seats are
+ * positions in the turn sequence, passing keeps a player out of the
+ * rest of the trick, and the round is over when only one player still
+ * holds cards.
+ *
+ * Mutable, and copied with copyFrom(), so searches can reuse instances
+ * instead of allocating a state per move.
+ */
+public class Round {
+
+    private final int players;
+    private final long[] hands;
+    private final int[] place;      // order in which each seat went out, 0 while still in
+    private int current;
+    private int passed;             // seats that passed in this trick, one bit each
+    private int goneOut;
+    private int passCount;
+    private int topValue;
+    private int topRun;
+    private int trickSize;
+    private boolean over;
+
+    /**
+     * @param players int players at the table, 3 to 8
+     */
+    public Round(int players) {
+        if (players < 3 || players > 8)
+            throw new IllegalArgumentException("Invalid number of players: " + players);
+        this.players = players;
+        hands = new long[players];
+        place = new int[players];
+    }
+
+    /**
+     * Starts a round
+     * @param dealt long[] hand of each seat, in turn order
+     * @param starter int seat that leads the first trick
+     */
+    public void deal(long[] dealt, int starter) {
+        System.arraycopy(dealt, 0, hands, 0, players);
+        Arrays.fill(place, 0);
+        current = starter;
+        passed = 0;
+        goneOut = 0;
+        over = false;
+        newTrick();
+    }
+
+    /**
+     * Picks up a round already in progress, e.g. one played by server.Game
+     * @param hands long[] hand of each seat, in turn order
+     * @param places int[] order in which each seat went out, 0 while in
+     * @param current int seat whose turn it is
+     * @param passed int seats that passed in this trick, one bit each
+     * @param topValue int value on top of the trick, 0 if none
+     * @param topRun int cards of topValue on top of each other
+     * @param trickSize int cards per play in this trick, 0 if none played
+     */
+    public void resume(long[] hands, int[] places, int current, int passed,
+                       int topValue, int topRun, int trickSize) {
+        System.arraycopy(hands, 0, this.hands, 0, players);
+        System.arraycopy(places, 0, place, 0, players);
+        goneOut = 0;
+        for (int seat = 0; seat < players; seat++)
+            goneOut = Math.max(goneOut, place[seat]);
+        this.current = current;
+        this.passed = passed;
+        passCount = Integer.bitCount(passed);
+        this.topValue = topValue;
+        this.topRun = topRun;
+        this.trickSize = trickSize;
+        over = goneOut >= players - 1;
+    }
+
+    /**
+     * Replaces a hand without touching turns or places, for filling in
+     * hands a player cannot see
+     */
+    public void setHand(int seat, long hand) {
+        hands[seat] = hand;
+    }
+
+    public void copyFrom(Round other) {
+        if (other.players != players)
+            throw new IllegalArgumentException("Rounds have different numbers of players");
+        System.arraycopy(other.hands, 0, hands, 0, players);
+        System.arraycopy(other.place, 0, place, 0, players);
+        current = other.current;
+        passed = other.passed;
+        goneOut = other.goneOut;
+        passCount = other.passCount;
+        topValue = other.topValue;
+        topRun = other.topRun;
+        trickSize = other.trickSize;
+        over = other.over;
+    }
+
+    /**
+     * Plays cards for the current player
+     * @param cards long cards to play
+     * @return Trick that the play ended, or NONE
+     * @throws IllegalArgumentException if the play is illegal
+     */
+    public Trick play(long cards) {
+        if (over)
+            throw new IllegalStateException("Round is over");
+        String error = Rules.checkPlay(hands[current], cards, topValue, trickSize);
+        if (error != null)
+            throw new IllegalArgumentException(error);
+
+        int value = Rules.valueOf(cards);
+        int count = Long.bitCount(cards);
+        hands[current] &= ~cards;
+        boolean wentOut = hands[current] == 0;
+        if (wentOut)
+            place[current] = ++goneOut;
+
+        Trick trick = Rules.trickAfter(value, count, topValue, topRun);
+        if (trick != Trick.NONE) {
+            // the player leads the next trick, unless they went out
+            newTrick();
+            if (wentOut)
+                nextPlayer();
+            return trick;
+        }
+
+        topRun = Rules.runAfter(value, count, topValue, topRun);
+        topValue = value;
+        if (trickSize == 0)
+            trickSize = count;
+        return nextPlayer();
+    }
+
+    /**
+     * Passes for the current player
+     * @return Trick ALL_PASS if everyone else had passed, or NONE
+     */
+    public Trick pass() {
+        if (over)
+            throw new IllegalStateException("Round is over");
+        passed |= 1 << current;
+        passCount++;
+        return nextPlayer();
+    }
+
+    private Trick nextPlayer() {
+        // only one player left -- round is over
+        if (goneOut == players - 1) {
+            for (int seat = 0; seat < players; seat++)
+                if (place[seat] == 0)
+                    place[seat] = ++goneOut;
+            over = true;
+            return Trick.NONE;
+        }
+
+        do {
+            if (++current == players)
+                current = 0;
+        } while ((passed & 1 << current) != 0 || place[current] != 0);
+
+        if (passCount + goneOut == players - 1) {
+            newTrick();
+            return Trick.ALL_PASS;
+        }
+        return Trick.NONE;
+    }
+
+    private void newTrick() {
+        passed = 0;
+        passCount = 0;
+        topValue = 0;
+        topRun = 0;
+        trickSize = 0;
+    }
+
+    /**
+     * Lists the current player's legal plays, see Rules.legalMoves()
+     */
+    public int legalMoves(long[] moves) {
+        return Rules.legalMoves(hands[current], topValue, trickSize, moves);
+    }
+
+    public int getPlayers() {
+        return players;
+    }
+
+    public int getCurrent() {
+        return current;
+    }
+
+    public long getHand(int seat) {
+        return hands[seat];
+    }
+
+    /**
+     * @return int order in which the seat went out, from 1, or 0 while it holds cards
+     */
+    public int getPlace(int seat) {
+        return place[seat];
+    }
+
+    public boolean hasPassed(int seat) {
+        return (passed & 1 << seat) != 0;
+    }
+
+    public int getTopValue() {
+        return topValue;
+    }
+
+    public int getTrickSize() {
+        return trickSize;
+    }
+
+    public int getTopRun() {
+        return topRun;
+    }
+
+    public boolean isOver() {
+        return over;
+    }
+}
@@ -0,0 +1,215 @@
+package common.rules;
+
+import common.CardData;
+import common.Role;
+import common.Trick;
+
+/**
+ * The rules of play, as pure functions over cards packed in a long the
+ * way CardSet packs them, with one bit per card at its toByte() index.
+ *
+ * A play is legal when the player holds the cards, all of them have the
+ * same value, there are as many as the trick was opened with, and their
+ * value is at least that of the top card. The 3 of clubs beats anything
+ * and may always be played alone. Nothing here allocates.
+ */
+public final class Rules {
+
+    public static final int THREE_OF_CLUBS_VALUE = 16;
+    public static final int MAX_VALUE = THREE_OF_CLUBS_VALUE;
+
+    /**
+     * Upper bound on the number of moves legalMoves() lists: every subset
+     * of the four cards of each value, and the 3 of clubs
+     */
+    public static final int MAX_MOVES = 15 * 13 + 1;
+
+    private static final int[] VALUE = new int[52];              // card ordinal -> value
+    private static final long[] VALUE_MASK = new long[MAX_VALUE + 1];  // value -> cards of that value
+
+    static {
+        for (byte b = 0; b < 52; b++) {
+            int value = CardData.fromByte(b).getValue();
+            VALUE[b] = value;
+            VALUE_MASK[value] |= 1L << b;
+        }
+    }
+
+    private Rules() {
+    }
+
+    /**
+     * @param ordinal int card ordinal, as by CardData.toByte()
+     * @return int value of the card in the game, 3 to 16
+     */
+    public static int valueOf(int ordinal) {
+        return VALUE[ordinal];
+    }
+
+    /**
+     * @param cards long non-empty set of cards
+     * @return int value of the lowest card
+     */
+    public static int valueOf(long cards) {
+        return VALUE[Long.numberOfTrailingZeros(cards)];
+    }
+
+    /**
+     * @return long all cards of the value
+     */
+    public static long cardsOfValue(int value) {
+        return VALUE_MASK[value];
+    }
+
+    /**
+     * Checks a play against the player's hand and the trick in progress
+     * @param hand long cards held by the player
+     * @param play long cards played
+     * @param topValue int value of the top card on the table, or 0 if none
+     * @param trickSize int cards per play in the trick, or 0 for a new trick
+     * @return String why the play is illegal, or null if it is legal
+     */
+    public static String checkPlay(long hand, long play, int topValue, int trickSize) {
+        if (play == 0)
+            return "Cannot play 0 cards!";
+        if ((play & ~hand) != 0)
+            return "You don't have those cards";
+
+        int value = valueOf(play);
+        if (value != THREE_OF_CLUBS_VALUE && trickSize > 0 && trickSize != Long.bitCount(play))
+            return "Wrong number of cards";
+        if ((play & ~VALUE_MASK[value]) != 0)
+            return "All cards must have the same value";
+        if (topValue > value)
+            return "Cards must be higher or equal to those on table";
+        return null;
+    }
+
+    /**
+     * Lists every legal play from a hand. Passing is always allowed, and
+     * is not listed.
+     * @param moves long[] to fill, with room for MAX_MOVES plays
+     * @return int number of plays written to moves
+     */
+    public static int legalMoves(long hand, int topValue, int trickSize, long[] moves) {
+        int count = 0;
+        for (int value = Math.max(topValue, 3); value < THREE_OF_CLUBS_VALUE; value++) {
+            long cards = hand & VALUE_MASK[value];
+            if (cards == 0 || trickSize > Long.bitCount(cards))
+                continue;
+            // every non-empty subset, of the trick's size once it has one
+            for (long subset = cards; subset != 0; subset = (subset - 1) & cards)
+                if (trickSize == 0 || Long.bitCount(subset) == trickSize)
+                    moves[count++] = subset;
+        }
+
+        long threeOfClubs = hand & VALUE_MASK[THREE_OF_CLUBS_VALUE];
+        if (threeOfClubs != 0)
+            moves[count++] = threeOfClubs;
+        return count;
+    }
+
+    /**
+     * The greedy play, found without listing every move: the lowest value
+     * that can be played, as many cards of it as allowed, and the 3 of
+     * clubs only when nothing else goes
+     * @return long cards to play, or 0 if the player can only pass
+     */
+    public static long lowestPlay(long hand, int topValue, int trickSize) {
+        for (int value = Math.max(topValue, 3); value < THREE_OF_CLUBS_VALUE; value++) {
+            long cards = hand & VALUE_MASK[value];
+            if (cards == 0 || trickSize > Long.bitCount(cards))
+                continue;
+            if (trickSize == 0)
+                return cards;
+
+            long chosen = 0;
+            for (int n = 0; n < trickSize; n++, cards &= cards - 1)
+                chosen |= Long.lowestOneBit(cards);
+            return chosen;
+        }
+        return hand & VALUE_MASK[THREE_OF_CLUBS_VALUE];
+    }
+
+    /**
+     * Cards of the top card's value lying on top of each other, after a
+     * legal play
+     * @param topRun int such cards before the play
+     */
+    public static int runAfter(int value, int count, int topValue, int topRun) {
+        return value == topValue ? topRun + count : count;
+    }
+
+    /**
+     * Tells whether a legal play ends the trick
+     * @param value int value of the cards played
+     * @param count int number of cards played
+     * @param topValue int value of the top card before the play, or 0 if none
+     * @param topRun int cards of topValue on top of the table before the play
+     * @return Trick THREE_CLUBS or FOUR_SAME if the trick ends, or NONE
+     */
+    public static Trick trickAfter(int value, int count, int topValue, int topRun) {
+        if (value == THREE_OF_CLUBS_VALUE)
+            return Trick.THREE_CLUBS;
+        if (runAfter(value, count, topValue, topRun) >= 4)
+            return Trick.FOUR_SAME;
+        return Trick.NONE;
+    }
+
+    /**
+     * Cards a player of a role gives away when trading, as the client
+     * enforces it: presidents and bums trade two cards from four players
+     * up and one at a three player table, the vices always one
+     * @return int cards to give, 0 for neutral players
+     */
+    public static int tradeCount(Role role, int players) {
+        return switch (role) {
+            case PRESIDENT, BUM -> players == 3 ? 1 : 2;
+            case VICE_PRESIDENT, VICE_BUM -> 1;
+            default -> 0;
+        };
+    }
+
+    /**
+     * @return Role that receives the cards a role gives away
+     */
+    public static Role tradePartner(Role role) {
+        return switch (role) {
+            case BUM -> Role.PRESIDENT;
+            case VICE_BUM -> Role.VICE_PRESIDENT;
+            case VICE_PRESIDENT -> Role.VICE_BUM;
+            case PRESIDENT -> Role.BUM;
+            default -> Role.NEUTRAL;
+        };
+    }
+
+    /**
+     * The cards bums must give away. The 3 of clubs is never given.
+     * @return long up to count of the highest valued cards of the hand
+     */
+    public static long highestCards(long hand, int count) {
+        long chosen = 0;
+        for (int value = THREE_OF_CLUBS_VALUE - 1; value >= 3 && count > 0; value--) {
+            for (long cards = hand & VALUE_MASK[value]; cards != 0 && count > 0; cards &= cards - 1) {
+                chosen |= Long.lowestOneBit(cards);
+                count--;
+            }
+        }
+        return chosen;
+    }
+
+    /**
+     * @return long up to count of the lowest valued cards of the hand,
+     *         leaving out the 3 of clubs
+     */
+    public static long lowestCards(long hand, int count) {
+        long chosen = 0;
+        for (int value = 3; value < THREE_OF_CLUBS_VALUE && count > 0; value++) {
+            for (long cards = hand & VALUE_MASK[value]; cards != 0 && count > 0; cards &= cards - 1) {
+                chosen |= Long.lowestOneBit(cards);
+                count--;
+            }
+        }
+        return chosen;
+    }
+}
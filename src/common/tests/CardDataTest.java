@@ -0,0 +1,34 @@
+package common.tests;
+
+import common.CardData;
+import org.junit.jupiter.api.Test;
+
+import java.io.*;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CardDataTest {
+
+    @Test
+    public void cardsAreCanonical() {
+        assertSame(CardData.of(3, 'C'), CardData.fromByte(CardData.of(3, 'C').toByte()));
+        assertEquals(52, CardData.deck().size());
+        assertThrows(IllegalArgumentException.class, () -> CardData.of(15, 'H'));
+        assertThrows(IllegalArgumentException.class, () -> CardData.of(5, 'X'));
+    }
+
+    @Test
+    public void deserializedCardsAreInterned() throws IOException, ClassNotFoundException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(CardData.deck());
+        }
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+
+        @SuppressWarnings("unchecked")
+        List<CardData> cards = (List<CardData>) in.readObject();
+        for (int i = 0; i < 52; i++)
+            assertSame(CardData.fromByte((byte) i), cards.get(i));
+    }
+}
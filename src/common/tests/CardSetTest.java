@@ -0,0 +1,61 @@
+package common.tests;
+
+import common.CardData;
+import common.CardSet;
+import org.junit.jupiter.api.Test;
+
+import java.io.*;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CardSetTest {
+
+    @Test
+    public void setOperationsFollowTheCards() {
+        CardSet hand = CardSet.of(List.of(
+                CardData.of(3, 'C'), CardData.of(7, 'H'), CardData.of(7, 'D'), CardData.of(14, 'S')
+        ));
+        assertEquals(4, hand.size());
+        assertTrue(hand.contains(CardData.of(7, 'D')));
+        assertFalse(hand.contains(CardData.of(7, 'S')));
+        assertEquals(2, hand.countOfNumber(7));
+        assertEquals(1, hand.countOfNumber(14));
+        assertEquals(0, hand.countOfNumber(2));
+
+        CardSet sevens = CardSet.of(List.of(CardData.of(7, 'H'), CardData.of(7, 'D')));
+        assertTrue(hand.containsAll(sevens));
+        hand.removeAll(sevens);
+        assertFalse(hand.containsAll(sevens));
+        assertEquals(2, hand.size());
+
+        assertFalse(hand.add(CardData.of(3, 'C')));
+        assertTrue(hand.remove(CardData.of(3, 'C')));
+        assertFalse(hand.remove(CardData.of(3, 'C')));
+    }
+
+    @Test
+    public void wholeDeckRoundTrips() throws IOException {
+        CardSet deck = new CardSet();
+        for (byte b = 0; b < 52; b++)
+            assertTrue(deck.add(CardData.fromByte(b)));
+        assertEquals(52, deck.size());
+        assertEquals(52, deck.toList().size());
+        for (int number = 2; number <= 14; number++)
+            assertEquals(4, deck.countOfNumber(number));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        deck.write(new DataOutputStream(bytes));
+        CardSet read = CardSet.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        assertEquals(deck, read);
+
+        // same format as a list of cards
+        List<CardData> cards = CardData.readCards(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        assertEquals(deck, CardSet.of(cards));
+    }
+
+    @Test
+    public void bitsOutsideTheDeckAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new CardSet(1L << 52));
+    }
+}
@@ -0,0 +1,193 @@
+package common.tests;
+
+import common.CardData;
+import common.CardSet;
+import common.Trick;
+import common.rules.InformationSet;
+import common.rules.Round;
+import common.rules.Rules;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RulesTest {
+
+    private static long cards(String... names) {
+        CardSet set = new CardSet();
+        for (String name : names)
+            set.add(CardData.of(
+                    Integer.parseInt(name.substring(0, name.length() - 1)),
+                    name.charAt(name.length() - 1)
+            ));
+        return set.getBits();
+    }
+
+    @Test
+    public void cardValues() {
+        assertEquals(3, Rules.valueOf(cards("3H")));
+        assertEquals(16, Rules.valueOf(cards("3C")));
+        assertEquals(15, Rules.valueOf(cards("2S")));
+        assertEquals(14, Rules.valueOf(cards("14D")));
+        assertEquals(cards("2H", "2S", "2C", "2D"), Rules.cardsOfValue(15));
+        assertEquals(cards("3C"), Rules.cardsOfValue(16));
+    }
+
+    @Test
+    public void illegalPlaysAreExplained() {
+        long hand = cards("5H", "5S", "7D", "3C", "9C");
+        assertEquals("Cannot play 0 cards!", Rules.checkPlay(hand, 0, 0, 0));
+        assertEquals("You don't have those cards", Rules.checkPlay(hand, cards("5D"), 0, 0));
+        assertEquals("Wrong number of cards", Rules.checkPlay(hand, cards("7D"), 4, 2));
+        assertEquals("All cards must have the same value", Rules.checkPlay(hand, cards("5H", "7D"), 0, 0));
+        assertEquals("Cards must be higher or equal to those on table", Rules.checkPlay(hand, cards("5H", "5S"), 6, 2));
+
+        assertNull(Rules.checkPlay(hand, cards("5H", "5S"), 5, 2));
+        assertNull(Rules.checkPlay(hand, cards("9C"), 0, 0));
+        // the 3 of clubs goes on anything, alone
+        assertNull(Rules.checkPlay(hand, cards("3C"), 15, 3));
+    }
+
+    @Test
+    public void legalMovesMatchCheckPlayForEverySubset() {
+        Random random = new Random(42);
+        long[] moves = new long[Rules.MAX_MOVES];
+        List<CardData> deck = CardData.deck();
+
+        for (int round = 0; round < 200; round++) {
+            Collections.shuffle(deck, random);
+            long hand = CardSet.of(deck.subList(0, 10)).getBits();
+            int topValue = random.nextBoolean() ? 0 : 3 + random.nextInt(13);
+            int trickSize = topValue == 0 ? 0 : 1 + random.nextInt(4);
+
+            Set<Long> listed = new HashSet<>();
+            int count = Rules.legalMoves(hand, topValue, trickSize, moves);
+            for (int i = 0; i < count; i++)
+                assertTrue(listed.add(moves[i]), "listed twice");
+
+            // every subset of the hand is listed exactly when it is legal
+            for (long subset = hand; subset != 0; subset = (subset - 1) & hand)
+                assertEquals(
+                        Rules.checkPlay(hand, subset, topValue, trickSize) == null,
+                        listed.contains(subset)
+                );
+        }
+    }
+
+    @Test
+    public void lowestPlayIsTheLowestLegalMoveWithTheMostCards() {
+        Random random = new Random(7);
+        long[] moves = new long[Rules.MAX_MOVES];
+        List<CardData> deck = CardData.deck();
+
+        for (int round = 0; round < 500; round++) {
+            Collections.shuffle(deck, random);
+            long hand = CardSet.of(deck.subList(0, 1 + random.nextInt(13))).getBits();
+            int topValue = random.nextBoolean() ? 0 : 3 + random.nextInt(13);
+            int trickSize = topValue == 0 ? 0 : 1 + random.nextInt(4);
+
+            long play = Rules.lowestPlay(hand, topValue, trickSize);
+            int count = Rules.legalMoves(hand, topValue, trickSize, moves);
+            if (count == 0) {
+                assertEquals(0, play);
+                continue;
+            }
+            assertNull(Rules.checkPlay(hand, play, topValue, trickSize));
+            for (int i = 0; i < count; i++) {
+                assertTrue(Rules.valueOf(play) <= Rules.valueOf(moves[i]));
+                if (Rules.valueOf(play) == Rules.valueOf(moves[i]))
+                    assertTrue(Long.bitCount(play) >= Long.bitCount(moves[i]));
+            }
+        }
+    }
+
+    @Test
+    public void trickDetection() {
+        assertEquals(Trick.THREE_CLUBS, Rules.trickAfter(16, 1, 14, 1));
+        assertEquals(Trick.FOUR_SAME, Rules.trickAfter(8, 2, 8, 2));
+        assertEquals(Trick.FOUR_SAME, Rules.trickAfter(8, 4, 0, 0));
+        assertEquals(Trick.NONE, Rules.trickAfter(8, 2, 7, 2));
+        assertEquals(Trick.NONE, Rules.trickAfter(8, 1, 8, 2));
+        assertEquals(3, Rules.runAfter(8, 1, 8, 2));
+    }
+
+    @Test
+    public void roundFollowsTurnsTricksAndPlaces() {
+        Round round = new Round(3);
+        round.deal(new long[]{
+                cards("4H", "9S"),
+                cards("5H", "3C"),
+                cards("6H", "6S", "14D")
+        }, 0);
+
+        assertEquals(Trick.NONE, round.play(cards("4H")));
+        assertEquals(1, round.getCurrent());
+        assertEquals(Trick.NONE, round.play(cards("5H")));
+        assertEquals(Trick.NONE, round.pass());
+        assertEquals(0, round.getCurrent());
+
+        // everyone else passed, so the last player to play leads
+        assertEquals(Trick.ALL_PASS, round.pass());
+        assertEquals(1, round.getCurrent());
+        assertEquals(0, round.getTopValue());
+
+        // seat 1 goes out on the 3 of clubs, and the next seat leads
+        assertEquals(Trick.THREE_CLUBS, round.play(cards("3C")));
+        assertEquals(1, round.getPlace(1));
+        assertEquals(2, round.getCurrent());
+
+        round.play(cards("6H", "6S"));
+        assertEquals(Trick.ALL_PASS, round.pass());
+        assertEquals(2, round.getCurrent());
+        round.play(cards("14D"));
+        assertTrue(round.isOver());
+        assertEquals(2, round.getPlace(2));
+        assertEquals(3, round.getPlace(0));
+    }
+
+    @Test
+    public void copiesPlayOnIndependently() {
+        Round round = new Round(4);
+        round.deal(new long[]{cards("4H"), cards("5H"), cards("6H"), cards("7H")}, 0);
+        Round copy = new Round(4);
+        copy.copyFrom(round);
+
+        copy.play(cards("4H"));
+        assertEquals(cards("4H"), round.getHand(0));
+        assertEquals(0, copy.getHand(0));
+        assertEquals(0, round.getCurrent());
+        assertThrows(IllegalArgumentException.class, () -> round.play(cards("5H")));
+    }
+
+    @Test
+    public void determinizationsKeepWhatThePlayerKnows() {
+        Round round = new Round(3);
+        round.deal(new long[]{
+                cards("4H", "9S", "10D"),
+                cards("5H", "3C"),
+                cards("6H", "6S", "14D", "2C")
+        }, 1);
+        round.play(cards("5H"));
+        InformationSet info = InformationSet.of(round, 1);
+        assertEquals(0, info.getRound().getHand(0));
+        assertEquals(4, info.getHandSize(2));
+
+        long others = round.getHand(0) | round.getHand(2);
+        Round deal = new Round(3);
+        byte[] scratch = new byte[52];
+        SplittableRandom random = new SplittableRandom(3);
+        Set<Long> seen = new HashSet<>();
+        for (int i = 0; i < 50; i++) {
+            info.determinize(deal, scratch, random);
+            assertEquals(cards("3C"), deal.getHand(1));
+            assertEquals(3, Long.bitCount(deal.getHand(0)));
+            assertEquals(4, Long.bitCount(deal.getHand(2)));
+            assertEquals(others, deal.getHand(0) | deal.getHand(2));
+            assertEquals(2, deal.getCurrent());
+            assertEquals(5, deal.getTopValue());
+            seen.add(deal.getHand(0));
+        }
+        assertTrue(seen.size() > 1);
+    }
+}
@@ -0,0 +1,189 @@
+package protocol;
+
+import common.*;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Hand-written binary encoding of messages, as a compact and cheap
+ * alternative to Java serialization on framed connections.
+ *
+ * A payload starts with the MessageType ordinal, the request ID and the
+ * nullable error message, followed by the fields of the message type. Cards are encoded
+ * as single bytes, and GameState field by field.
+ *
+ * A client opts in by sending its CONNECT request in this encoding, with
+ * the codec VERSION as its only field. The server then answers in the
+ * same encoding for the rest of the connection.
+ */
+public class BinaryCodec {
+
+    public static final int VERSION = 1;
+
+    /**
+     * Java serialization payloads always start with 0xAC, while binary
+     * payloads start with a MessageType ordinal
+     * @param firstByte int first byte of a frame payload
+     * @return true if the payload is binary encoded
+     */
+    public static boolean isBinary(int firstByte) {
+        return (firstByte & 0xFF) < MessageType.values().length;
+    }
+
+    public static byte[] encode(Message msg) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(bytes);
+
+        out.writeByte(msg.getMessageType().ordinal());
+        out.writeInt(msg.getRequestID());
+        writeNullableString(out, msg.getErrorMessage());
+
+        switch (msg.getMessageType()) {
+            case CONNECT -> out.writeByte(VERSION);
+            case HEARTBEAT -> {
+                HeartbeatMessage heartbeat = (HeartbeatMessage) msg;
+                out.writeLong(heartbeat.getTime());
+                out.writeLong(heartbeat.getStateVersion());
+            }
+            case IDENTITY_RESPONSE, UPDATE_NICK -> {
+                IdentityResponse identity = (IdentityResponse) msg;
+                out.writeUTF(identity.getToken());
+                out.writeUTF(identity.getNick());
+            }
+            case RECONNECT -> out.writeUTF(((ReconnectMessage) msg).getToken());
+            case GAME_LIST_RESPONSE -> {
+                List<GameListing> list = ((GameListResponse) msg).getGameList();
+                out.writeShort(list.size());
+                for (GameListing listing : list)
+                    listing.write(out);
+            }
+            case NEW_GAME -> {
+                NewGameMessage request = (NewGameMessage) msg;
+                out.writeUTF(request.getTitle());
+                writePassword(out, request.getPassword());
+            }
+            case JOIN_GAME -> {
+                JoinGameRequest request = (JoinGameRequest) msg;
+                out.writeUTF(request.getGameID());
+                writePassword(out, request.getPassword());
+            }
+            case GAME_STATE -> ((GameStateResponse) msg).getState().write(out);
+            case GAME_STATE_DELTA -> ((GameStateDeltaResponse) msg).getDelta().write(out);
+            case GAME_EVENT -> {
+                byte[] event = encode(((GameEventMessage) msg).getEvent());
+                out.writeInt(event.length);
+                out.write(event);
+            }
+            case PLAY_CARDS -> ((PlayCardsRequest) msg).getCards().write(out);
+            case GIVE_CARDS -> ((GiveCardsRequest) msg).getCards().write(out);
+            default -> { }  // the remaining types carry no fields
+        }
+
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    public static Message decode(byte[] payload, int offset, int length) throws IOException {
+        return decode(payload, offset, length, true);
+    }
+
+    /**
+     * Decodes a payload sent to a server, which never takes pushed events,
+     * so that a client can't make it decode one
+     */
+    public static Message decodeRequest(byte[] payload, int offset, int length) throws IOException {
+        return decode(payload, offset, length, false);
+    }
+
+    // events are only ever one level deep, so they are no longer allowed inside one
+    private static Message decode(byte[] payload, int offset, int length, boolean events) throws IOException {
+        ByteArrayInputStream bytes = new ByteArrayInputStream(payload, offset, length);
+        DataInputStream in = new DataInputStream(bytes);
+
+        int ordinal = in.readUnsignedByte();
+        if (ordinal >= MessageType.values().length)
+            throw new IOException("Unknown message type: " + ordinal);
+        MessageType type = MessageType.values()[ordinal];
+        if (type == MessageType.GAME_EVENT && !events)
+            throw new IOException("Unexpected game event");
+        int requestID = in.readInt();
+        String errorMessage = readNullableString(in);
+
+        Message msg;
+        switch (type) {
+            case CONNECT -> {
+                int version = in.readUnsignedByte();
+                if (version != VERSION)
+                    throw new IOException("Unsupported binary codec version: " + version);
+                msg = new Message(type);
+            }
+            case ERROR -> msg = new ErrorMessage(errorMessage);
+            case PASSWORD_ERROR -> msg = new PasswordError();
+            case CANCEL_GAME_ERROR -> msg = new CancelledGameError();
+            case HEARTBEAT -> msg = new HeartbeatMessage(in.readLong(), in.readLong());
+            case IDENTITY_RESPONSE -> msg = new IdentityResponse(in.readUTF(), in.readUTF());
+            case UPDATE_NICK -> msg = new UpdateNickMessage(in.readUTF(), in.readUTF());
+            case RECONNECT -> msg = new ReconnectMessage(in.readUTF());
+            case GAME_LIST_RESPONSE -> {
+                int count = in.readUnsignedShort();
+                List<GameListing> list = new ArrayList<>(count);
+                for (int i = 0; i < count; i++)
+                    list.add(GameListing.read(in));
+                msg = new GameListResponse(list);
+            }
+            case NEW_GAME -> msg = new NewGameMessage(in.readUTF(), readPassword(in));
+            case JOIN_GAME -> msg = new JoinGameRequest(in.readUTF(), readPassword(in));
+            case GAME_STATE -> msg = new GameStateResponse(GameState.read(in));
+            case GAME_STATE_DELTA -> msg = new GameStateDeltaResponse(GameStateDelta.read(in));
+            case GAME_EVENT -> {
+                // checked against what the frame holds before allocating
+                int eventLength = in.readInt();
+                if (eventLength <= 0 || eventLength > bytes.available())
+                    throw new IOException("Invalid game event length: " + eventLength);
+                byte[] event = new byte[eventLength];
+                in.readFully(event);
+                msg = new GameEventMessage(decode(event, 0, event.length, false));
+            }
+            case PLAY_CARDS -> msg = PlayCardsRequest.fromCardSet(CardSet.read(in));
+            case GIVE_CARDS -> msg = GiveCardsRequest.fromCardSet(CardSet.read(in));
+            case PASS_TURN -> msg = new PassTurn();
+            default -> msg = new Message(type);
+        }
+
+        msg.errorMessage = errorMessage;
+        msg.requestID = requestID;
+        return msg;
+    }
+
+    private static void writeNullableString(DataOutput out, String s) throws IOException {
+        out.writeBoolean(s != null);
+        if (s != null)
+            out.writeUTF(s);
+    }
+
+    private static String readNullableString(DataInput in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    // null passwords (public games) are sent as length -1
+    private static void writePassword(DataOutput out, char[] password) throws IOException {
+        if (password == null) {
+            out.writeShort(-1);
+            return;
+        }
+        out.writeShort(password.length);
+        for (char c : password)
+            out.writeChar(c);
+    }
+
+    private static char[] readPassword(DataInput in) throws IOException {
+        int length = in.readShort();
+        if (length < 0)
+            return null;
+        char[] password = new char[length];
+        for (int i = 0; i < length; i++)
+            password[i] = in.readChar();
+        return password;
+    }
+}
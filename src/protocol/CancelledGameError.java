@@ -1,6 +1,8 @@
 package protocol;
 
 public class CancelledGameError extends Message {
+    private static final long serialVersionUID = 8134245823484555062L;
+
     public CancelledGameError() {
         super(MessageType.CANCEL_GAME_ERROR);
         errorMessage = "Game has been cancelled by owner";
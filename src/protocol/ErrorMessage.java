@@ -1,6 +1,8 @@
 package protocol;
 
 public class ErrorMessage extends Message {
+    private static final long serialVersionUID = 8190328277463884452L;
+
     public ErrorMessage(String message) {
         super(MessageType.ERROR);
         this.errorMessage = message;
@@ -0,0 +1,146 @@
+package protocol;
+
+import java.io.*;
+
+/**
+ * Encodes messages as self-contained, length-prefixed frames.
+ *
+ * A frame is a 4 byte big-endian payload length followed by the payload,
+ * which is a single message, either serialized on its own or encoded by
+ * BinaryCodec. Unlike a long-lived ObjectOutputStream, every frame can be
+ * decoded without any state from earlier frames, which is what a
+ * non-blocking server needs.
+ *
+ * One FrameCodec is used per connection. Incoming payloads are decoded in
+ * whichever encoding they arrive in, while outgoing messages use the
+ * encoding negotiated by the client's CONNECT request.
+ */
+public class FrameCodec {
+
+    public static final int HEADER_SIZE = 4;
+
+    // The first two bytes of any Java serialization stream. A frame never
+    // starts with these, since MAX_FRAME_SIZE keeps the top length byte at 0
+    public static final int STREAM_MAGIC_HI = 0xAC;
+    public static final int STREAM_MAGIC_LO = 0xED;
+
+    private volatile boolean binary;
+    private final boolean server;   // decodes requests only, never pushed events
+
+    /**
+     * Codec for the server side, which answers in Java serialization until
+     * a client connects using the binary codec
+     */
+    public FrameCodec() {
+        this(false, true);
+    }
+
+    /**
+     * Codec for the client side
+     * @param binary boolean, true to send using BinaryCodec
+     */
+    public FrameCodec(boolean binary) {
+        this(binary, false);
+    }
+
+    private FrameCodec(boolean binary, boolean server) {
+        this.binary = binary;
+        this.server = server;
+    }
+
+    public boolean isBinary() {
+        return binary;
+    }
+
+    /**
+     * Encodes a message into a complete frame, header included
+     * @param msg Message to encode
+     * @return byte[] frame
+     * @throws IOException if the message cannot be encoded
+     */
+    public byte[] encode(Message msg) throws IOException {
+        byte[] payload = binary ? BinaryCodec.encode(msg) : serialize(msg);
+        int length = payload.length;
+        if (length > Protocol.MAX_FRAME_SIZE)
+            throw new IOException("Frame too large: " + length + " bytes");
+
+        byte[] frame = new byte[HEADER_SIZE + length];
+        frame[0] = (byte) (length >>> 24);
+        frame[1] = (byte) (length >>> 16);
+        frame[2] = (byte) (length >>> 8);
+        frame[3] = (byte) length;
+        System.arraycopy(payload, 0, frame, HEADER_SIZE, length);
+        return frame;
+    }
+
+    /**
+     * Decodes the payload of a single frame. A CONNECT request fixes the
+     * encoding used for all following outgoing messages.
+     * @param payload byte[] holding the payload
+     * @param offset int start of the payload
+     * @param length int payload length, as given by the frame header
+     * @return the decoded Message
+     */
+    public Message decode(byte[] payload, int offset, int length)
+            throws IOException, ClassNotFoundException {
+        boolean binaryPayload = BinaryCodec.isBinary(payload[offset]);
+        Message msg;
+        if (!binaryPayload)
+            msg = deserialize(payload, offset, length);
+        else if (server)
+            msg = BinaryCodec.decodeRequest(payload, offset, length);
+        else
+            msg = BinaryCodec.decode(payload, offset, length);
+        if (server && msg.getMessageType() == MessageType.GAME_EVENT)
+            throw new IOException("Unexpected game event");
+
+        if (msg.getMessageType() == MessageType.CONNECT)
+            binary = binaryPayload;
+        return msg;
+    }
+
+    /**
+     * Checks a frame header's length field
+     * @param length int length read from a frame header
+     * @throws IOException if the length is out of bounds
+     */
+    public static void checkLength(int length) throws IOException {
+        if (length <= 0 || length > Protocol.MAX_FRAME_SIZE)
+            throw new IOException("Invalid frame length: " + length);
+    }
+
+    /**
+     * Writes a message as a frame to a blocking stream
+     */
+    public void write(DataOutputStream out, Message msg) throws IOException {
+        out.write(encode(msg));
+        out.flush();
+    }
+
+    /**
+     * Reads one frame from a blocking stream
+     */
+    public Message read(DataInputStream in) throws IOException, ClassNotFoundException {
+        int length = in.readInt();
+        checkLength(length);
+        byte[] payload = new byte[length];
+        in.readFully(payload);
+        return decode(payload, 0, length);
+    }
+
+    private static byte[] serialize(Message msg) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(msg);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Message deserialize(byte[] payload, int offset, int length)
+            throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(
+                new ByteArrayInputStream(payload, offset, length))) {
+            return (Message) in.readObject();
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package protocol;
+
+/**
+ * Wraps a message the server pushes to a subscribed client, so that it
+ * can't be mistaken for the response to a request in flight
+ */
+public class GameEventMessage extends Message {
+    private static final long serialVersionUID = 1L;
+
+    private final Message event;
+
+    public GameEventMessage(Message event) {
+        super(MessageType.GAME_EVENT);
+        this.event = event;
+    }
+
+    public Message getEvent() {
+        return event;
+    }
+}
@@ -5,6 +5,8 @@ import common.GameListing;
 import java.util.List;
 
 public class GameListResponse extends Message {
+    private static final long serialVersionUID = -1598997933569159095L;
+
     private final List<GameListing> gameList;
     public GameListResponse(
             List<GameListing> gameList
@@ -0,0 +1,18 @@
+package protocol;
+
+import common.GameStateDelta;
+
+public class GameStateDeltaResponse extends Message {
+    private static final long serialVersionUID = 1L;
+
+    private final GameStateDelta delta;
+
+    public GameStateDeltaResponse(GameStateDelta delta) {
+        super(MessageType.GAME_STATE_DELTA);
+        this.delta = delta;
+    }
+
+    public GameStateDelta getDelta() {
+        return delta;
+    }
+}
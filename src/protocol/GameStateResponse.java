@@ -7,12 +7,19 @@ import server.exceptions.UserSessionError;
 
 
 public class GameStateResponse extends Message {
+    private static final long serialVersionUID = -6105213091785064543L;
+
     private final GameState state;
 
     public GameStateResponse(Game game, UserSession playerSession) throws UserSessionError {
         super(MessageType.GAME_STATE);
 
-        state = new GameState(game, playerSession);
+        state = Game.await(game.stateFor(playerSession), UserSessionError.class);
+    }
+
+    public GameStateResponse(GameState state) {
+        super(MessageType.GAME_STATE);
+        this.state = state;
     }
 
     public GameState getState() {
@@ -2,26 +2,39 @@ package protocol;
 
 import client.Card;
 import common.CardData;
+import common.CardSet;
 
 import java.util.List;
-import java.util.stream.Collectors;
 
 public class GiveCardsRequest extends Message {
+    private static final long serialVersionUID = -8386039483404531569L;
 
-    private List<CardData> cards;
+    private List<CardData> cards;   // only set by clients from before CardSet
+    private CardSet cardSet;
 
     public GiveCardsRequest(List<Card> cards) {
         super(MessageType.GIVE_CARDS);
+        cardSet = new CardSet();
+        for (Card card : cards)
+            cardSet.add(card.getData());
+    }
 
-        List<CardData> cardDataList = cards
-                .stream()
-                .map(card -> new CardData(card.getNumber(), card.getSuit()))
-                .collect(Collectors.toList());
+    private GiveCardsRequest() {
+        super(MessageType.GIVE_CARDS);
+    }
 
-            this.cards = cardDataList;
+    /**
+     * Used when decoding
+     */
+    static GiveCardsRequest fromCardSet(CardSet cards) {
+        GiveCardsRequest request = new GiveCardsRequest();
+        request.cardSet = cards;
+        return request;
     }
 
-    public List<CardData> getCards() {
-        return cards;
+    public CardSet getCards() {
+        if (cardSet == null)
+            cardSet = CardSet.of(cards);
+        return cardSet;
     }
 }
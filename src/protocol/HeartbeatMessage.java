@@ -1,13 +1,35 @@
 package protocol;
 
 public class HeartbeatMessage extends Message {
+    private static final long serialVersionUID = 6779718667583086944L;
+
+    // state versions with special meaning
+    public static final long NO_STATE_VERSION = 0;  // client only understands full states
+    public static final long RESYNC = -1;           // client wants a full state right away
+
     private long timestamp;
+    private long stateVersion;  // missing from older clients, and read as NO_STATE_VERSION
+
     public HeartbeatMessage(long timestamp) {
+        this(timestamp, NO_STATE_VERSION);
+    }
+
+    /**
+     * @param timestamp long time of sending, for latency measurement
+     * @param stateVersion long version of the game state the client holds,
+     *                     so the server can answer with a GameStateDelta
+     */
+    public HeartbeatMessage(long timestamp, long stateVersion) {
         super(MessageType.HEARTBEAT);
         this.timestamp = timestamp;
+        this.stateVersion = stateVersion;
     }
 
     public long getTime() {
        return timestamp;
     }
+
+    public long getStateVersion() {
+        return stateVersion;
+    }
 }
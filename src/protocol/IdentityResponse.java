@@ -3,6 +3,8 @@ package protocol;
 import server.UserSession;
 
 public class IdentityResponse extends Message {
+    private static final long serialVersionUID = 2849265353018268263L;
+
     private final String token;
     private final String nick;
 
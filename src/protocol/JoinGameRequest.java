@@ -1,6 +1,8 @@
 package protocol;
 
 public class JoinGameRequest extends Message {
+    private static final long serialVersionUID = -5750228617746087011L;
+
     private final String gameID;
     private final char[] password;
 
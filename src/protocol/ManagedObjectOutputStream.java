@@ -0,0 +1,135 @@
+package protocol;
+
+import java.io.*;
+
+/**
+ * Object stream for long-lived connections, which resets itself so that
+ * neither end keeps every object ever sent alive.
+ *
+ * An ObjectOutputStream keeps a handle to each object it writes, and the
+ * reading ObjectInputStream mirrors that table, until reset() is called.
+ * This stream resets after a number of messages or bytes, and before the
+ * next message when asked to, e.g. when the client enters or leaves a game.
+ */
+public class ManagedObjectOutputStream extends ObjectOutputStream {
+
+    public static final int DEFAULT_MAX_MESSAGES = 512;
+    public static final long DEFAULT_MAX_BYTES = 1024*1024;
+
+    private final CountingOutputStream counter;
+    private final int maxMessages;
+    private final long maxBytes;
+
+    private int messagesSinceReset;
+    private long bytesAtReset;
+    private long retainedHandles;
+    private long peakRetainedHandles;
+    private long resets;
+    private boolean resetRequested;
+
+    public ManagedObjectOutputStream(OutputStream out) throws IOException {
+        this(out, DEFAULT_MAX_MESSAGES, DEFAULT_MAX_BYTES);
+    }
+
+    /**
+     * @param out OutputStream to write to
+     * @param maxMessages int messages written between resets, or 0 for no limit
+     * @param maxBytes long bytes written between resets, or 0 for no limit
+     */
+    public ManagedObjectOutputStream(OutputStream out, int maxMessages, long maxBytes) throws IOException {
+        this(new CountingOutputStream(out), maxMessages, maxBytes);
+    }
+
+    private ManagedObjectOutputStream(
+            CountingOutputStream counter,
+            int maxMessages,
+            long maxBytes
+    ) throws IOException {
+        super(counter);
+        this.counter = counter;
+        this.maxMessages = maxMessages;
+        this.maxBytes = maxBytes;
+        enableReplaceObject(true);
+    }
+
+    /**
+     * Writes and flushes a message, resetting first if the policy asks for it
+     */
+    public void writeMessage(Message msg) throws IOException {
+        if (resetRequested
+                || maxMessages > 0 && messagesSinceReset >= maxMessages
+                || maxBytes > 0 && counter.count - bytesAtReset >= maxBytes)
+            reset();
+
+        writeObject(msg);
+        flush();
+        messagesSinceReset++;
+    }
+
+    /**
+     * Resets before the next message, when earlier objects won't be sent again
+     */
+    public void requestReset() {
+        resetRequested = true;
+    }
+
+    @Override
+    public void reset() throws IOException {
+        super.reset();
+        resets++;
+        resetRequested = false;
+        messagesSinceReset = 0;
+        bytesAtReset = counter.count;
+        retainedHandles = 0;
+    }
+
+    // only called for objects that aren't in the handle table yet
+    @Override
+    protected Object replaceObject(Object obj) {
+        retainedHandles++;
+        if (retainedHandles > peakRetainedHandles)
+            peakRetainedHandles = retainedHandles;
+        return obj;
+    }
+
+    /**
+     * @return long objects held in the handle tables at both ends,
+     *         not counting class descriptors
+     */
+    public long getRetainedHandles() {
+        return retainedHandles;
+    }
+
+    public long getPeakRetainedHandles() {
+        return peakRetainedHandles;
+    }
+
+    public long getResets() {
+        return resets;
+    }
+
+    public long getBytesWritten() {
+        return counter.count;
+    }
+
+
+    private static class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
@@ -3,8 +3,11 @@ package protocol;
 import java.io.Serializable;
 
 public class Message implements Serializable {
+    private static final long serialVersionUID = -2468883489994910578L;
+
     protected MessageType msgType;
     protected String errorMessage;
+    protected int requestID;    // echoed in responses; 0 from peers that don't number requests
 
     public Message(MessageType type) {
         msgType = type;
@@ -24,6 +27,14 @@ public class Message implements Serializable {
     public String getErrorMessage() {
         return errorMessage;
     }
+
+    public int getRequestID() {
+        return requestID;
+    }
+
+    public void setRequestID(int requestID) {
+        this.requestID = requestID;
+    }
 }
 
 
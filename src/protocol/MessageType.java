@@ -1,5 +1,6 @@
 package protocol;
 
+// The binary codec sends these by ordinal, so new types must be appended
 public enum MessageType {
     ERROR,
     PASSWORD_ERROR,
@@ -7,7 +8,7 @@ public enum MessageType {
     CONNECT,
     IDENTITY_RESPONSE,
     DISCONNECT,
-    RECONNECT,      // TODO: not currently working -- is it necessary, though?
+    RECONNECT,      // takes a dropped player back to the seat held for them
     HEARTBEAT,
     UPDATE_NICK,
     GET_GAME_LIST,
@@ -23,4 +24,8 @@ public enum MessageType {
     PLAY_CARDS,     // plays cards the user has selected
     PASS_TURN,      // Passes the turn
     GIVE_CARDS,     // trade cards between presidents and bums
+    GAME_STATE_DELTA,   // changes since the state version acknowledged in a heartbeat
+    SUBSCRIBE,      // asks the server to push game state changes as they happen
+    GAME_EVENT,     // a pushed message, sent without a request
+    ADD_BOT,        // owner seats a computer player
 }
@@ -1,6 +1,8 @@
 package protocol;
 
 public class NewGameMessage extends Message {
+    private static final long serialVersionUID = 7536357683634546547L;
+
     private final String title;
     private final char[] password;
 
@@ -1,6 +1,8 @@
 package protocol;
 
 public class PassTurn extends Message {
+    private static final long serialVersionUID = -5300596294719401699L;
+
     public PassTurn() {
         super(MessageType.PASS_TURN);
     }
@@ -1,6 +1,8 @@
 package protocol;
 
 public class PasswordError extends Message {
+    private static final long serialVersionUID = -5610742025615195594L;
+
     public PasswordError() {
         super(MessageType.PASSWORD_ERROR);
     }
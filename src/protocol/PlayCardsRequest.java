@@ -2,24 +2,39 @@ package protocol;
 
 import client.Card;
 import common.CardData;
+import common.CardSet;
 
 import java.util.List;
-import java.util.stream.Collectors;
 
 public class PlayCardsRequest extends Message {
-    private List<CardData> cards;
+    private static final long serialVersionUID = 5627713632671346011L;
+
+    private List<CardData> cards;   // only set by clients from before CardSet
+    private CardSet cardSet;
 
     public PlayCardsRequest(List<Card> cards) {
         super(MessageType.PLAY_CARDS);
-        List<CardData> cardDataList = cards
-                .stream()
-                .map(card -> new CardData(card.getNumber(), card.getSuit()))
-                .collect(Collectors.toList());
+        cardSet = new CardSet();
+        for (Card card : cards)
+            cardSet.add(card.getData());
+    }
+
+    private PlayCardsRequest() {
+        super(MessageType.PLAY_CARDS);
+    }
 
-        this.cards = cardDataList;
+    /**
+     * Used when decoding
+     */
+    static PlayCardsRequest fromCardSet(CardSet cards) {
+        PlayCardsRequest request = new PlayCardsRequest();
+        request.cardSet = cards;
+        return request;
     }
 
-    public List<CardData> getCards() {
-        return cards;
+    public CardSet getCards() {
+        if (cardSet == null)
+            cardSet = CardSet.of(cards);
+        return cardSet;
     }
 }
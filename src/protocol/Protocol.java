@@ -12,4 +12,17 @@ public class Protocol {
 
     // Timeout in milliseconds
     public static final int SOCKET_TIMEOUT = 10*1000;
+
+    // Heartbeat interval in milliseconds for clients receiving pushed game events
+    public static final int KEEPALIVE_INTERVAL = 2*1000;
+
+    // Default for TCP_NODELAY. Every message is flushed whole, so waiting
+    // for more data to coalesce under Nagle's algorithm only adds latency
+    public static final boolean TCP_NO_DELAY = true;
+
+    // How long a dropped player's seat is held for them to reconnect, in milliseconds
+    public static final int SEAT_GRACE_PERIOD = 60*1000;
+
+    // Largest accepted frame payload in bytes, for length-framed connections
+    public static final int MAX_FRAME_SIZE = 1024*1024;
 }
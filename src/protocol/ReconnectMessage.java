@@ -1,6 +1,8 @@
 package protocol;
 
 public class ReconnectMessage extends Message {
+    private static final long serialVersionUID = 3171017071620555089L;
+
     private final String token;
     public ReconnectMessage(String token) {
         super(MessageType.RECONNECT);
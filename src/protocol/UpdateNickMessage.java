@@ -1,6 +1,8 @@
 package protocol;
 
 public class UpdateNickMessage extends IdentityResponse {
+    private static final long serialVersionUID = 6034104776815607508L;
+
     public UpdateNickMessage(String token, String nick) {
         super(token, nick);
         msgType = MessageType.UPDATE_NICK;
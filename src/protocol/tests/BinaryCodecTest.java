@@ -0,0 +1,140 @@
+package protocol.tests;
+
+import common.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import protocol.*;
+import server.Game;
+import server.UserSession;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BinaryCodecTest {
+
+    @AfterEach
+    public void tearDown() {
+        UserSession._reset();
+        Game._reset();
+    }
+
+    private Message roundTrip(Message msg) throws IOException {
+        byte[] payload = BinaryCodec.encode(msg);
+        assertTrue(BinaryCodec.isBinary(payload[0]));
+        return BinaryCodec.decode(payload, 0, payload.length);
+    }
+
+    @Test
+    public void everyCardSurvivesSingleByteEncoding() {
+        for (byte b = 0; b < 52; b++) {
+            CardData card = CardData.fromByte(b);
+            assertEquals(b, card.toByte());
+        }
+        assertEquals(16, CardData.fromByte(CardData.of(3, 'C').toByte()).getValue());
+    }
+
+    @Test
+    public void eventsAreDecodedByClients() throws IOException {
+        GameEventMessage event = (GameEventMessage) roundTrip(new GameEventMessage(new HeartbeatMessage(42)));
+        assertEquals(MessageType.HEARTBEAT, event.getEvent().getMessageType());
+        assertEquals(42, ((HeartbeatMessage) event.getEvent()).getTime());
+    }
+
+    @Test
+    public void eventLengthsAreCheckedBeforeAllocating() throws IOException {
+        // type, request ID, no error message, and a length far past the frame
+        byte[] payload = ByteBuffer.allocate(10)
+                .put((byte) MessageType.GAME_EVENT.ordinal())
+                .putInt(0)
+                .put((byte) 0)
+                .putInt(0x7ffffff0)
+                .array();
+        IOException e = assertThrows(IOException.class, () -> BinaryCodec.decode(payload, 0, payload.length));
+        assertTrue(e.getMessage().startsWith("Invalid game event length"), e.getMessage());
+    }
+
+    @Test
+    public void serversDecodeNoEvents() throws Exception {
+        byte[] event = BinaryCodec.encode(new GameEventMessage(new Message(MessageType.OK)));
+        assertThrows(IOException.class, () -> BinaryCodec.decodeRequest(event, 0, event.length));
+        assertThrows(IOException.class, () -> new FrameCodec().decode(event, 0, event.length));
+        assertEquals(MessageType.GAME_EVENT, new FrameCodec(true).decode(event, 0, event.length).getMessageType());
+
+        byte[] nested = BinaryCodec.encode(new GameEventMessage(new GameEventMessage(new Message(MessageType.OK))));
+        assertThrows(IOException.class, () -> BinaryCodec.decode(nested, 0, nested.length));
+    }
+
+    @Test
+    public void heartbeatKeepsTimestamp() throws IOException {
+        HeartbeatMessage response = (HeartbeatMessage) roundTrip(new HeartbeatMessage(1234567890123L));
+        assertEquals(MessageType.HEARTBEAT, response.getMessageType());
+        assertEquals(1234567890123L, response.getTime());
+    }
+
+    @Test
+    public void errorsKeepTypeAndMessage() throws IOException {
+        Message error = roundTrip(new ErrorMessage("Invalid request"));
+        assertTrue(error.isError());
+        assertEquals("Invalid request", error.getErrorMessage());
+
+        assertEquals(MessageType.PASSWORD_ERROR, roundTrip(new PasswordError()).getMessageType());
+    }
+
+    @Test
+    public void nullPasswordStaysNull() throws IOException {
+        JoinGameRequest request = (JoinGameRequest) roundTrip(new JoinGameRequest("id", null));
+        assertNull(request.getPassword());
+
+        char[] pw = {'s', 'e', 'c', 'r', 'e', 't'};
+        NewGameMessage newGame = (NewGameMessage) roundTrip(new NewGameMessage("title", pw));
+        assertArrayEquals(pw, newGame.getPassword());
+        assertEquals("title", newGame.getTitle());
+    }
+
+    @Test
+    public void gameStateIsEncodedFieldByField() throws Exception {
+        UserSession owner = new UserSession();
+        Game game = new Game(owner.getID(), "binary game", null);
+        GameState state = Game.await(game.stateFor(owner));
+
+        byte[] binary = BinaryCodec.encode(new GameStateResponse(game, owner));
+        GameState decoded = ((GameStateResponse) BinaryCodec.decode(binary, 0, binary.length)).getState();
+
+        assertEquals(state.getGameTitle(), decoded.getGameTitle());
+        assertEquals(state.getCurrentPlayer(), decoded.getCurrentPlayer());
+        assertEquals(state.isStarted(), decoded.isStarted());
+        assertEquals(state.getRole(), decoded.getRole());
+        assertEquals(state.getLastTrick(), decoded.getLastTrick());
+        assertTrue(decoded.iAmOwner());
+
+        List<PlayerData> players = decoded.getPlayers();
+        assertEquals(1, players.size());
+        assertEquals(owner.getNick(), players.get(0).getNick());
+    }
+
+    @Test
+    public void roleHistoriesOutlastAByte() throws Exception {
+        UserSession owner = new UserSession();
+        Game game = new Game(owner.getID(), "long game", null);
+        GameState before = Game.await(game.stateFor(owner));
+
+        PlayerData data = game.getPlayers().get(owner.getID()).getGameData();
+        for (int i = 0; i < 300; i++)
+            data.assignRoleFewPlayers();
+        game.registerGameStateChange().get();
+        GameState after = Game.await(game.stateFor(owner));
+
+        byte[] binary = BinaryCodec.encode(new GameStateResponse(game, owner));
+        GameState decoded = ((GameStateResponse) BinaryCodec.decode(binary, 0, binary.length)).getState();
+        assertEquals(after.getPlayers().get(0).getPreviousRoles(), decoded.getPlayers().get(0).getPreviousRoles());
+
+        binary = BinaryCodec.encode(new GameStateDeltaResponse(after.diff(before)));
+        GameState applied = before.apply(
+                ((GameStateDeltaResponse) BinaryCodec.decode(binary, 0, binary.length)).getDelta()
+        );
+        assertEquals(300, applied.getPlayers().get(0).getPreviousRoles().size());
+    }
+}
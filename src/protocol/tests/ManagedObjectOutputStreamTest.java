@@ -0,0 +1,46 @@
+package protocol.tests;
+
+import org.junit.jupiter.api.Test;
+import protocol.*;
+
+import java.io.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ManagedObjectOutputStreamTest {
+
+    @Test
+    public void handlesStayBoundedByMessagePolicy() throws IOException, ClassNotFoundException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ManagedObjectOutputStream out = new ManagedObjectOutputStream(bytes, 100, 0);
+
+        for (int i = 0; i < 10000; i++) {
+            out.writeMessage(new ErrorMessage("message " + i));
+            assertTrue(out.getRetainedHandles() <= 300, "handles grew to " + out.getRetainedHandles());
+        }
+        out.flush();
+        assertEquals(99, out.getResets());
+
+        // the reading end follows the resets
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        for (int i = 0; i < 10000; i++) {
+            Message msg = (Message) in.readObject();
+            assertEquals("message " + i, msg.getErrorMessage());
+        }
+    }
+
+    @Test
+    public void byteLimitAndRequestedResets() throws IOException {
+        ManagedObjectOutputStream out = new ManagedObjectOutputStream(new ByteArrayOutputStream(), 0, 4096);
+
+        for (int i = 0; i < 1000; i++)
+            out.writeMessage(new ErrorMessage("message " + i));
+        long resets = out.getResets();
+        assertTrue(resets > 0);
+        assertTrue(out.getBytesWritten() / 4096 >= resets);
+
+        out.requestReset();
+        out.writeMessage(new HeartbeatMessage(0));
+        assertEquals(resets + 1, out.getResets());
+    }
+}
@@ -0,0 +1,151 @@
+package server;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.*;
+
+/**
+ * Takes log records off the logging threads, onto a ring buffer that a
+ * background writer drains into the real handlers, so that a request
+ * never waits on the console or a log file.
+ *
+ * Producers claim a slot with one CAS and never block: when the writer
+ * has fallen a whole ring behind, records are dropped and counted, and
+ * the count is logged once the writer catches up.
+ */
+public class AsyncLogHandler extends Handler {
+
+    private static final long PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final Handler[] delegates;
+    private final AtomicReferenceArray<LogRecord> ring;
+    private final int mask;
+    private final AtomicLong claimed = new AtomicLong();    // next slot to write to
+    private volatile long consumed;                         // next slot to read from
+    private final AtomicLong dropped = new AtomicLong();
+    private final Thread writer;
+    private volatile boolean sleeping;
+    private volatile boolean closed;
+
+    /**
+     * @param capacity int records buffered, rounded up to a power of two
+     * @param delegates Handler[] written to, in order, by the writer thread
+     */
+    public AsyncLogHandler(int capacity, Handler... delegates) {
+        if (capacity < 2)
+            throw new IllegalArgumentException("Capacity must be at least 2");
+        int size = Integer.highestOneBit(capacity - 1) << 1;
+        this.ring = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+        this.delegates = delegates.clone();
+
+        writer = new Thread(this::drain, "AsyncLogWriter");
+        writer.setDaemon(true);
+        writer.setPriority(Thread.MIN_PRIORITY);
+        writer.start();
+    }
+
+    @Override
+    public void publish(LogRecord record) {
+        if (closed || !isLoggable(record))
+            return;
+        // inferred lazily otherwise, from the writer's own stack
+        record.setSourceClassName(null);
+
+        long slot;
+        do {
+            slot = claimed.get();
+            if (slot - consumed >= ring.length()) {
+                dropped.incrementAndGet();
+                return;
+            }
+        } while (!claimed.compareAndSet(slot, slot + 1));
+        ring.set((int) slot & mask, record);
+
+        if (sleeping)
+            LockSupport.unpark(writer);
+    }
+
+    /**
+     * Waits until the records published so far are written, and flushes
+     * the delegates
+     */
+    @Override
+    public void flush() {
+        long target = claimed.get();
+        while (consumed < target && writer.isAlive()) {
+            LockSupport.unpark(writer);
+            Thread.onSpinWait();
+        }
+        for (Handler delegate : delegates)
+            delegate.flush();
+    }
+
+    /**
+     * Writes out what is buffered and stops the writer. The delegates are
+     * left open, as they may be shared.
+     */
+    @Override
+    public void close() {
+        if (closed)
+            return;
+        flush();
+        closed = true;
+        LockSupport.unpark(writer);
+    }
+
+    /**
+     * @return long records dropped, since the writer fell behind, so far
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * @return int records waiting to be written
+     */
+    public int getBacklog() {
+        return (int) (claimed.get() - consumed);
+    }
+
+    public int getCapacity() {
+        return ring.length();
+    }
+
+    private void drain() {
+        long reported = 0;
+        while (!closed) {
+            long next = consumed;
+            LogRecord record = ring.get((int) next & mask);
+            if (record == null) {
+                long lost = dropped.get();
+                if (lost != reported) {
+                    write(new LogRecord(Level.WARNING, (lost - reported) + " log records dropped"));
+                    reported = lost;
+                }
+                sleeping = true;
+                // a record may have been published before the flag was seen
+                if (ring.get((int) next & mask) == null && !closed)
+                    LockSupport.parkNanos(this, PARK_NANOS);
+                sleeping = false;
+                continue;
+            }
+
+            ring.set((int) next & mask, null);
+            write(record);
+            consumed = next + 1;
+        }
+    }
+
+    private void write(LogRecord record) {
+        for (Handler delegate : delegates) {
+            try {
+                delegate.publish(record);
+            } catch (RuntimeException e) {
+                reportError(null, e, ErrorManager.WRITE_FAILURE);
+            }
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package server;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * Recycles direct buffers of a fixed size. Not thread safe, so each
+ * reactor keeps its own.
+ *
+ * Writing a heap buffer to a channel copies it into a temporary direct
+ * buffer first, so writing from a direct buffer saves that copy, and
+ * pooling saves allocating direct memory, which is slow to allocate and
+ * to free.
+ */
+class BufferPool {
+    private final int bufferSize;
+    private final int maxPooled;
+    private final ArrayDeque<ByteBuffer> buffers = new ArrayDeque<>();
+
+    /**
+     * @param bufferSize int capacity of each buffer
+     * @param maxPooled int buffers kept for reuse, beyond which released
+     *                  buffers are left to the garbage collector
+     */
+    BufferPool(int bufferSize, int maxPooled) {
+        this.bufferSize = bufferSize;
+        this.maxPooled = maxPooled;
+    }
+
+    ByteBuffer acquire() {
+        ByteBuffer buffer = buffers.poll();
+        return buffer != null ? buffer : ByteBuffer.allocateDirect(bufferSize);
+    }
+
+    void release(ByteBuffer buffer) {
+        buffer.clear();
+        if (buffers.size() < maxPooled)
+            buffers.push(buffer);
+    }
+}
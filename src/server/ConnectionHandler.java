@@ -0,0 +1,318 @@
+package server;
+
+import common.*;
+import protocol.*;
+import server.exceptions.*;
+import server.metrics.ServerMetrics;
+
+import java.io.*;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static protocol.MessageType.*;
+import static server.Server.SERVER_LOGGER;
+
+/**
+ * Handles the requests of a single client connection, one message at a time.
+ *
+ * Holds everything that used to live in the blocking ClientHandler loop,
+ * but leaves reading from the connection to the caller, so that both the
+ * thread-per-connection server and the reactor server can drive it.
+ * While the client is in a game, requests are routed to a GameRunner.
+ */
+public class ConnectionHandler {
+    private final SessionLog log;
+    private final MessageSink out;
+    private final String remoteAddress;
+    private UserSession currentSession = null;
+    private GameRunner gameRunner = null;
+    private volatile int currentRequestID;
+    private final AtomicLong bytesReceived = new AtomicLong();
+    private final AtomicLong bytesSent = new AtomicLong();
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    public ConnectionHandler(MessageSink out, String remoteAddress) {
+        // responses carry the ID of the request being handled, pushed events don't
+        this.out = msg -> {
+            if (msg.getMessageType() != GAME_EVENT)
+                msg.setRequestID(currentRequestID);
+            out.send(msg);
+        };
+        this.remoteAddress = remoteAddress;
+        log = new SessionLog(SERVER_LOGGER, remoteAddress);
+        ServerMetrics.get().connectionOpened();
+        log.info("New connection");
+    }
+
+    /**
+     * Handles one request from the client.
+     * @param request Message received from the client
+     * @return false if the connection should be closed
+     * @throws IOException if the response could not be sent
+     */
+    public boolean handle(Message request) throws IOException {
+        currentRequestID = request.getRequestID();
+        long start = System.nanoTime();
+        try {
+            if (gameRunner != null) {
+                if (!gameRunner.handle(request))
+                    gameRunner = null;
+                return true;
+            }
+
+            return handleLobbyRequest(request);
+        } catch (GameDisconnect ignored) {
+            // a held seat keeps the session, for the player to reconnect to
+            if (currentSession.getGame() == null)
+                currentSession.endSession();
+            return false;
+        } finally {
+            ServerMetrics.get().request(request.getMessageType(), System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Counts bytes read from the client, for the server metrics
+     */
+    public void bytesReceived(long bytes) {
+        bytesReceived.addAndGet(bytes);
+        ServerMetrics.get().bytesReceived(bytes);
+    }
+
+    /**
+     * Counts bytes written to the client, for the server metrics
+     */
+    public void bytesSent(long bytes) {
+        bytesSent.addAndGet(bytes);
+        ServerMetrics.get().bytesSent(bytes);
+    }
+
+    /**
+     * Called once the connection is closed, however it ended
+     */
+    public void closed() {
+        if (closed.compareAndSet(false, true))
+            ServerMetrics.get().connectionClosed(bytesReceived.get(), bytesSent.get());
+    }
+
+    /**
+     * Called when the connection dies without a DISCONNECT request,
+     * e.g. on EOF or socket timeout.
+     */
+    public void connectionLost() {
+        if (gameRunner != null) {
+            gameRunner.leaveOrHoldSeat();
+            gameRunner = null;
+            if (currentSession.getGame() == null)
+                currentSession.endSession();
+        }
+    }
+
+    public boolean isInGame() {
+        return gameRunner != null;
+    }
+
+    public SessionLog getLog() {
+        return log;
+    }
+
+    private boolean handleLobbyRequest(Message request) throws IOException {
+        if (currentSession == null
+                && request.getMessageType() != CONNECT
+                && request.getMessageType() != RECONNECT
+                && request.getMessageType() != DISCONNECT
+        ) {
+            sendInvalidRequest();
+            return true;
+        }
+
+        if (currentSession != null)
+            log.fine(() -> "Handling " + request.getMessageType());
+        switch (request.getMessageType()) {
+            case CONNECT -> createNewSession();
+            case RECONNECT -> reconnect((ReconnectMessage) request);
+            case HEARTBEAT -> sendHeartbeatResponse();
+            case UPDATE_NICK -> updateNick((UpdateNickMessage) request);
+            case GET_GAME_LIST -> sendGameList();
+            case NEW_GAME -> createNewGame((NewGameMessage) request);
+            case JOIN_GAME -> joinExistingGame((JoinGameRequest) request);
+            case DISCONNECT -> {
+                if (currentSession != null) {
+                    currentSession.endSession();
+                }
+                out.send(new Message(MessageType.OK));
+                return false;
+            }
+            default -> sendError("Non-implemented request type");
+        }
+        return true;
+    }
+
+    private void sendInvalidRequest() throws IOException {
+        sendError("Invalid request");
+    }
+
+    private void sendError(String msg) throws IOException {
+        out.send(
+                new ErrorMessage(msg)
+        );
+    }
+
+    private void sendHeartbeatResponse() throws IOException {
+        long receiveTime = Instant.now().toEpochMilli();
+        out.send(
+                new HeartbeatMessage(receiveTime)
+        );
+    }
+
+    /**
+     * Takes a dropped player back to the seat held for them, answering
+     * with the game state as joining a game does
+     */
+    private void reconnect(ReconnectMessage request) throws IOException {
+        if (currentSession != null) {
+            out.send(new ErrorMessage("Already connected"));
+            return;
+        }
+
+        log.info("Handling reconnect");
+        UserSession session;
+        try {
+            session = UserSession.retrieveSessionFromToken(request.getToken());
+        } catch (UserSessionError | IllegalArgumentException e) {
+            sendError("No session to reconnect to");
+            return;
+        }
+
+        Game game = session.getGame();
+        if (game == null || !Game.await(game.reclaimSeat(session.getID()))) {
+            sendError("Seat is no longer held");
+            return;
+        }
+
+        currentSession = session;
+        log.setSession(session);
+        log.info(() -> "Reconnected to game: " + game.getTitle());
+        enterGameMode();
+    }
+
+    private void createNewSession() throws IOException {
+        if (currentSession != null) {
+            out.send(new ErrorMessage("Already connected"));
+            return;
+        }
+
+        currentSession = new UserSession();
+        log.setSession(currentSession);
+        out.send(
+                new IdentityResponse(
+                    currentSession.getToken(),
+                    currentSession.getNick()
+                )
+        );
+    }
+
+    private void updateNick(UpdateNickMessage request) throws IOException {
+        log.info("Received request to change nick");
+        try {
+            String tmp = currentSession.getNick();
+            if(request.getNick().length() < 3) {
+                out.send(
+                        new ErrorMessage("Nick change unsuccessful, new nick is too short!")
+                );
+                return;
+            }
+            if(ProfanityFilter.getDefault().checkForBadWords(request.getNick())){
+                out.send(
+                        new ErrorMessage("Nick change unsuccessful due to a bad word!")
+                );
+                return;
+            }
+
+            currentSession.setNick(request.getNick());
+            out.send(
+                    new IdentityResponse(
+                            request.getToken(),
+                            currentSession.getNick()
+                    )
+            );
+            log.info(() -> "Successfully changed nick from " + tmp);
+        }
+        catch (UserSessionError e) {
+            out.send(
+                    new ErrorMessage(e.toString())
+            );
+        }
+    }
+
+    private void sendGameList() throws IOException {
+        List<GameListing> list;
+
+        try {
+            list = Game.getGameList();
+        } catch (GameException e) {
+            out.send(new ErrorMessage(e.toString()));
+            return;
+        }
+
+        out.send(
+                new GameListResponse(list)
+        );
+    }
+
+    private void createNewGame(NewGameMessage request) throws IOException {
+        log.info("Creating new game");
+        if(request.getTitle().length() < 3) {
+            out.send(
+                    new ErrorMessage("Could not create new game, game title is too short! Minimum 3 characters needed.")
+            );
+            return;
+        }
+        if(ProfanityFilter.getDefault().checkForBadWords(request.getTitle())){
+            out.send(
+                    new ErrorMessage("Could not create new game, game title includes a bad word!")
+            );
+            return;
+        }
+        Game game;
+        try {
+            game = new Game(
+                    currentSession.getID(),
+                    request.getTitle(),
+                    request.getPassword()
+            );
+            log.info(() -> "Created game: " + game.getTitle() + " " + game.getID());
+        } catch (UserSessionError | GameException e) {
+            out.send(new ErrorMessage(e.toString()));
+            return;
+        }
+        enterGameMode();
+    }
+
+    private void joinExistingGame(JoinGameRequest request) throws IOException {
+        try {
+            Game game = Game.getGameByID(UUID.fromString(request.getGameID()));
+            Game.await(game.joinGame(currentSession, request.getPassword()), GameException.class, WrongPassword.class);
+
+        } catch (GameException e) {
+            out.send(new ErrorMessage(e.getMessage()));
+            return;
+        } catch (WrongPassword ignored) {
+            out.send(new PasswordError());
+            return;
+        }
+
+        enterGameMode();
+    }
+
+    /**
+     * Enters game mode, thus routing all subsequent client messages to
+     * a GameRunner until the client leaves the game
+     */
+    private void enterGameMode() throws IOException {
+        gameRunner = new GameRunner(currentSession, out, log);
+        gameRunner.enter();
+    }
+}
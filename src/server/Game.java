@@ -1,13 +1,29 @@
 package server;
 
 import common.*;
+import common.rules.InformationSet;
+import common.rules.Round;
+import common.rules.Rules;
 import server.exceptions.*;
+import server.metrics.ServerMetrics;
 
+import java.io.*;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiFunction;
 
 import static server.Server.SERVER_LOGGER;
 
 
+/**
+ * A game table, run as an actor: every change is a command queued on the
+ * game's mailbox, and comes back as a future.
+ *
+ * Getters read the game without synchronization, so they may only be
+ * called from the game's own commands, e.g. through stateFor().
+ */
 public class Game {
 
     /**
@@ -15,76 +31,186 @@ public class Game {
      ***********************/
 
 
-    private static Map<UUID, Game> games = new LinkedHashMap<>();
+    // work stealing, and FIFO for the queued mailboxes, in daemon threads
+    private static final ForkJoinPool TABLES = new ForkJoinPool(
+            Runtime.getRuntime().availableProcessors(),
+            ForkJoinPool.defaultForkJoinWorkerThreadFactory,
+            null,
+            true
+    );
 
-    public static List<GameListing> getGameList() throws UserSessionError, GameException {
-        synchronized (Game.class) {
-            if (games.size() == 0)
-                throw new GameException("currently no games");
+    // seat holds and turn timeouts, which only ever queue a command on their game
+    private static final ScheduledThreadPoolExecutor TIMERS = new ScheduledThreadPoolExecutor(1, r -> {
+        Thread thread = new Thread(r, "GameTimer");
+        thread.setDaemon(true);
+        return thread;
+    });
 
-            List<GameListing> list = new ArrayList<>();
+    static {
+        TIMERS.setRemoveOnCancelPolicy(true);
+    }
 
-            try {
-                for (UUID id : games.keySet()) {
-                    Game game = games.get(id);
-                    list.add(
-                            new GameListing(
-                                    id.toString(),
-                                    game.title,
-                                    game.getOwnerNick(),
-                                    game.players.size(),
-                                    game.password != null,
-                                    game.started
-                            )
-                    );
-                }
-            } catch (Exception e) {
-                SERVER_LOGGER.info("error inside getGameList: " + e.getMessage());
-            }
+    /**
+     * How long the game waits on a player's move before the autopilot
+     * makes it for them
+     */
+    public static final long TURN_TIMEOUT_MILLIS = 90_000;
 
-            return list;
-        }
+    private static final Map<UUID, Game> games = new ConcurrentHashMap<>();
+
+    private static volatile GameJournal journal;    // null when games aren't journaled
+
+    // Lobby listing in order of creation. Never modified, but replaced whole
+    // by each game whose listing changes, so readers need no locking.
+    private static final AtomicReference<List<GameListing>> listing =
+            new AtomicReference<>(Collections.emptyList());
+
+    /**
+     * @return List of GameListing, a shared snapshot that must not be modified
+     * @throws GameException if there are no games
+     */
+    public static List<GameListing> getGameList() throws GameException {
+        List<GameListing> list = listing.get();
+        if (list.isEmpty())
+            throw new GameException("currently no games");
+        return list;
     }
     
 
+    public static int getGameCount() {
+        return games.size();
+    }
+
+    public static int getStartedGameCount() {
+        int started = 0;
+        for (Game game : games.values())
+            if (game.started)
+                started++;
+        return started;
+    }
+
     public static Game getGameByID(UUID id) throws GameException {
-        synchronized (Game.class) {
-            if (!games.containsKey(id))
-                throw new GameException("No such game exists");
-            return games.get(id);
+        Game game = games.get(id);
+        if (game == null)
+            throw new GameException("No such game exists");
+        return game;
+    }
+
+    /**
+     * Updates the owner shown in the listings of the games a user owns
+     * @param owner UUID of the user
+     * @param nick String new nick of the user
+     */
+    static void ownerRenamed(UUID owner, String nick) {
+        for (Game game : games.values()) {
+            if (!game.owner.equals(owner))
+                continue;
+            await(game.mailbox.submit(() -> {
+                game.ownerNick = nick;
+                game.publishListing();
+                return null;
+            }));
+        }
+    }
+
+    /**
+     * Waits for the result of a command that throws no checked exceptions
+     */
+    public static <T> T await(CompletableFuture<T> result) {
+        return await(result, RuntimeException.class, RuntimeException.class);
+    }
+
+    /**
+     * Waits for the result of a command, rethrowing what it threw
+     */
+    public static <T, E extends Exception> T await(
+            CompletableFuture<T> result,
+            Class<E> thrown
+    ) throws E {
+        return await(result, thrown, thrown);
+    }
+
+    public static <T, E1 extends Exception, E2 extends Exception> T await(
+            CompletableFuture<T> result,
+            Class<E1> thrown,
+            Class<E2> alsoThrown
+    ) throws E1, E2 {
+        try {
+            return result.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (thrown.isInstance(cause))
+                throw thrown.cast(cause);
+            if (alsoThrown.isInstance(cause))
+                throw alsoThrown.cast(cause);
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw new IllegalStateException("Unexpected game exception", cause);
         }
     }
 
+    /**
+     * @param gameJournal GameJournal every game command is appended to
+     *                    from now on, or null to stop journaling
+     */
+    static void setJournal(GameJournal gameJournal) {
+        journal = gameJournal;
+    }
+
+    /**
+     * @return List of every game, as of the call
+     */
+    static List<Game> all() {
+        return new ArrayList<>(games.values());
+    }
+
     // internal reset of static variables for testing
     public static void _reset() {
-        synchronized (Game.class) {
-            games = new LinkedHashMap<>();
-        }
+        games.clear();
+        listing.set(Collections.emptyList());
     }
 
 
     /**
      * Data members
      ***********************/
+    private final Mailbox mailbox = new Mailbox(TABLES);
     private final UUID ID;
     private final UUID owner;
     private final String title;
-    private final char[] password;
+    private final PasswordHash password;   // null if the game is public
     private final Map<UUID, PlayerObject> players;
     private int currentPlayer;
-    private boolean started;
-    private Map<UUID, List<CardData>> hands;
+    private volatile boolean started;
+    private Map<UUID, CardSet> hands;
     private List<CardData> cardsOnTable;
     private int noOfCardsFaceDown;  // number of cards removed with previous tricks
     private int noOfCardsInTrick;   // number of cards being played
-    private boolean cancelled;
+    private int topValue;           // value of the top card on the table, 0 if none
+    private int topRun;             // cards of topValue on top of each other
+    private volatile boolean cancelled;
     private List<UUID> turnSequence;
     private int goneOut;        // increments for each player who goes out, resets each round
     private int passCount;
     private int roundNo;
     private int playersInTradingPhase;
-    private Map<UUID, List<CardData>> receiveFromTrade;
+    private Map<UUID, CardSet> receiveFromTrade;
     private Trick trickTriggered;
+    private final AtomicLong stateVersion = new AtomicLong();  // bumped by every change propagated to the players
+    private String ownerNick;
+    private GameListing listed;     // this game's entry in the listing, or null if not listed
+    private boolean delisted;
+    private final Map<UUID, ScheduledFuture<?>> heldSeats = new HashMap<>();   // dropped players -> end of their grace window
+    private final Set<UUID> abandonedSeats = new HashSet<>();  // grace window over, leaving when the round ends
+    private boolean autopilotQueued;
+    private ScheduledFuture<?> turnTimer;
+    private final Set<UUID> botSeats = new HashSet<>();
+    private final long seed;        // of every shuffle, so that the journal can replay them
+    private long shuffles;
+    private long journalSeq;        // commands journaled, the last one replayed or snapshotted included
+    private boolean replaying;      // being rebuilt from the journal, so nothing is scheduled or published
 
     //TODO: this todo is just a bookmark
     private final boolean TEST_MODE = false;
@@ -109,12 +235,33 @@ public class Game {
             String title,
             char[] password
     ) throws UserSessionError, GameException {
-        ID = UUID.randomUUID();
+        this(UUID.randomUUID(), owner, title, PasswordHash.of(password), ThreadLocalRandom.current().nextLong());
+
+        UserSession ownerSession = UserSession.retrieveSessionFromID(owner);
+        ownerNick = ownerSession.getNick();
+        long seq = ++journalSeq;
+        // registered first, so that a snapshot rolling the journal past
+        // the creation takes the game along
+        games.put(ID, this);
+        GameJournal j = journal;
+        if (j != null)
+            j.created(ID, seq, owner, seed, title, ownerNick, this.password);
+
+        try {
+            await(joinGame(ownerSession, password), GameException.class, WrongPassword.class);
+        } catch (WrongPassword wrongPassword) {
+            SERVER_LOGGER.warning("Owner got wrong password when joining own game");
+        }
+    }
+
+    private Game(UUID id, UUID owner, String title, PasswordHash password, long seed) {
+        ID = id;
         this.owner = owner;
         this.title = title;
         this.password = password;
+        this.seed = seed;
         cancelled = false;
-        players = new HashMap<>();
+        players = new ConcurrentHashMap<>();    // looked up by the players' runners
         hands = new HashMap<>();
         cardsOnTable = new ArrayList<>();
         noOfCardsFaceDown = 0;
@@ -127,23 +274,10 @@ public class Game {
         playersInTradingPhase = 0;
         receiveFromTrade = new HashMap<>();
         trickTriggered = Trick.NONE;
-
-        synchronized (Game.class) {
-            games.put(ID, this);
-        }
-
-        UserSession ownerSession = UserSession.retrieveSessionFromID(owner);
-        try {
-            joinGame(ownerSession, password);
-        } catch (WrongPassword wrongPassword) {
-            SERVER_LOGGER.warning("Owner got wrong password when joining own game");
-        }
     }
 
     public boolean isTradingPhase() {
-        synchronized (this) {
-            return playersInTradingPhase > 0;
-        }
+        return playersInTradingPhase > 0;
     }
 
     private void decrementTraders() throws GameException {
@@ -154,60 +288,53 @@ public class Game {
         // making sure players receive the given cards
         if (playersInTradingPhase == 0) {
             SERVER_LOGGER.info("Trading phase is over");
-            for (UUID pID : receiveFromTrade.keySet()) {
-                List<CardData> hand = hands.get(pID);
-                hand.addAll(receiveFromTrade.get(pID));
-
-            }
+            for (UUID pID : receiveFromTrade.keySet())
+                hands.get(pID).addAll(receiveFromTrade.get(pID));
 
             findStartingPlayer(UUID.randomUUID()); // if three of diamonds is chosen, theres a bug
         }
     }
 
-    public void giveCards(UUID player, List<CardData> givenCards) throws GameException {
-        synchronized (this) {
-            if (!isTradingPhase())
-                throw new GameException("Not in trading phase");
+    public CompletableFuture<Void> giveCards(UUID player, CardSet givenCards) {
+        return mailbox.submit(() -> {
+            _giveCards(player, givenCards);
+            return null;
+        });
+    }
 
-            PlayerData playerData = players.get(player).getGameData();
-            if (!playerData.hasToTrade())
-                throw new GameException("Player no longer needs to trade");
+    private void _giveCards(UUID player, CardSet givenCards) throws GameException {
+        if (!isTradingPhase())
+            throw new GameException("Not in trading phase");
 
+        PlayerData playerData = players.get(player).getGameData();
+        if (!playerData.hasToTrade())
+            throw new GameException("Player no longer needs to trade");
 
-            Role recipientRole;
-            switch (playerData.getRole()) {
-                case BUM -> recipientRole = Role.PRESIDENT;
-                case VICE_BUM -> recipientRole = Role.VICE_PRESIDENT;
-                case VICE_PRESIDENT -> recipientRole = Role.VICE_BUM;
-                case PRESIDENT -> recipientRole = Role.BUM;
-                default -> throw new GameException("Invalid role");
-            }
 
-            // removing cards from own hand
-            List<CardData> hand = hands.get(player);
-            for (CardData card : givenCards) {
-                for (CardData c : hand) {
-                    if (card.getSuit() == c.getSuit() && card.getNumber() == c.getNumber()) {
-                        hand.remove(c);
-                        break;
-                    }
-                }
-            }
+        Role recipientRole = Rules.tradePartner(playerData.getRole());
+        if (recipientRole == Role.NEUTRAL)
+            throw new GameException("Invalid role");
 
-            // put given cards into receive map
-            for (UUID pID : players.keySet()) {
-                if (players.get(pID).getGameData().getRole() == recipientRole) {
-                    SERVER_LOGGER.fine("Adding given cards to receive map");
-                    receiveFromTrade.put(pID, givenCards);
-                    break;
-                }
+        // removing cards from own hand
+        CardSet hand = hands.get(player);
+        if (hand == null || !hand.containsAll(givenCards))
+            throw new GameException("You don't have those cards");
+        journal(GameJournal.GIVE, player, givenCards.getBits());
+        hand.removeAll(givenCards);
+
+        // put given cards into receive map
+        for (UUID pID : players.keySet()) {
+            if (players.get(pID).getGameData().getRole() == recipientRole) {
+                SERVER_LOGGER.fine("Adding given cards to receive map");
+                receiveFromTrade.put(pID, givenCards.copy());
+                break;
             }
+        }
 
 
-            playerData.doneTrading();
-            decrementTraders();
-            propagateChange();
-        }
+        playerData.doneTrading();
+        decrementTraders();
+        propagateChange();
     }
 
     public UUID getID() {
@@ -215,9 +342,7 @@ public class Game {
     }
 
     public Map<UUID, PlayerObject> getPlayers() {
-        synchronized (this) {
-            return players;
-        }
+        return players;
     }
 
     public String getTitle() {
@@ -225,25 +350,19 @@ public class Game {
     }
 
     public boolean hasStarted() {
-        synchronized (this) {
-            return started;
-        }
+        return started;
     }
 
     public int getNoOfCardsFaceDown() {
-        synchronized (this) {
-            return noOfCardsFaceDown;
-        }
+        return noOfCardsFaceDown;
     }
 
     public int getNoOfCardsInTrick() {
-        synchronized (this) {
-            return noOfCardsInTrick;
-        }
+        return noOfCardsInTrick;
     }
 
     /**
-     * Internal non-synchronized method for getting top 4 cards
+     * Internal method for getting top 4 cards
      * @return
      */
     private List<CardData> _getTopCards() {
@@ -263,12 +382,9 @@ public class Game {
     }
 
     public List<CardData> getTopCards() {
-        List<CardData> tmp;
-        synchronized (this) {
-            tmp = _getTopCards();
-        }
+        List<CardData> tmp = _getTopCards();
 
-        SERVER_LOGGER.fine("Size of top cards: " + tmp.size());
+        SERVER_LOGGER.fine(() -> "Size of top cards: " + tmp.size());
 
         if (tmp.size() == 4)
             tmp.remove(0);
@@ -276,29 +392,60 @@ public class Game {
     }
 
     public List<CardData> getCardsOnTable() {
-        synchronized (this) {
-            return cardsOnTable;
-        }
+        return cardsOnTable;
     }
 
     public String getOwnerNick() throws UserSessionError {
         return UserSession.retrieveSessionFromID(owner).getNick();
     }
 
-    public void joinGame(
+    public CompletableFuture<Void> joinGame(
             UserSession user,
             char[] password
-    ) throws GameException, WrongPassword {
-        if (started)
-            throw new GameInProgress();
+    ) {
+        // hashed here, rather than holding up the game's mailbox
+        boolean passwordMatches = this.password == null
+                ? password == null
+                : this.password.matches(password);
+        return mailbox.submit(() -> {
+            if (started)
+                throw new GameInProgress();
 
-        if (players.containsKey(user.getID()))
-            throw new PlayerAlreadyInGame();
+            if (players.containsKey(user.getID()))
+                throw new PlayerAlreadyInGame();
 
-        if (players.size() == 8)
-            throw new GameException("Game is full");
+            if (players.size() == 8)
+                throw new GameException("Game is full");
 
-        if (!Arrays.equals(password, this.password)) throw new WrongPassword();
+            if (!passwordMatches) throw new WrongPassword();
+
+            seat(user, false);
+            return null;
+        });
+    }
+
+    /**
+     * Seats a bot, which needs no password as the owner asked for it
+     * @param bot UserSession of the bot
+     */
+    public CompletableFuture<Void> joinAsBot(UserSession bot) {
+        return mailbox.submit(() -> {
+            if (started)
+                throw new GameInProgress();
+
+            if (players.size() == 8)
+                throw new GameException("Game is full");
+
+            seat(bot, true);
+            return null;
+        });
+    }
+
+    private void seat(UserSession user, boolean bot) throws GameException {
+        long seq = ++journalSeq;
+        GameJournal j = journal;
+        if (j != null && !replaying)
+            j.joined(ID, seq, user.getID(), user.getNick(), bot);
 
         PlayerData data = new PlayerData(
                 user.getNick(),
@@ -309,108 +456,129 @@ public class Game {
                 new ArrayList<>()
         );
 
-        synchronized (this) {
-            players.put(user.getID(), new PlayerObject(user, data));
-            user.joinGame(ID);
-            shufflePlayerOrder();
-            propagateChange();
-        }
+        players.put(user.getID(), new PlayerObject(user, data, stateVersion));
+        if (bot)
+            botSeats.add(user.getID());
+        user.joinGame(ID);
+        shufflePlayerOrder();
+        propagateChange();
     }
 
     public int getCurrentPlayer() {
-        synchronized (this) {
-            if (started)
-                return currentPlayer;
-            else
-                return -1;
-        }
+        if (started)
+            return currentPlayer;
+        else
+            return -1;
     }
 
-    public List<CardData> getPlayerHand(UUID playerID) {
-        synchronized (this) {
-            return hands.get(playerID);
-        }
+    public CardSet getPlayerHand(UUID playerID) {
+        return hands.get(playerID);
     }
 
     public List<UUID> getTurnSequence() {
-        synchronized (this) {
-            return turnSequence;
-        }
+        return turnSequence;
     }
 
-    public void cancelGame() {
-        synchronized (this) {
-            cancelled = true;
-            try {
-                UserSession.retrieveSessionFromID(owner).leaveCurrentGame();
-            } catch (UserSessionError userSessionError) {
-                SERVER_LOGGER.warning(
-                        "Unable to get game owner's session for game cancellation"
-                );
-            }
-            removeFromList();
-            propagateChange();
+    public CompletableFuture<Void> cancelGame() {
+        return mailbox.submit(() -> {
+            journal(GameJournal.CANCEL, null, 0);
+            _cancel();
+            return null;
+        });
+    }
+
+    private void _cancel() {
+        cancelled = true;
+        try {
+            UserSession.retrieveSessionFromID(owner).leftGame(this);
+        } catch (UserSessionError userSessionError) {
+            SERVER_LOGGER.warning(
+                    "Unable to get game owner's session for game cancellation"
+            );
         }
+        _leaveGame(owner);
+        removeFromList();
+        propagateChange();
     }
 
     public boolean isCancelled() {
-        synchronized (this) {
-            return cancelled;
-        }
+        return cancelled;
     }
 
-    public void leaveGame(UUID player) {
-        boolean shouldStop = false;
-        synchronized (this) {
-            players.remove(player);
-            turnSequence.remove(player);
-            if (players.size() == 0) {
-               removeFromList();
-            }
-            if (started)
-                shouldStop = true;
+    public CompletableFuture<Void> leaveGame(UUID player) {
+        return mailbox.submit(() -> {
+            if (players.containsKey(player))
+                journal(GameJournal.LEAVE, player, 0);
+            _leaveGame(player);
+            return null;
+        });
+    }
 
-            if (!shouldStop)
-                propagateChange();
+    private void _leaveGame(UUID player) {
+        if (players.remove(player) == null)
+            return;
+        ScheduledFuture<?> grace = heldSeats.remove(player);
+        if (grace != null)
+            grace.cancel(false);
+        abandonedSeats.remove(player);
+        botSeats.remove(player);
+        turnSequence.remove(player);
+        if (players.size() == 0) {
+           removeFromList();
         }
 
-        if (shouldStop)
-            stop();
-
+        if (started)
+            _stop();
+        else
+            propagateChange();
     }
 
-    public void start() throws GameException {
-        synchronized (this) {
-            if (players.size() < 3)
-                throw new GameException("Not enough players");
+    public CompletableFuture<Void> start() {
+        return mailbox.submit(() -> {
+            _start();
+            return null;
+        });
+    }
 
-            for (PlayerObject po : players.values()) {
-                po.getGameData().reset();
-            }
+    private void _start() throws GameException {
+        if (players.size() < 3)
+            throw new GameException("Not enough players");
+        journal(GameJournal.START, null, 0);
 
-            started = true;
-            shufflePlayerOrder();
-            findStartingPlayer(dealCards());
-            propagateChange();
-            SERVER_LOGGER.info("Game started, and state propagated");
+        for (PlayerObject po : players.values()) {
+            po.getGameData().reset();
         }
+
+        started = true;
+        shufflePlayerOrder();
+        findStartingPlayer(dealCards());
+        propagateChange();
+        SERVER_LOGGER.info("Game started, and state propagated");
     }
 
-    public void stop() {
-        synchronized (this) {
-            started = false;
-            currentPlayer = -1;
-            passCount = 0;
-            goneOut = 0;
-            cardsOnTable = new ArrayList<>();
-            noOfCardsFaceDown = 0;
-            playersInTradingPhase = 0;
-            propagateChange();
-        }
+    public CompletableFuture<Void> stop() {
+        return mailbox.submit(() -> {
+            journal(GameJournal.STOP, null, 0);
+            _stop();
+            return null;
+        });
+    }
+
+    private void _stop() {
+        started = false;
+        currentPlayer = -1;
+        passCount = 0;
+        goneOut = 0;
+        cardsOnTable = new ArrayList<>();
+        noOfCardsFaceDown = 0;
+        topValue = 0;
+        topRun = 0;
+        playersInTradingPhase = 0;
+        propagateChange();
     }
 
     private void assignRoles() {
-        SERVER_LOGGER.info("Assigning roles with goneOut: " + goneOut);
+        SERVER_LOGGER.info(() -> "Assigning roles with goneOut: " + goneOut);
         if (players.size() == 3) {
             for (PlayerObject po : players.values()) {
                 if(po.getGameData().assignRoleFewPlayers())
@@ -422,133 +590,261 @@ public class Game {
                     playersInTradingPhase++;
             }
         }
-        SERVER_LOGGER.info("Roles assigned, players in trading phase: " + playersInTradingPhase);
+        SERVER_LOGGER.info(() -> "Roles assigned, players in trading phase: " + playersInTradingPhase);
     }
 
-    public void playCards(UUID player, List<CardData> cards) throws GameException {
-        SERVER_LOGGER.info("Entering playCards...");
-        try {
-            synchronized (this) {
-                if (cards.isEmpty())
-                    throw new GameException("Cannot play 0 cards!");
+    public CompletableFuture<Void> playCards(UUID player, CardSet cards) {
+        return mailbox.submit(() -> {
+            try {
+                _playCards(player, cards);
+            } catch (RoundOver roundOver) {
+                SERVER_LOGGER.info("Starting new round...");
+                newRound();
+            }
+            return null;
+        });
+    }
 
-                if (cards.get(0).getValue() != 16 && noOfCardsInTrick > 0 && noOfCardsInTrick != cards.size()) {
-                    throw new GameException("Wrong number of cards");
-                }
+    private void _playCards(UUID player, CardSet played) throws GameException, RoundOver {
+        SERVER_LOGGER.fine("Entering playCards...");
+        if (!isTurnOf(player))
+            throw new GameException("Not your turn");
+        CardSet hand = hands.get(player);
+        String illegal = Rules.checkPlay(
+                hand == null ? 0 : hand.getBits(),
+                played.getBits(),
+                topValue,
+                noOfCardsInTrick
+        );
+        if (illegal != null)
+            throw new GameException(illegal);
+        journal(GameJournal.PLAY, player, played.getBits());
 
-                boolean allSame = true;
-                for (CardData card : cards)
-                    if (card.getValue() != cards.get(0).getValue()) {   // Checks if all the cards to play are the same
-                        allSame = false;
-                        break;
-                    }
-                if(!allSame)
-                    throw new GameException("All cards must have the same value");
+        int value = Rules.valueOf(played.getBits());
+        int count = played.size();
+        cardsOnTable.addAll(played.toList());
 
-                List<CardData> tmp = _getTopCards();
+        SERVER_LOGGER.fine(() -> "Cards in hand before removal: " + hand.size());
 
-                if(!tmp.isEmpty() && tmp.get(tmp.size() - 1).getValue() > cards.get(0).getValue())
-                    throw new GameException("Cards must be higher or equal to those on table");
+        hand.removeAll(played);
 
-                cardsOnTable.addAll(cards);
+        // setting new hand count
+        PlayerData pd = players.get(player).getGameData();
+        pd.setNumberOfCards(hand.size());
 
-                SERVER_LOGGER.fine("Cards in hand before removal: " + hands.get(player).size());
 
-                List<CardData> hand = hands.get(player);
-                for (CardData card : cards) {
-                    for (CardData c : hand) {
-                        if (card.getSuit() == c.getSuit() && card.getNumber() == c.getNumber()) {
-                            hand.remove(c);
-                            break;
-                        }
-                    }
-                }
+        // if hand is empty, go out of round
+        if (hand.isEmpty()) {
+            goneOut++;
+            SERVER_LOGGER.info(() -> "Set goneout to: " + goneOut);
+            pd.setOutCount(goneOut);
+        }
+
+        // check if there is a new trick from playing, i.e. 3 of clubs or 4 of the same
+        trickTriggered = Trick.NONE;
+        Trick trick = Rules.trickAfter(value, count, topValue, topRun);
+        if (trick != Trick.NONE) {
+            newTrick(trick);
+            if (hand.isEmpty()) {
+                nextPlayer();   // player has gone out and should not get the next turn
+                propagateChange();
+            }
+            return;
+        }
 
-                // setting new hand count
-                PlayerData pd = players.get(player).getGameData();
-                pd.setNumberOfCards(hands.get(player).size());
+        topRun = Rules.runAfter(value, count, topValue, topRun);
+        topValue = value;
+        if (noOfCardsInTrick == 0)
+            noOfCardsInTrick = count;
+        nextPlayer();
+        propagateChange();
+    }
 
+    public CompletableFuture<Void> pass(UUID player) {
+        return mailbox.submit(() -> {
+            _pass(player);
+            return null;
+        });
+    }
 
-                // if hand is empty, go out of round
-                if (hands.get(player).isEmpty()) {
-                    goneOut++;
-                    SERVER_LOGGER.info("Set goneout to: " + goneOut);
-                    pd.setOutCount(goneOut);
-                }
+    private void _pass(UUID player) throws GameException, RoundOver {
+        if (!isTurnOf(player))
+            throw new GameException("Not your turn");
+        journal(GameJournal.PASS, player, 0);
+        players.get(player).getGameData().setPassed(true);
+        passCount++;
+        nextPlayer();
+        propagateChange();
+    }
 
-                // check if there is a new trick from playing
-                List<CardData> topCards = _getTopCards();
-
-                trickTriggered = Trick.NONE;
-                if (cards.get(0).getValue() == 16) {
-                    newTrick(Trick.THREE_CLUBS);     // 3 of clubs
-                    if (hands.get(player).isEmpty())
-                        nextPlayer();   // player has gone out and should not get the next turn
-                    return;
-                } else if (topCards.size() == 4
-                        && topCards.get(1).getValue() == topCards.get(0).getValue()
-                        && topCards.get(2).getValue() == topCards.get(0).getValue()
-                        && topCards.get(3).getValue() == topCards.get(0).getValue()
-                ) {
-                    // all 4 top cards the same, start new trick
-                    newTrick(Trick.FOUR_SAME);
-                    if (hands.get(player).isEmpty())
-                        nextPlayer();   // player has gone out and should not get the next turn
-                    return;
-                }
+    private boolean isTurnOf(UUID player) {
+        return started && !isTradingPhase() && currentPlayer >= 0
+                && turnSequence.get(currentPlayer).equals(player);
+    }
 
+    private void newRound() {
+        // players whose seats were given up leave now, which stops the game
+        if (!abandonedSeats.isEmpty()) {
+            for (UUID player : new ArrayList<>(abandonedSeats))
+                _leaveGame(player);
+            return;
+        }
 
+        newTrick(Trick.NONE);     // Start of game
+        noOfCardsFaceDown = 0;
+        roundNo++;
 
+        assignRoles();
+        dealCards();
+        for (PlayerObject po : players.values()) {
+            PlayerData pd = po.getGameData();
+            pd.setPassed(false);
+            pd.setOutOfRound(false);
+        }
+        currentPlayer = -1;
+        goneOut = 0;
+        propagateChange();
+    }
 
-                if (noOfCardsInTrick == 0)
-                    noOfCardsInTrick = cards.size();
-                nextPlayer();
+    /**
+     * Holds a dropped player's seat for them, with the autopilot playing
+     * in their place until they reclaim it. Once the grace window is over
+     * their session ends, and they leave when the round does. A game that
+     * hasn't started has nothing to hold, so the player leaves at once.
+     * @param player UUID of the player
+     * @param graceMillis long how long the seat is held, in milliseconds
+     */
+    public CompletableFuture<Void> holdSeat(UUID player, long graceMillis) {
+        return mailbox.submit(() -> {
+            if (_holdSeat(player, graceMillis))
                 propagateChange();
-            }
-        } catch (RoundOver roundOver) {
-            SERVER_LOGGER.info("Starting new round...");
-            newRound();
+            return null;
+        });
+    }
+
+    // @return boolean whether the seat is now held, for the caller to propagate
+    private boolean _holdSeat(UUID player, long graceMillis) {
+        PlayerObject po = players.get(player);
+        if (po == null || heldSeats.containsKey(player))
+            return false;
+        if (!started) {
+            journal(GameJournal.LEAVE, player, 0);
+            po.getSession().endSession();
+            _leaveGame(player);
+            return false;
         }
 
+        SERVER_LOGGER.info(() -> po.getGameData().getNick() + " dropped, holding their seat");
+        heldSeats.put(player, TIMERS.schedule(
+                () -> mailbox.submit(() -> {
+                    seatExpired(player);
+                    return null;
+                }),
+                graceMillis,
+                TimeUnit.MILLISECONDS
+        ));
+        po.getGameData().setConnectionLost(true);
+        return true;
     }
-    public void pass(UUID player) throws RoundOver {
-        synchronized (this) {
-            players.get(player).getGameData().setPassed(true);
-            passCount++;
-            nextPlayer();
+
+    /**
+     * Gives a held seat back to its player
+     * @param player UUID of the player
+     * @return CompletableFuture of true if the seat was still held
+     */
+    public CompletableFuture<Boolean> reclaimSeat(UUID player) {
+        return mailbox.submit(() -> {
+            ScheduledFuture<?> grace = heldSeats.remove(player);
+            if (grace == null)
+                return false;
+            grace.cancel(false);
+            players.get(player).getGameData().setConnectionLost(false);
             propagateChange();
-        }
-     }
+            return true;
+        });
+    }
 
-    public void newRound() {
-        synchronized (this) {
-            newTrick(Trick.NONE);     // Start of game
-            noOfCardsFaceDown = 0;
-            roundNo++;
+    /**
+     * @param player UUID of the player
+     * @return CompletableFuture of whether the autopilot plays for the player
+     */
+    public CompletableFuture<Boolean> seatHeld(UUID player) {
+        return mailbox.submit(() -> isSeatHeld(player));
+    }
 
-            assignRoles();
-            dealCards();
-            for (PlayerObject po : players.values()) {
-                PlayerData pd = po.getGameData();
-                pd.setPassed(false);
-                pd.setOutOfRound(false);
-            }
-            currentPlayer = -1;
-            goneOut = 0;
-            propagateChange();
-        }
+    private boolean isSeatHeld(UUID player) {
+        return heldSeats.containsKey(player) || abandonedSeats.contains(player);
+    }
+
+    private void seatExpired(UUID player) {
+        if (heldSeats.remove(player) == null)
+            return;
+        PlayerObject po = players.get(player);
+        if (po == null)
+            return;
+        po.getSession().endSession();
+        journal(started ? GameJournal.ABANDON : GameJournal.LEAVE, player, 0);
+        if (started)
+            abandonedSeats.add(player);
+        else
+            _leaveGame(player);
     }
 
-    public void registerGameStateChange() {
-        synchronized (this) {
+    public CompletableFuture<Void> registerGameStateChange() {
+        return mailbox.submit(() -> {
             propagateChange();
-        }
+            return null;
+        });
+    }
+
+    /**
+     * Takes a consistent copy of the game as seen by one of its players
+     * @param session UserSession of the player
+     * @return CompletableFuture of the GameState
+     */
+    public CompletableFuture<GameState> stateFor(UserSession session) {
+        return mailbox.submit(() -> new GameState(this, session));
+    }
+
+    /**
+     * Takes what a player may know of the round, for bots to search over
+     * @param player UUID of the player
+     * @return CompletableFuture of the InformationSet, or of null unless
+     *         it is the player's turn in a round being played
+     */
+    public CompletableFuture<InformationSet> informationSetFor(UUID player) {
+        return mailbox.submit(() -> {
+            if (!isTurnOf(player))
+                return null;
+
+            int seats = turnSequence.size();
+            long[] seatHands = new long[seats];
+            int[] places = new int[seats];
+            int passed = 0;
+            for (int seat = 0; seat < seats; seat++) {
+                UUID id = turnSequence.get(seat);
+                PlayerData pd = players.get(id).getGameData();
+                seatHands[seat] = hands.get(id).getBits();
+                places[seat] = pd.isOutOfRound() ? pd.getOutCount() : 0;
+                if (pd.hasPassed())
+                    passed |= 1 << seat;
+            }
+
+            Round round = new Round(seats);
+            round.resume(seatHands, places, currentPlayer, passed, topValue, topRun, noOfCardsInTrick);
+            return InformationSet.of(round, currentPlayer);
+        });
     }
 
     public int getRoundNo() {
-        synchronized (this) {
-            return roundNo;
-        }
+        return roundNo;
+    }
+
+    /**
+     * @return long version of the game state, increasing with every change
+     */
+    public long getStateVersion() {
+        return stateVersion.get();
     }
 
     /**
@@ -565,23 +861,153 @@ public class Game {
         char[] suits = {'H', 'S', 'C', 'D'}; // H(earts), S(pades), C(lubs), D(iamond)
         for (int suit = 0; suit < 4; suit++)        // For each suit, create 13 cards
             for (int number = 2; number < numCards; number++)
-                deck.add(new CardData(number, suits[suit]));    // Add the card to the cardList
-        Collections.shuffle(deck);          // Shuffle the cards
+                deck.add(CardData.of(number, suits[suit]));    // Add the card to the cardList
+        Collections.shuffle(deck, nextRandom());          // Shuffle the cards
 
         return deck;
     }
 
 
     private void removeFromList() {
-        synchronized (Game.class) {
-            games.remove(ID);
-        }
+        games.remove(ID);
+        delisted = true;
+        GameListing removed = listed;
+        listed = null;
+        if (removed != null)
+            listing.updateAndGet(list -> {
+                List<GameListing> updated = new ArrayList<>(list);
+                updated.remove(removed);
+                return Collections.unmodifiableList(updated);
+            });
+    }
+
+    /**
+     * Republishes the lobby listing if this game's entry has changed.
+     *
+     * MUST be called from the game's mailbox, which keeps each game's
+     * updates in order.
+     */
+    private void publishListing() {
+        GameListing previous = listed;
+        if (delisted
+                || previous != null
+                && previous.getNumberOfPlayers() == players.size()
+                && previous.hasStarted() == started
+                && previous.getOwner().equals(ownerNick))
+            return;
+
+        GameListing current = new GameListing(
+                ID.toString(),
+                title,
+                ownerNick,
+                players.size(),
+                password != null,
+                started
+        );
+        listed = current;
+        listing.updateAndGet(list -> {
+            List<GameListing> updated = new ArrayList<>(list);
+            int index = updated.indexOf(previous);
+            if (index < 0)
+                updated.add(current);
+            else
+                updated.set(index, current);
+            return Collections.unmodifiableList(updated);
+        });
     }
 
     private void propagateChange() {
+        if (replaying)
+            return;
+        long version = stateVersion.incrementAndGet();
+        publishListing();
         for (PlayerObject player : players.values()) {
             player.newStateAvailable();
         }
+        ServerMetrics.get().stateChanged(players.size());
+
+        if (turnTimer != null)
+            turnTimer.cancel(false);
+        turnTimer = null;
+        if (!started || cancelled)
+            return;
+
+        // held seats move once the change is done, everyone else in their own time
+        if (waitingOnHeldSeat() && !autopilotQueued) {
+            autopilotQueued = true;
+            mailbox.enqueue(() -> {
+                autopilotQueued = false;
+                autopilot(false);
+                return null;
+            });
+        }
+        turnTimer = TIMERS.schedule(
+                () -> mailbox.submit(() -> {
+                    if (stateVersion.get() == version)
+                        autopilot(true);
+                    return null;
+                }),
+                TURN_TIMEOUT_MILLIS,
+                TimeUnit.MILLISECONDS
+        );
+    }
+
+    private boolean waitingOnHeldSeat() {
+        // a table of held seats only would play on by itself
+        if (heldSeats.size() + abandonedSeats.size() >= players.size())
+            return false;
+        if (isTradingPhase()) {
+            for (UUID id : players.keySet())
+                if (isSeatHeld(id) && players.get(id).getGameData().hasToTrade())
+                    return true;
+            return false;
+        }
+        return currentPlayer >= 0 && isSeatHeld(turnSequence.get(currentPlayer));
+    }
+
+    /**
+     * Makes the moves the game waits on, greedily: the lowest legal play,
+     * or a pass, and in trading the highest cards for bums, the lowest
+     * for presidents
+     * @param everyone boolean true to move for players who are still
+     *                 connected too, false for held seats only
+     */
+    private void autopilot(boolean everyone) throws GameException {
+        if (!started || cancelled)
+            return;
+
+        if (isTradingPhase()) {
+            for (UUID id : new ArrayList<>(players.keySet())) {
+                PlayerData pd = players.get(id).getGameData();
+                if (!pd.hasToTrade() || !everyone && !isSeatHeld(id))
+                    continue;
+                long hand = hands.get(id).getBits();
+                int count = Rules.tradeCount(pd.getRole(), players.size());
+                long given = pd.getRole() == Role.BUM || pd.getRole() == Role.VICE_BUM
+                        ? Rules.highestCards(hand, count)
+                        : Rules.lowestCards(hand, count);
+                _giveCards(id, new CardSet(given));
+                if (!isTradingPhase())
+                    break;
+            }
+            return;
+        }
+
+        if (currentPlayer < 0)
+            return;
+        UUID player = turnSequence.get(currentPlayer);
+        if (!everyone && !isSeatHeld(player))
+            return;
+
+        long play = Rules.lowestPlay(hands.get(player).getBits(), topValue, noOfCardsInTrick);
+        try {
+            if (play == 0)
+                _pass(player);
+            else
+                _playCards(player, new CardSet(play));
+        } catch (RoundOver roundOver) {
+            newRound();
+        }
     }
 
 
@@ -624,6 +1050,8 @@ public class Game {
         noOfCardsFaceDown += cardsOnTable.size();
         cardsOnTable = new ArrayList<>();
         noOfCardsInTrick = 0;
+        topValue = 0;
+        topRun = 0;
         passCount = 0;
         trickTriggered = trickType;
         propagateChange();
@@ -657,13 +1085,13 @@ public class Game {
         // empties all hands
         hands = new LinkedHashMap<>();
         for (UUID hand : turnSequence) {
-            hands.put(hand, new ArrayList<>());
+            hands.put(hand, new CardSet());
         }
 
         // deals new cards
 
         List<CardData> deck = prepareDeck();
-        SERVER_LOGGER.info("Size of deck: " + deck.size());
+        SERVER_LOGGER.info(() -> "Size of deck: " + deck.size());
         for (CardData card : deck) {
 
             if (player == turnSequence.size())
@@ -671,7 +1099,7 @@ public class Game {
 
             tmp = turnSequence.get(player++);
 
-            List<CardData> hand = hands.get(tmp);
+            CardSet hand = hands.get(tmp);
 
             if (hand != null)
                 hand.add(card);
@@ -699,14 +1127,15 @@ public class Game {
     private void shufflePlayerOrder() {
         turnSequence = new ArrayList<>();
         turnSequence.addAll(players.keySet());
-        Collections.shuffle(turnSequence);
-        SERVER_LOGGER.fine("Shuffling player order, new sequence size: " + turnSequence.size());
+        Collections.sort(turnSequence);     // from a known order, for replays
+        Collections.shuffle(turnSequence, nextRandom());
+        SERVER_LOGGER.fine(() -> "Shuffling player order, new sequence size: " + turnSequence.size());
     }
 
     /**
      * Setting currentPlayer for the start of a round.
      *
-     * MUST be called inside a 'synchronized' block!
+     * MUST be called from the game's mailbox!
      *
      * @param threeOfDiamonds UUID ID of player having the three of diamonds
      */
@@ -727,6 +1156,252 @@ public class Game {
         if(TEST_MODE)
             currentPlayer = 0; // to speed up testing
 
-        SERVER_LOGGER.info("Set starting player to: " + currentPlayer);
+        SERVER_LOGGER.info(() -> "Set starting player to: " + currentPlayer);
+    }
+
+
+    /**
+     * Journal and recovery
+     **************************************/
+
+
+    private Random nextRandom() {
+        return new Random(seed + shuffles++ * 0x9E3779B97F4A7C15L);
+    }
+
+    // appends a command to the journal, once it is known to be valid
+    private void journal(byte type, UUID player, long cards) {
+        long seq = ++journalSeq;
+        GameJournal j = journal;
+        if (j != null && !replaying)
+            j.command(type, ID, seq, player, cards);
+    }
+
+    long getJournalSeq() {
+        return journalSeq;
+    }
+
+    boolean isBotSeat(UUID player) {
+        return botSeats.contains(player);
+    }
+
+    /**
+     * Rebuilds a game from its journaled creation. Its owner joins by a
+     * record of their own.
+     */
+    static Game recreate(UUID id, long seq, UUID owner, long seed, String title, String ownerNick, PasswordHash password) {
+        Game game = new Game(id, owner, title, password, seed);
+        game.ownerNick = ownerNick;
+        game.journalSeq = seq;
+        game.replaying = true;
+        games.put(id, game);
+        return game;
+    }
+
+    /**
+     * Seats a player again, as journaled. Like replay(), only called
+     * while recovering, before the game is resumed.
+     */
+    void replaySeat(long seq, UserSession user, boolean bot) throws GameException {
+        seat(user, bot);
+        journalSeq = seq;
+    }
+
+    /**
+     * Applies a journaled command again. Only called while recovering,
+     * before the game is resumed, so from the recovering thread rather
+     * than the mailbox.
+     * @param type byte of the command, one of GameJournal's
+     * @param seq long of the command in the game's journal
+     */
+    void replay(byte type, long seq, UUID player, long cards) throws GameException {
+        try {
+            switch (type) {
+                case GameJournal.START -> _start();
+                case GameJournal.STOP -> _stop();
+                case GameJournal.CANCEL -> _cancel();
+                case GameJournal.PLAY -> {
+                    try {
+                        _playCards(player, new CardSet(cards));
+                    } catch (RoundOver roundOver) {
+                        newRound();
+                    }
+                }
+                case GameJournal.PASS -> {
+                    try {
+                        _pass(player);
+                    } catch (RoundOver ignore) {
+                        // as when passing live, the round carries on
+                    }
+                }
+                case GameJournal.GIVE -> _giveCards(player, new CardSet(cards));
+                case GameJournal.LEAVE -> {
+                    PlayerObject po = players.get(player);
+                    if (po != null)
+                        po.getSession().leftGame(this);
+                    _leaveGame(player);
+                }
+                case GameJournal.ABANDON -> abandonedSeats.add(player);
+                default -> throw new GameException("Unknown journal command: " + type);
+            }
+        } finally {
+            journalSeq = seq;
+        }
+    }
+
+    /**
+     * Hands a recovered game back to its mailbox, and publishes it. The
+     * restart dropped everyone but the bots, so their seats are held, all
+     * at once so that the autopilot waits for them like any full table.
+     * @param graceMillis long how long the seats are held, in milliseconds
+     */
+    CompletableFuture<Void> resume(long graceMillis) {
+        return mailbox.submit(() -> {
+            replaying = false;
+            for (UUID player : new ArrayList<>(players.keySet()))
+                if (!botSeats.contains(player))
+                    _holdSeat(player, graceMillis);
+            propagateChange();
+            return null;
+        });
+    }
+
+    /**
+     * Takes a compact copy of the game, from which restore() rebuilds it
+     * @return CompletableFuture of the bytes, or of null if the game is over
+     */
+    CompletableFuture<byte[]> snapshot() {
+        return mailbox.submit(() -> {
+            if (cancelled || delisted)
+                return null;
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
+            writeSnapshot(new DataOutputStream(bytes));
+            return bytes.toByteArray();
+        });
+    }
+
+    private void writeSnapshot(DataOutput out) throws IOException {
+        writeID(out, ID);
+        writeID(out, owner);
+        out.writeUTF(title);
+        out.writeUTF(ownerNick);
+        out.writeBoolean(password != null);
+        if (password != null)
+            password.write(out);
+        out.writeLong(seed);
+        out.writeLong(shuffles);
+        out.writeLong(journalSeq);
+
+        out.writeBoolean(started);
+        out.writeInt(roundNo);
+        out.writeInt(currentPlayer);
+        out.writeInt(goneOut);
+        out.writeInt(passCount);
+        out.writeInt(playersInTradingPhase);
+        out.writeInt(noOfCardsFaceDown);
+        out.writeInt(noOfCardsInTrick);
+        out.writeInt(topValue);
+        out.writeInt(topRun);
+        out.writeByte(trickTriggered.ordinal());
+        CardData.writeCards(out, cardsOnTable);
+
+        List<UUID> sequence = turnSequence == null ? List.of() : turnSequence;
+        out.writeInt(sequence.size());
+        for (UUID id : sequence)
+            writeID(out, id);
+
+        out.writeInt(players.size());
+        for (Map.Entry<UUID, PlayerObject> entry : players.entrySet()) {
+            writeID(out, entry.getKey());
+            out.writeUTF(entry.getValue().getSession().getNick());
+            out.writeBoolean(botSeats.contains(entry.getKey()));
+            entry.getValue().getGameData().writeState(out);
+        }
+
+        writeCardSets(out, hands);
+        writeCardSets(out, receiveFromTrade);
+        out.writeInt(abandonedSeats.size());
+        for (UUID id : abandonedSeats)
+            writeID(out, id);
+    }
+
+    /**
+     * Rebuilds a game from a snapshot, to be brought up to date by
+     * replaying the journal after it, and then resumed
+     * @param sessions BiFunction giving the session of a player, by ID and nick
+     */
+    static Game restore(DataInput in, BiFunction<UUID, String, UserSession> sessions) throws IOException, GameException {
+        UUID id = readID(in);
+        UUID owner = readID(in);
+        String title = in.readUTF();
+        String ownerNick = in.readUTF();
+        PasswordHash password = in.readBoolean() ? PasswordHash.read(in) : null;
+        Game game = new Game(id, owner, title, password, in.readLong());
+        game.ownerNick = ownerNick;
+        game.shuffles = in.readLong();
+        game.journalSeq = in.readLong();
+        game.replaying = true;
+
+        game.started = in.readBoolean();
+        game.roundNo = in.readInt();
+        game.currentPlayer = in.readInt();
+        game.goneOut = in.readInt();
+        game.passCount = in.readInt();
+        game.playersInTradingPhase = in.readInt();
+        game.noOfCardsFaceDown = in.readInt();
+        game.noOfCardsInTrick = in.readInt();
+        game.topValue = in.readInt();
+        game.topRun = in.readInt();
+        game.trickTriggered = Trick.values()[in.readUnsignedByte()];
+        game.cardsOnTable = CardData.readCards(in);
+
+        int seats = in.readInt();
+        game.turnSequence = new ArrayList<>(seats);
+        for (int i = 0; i < seats; i++)
+            game.turnSequence.add(readID(in));
+
+        games.put(id, game);
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            UUID player = readID(in);
+            UserSession session = sessions.apply(player, in.readUTF());
+            if (in.readBoolean())
+                game.botSeats.add(player);
+            game.players.put(player, new PlayerObject(session, PlayerData.readState(in), game.stateVersion));
+            session.joinGame(id);
+        }
+
+        game.hands = readCardSets(in);
+        game.receiveFromTrade = readCardSets(in);
+        int abandoned = in.readInt();
+        for (int i = 0; i < abandoned; i++)
+            game.abandonedSeats.add(readID(in));
+        return game;
+    }
+
+    private static void writeCardSets(DataOutput out, Map<UUID, CardSet> sets) throws IOException {
+        out.writeInt(sets.size());
+        for (Map.Entry<UUID, CardSet> entry : sets.entrySet()) {
+            writeID(out, entry.getKey());
+            out.writeLong(entry.getValue().getBits());
+        }
+    }
+
+    // in the order written, as hands follow the turn order
+    private static Map<UUID, CardSet> readCardSets(DataInput in) throws IOException {
+        int count = in.readInt();
+        Map<UUID, CardSet> sets = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++)
+            sets.put(readID(in), new CardSet(in.readLong()));
+        return sets;
+    }
+
+    private static void writeID(DataOutput out, UUID id) throws IOException {
+        out.writeLong(id.getMostSignificantBits());
+        out.writeLong(id.getLeastSignificantBits());
+    }
+
+    private static UUID readID(DataInput in) throws IOException {
+        return new UUID(in.readLong(), in.readLong());
     }
 }
@@ -0,0 +1,419 @@
+package server;
+
+import protocol.Protocol;
+import server.bots.BotPlayer;
+import server.exceptions.GameException;
+import server.journal.Journal;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+import static server.Server.SERVER_LOGGER;
+
+/**
+ * Keeps the games across restarts: every command a game carries out is
+ * appended to a Journal, and every so often all games are written to a
+ * snapshot, after which the journal before it is dropped.
+ *
+ * Opening the journal recovers the games of the last run, from the latest
+ * snapshot and the commands journaled since. Games are rebuilt exactly, as
+ * their shuffles are seeded and the seeds journaled. Bots play on, while
+ * everyone else is treated as dropped, and can reconnect to their seat
+ * within the grace period. Games that hadn't started aren't held, so
+ * players who don't come back leave them.
+ *
+ * Commands are journaled from the games' mailboxes once they are known to
+ * be valid, so they are replayed in the order they were carried out. Each
+ * game numbers its commands, and a snapshot records how far each game
+ * got, so commands a snapshot already holds are skipped on replay.
+ */
+public class GameJournal implements Closeable {
+
+    public static final long DEFAULT_SNAPSHOT_INTERVAL_MILLIS = 60_000;
+
+    // commands, by the byte they are journaled as
+    static final byte CREATE = 1;
+    static final byte JOIN = 2;
+    static final byte JOIN_BOT = 3;
+    static final byte START = 4;
+    static final byte STOP = 5;
+    static final byte PLAY = 6;
+    static final byte PASS = 7;
+    static final byte GIVE = 8;
+    static final byte LEAVE = 9;
+    static final byte CANCEL = 10;
+    static final byte ABANDON = 11;     // a held seat given up, leaving at the end of the round
+
+    private static final int COMMAND_SIZE = 1 + 16 + 8 + 16 + 8;    // type, game, seq, player, cards
+    private static final int SNAPSHOT_MAGIC = 0x44414946;
+    private static final int SNAPSHOT_VERSION = 1;
+    private static final String SNAPSHOT_SUFFIX = ".snapshot";
+
+    private final Path directory;
+    private final Journal journal;
+    private ScheduledExecutorService snapshots;
+    private volatile boolean failing;   // logged once, rather than on every command
+
+    private GameJournal(Path directory, Journal journal) {
+        this.directory = directory;
+        this.journal = journal;
+    }
+
+    public static GameJournal open(Path directory) throws IOException {
+        return open(directory, Journal.DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Recovers the games journaled in the directory, and journals every
+     * game from then on. Must be called before any game is created.
+     * @param directory Path of the journal and snapshots, created if missing
+     * @param segmentSize int bytes per journal segment
+     * @return GameJournal, which the caller must close
+     * @throws IOException if the journal can't be read or written, or the
+     *                     latest snapshot is corrupt
+     */
+    public static GameJournal open(Path directory, int segmentSize) throws IOException {
+        long start = System.nanoTime();
+        Files.createDirectories(directory);
+
+        Recovery recovery = new Recovery();
+        long from = recovery.loadSnapshot(directory);
+        Journal.read(directory, from, recovery::apply);
+
+        GameJournal gameJournal = new GameJournal(
+                directory,
+                new Journal(directory, segmentSize, Journal.DEFAULT_COMMIT_MICROS)
+        );
+        Game.setJournal(gameJournal);
+        int games = recovery.resume();
+        gameJournal.snapshot();
+
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        SERVER_LOGGER.info(() -> "Recovered " + games + " games in " + millis + " ms, from "
+                + recovery.restored + " in the snapshot and " + recovery.replayed + " commands replayed"
+                + (recovery.failed > 0 ? ", " + recovery.failed + " commands failed" : ""));
+        return gameJournal;
+    }
+
+    /**
+     * Snapshots the games every interval, in the background
+     */
+    public GameJournal startSnapshots(long intervalMillis) {
+        snapshots = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "GameSnapshots");
+            thread.setDaemon(true);
+            return thread;
+        });
+        snapshots.scheduleWithFixedDelay(() -> {
+            try {
+                snapshot();
+            } catch (IOException | RuntimeException e) {
+                SERVER_LOGGER.warning("Failed to snapshot games: " + e);
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        return this;
+    }
+
+    /**
+     * Journals a command that needs no more than a player and cards.
+     * Called on every move, so it allocates nothing.
+     * @param player UUID the command is by or for, or null
+     * @param cards long cards played or given, as CardSet bits
+     */
+    void command(byte type, UUID game, long seq, UUID player, long cards) {
+        try {
+            ByteBuffer buffer = journal.begin(COMMAND_SIZE);
+            try {
+                buffer.put(type);
+                buffer.putLong(game.getMostSignificantBits()).putLong(game.getLeastSignificantBits());
+                buffer.putLong(seq);
+                buffer.putLong(player == null ? 0 : player.getMostSignificantBits());
+                buffer.putLong(player == null ? 0 : player.getLeastSignificantBits());
+                buffer.putLong(cards);
+            } finally {
+                journal.end();
+            }
+        } catch (IOException e) {
+            failed(e);
+        }
+    }
+
+    /**
+     * Journals a new game. Only the hash of its password is kept.
+     * @param password PasswordHash, or null if the game is public
+     */
+    void created(UUID game, long seq, UUID owner, long seed, String title, String ownerNick, PasswordHash password) {
+        byte[] titleBytes = title.getBytes(StandardCharsets.UTF_8);
+        byte[] nickBytes = ownerNick.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer record = ByteBuffer.allocate(
+                1 + 16 + 8 + 16 + 8 + 2 + titleBytes.length + 2 + nickBytes.length
+                        + 1 + (password == null ? 0 : PasswordHash.size())
+        );
+        putHeader(record, CREATE, game, seq);
+        putID(record, owner);
+        record.putLong(seed);
+        putString(record, titleBytes);
+        putString(record, nickBytes);
+        record.put((byte) (password == null ? 0 : 1));
+        if (password != null)
+            password.put(record);
+        append(record);
+    }
+
+    void joined(UUID game, long seq, UUID player, String nick, boolean bot) {
+        byte[] nickBytes = nick.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer record = ByteBuffer.allocate(1 + 16 + 8 + 16 + 2 + nickBytes.length);
+        putHeader(record, bot ? JOIN_BOT : JOIN, game, seq);
+        putID(record, player);
+        putString(record, nickBytes);
+        append(record);
+    }
+
+    private void append(ByteBuffer record) {
+        record.flip();
+        try {
+            journal.append(record);
+        } catch (IOException e) {
+            failed(e);
+        }
+    }
+
+    private void failed(IOException e) {
+        if (failing)
+            return;
+        failing = true;
+        SERVER_LOGGER.warning("Games are no longer journaled: " + e);
+    }
+
+    /**
+     * Writes every game to a new snapshot, and drops the journal before
+     * it, along with older snapshots
+     */
+    public synchronized void snapshot() throws IOException {
+        long start = System.nanoTime();
+        long segment = journal.roll();
+
+        // taken in each game's own mailbox, all at once
+        List<CompletableFuture<byte[]>> pending = new ArrayList<>();
+        for (Game game : Game.all())
+            pending.add(game.snapshot());
+        List<byte[]> states = new ArrayList<>(pending.size());
+        for (CompletableFuture<byte[]> future : pending) {
+            byte[] state = Game.await(future);
+            if (state != null)
+                states.add(state);
+        }
+
+        Path file = directory.resolve(snapshotName(segment));
+        Path temporary = directory.resolve(snapshotName(segment) + ".tmp");
+        try (FileChannel channel = FileChannel.open(
+                temporary,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING
+        )) {
+            CheckedOutputStream checked = new CheckedOutputStream(
+                    new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16),
+                    new CRC32C()
+            );
+            DataOutputStream out = new DataOutputStream(checked);
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(SNAPSHOT_VERSION);
+            out.writeLong(segment);
+            out.writeInt(states.size());
+            for (byte[] state : states)
+                out.write(state);
+            out.writeLong(checked.getChecksum().getValue());
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        for (Path old : snapshots(directory))
+            if (!old.equals(file))
+                Files.deleteIfExists(old);
+        journal.deleteBefore(segment);
+
+        SERVER_LOGGER.fine(() -> "Snapshot of " + states.size() + " games took "
+                + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+    }
+
+    /**
+     * @return Journal the commands are appended to
+     */
+    public Journal getJournal() {
+        return journal;
+    }
+
+    /**
+     * Snapshots the games one last time, for a quick restart, and stops
+     * journaling them
+     */
+    @Override
+    public void close() throws IOException {
+        if (snapshots != null) {
+            snapshots.shutdown();
+            try {
+                snapshots.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        try {
+            snapshot();
+        } finally {
+            Game.setJournal(null);
+            journal.close();
+        }
+    }
+
+    private static void putHeader(ByteBuffer record, byte type, UUID game, long seq) {
+        record.put(type);
+        putID(record, game);
+        record.putLong(seq);
+    }
+
+    private static void putID(ByteBuffer record, UUID id) {
+        record.putLong(id.getMostSignificantBits()).putLong(id.getLeastSignificantBits());
+    }
+
+    private static void putString(ByteBuffer record, byte[] bytes) {
+        record.putShort((short) bytes.length);
+        record.put(bytes);
+    }
+
+    private static UUID getID(ByteBuffer record) {
+        return new UUID(record.getLong(), record.getLong());
+    }
+
+    private static String getString(ByteBuffer record) {
+        byte[] bytes = new byte[record.getShort() & 0xFFFF];
+        record.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static String snapshotName(long segment) {
+        return String.format("%016d", segment) + SNAPSHOT_SUFFIX;
+    }
+
+    private static List<Path> snapshots(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files
+                    .filter(file -> file.getFileName().toString().matches("\\d{16}\\" + SNAPSHOT_SUFFIX))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Rebuilds the games of the last run, before any client connects
+     */
+    private static class Recovery {
+        private final Map<UUID, Game> games = new HashMap<>();
+        private final Map<UUID, UserSession> sessions = new HashMap<>();
+        private long restored;
+        private long replayed;
+        private long failed;
+
+        private UserSession session(UUID id, String nick) {
+            return sessions.computeIfAbsent(id, key -> UserSession.recover(key, nick));
+        }
+
+        /**
+         * @return long number of the journal segment that follows the
+         *         snapshot, or 0 if there is none
+         */
+        long loadSnapshot(Path directory) throws IOException {
+            List<Path> all = snapshots(directory);
+            if (all.isEmpty())
+                return 0;
+            Path latest = all.get(all.size() - 1);
+
+            try (InputStream file = Files.newInputStream(latest)) {
+                CheckedInputStream checked = new CheckedInputStream(new BufferedInputStream(file, 1 << 16), new CRC32C());
+                DataInputStream in = new DataInputStream(checked);
+                if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != SNAPSHOT_VERSION)
+                    throw new IOException("Not a game snapshot: " + latest);
+                long segment = in.readLong();
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    Game game = Game.restore(in, this::session);
+                    games.put(game.getID(), game);
+                }
+                long expected = checked.getChecksum().getValue();
+                if (in.readLong() != expected)
+                    throw new IOException("Corrupt game snapshot: " + latest);
+                restored = count;
+                return segment;
+            } catch (GameException e) {
+                throw new IOException("Corrupt game snapshot: " + latest, e);
+            }
+        }
+
+        void apply(ByteBuffer record) {
+            byte type = record.get();
+            UUID id = getID(record);
+            long seq = record.getLong();
+            try {
+                Game game = games.get(id);
+                if (type == CREATE) {
+                    if (game != null)
+                        return;
+                    UUID owner = getID(record);
+                    long seed = record.getLong();
+                    String title = getString(record);
+                    String ownerNick = getString(record);
+                    PasswordHash password = record.get() == 1 ? PasswordHash.get(record) : null;
+                    games.put(id, Game.recreate(id, seq, owner, seed, title, ownerNick, password));
+                    replayed++;
+                    return;
+                }
+
+                // a game over before the snapshot, or a command it holds
+                if (game == null || seq <= game.getJournalSeq())
+                    return;
+                UUID player = getID(record);
+                if (type == JOIN || type == JOIN_BOT)
+                    game.replaySeat(seq, session(player, getString(record)), type == JOIN_BOT);
+                else
+                    game.replay(type, seq, player, record.getLong());
+                replayed++;
+            } catch (GameException | RuntimeException e) {
+                failed++;
+                SERVER_LOGGER.warning("Failed to replay command " + type + " of game " + id + ": " + e);
+            }
+        }
+
+        /**
+         * Hands the games back to their mailboxes. Bots play on, other
+         * players' seats are held for them to reconnect to.
+         * @return int games recovered
+         */
+        int resume() {
+            List<Game> recovered = Game.all();
+            for (Game game : recovered) {
+                Game.await(game.resume(Protocol.SEAT_GRACE_PERIOD));
+                for (PlayerObject po : new ArrayList<>(game.getPlayers().values()))
+                    if (game.isBotSeat(po.getSession().getID()))
+                        BotPlayer.rejoin(game, po.getSession());
+            }
+
+            // players who had left before the restart
+            for (UserSession session : sessions.values()) {
+                Game game = session.getGame();
+                if (game == null || game.isCancelled() || !game.getPlayers().containsKey(session.getID()))
+                    session.endSession();
+            }
+            return recovered.size();
+        }
+    }
+}
@@ -1,62 +1,65 @@
 package server;
 
+import common.GameState;
 import protocol.*;
+import server.bots.BotPlayer;
 import server.exceptions.*;
 
 import java.io.*;
-import java.net.SocketTimeoutException;
 import java.time.Instant;
-import java.util.logging.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
 
 import static protocol.MessageType.*;
-
-import static server.Server.SERVER_LOGGER;
 /**
  * Module for handling all server requests while the client is participating
  * in a game.
  */
 public class GameRunner {
-    private final ObjectInputStream in;
-    private final ObjectOutputStream out;
+
+    // pushes are written from here, so a game never waits on a client's socket
+    private static final ExecutorService PUSHER = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "GamePusher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final MessageSink out;
     private final Game game;
     private final UserSession userSession;
-    private final Logger LOGGER;
+    private final SessionLog log;
     private boolean running;
-
-    public String logPrefix() {
-        return userSession.getNick() + ": ";
-    }
-
+    private GameState lastSent;     // base for deltas, once the client acknowledges it
+    private final ReentrantLock stateLock = new ReentrantLock();   // keeps lastSent in wire order
+    private final AtomicBoolean pushPending = new AtomicBoolean();
+    private volatile boolean subscribed;
+
+    /**
+     * @param log SessionLog of the client's connection
+     */
     public GameRunner(
             UserSession userSession,
-            ObjectInputStream in,
-            ObjectOutputStream out
+            MessageSink out,
+            SessionLog log
     ) {
         this.userSession = userSession;
-        this.in = in;
         this.out = out;
         this.game = userSession.getGame();
-        LOGGER = Logger.getLogger(GameRunner.class.getName() + "-" + userSession.getToken());
-        LOGGER.addHandler(Server.CONSOLE_HANDLER);
-        //LOGGER.addHandler(Server.FILE_HANDLER);
-        LOGGER.setUseParentHandlers(false);
-        LOGGER.setLevel(Level.INFO);
-
-        LOGGER.info(
-                logPrefix() + "joined game: " + game.getTitle()
-                        + " (" + game.getID() + ")"
-        );
+        this.log = log;
+
+        log.info(() -> "Joined game: " + game.getTitle() + " (" + game.getID() + ")");
     }
 
     private void sendHeartbeatResponse(HeartbeatMessage request) throws IOException {
 
-        LOGGER.fine(logPrefix() + "got heartbeat");
+        log.fine("Got heartbeat");
 
         // if state hasn't been updated, simply heartbeat back
         PlayerObject po = game.getPlayers().get(userSession.getID());
-        if (!po.isStateUpdated()) {
+        if (!po.isStateUpdated() && request.getStateVersion() != HeartbeatMessage.RESYNC) {
             long receiveTime = Instant.now().toEpochMilli();
-            out.writeObject(
+            out.send(
                     new HeartbeatMessage(receiveTime)
             );
             po.getGameData().setLatency(receiveTime - request.getTime());
@@ -65,8 +68,8 @@ public class GameRunner {
 
         // leave game if cancelled, and inform client
         if (game.isCancelled()) {
-            game.leaveGame(userSession.getID());
-            out.writeObject(new CancelledGameError());
+            Game.await(game.leaveGame(userSession.getID()));
+            out.send(new CancelledGameError());
             running = false;
             return;
         }
@@ -74,25 +77,107 @@ public class GameRunner {
 
         // returning game state response
         try {
-            out.writeObject(new GameStateResponse(game, userSession));
-            po.stateHasBeenSent();
-//            SERVER_LOGGER.info("Inside game runner " + po.getGameData().getNumberOfCards());
-            // GOOD
+            sendState(request.getStateVersion());
         } catch (UserSessionError userSessionError) {
-            out.writeObject(new ErrorMessage(userSessionError.getMessage()));
+            out.send(new ErrorMessage(userSessionError.getMessage()));
         }
 
 
     }
 
+    /**
+     * Sends the current game state, as a delta when the client acknowledged
+     * the last state sent, and as a full snapshot otherwise
+     * @param acknowledged long state version held by the client
+     */
+    private void sendState(long acknowledged) throws IOException, UserSessionError {
+        stateLock.lock();
+        try {
+            out.send(nextState(acknowledged));
+        } finally {
+            stateLock.unlock();
+        }
+    }
+
+    // caller must hold stateLock, which keeps the versions recorded in wire order
+    private Message nextState(long acknowledged) throws UserSessionError {
+        GameState state = Game.await(game.stateFor(userSession), UserSessionError.class);
+        GameState previous = lastSent;
+        lastSent = state;
+        PlayerObject po = game.getPlayers().get(userSession.getID());
+        if (po != null)
+            po.stateHasBeenSent(state.getVersion());
+
+        if (acknowledged > HeartbeatMessage.NO_STATE_VERSION
+                && previous != null && previous.getVersion() == acknowledged)
+            return new GameStateDeltaResponse(state.diff(previous));
+        return new GameStateResponse(state);
+    }
+
+    /**
+     * Starts pushing game changes to the client as GameEventMessages
+     */
+    private void subscribe() throws IOException {
+        PlayerObject po = game.getPlayers().get(userSession.getID());
+        subscribed = true;
+        po.setStateListener(this::schedulePush);
+        out.send(new Message(OK));
+        log.fine("Subscribed to game events");
+    }
+
+    // called from the game's mailbox, so only hands the push over
+    private void schedulePush() {
+        if (subscribed && pushPending.compareAndSet(false, true))
+            PUSHER.execute(this::push);
+    }
+
+    private void push() {
+        // changes made from here on schedule another push
+        pushPending.set(false);
+        if (!subscribed)
+            return;
+
+        PlayerObject po = game.getPlayers().get(userSession.getID());
+        try {
+            // the client heartbeats on this, and leaves the game through the usual path
+            if (game.isCancelled() || po == null) {
+                out.send(new GameEventMessage(new CancelledGameError()));
+                return;
+            }
+
+            // frames arrive in order, so the client holds whatever was sent last
+            stateLock.lock();
+            try {
+                long held = lastSent == null ? HeartbeatMessage.NO_STATE_VERSION : lastSent.getVersion();
+                out.send(new GameEventMessage(nextState(held)));
+            } finally {
+                stateLock.unlock();
+            }
+        } catch (IOException | UserSessionError e) {
+            log.fine(() -> "Failed to push game state: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Stops pushes to the client, once it is no longer in the game
+     */
+    public void close() {
+        if (!subscribed)
+            return;
+        subscribed = false;
+        PlayerObject po = game.getPlayers().get(userSession.getID());
+        if (po != null)
+            po.setStateListener(null);
+    }
+
     private boolean userNotOwner() throws IOException {
         try {
             if (!game.getOwnerNick().equals(userSession.getNick())) {
-                out.writeObject(new ErrorMessage("Not allowed"));
+                out.send(new ErrorMessage("Not allowed"));
                 return true;
             }
         } catch (UserSessionError userSessionError) {
-            out.writeObject(new ErrorMessage(userSessionError.getMessage()));
+            out.send(new ErrorMessage(userSessionError.getMessage()));
             return true;
         }
 
@@ -102,65 +187,94 @@ public class GameRunner {
     private void validateCancellation() throws IOException, LeftGame {
 
         if (userNotOwner()) {
-            out.writeObject(new ErrorMessage("Non-owners cannot cancel a game"));
+            out.send(new ErrorMessage("Non-owners cannot cancel a game"));
             return;
         }
 
-        game.cancelGame();
-        out.writeObject(new Message(OK));
+        Game.await(game.cancelGame());
+        out.send(new Message(OK));
         throw new LeftGame();
     }
 
     private void validateGameStart() throws IOException {
         if (userNotOwner()) {
-            out.writeObject(new ErrorMessage("You are not the owner of this game"));
+            out.send(new ErrorMessage("You are not the owner of this game"));
             return;
         }
 
         try {
-            LOGGER.info("Starting game " + game.getTitle() + "...");
-            game.start();
-            out.writeObject(new Message(OK));
+            log.info(() -> "Starting game " + game.getTitle() + "...");
+            Game.await(game.start(), GameException.class);
+            out.send(new Message(OK));
         } catch (GameException e) {
-            out.writeObject(new ErrorMessage(e.getMessage()));
+            out.send(new ErrorMessage(e.getMessage()));
         }
 
     }
 
 
+    private void validateAddBot() throws IOException {
+        if (userNotOwner()) {
+            out.send(new ErrorMessage("You are not the owner of this game"));
+            return;
+        }
+
+        try {
+            BotPlayer.join(game);
+            out.send(new Message(OK));
+        } catch (GameException e) {
+            out.send(new ErrorMessage(e.getMessage()));
+        }
+    }
+
     private void validateGameStop() throws IOException {
         if (userNotOwner()) {
-            out.writeObject(new ErrorMessage("You are not the owner of this game"));
+            out.send(new ErrorMessage("You are not the owner of this game"));
             return;
         }
 
-        game.stop();
-        out.writeObject(new Message(OK));
+        Game.await(game.stop());
+        out.send(new Message(OK));
 
     }
 
 
     private void playerDisconnect() throws GameDisconnect{
+        leaveOrHoldSeat();
+        throw new GameDisconnect();
+    }
+
+    /**
+     * Lets go of the game for a client that is gone: a game in progress
+     * holds the player's seat for a while, in case they reconnect, and
+     * a game that hasn't started is left, or cancelled by its owner
+     */
+    public void leaveOrHoldSeat() {
+        close();
+        if (game.hasStarted() && !game.isCancelled()) {
+            Game.await(game.holdSeat(userSession.getID(), Protocol.SEAT_GRACE_PERIOD));
+            return;
+        }
+
         try {
             if (game.getOwnerNick() == userSession.getNick())
-                game.cancelGame();
+                Game.await(game.cancelGame());
             else
                 userSession.leaveCurrentGame();
         } catch (UserSessionError userSessionError) {
-            LOGGER.warning("Encountered exception during player disconnect:");
+            log.warning("Encountered exception during player disconnect:");
             userSessionError.printStackTrace();
         }
-        throw new GameDisconnect();
     }
 
     private void handlePlayCards(PlayCardsRequest request) throws IOException {
-        LOGGER.info("Entering play cards handler");
+        log.fine("Entering play cards handler");
         try {
-            game.playCards(userSession.getID(), request.getCards());
-            LOGGER.info("Successfully played cards, sending OK response...");
-            out.writeObject(new Message(OK));
+            Game.await(game.playCards(userSession.getID(), request.getCards()), GameException.class);
+            log.fine("Successfully played cards, sending OK response...");
+            out.send(new Message(OK));
         } catch (GameException e) {
-            out.writeObject(new ErrorMessage(e.getMessage()));
+            out.send(new ErrorMessage(e.getMessage()));
         }
 
 
@@ -168,92 +282,85 @@ public class GameRunner {
 
     private void handlePass() throws IOException {
         try {
-            game.pass(userSession.getID());
-            out.writeObject(new GameStateResponse(game, userSession));
+            Game.await(game.pass(userSession.getID()), RoundOver.class, GameException.class);
+            sendState(HeartbeatMessage.NO_STATE_VERSION);
         } catch (RoundOver ignore) {
             // a round cannot end by passing alone
+        } catch (GameException e) {
+            out.send(new ErrorMessage(e.getMessage()));
         } catch (UserSessionError userSessionError) {
-            out.writeObject(new ErrorMessage(userSessionError.getMessage()));
+            out.send(new ErrorMessage(userSessionError.getMessage()));
         }
     }
 
     private void leaveGameHandler() throws IOException, LeftGame {
         userSession.leaveCurrentGame();
-        out.writeObject(new Message(OK));
+        out.send(new Message(OK));
         throw new LeftGame();
     }
 
     private void giveCardsHandler(GiveCardsRequest request) throws IOException {
-        LOGGER.info(logPrefix() + "Entered giveCardsHandler...");
+        log.fine("Entered giveCardsHandler...");
         try {
-            game.giveCards(userSession.getID(), request.getCards());
-            LOGGER.info(logPrefix() + "Gave cards successfully, sending OK...");
-            out.writeObject(new Message(OK));
+            Game.await(game.giveCards(userSession.getID(), request.getCards()), GameException.class);
+            log.fine("Gave cards successfully, sending OK...");
+            out.send(new Message(OK));
         } catch (GameException e) {
-            LOGGER.warning(logPrefix() + "Couldn't give cards: " + e.getMessage());
-            out.writeObject(new ErrorMessage(e.getMessage()));
+            log.warning(() -> "Couldn't give cards: " + e.getMessage());
+            out.send(new ErrorMessage(e.getMessage()));
         }
     }
 
-    public void run() throws GameDisconnect, IOException {
+    /**
+     * Enters game mode by sending the client the initial game state
+     */
+    public void enter() throws IOException {
 
-        LOGGER.info("Entered game mode");
+        log.info("Entered game mode");
         try {
-            out.writeObject(new GameStateResponse(
-                    game, userSession
-            ));
+            sendState(HeartbeatMessage.NO_STATE_VERSION);
         } catch (UserSessionError | IOException userSessionError) {
-            out.writeObject(new ErrorMessage(userSessionError.toString()));
+            out.send(new ErrorMessage(userSessionError.toString()));
         }
         running = true;
-        while (running) {
+    }
 
-            LOGGER.fine("Awaiting request from: " + userSession.getToken() + "|" + userSession.getNick());
-            try {
+    /**
+     * Handles one game request from the client.
+     * @param request Message received from the client
+     * @return false when the client is no longer in the game
+     * @throws GameDisconnect if the client disconnected during the game
+     */
+    public boolean handle(Message request) throws GameDisconnect, IOException {
 
-                Message request;
-                try {
-                    request = (Message) in.readObject();
-                } catch (SocketTimeoutException e) {
-                    LOGGER.info("socket exception, breaking runloop");
-                    break;
-                } catch (EOFException e) {
-                    LOGGER.warning(
-                            "Got EOF while reading game request. Maybe you forgot to call disconnect()?"
-                    );
-                    throw new GameDisconnect();
-                }
-
-
-                switch (request.getMessageType()) {
-/*                            case RECONNECT -> { //TODO: timeout problem
-                            if (!handleReconnection(request))
-                                break runLoop;
-                        }*/
-                    case PLAY_CARDS -> handlePlayCards((PlayCardsRequest) request);
-                    case PASS_TURN -> handlePass();
-                    case GIVE_CARDS -> giveCardsHandler((GiveCardsRequest) request);
-                    case START_GAME -> validateGameStart();
-                    case STOP_GAME -> validateGameStop();
-                    case LEAVE_GAME -> leaveGameHandler();
-                    case CANCEL_GAME -> validateCancellation();
-                    case HEARTBEAT -> sendHeartbeatResponse((HeartbeatMessage) request);
-                    case DISCONNECT -> playerDisconnect();
-                    default -> out.writeObject(new ErrorMessage("Invalid game request"));
-                }
-
-
-            } catch (IOException | ClassNotFoundException e) {
-                LOGGER.warning(logPrefix() + "got exception: " + e.getMessage());
-                break;
-            } catch (GameDisconnect ignored) {
-                LOGGER.info(logPrefix() + "disconnected during game");
-                out.writeObject(new Message(OK));
-                throw new GameDisconnect();
-            } catch (LeftGame ignored) {
-                LOGGER.info(logPrefix() + "left game: " + game.getID().toString());
-                break;
+        log.fine(() -> "Handling " + request.getMessageType());
+        try {
+            switch (request.getMessageType()) {
+                case PLAY_CARDS -> handlePlayCards((PlayCardsRequest) request);
+                case PASS_TURN -> handlePass();
+                case GIVE_CARDS -> giveCardsHandler((GiveCardsRequest) request);
+                case START_GAME -> validateGameStart();
+                case STOP_GAME -> validateGameStop();
+                case ADD_BOT -> validateAddBot();
+                case LEAVE_GAME -> leaveGameHandler();
+                case CANCEL_GAME -> validateCancellation();
+                case HEARTBEAT -> sendHeartbeatResponse((HeartbeatMessage) request);
+                case SUBSCRIBE -> subscribe();
+                case DISCONNECT -> playerDisconnect();
+                default -> out.send(new ErrorMessage("Invalid game request"));
             }
+        } catch (GameDisconnect ignored) {
+            log.info("Disconnected during game");
+            close();
+            out.send(new Message(OK));
+            throw new GameDisconnect();
+        } catch (LeftGame ignored) {
+            log.info(() -> "Left game: " + game.getID());
+            running = false;
         }
+
+        if (!running)
+            close();
+        return running;
     }
 }
@@ -0,0 +1,93 @@
+package server;
+
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs a game's commands one at a time, in the order they were submitted,
+ * on a pool shared by every game.
+ *
+ * At most one pool thread drains a mailbox at a time, so commands see each
+ * other's changes without locking. A busy mailbox hands its thread back
+ * after a batch of commands, so one table can't hold up the others.
+ */
+class Mailbox implements Runnable {
+
+    /**
+     * A command that returns a result or throws
+     */
+    interface Command<T> {
+        T run() throws Exception;
+    }
+
+    private static final int BATCH = 64;   // commands run before yielding the thread
+
+    private final Executor executor;
+    private final Queue<Runnable> commands = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private volatile Thread runner;     // thread draining the mailbox, if any
+
+    Mailbox(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Queues a command. A command submitted by another command of the same
+     * mailbox runs straight away instead, like a reentrant lock, as it would
+     * otherwise wait for itself.
+     * @return CompletableFuture completed with the command's result, or with
+     *         what it threw
+     */
+    <T> CompletableFuture<T> submit(Command<T> command) {
+        return submit(command, true);
+    }
+
+    /**
+     * Queues a command behind those already waiting, even when called from
+     * one of the mailbox's own commands, e.g. to follow up on it once done
+     */
+    <T> CompletableFuture<T> enqueue(Command<T> command) {
+        return submit(command, false);
+    }
+
+    private <T> CompletableFuture<T> submit(Command<T> command, boolean reentrant) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Runnable task = () -> {
+            try {
+                result.complete(command.run());
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            }
+        };
+
+        if (reentrant && Thread.currentThread() == runner) {
+            task.run();
+            return result;
+        }
+
+        commands.add(task);
+        if (scheduled.compareAndSet(false, true))
+            executor.execute(this);
+        return result;
+    }
+
+    @Override
+    public void run() {
+        runner = Thread.currentThread();
+        try {
+            for (int i = 0; i < BATCH; i++) {
+                Runnable command = commands.poll();
+                if (command == null)
+                    break;
+                command.run();
+            }
+        } finally {
+            runner = null;
+            scheduled.set(false);
+            // commands queued after the last poll would otherwise wait for the next submit
+            if (!commands.isEmpty() && scheduled.compareAndSet(false, true))
+                executor.execute(this);
+        }
+    }
+}
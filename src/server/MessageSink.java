@@ -0,0 +1,15 @@
+package server;
+
+import protocol.Message;
+
+import java.io.IOException;
+
+/**
+ * Destination for responses to a single client connection.
+ *
+ * Lets the request handling code stay the same regardless of whether the
+ * connection is served by a blocking thread or by a selector reactor.
+ */
+public interface MessageSink {
+    void send(Message msg) throws IOException;
+}
@@ -0,0 +1,94 @@
+package server;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+
+/**
+ * A salted PBKDF2 hash of a game's password, which is all that's kept of
+ * it, in memory as well as in the journal and snapshots.
+ *
+ * Hashing is slow on purpose, so passwords are checked before a join is
+ * handed to the game's mailbox, rather than in it.
+ */
+final class PasswordHash {
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final int ITERATIONS = 10_000;
+    private static final int SALT_SIZE = 16;
+    private static final int HASH_SIZE = 32;
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final byte[] salt;
+    private final byte[] hash;
+
+    private PasswordHash(byte[] salt, byte[] hash) {
+        this.salt = salt;
+        this.hash = hash;
+    }
+
+    /**
+     * @param password char[] password, or null if the game is public
+     * @return PasswordHash with a new salt, or null for no password
+     */
+    static PasswordHash of(char[] password) {
+        if (password == null)
+            return null;
+        byte[] salt = new byte[SALT_SIZE];
+        RANDOM.nextBytes(salt);
+        return new PasswordHash(salt, hash(password, salt));
+    }
+
+    /**
+     * Compares in constant time, so how long it takes says nothing of
+     * how much of the password was right
+     * @param password char[] given by a player, or null
+     */
+    boolean matches(char[] password) {
+        return password != null && MessageDigest.isEqual(hash, hash(password, salt));
+    }
+
+    private static byte[] hash(char[] password, byte[] salt) {
+        PBEKeySpec spec = new PBEKeySpec(password, salt, ITERATIONS, HASH_SIZE * 8);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(ALGORITHM + " is not available", e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+
+    static int size() {
+        return SALT_SIZE + HASH_SIZE;
+    }
+
+    void put(ByteBuffer record) {
+        record.put(salt).put(hash);
+    }
+
+    static PasswordHash get(ByteBuffer record) {
+        byte[] salt = new byte[SALT_SIZE];
+        byte[] hash = new byte[HASH_SIZE];
+        record.get(salt).get(hash);
+        return new PasswordHash(salt, hash);
+    }
+
+    void write(DataOutput out) throws IOException {
+        out.write(salt);
+        out.write(hash);
+    }
+
+    static PasswordHash read(DataInput in) throws IOException {
+        byte[] salt = new byte[SALT_SIZE];
+        byte[] hash = new byte[HASH_SIZE];
+        in.readFully(salt);
+        in.readFully(hash);
+        return new PasswordHash(salt, hash);
+    }
+}
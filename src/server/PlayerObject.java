@@ -2,29 +2,48 @@ package server;
 
 import common.PlayerData;
 
-import static server.Server.SERVER_LOGGER;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class PlayerObject {
     private final UserSession session;
+    private final AtomicLong gameVersion;   // the game's state version, shared by all its players
     private PlayerData gameData;
-    private boolean stateUpdated;
+    private volatile long sentVersion;      // last state version sent to the player
+    private volatile Runnable stateListener;    // called on every change, from the game's mailbox
 
-    public PlayerObject(UserSession session, PlayerData gameData) {
+    /**
+     * @param session UserSession of the player
+     * @param gameData PlayerData of the player
+     * @param gameVersion AtomicLong state version of the game joined
+     */
+    public PlayerObject(UserSession session, PlayerData gameData, AtomicLong gameVersion) {
         this.session = session;
         this.gameData = gameData;
-        stateUpdated = true;
+        this.gameVersion = gameVersion;
+        sentVersion = -1;   // nothing sent yet
     }
 
-    public void stateHasBeenSent() {
-        synchronized (this) {
-            stateUpdated = false;
-        }
+    /**
+     * @param version long state version that was sent to the player.
+     *                Callers must record versions in the order they were sent.
+     */
+    public void stateHasBeenSent(long version) {
+        sentVersion = version;
     }
 
     public void newStateAvailable() {
-        synchronized (this) {
-            stateUpdated = true;
-        }
+        Runnable listener = stateListener;
+        if (listener != null)
+            listener.run();
+    }
+
+    /**
+     * @param listener Runnable notified of new states, or null to stop
+     *                 notifications. Must not block, as it runs in the
+     *                 game's mailbox.
+     */
+    public void setStateListener(Runnable listener) {
+        stateListener = listener;
     }
 
     public PlayerData getGameData() {
@@ -40,8 +59,13 @@ public class PlayerObject {
     }
 
     public boolean isStateUpdated() {
-        synchronized (this) {
-            return stateUpdated;
-        }
+        return gameVersion.get() > sentVersion;
+    }
+
+    /**
+     * @return long state versions the player has yet to be sent
+     */
+    public long getVersionsBehind() {
+        return Math.max(0, gameVersion.get() - sentVersion);
     }
 }
@@ -1,95 +1,238 @@
 package server;
 
-import client.ClientMain;
-
 import java.io.*;
-import java.util.ArrayList;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static server.Server.SERVER_LOGGER;
 
 /**
  * A filter to check if a string contains any illegal words.
  * Filters out both whole words, and words who has a substring matching a word in the profanityfilter.txt file
  * profanityfilter.txt file must be placed in the same folder as the JAR-file
  * Works with normal text, all kinds of CaPiTaLiZiNg, s p a c e s, l337sp3@K
+ *
+ * The words are compiled once into an Aho-Corasick automaton, which is
+ * immutable and shared by every connection. A check reads the input once,
+ * without allocating, following two streams through the automaton at the
+ * same time: the letters alone, which skips spaces and other characters,
+ * and every character with leet speak mapped to letters.
+ *
+ * The default filter can be swapped for a recompiled one at any time, see
+ * ProfanityFilterReloader, and checks in flight finish on the one they
+ * started with.
  */
-public class ProfanityFilter {
-
-    static ArrayList<String> wordsInFilter = new ArrayList<>();
-    static int largestWordLength = 0;
-    private int counter = 0;
-
-    public ProfanityFilter() {
-            try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(new File("profanityfilter.txt"))))) {
-                String line = reader.readLine();
-                while (line != null) {                      // loop through all lines
-                    wordsInFilter.add(line);                        // add line as a word
-                    counter++;                              // increase word count
-                    if(line.length() > largestWordLength) {
-                        largestWordLength = line.length();
-                    }
-                    line = reader.readLine();               // read next line
-                }
-                System.out.println("Profanity filter loaded " + counter + " words");
-            } catch (IOException e) {
-                System.out.println("Unable to load profanityfilter.txt file, no profanity filter will be used");
-            }
+public final class ProfanityFilter {
+
+    public static final String DEFAULT_FILE = "profanityfilter.txt";
+
+    private final int[] asciiSymbols;   // character -> symbol, or -1 if in no word
+    private final char[] alphabet;      // sorted, for characters beyond ASCII
+    private final int[] next;           // state * alphabet size + symbol -> state, failure links folded in
+    private final boolean[] matches;    // a word ends in the state, or in one of its suffixes
+    private final int patterns;
+
+    private static final AtomicReference<ProfanityFilter> current = new AtomicReference<>(loadDefault());
+
+    private ProfanityFilter(int[] asciiSymbols, char[] alphabet, int[] next, boolean[] matches, int patterns) {
+        this.asciiSymbols = asciiSymbols;
+        this.alphabet = alphabet;
+        this.next = next;
+        this.matches = matches;
+        this.patterns = patterns;
     }
 
+    /**
+     * @return ProfanityFilter in use, at first loaded from profanityfilter.txt
+     *         in the working directory, or one that filters nothing if the
+     *         file can't be read
+     */
+    public static ProfanityFilter getDefault() {
+        return current.get();
+    }
 
     /**
-     * Iterates over a String input and checks whether a cuss word was found in a list
-     * @param input String that should be checked for bad words
-     * @return true if any bad words were found.
+     * Swaps in a new filter for all checks from now on
      */
+    public static void setDefault(ProfanityFilter filter) {
+        current.set(Objects.requireNonNull(filter));
+    }
 
-    public boolean checkForBadWords(String input) {
-        if(input == null) {
-            return false;
+    private static ProfanityFilter loadDefault() {
+        try {
+            long start = System.nanoTime();
+            ProfanityFilter filter = load(Paths.get(DEFAULT_FILE));
+            SERVER_LOGGER.info(String.format(
+                    "Profanity filter loaded %s in %.1f ms", filter, (System.nanoTime() - start) / 1e6
+            ));
+            return filter;
+        } catch (IOException e) {
+            SERVER_LOGGER.warning("Unable to load " + DEFAULT_FILE + " file, no profanity filter will be used");
+            return compile(Collections.emptyList());
         }
+    }
+
+    /**
+     * @param file Path of a word list, one word per line
+     */
+    public static ProfanityFilter load(Path file) throws IOException {
+        return compile(Files.readAllLines(file, StandardCharsets.UTF_8));
+    }
 
-        String alphabetInput = input.toLowerCase().replaceAll("[^a-zA-Z]", ""); // ignore non-alphabet characters
+    /**
+     * @param words Collection of words to filter, matched regardless of case
+     */
+    public static ProfanityFilter compile(Collection<String> words) {
+        List<String> lowered = new ArrayList<>();
+        TreeSet<Character> characters = new TreeSet<>();
+        int maxStates = 1;
+        for (String word : words) {
+            if (word.isEmpty())
+                continue;
+            String lower = word.toLowerCase(Locale.ROOT);
+            lowered.add(lower);
+            maxStates += lower.length();
+            for (int i = 0; i < lower.length(); i++)
+                characters.add(lower.charAt(i));
+        }
 
-        ArrayList<String> badWords = new ArrayList<>();
+        char[] alphabet = new char[characters.size()];
+        int[] asciiSymbols = new int[128];
+        Arrays.fill(asciiSymbols, -1);
+        int symbol = 0;
+        for (char c : characters) {
+            alphabet[symbol] = c;
+            if (c < 128)
+                asciiSymbols[c] = symbol;
+            symbol++;
+        }
 
-        // iterate over each letter in the word
-        for(int start = 0; start < alphabetInput.length(); start++) {
-            // from each letter, keep going to find bad words until either the end or the max word length is reached
-            for(int offset = 1; offset < (alphabetInput.length()+1 - start) && offset < largestWordLength+1; offset++)  {
-                String wordToCheck = alphabetInput.substring(start, start + offset);
-                if(wordsInFilter.contains(wordToCheck)) {
-                        badWords.add(wordToCheck);
-                }
+        // the trie of the words
+        int size = Math.max(1, alphabet.length);
+        int[] next = new int[maxStates * size];
+        Arrays.fill(next, -1);
+        boolean[] matches = new boolean[maxStates];
+        int states = 1;
+        for (String word : lowered) {
+            int state = 0;
+            for (int i = 0; i < word.length(); i++) {
+                int s = Arrays.binarySearch(alphabet, word.charAt(i));
+                if (next[state * size + s] < 0)
+                    next[state * size + s] = states++;
+                state = next[state * size + s];
             }
+            matches[state] = true;
         }
 
-        String allCharsInput = input.toLowerCase();
-
-        // Check for leet speak
-        allCharsInput = allCharsInput.replaceAll("1","i");
-        allCharsInput = allCharsInput.replaceAll("!","i");
-        allCharsInput = allCharsInput.replaceAll("3","e");
-        allCharsInput = allCharsInput.replaceAll("4","a");
-        allCharsInput = allCharsInput.replaceAll("@","a");
-        allCharsInput = allCharsInput.replaceAll("5","s");
-        allCharsInput = allCharsInput.replaceAll("\\$","s");
-        allCharsInput = allCharsInput.replaceAll("7","t");
-        allCharsInput = allCharsInput.replaceAll("0","o");
-        allCharsInput = allCharsInput.replaceAll("9","g");
-
-        // check again, now with leet speak enabled in filter
-        for(int start = 0; start < allCharsInput.length(); start++) {
-            for(int offset = 1; offset < (allCharsInput.length()+1 - start) && offset < largestWordLength+1; offset++)  {
-                String wordToCheck = allCharsInput.substring(start, start + offset);
-                if(wordsInFilter.contains(wordToCheck)) {
-                    badWords.add(wordToCheck);
+        // breadth first, pointing missing edges where the failure link would lead
+        int[] failure = new int[states];
+        int[] queue = new int[states];
+        int head = 0;
+        int tail = 0;
+        for (int s = 0; s < size; s++) {
+            int child = next[s];
+            if (child < 0) {
+                next[s] = 0;
+            } else {
+                failure[child] = 0;
+                queue[tail++] = child;
+            }
+        }
+        while (head < tail) {
+            int state = queue[head++];
+            for (int s = 0; s < size; s++) {
+                int child = next[state * size + s];
+                int fallback = next[failure[state] * size + s];
+                if (child < 0) {
+                    next[state * size + s] = fallback;
+                } else {
+                    failure[child] = fallback;
+                    matches[child] |= matches[fallback];
+                    queue[tail++] = child;
                 }
             }
         }
 
-//        // print the bad words found
-//        for(String s: badWords) {
-//            System.out.println(s + " qualified as a bad word in a username");
-//        }
+        return new ProfanityFilter(
+                asciiSymbols,
+                alphabet,
+                Arrays.copyOf(next, states * size),
+                Arrays.copyOf(matches, states),
+                lowered.size()
+        );
+    }
+
+    /**
+     * Checks whether the input contains a filtered word, in linear time
+     * @param input String that should be checked for bad words
+     * @return true if any bad words were found.
+     */
+    public boolean checkForBadWords(String input) {
+        if (input == null || patterns == 0)
+            return false;
+
+        int letters = 0;
+        int leet = 0;
+        for (int i = 0; i < input.length(); i++) {
+            char c = Character.toLowerCase(input.charAt(i));
+            if (c >= 'a' && c <= 'z') {
+                letters = step(letters, c);
+                if (matches[letters])
+                    return true;
+            }
+            leet = step(leet, unleet(c));
+            if (matches[leet])
+                return true;
+        }
+        return false;
+    }
+
+    private int step(int state, char c) {
+        int symbol = c < 128 ? asciiSymbols[c] : Arrays.binarySearch(alphabet, c);
+        // no word has the character, so no match can span it
+        if (symbol < 0)
+            return 0;
+        return next[state * alphabet.length + symbol];
+    }
+
+    private static char unleet(char c) {
+        return switch (c) {
+            case '1', '!' -> 'i';
+            case '3' -> 'e';
+            case '4', '@' -> 'a';
+            case '5', '$' -> 's';
+            case '7' -> 't';
+            case '0' -> 'o';
+            case '9' -> 'g';
+            default -> c;
+        };
+    }
+
+    /**
+     * @return int number of words filtered
+     */
+    public int getPatternCount() {
+        return patterns;
+    }
+
+    /**
+     * @return int states of the automaton
+     */
+    public int getStateCount() {
+        return matches.length;
+    }
+
+    /**
+     * @return long approximate bytes held by the automaton
+     */
+    public long getMemoryFootprint() {
+        return 4L * next.length + matches.length + 4L * asciiSymbols.length + 2L * alphabet.length;
+    }
 
-        return badWords.size() > 0;
+    @Override
+    public String toString() {
+        return patterns + " words, " + getStateCount() + " states, " + getMemoryFootprint() + " bytes";
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,94 @@
+package server;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+import static server.Server.SERVER_LOGGER;
+
+/**
+ * Watches a word list, and recompiles the profanity filter in the
+ * background whenever the file changes, handing each new filter on to be
+ * published. A list that fails to load leaves the filter in use alone.
+ */
+public class ProfanityFilterReloader implements Closeable {
+
+    // editors tend to write a file in several steps, so changes are read once they settle
+    private static final long SETTLE_MILLIS = 200;
+
+    private final Path file;
+    private final Consumer<ProfanityFilter> publish;
+    private final WatchService watcher;
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    /**
+     * @param file Path of the word list to watch
+     * @param publish Consumer receiving every filter compiled, e.g. ProfanityFilter::setDefault
+     * @throws IOException if the file's directory can't be watched
+     */
+    public ProfanityFilterReloader(Path file, Consumer<ProfanityFilter> publish) throws IOException {
+        this.file = file.toAbsolutePath();
+        this.publish = publish;
+        watcher = this.file.getFileSystem().newWatchService();
+        this.file.getParent().register(watcher, ENTRY_CREATE, ENTRY_MODIFY);
+        thread = new Thread(this::watch, "ProfanityFilterReloader");
+        thread.setDaemon(true);
+    }
+
+    /**
+     * Watches the default word list, and makes every reload the default filter
+     */
+    public static ProfanityFilterReloader watchDefault() throws IOException {
+        return new ProfanityFilterReloader(Paths.get(ProfanityFilter.DEFAULT_FILE), ProfanityFilter::setDefault);
+    }
+
+    public ProfanityFilterReloader start() {
+        thread.start();
+        return this;
+    }
+
+    private void watch() {
+        Path name = file.getFileName();
+        while (running) {
+            try {
+                WatchKey key = watcher.take();
+                boolean changed = false;
+                do {
+                    for (WatchEvent<?> event : key.pollEvents())
+                        if (name.equals(event.context()))
+                            changed = true;
+                    key.reset();
+                } while ((key = watcher.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS)) != null);
+
+                if (changed)
+                    reload();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+        }
+    }
+
+    private void reload() {
+        long start = System.nanoTime();
+        try {
+            ProfanityFilter filter = ProfanityFilter.load(file);
+            publish.accept(filter);
+            SERVER_LOGGER.info(String.format(
+                    "Profanity filter reloaded %s in %.1f ms", filter, (System.nanoTime() - start) / 1e6
+            ));
+        } catch (IOException e) {
+            SERVER_LOGGER.warning("Unable to reload " + file + ", keeping the filter in use: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        watcher.close();
+        thread.interrupt();
+    }
+}
@@ -0,0 +1,579 @@
+package server;
+
+import protocol.*;
+
+import java.io.*;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static server.Server.SERVER_LOGGER;
+
+/**
+ * Non-blocking server mode, serving all client connections from a small,
+ * fixed number of selector threads instead of one thread per client.
+ *
+ * Clients talk to the reactor using length-prefixed frames (see FrameCodec),
+ * in either Java serialization or the binary codec.
+ * Clients speaking the old object stream protocol are detected by their
+ * first bytes and handed over to a regular blocking ClientHandler thread,
+ * so they keep working.
+ *
+ * Requests are handled on worker threads, one at a time and in order per
+ * connection, since handling one may wait on a game's mailbox. Selector
+ * threads never block, so a busy game only holds up its own players.
+ */
+public class ReactorServer {
+    private static final int INITIAL_READ_BUFFER = 512;
+    private static final long SWEEP_INTERVAL = 1000;
+    private static final int WRITE_BUFFER_SIZE = 16*1024;
+    private static final int POOLED_WRITE_BUFFERS = 64;
+    private static final int MAX_QUEUED_REQUESTS = 64;   // per connection, before reading pauses
+
+    private final Reactor[] reactors;
+    private final boolean reusePort;
+    private final long idleTimeout;
+    private final boolean tcpNoDelay;
+    private final List<ServerSocketChannel> acceptors = new ArrayList<>();
+    private final ExecutorService workers = Executors.newCachedThreadPool(workerThreads());
+    private volatile boolean running;
+    private int nextReactor = 0;
+
+    /**
+     * @param reactorThreads int number of selector threads
+     * @param reusePort boolean, if supported, gives every reactor its own
+     *                  SO_REUSEPORT acceptor instead of sharing one
+     * @param idleTimeout long milliseconds before idle connections are closed,
+     *                    or 0 to never close them
+     * @param tcpNoDelay boolean, true to set TCP_NODELAY on client sockets
+     */
+    public ReactorServer(int reactorThreads, boolean reusePort, long idleTimeout, boolean tcpNoDelay) {
+        this.reactors = new Reactor[Math.max(1, reactorThreads)];
+        this.reusePort = reusePort;
+        this.idleTimeout = idleTimeout;
+        this.tcpNoDelay = tcpNoDelay;
+    }
+
+    /**
+     * Starts the reactor threads and blocks until the server is stopped
+     * @param port int port to listen on
+     */
+    public void start(int port) throws IOException {
+        running = true;
+        for (int i = 0; i < reactors.length; i++)
+            reactors[i] = new Reactor(i);
+
+        boolean ownAcceptors = reusePort && supportsReusePort();
+        if (reusePort && !ownAcceptors)
+            SERVER_LOGGER.warning("SO_REUSEPORT not supported, sharing a single acceptor");
+
+        if (ownAcceptors) {
+            for (Reactor reactor : reactors)
+                reactor.listen(openAcceptor(port, true));
+        } else {
+            reactors[0].listen(openAcceptor(port, false));
+        }
+
+        SERVER_LOGGER.info("Started " + reactors.length + " reactor threads");
+        for (Reactor reactor : reactors)
+            reactor.start();
+
+        for (Reactor reactor : reactors) {
+            try {
+                reactor.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    public void stop() throws IOException {
+        running = false;
+        synchronized (acceptors) {
+            for (ServerSocketChannel acceptor : acceptors)
+                acceptor.close();
+        }
+        for (Reactor reactor : reactors)
+            if (reactor != null)
+                reactor.selector.wakeup();
+    }
+
+    // virtual threads where the JDK has them, as workers mostly wait on games
+    private static ThreadFactory workerThreads() {
+        ThreadFactory virtualThreads = Server.virtualThreadFactory();
+        if (virtualThreads != null)
+            return virtualThreads;
+        AtomicInteger count = new AtomicInteger();
+        return r -> {
+            Thread thread = new Thread(r, "ReactorWorker-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private boolean supportsReusePort() {
+        try (ServerSocketChannel channel = ServerSocketChannel.open()) {
+            return channel.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private ServerSocketChannel openAcceptor(int port, boolean reusePort) throws IOException {
+        ServerSocketChannel acceptor = ServerSocketChannel.open();
+        acceptor.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        if (reusePort)
+            acceptor.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+        acceptor.bind(new InetSocketAddress(port));
+        acceptor.configureBlocking(false);
+        synchronized (acceptors) {
+            acceptors.add(acceptor);
+        }
+        return acceptor;
+    }
+
+    private Reactor nextReactor() {
+        synchronized (this) {
+            Reactor reactor = reactors[nextReactor];
+            nextReactor = (nextReactor + 1) % reactors.length;
+            return reactor;
+        }
+    }
+
+
+    /**
+     * A selector thread owning a set of connections. All reads and socket
+     * writes for a connection happen on its reactor, while its requests
+     * are handled by workers.
+     */
+    private class Reactor extends Thread {
+        private final Selector selector;
+        private final Set<Connection> connections = new HashSet<>();
+        private final Queue<SocketChannel> adopted = new ConcurrentLinkedQueue<>();
+        private final Queue<Connection> pendingFlushes = new ConcurrentLinkedQueue<>();
+        private final List<Connection> handOffs = new ArrayList<>();
+        private final BufferPool writeBuffers = new BufferPool(WRITE_BUFFER_SIZE, POOLED_WRITE_BUFFERS);
+        private long lastSweep = System.currentTimeMillis();
+
+        public Reactor(int index) throws IOException {
+            super("Reactor-" + index);
+            selector = Selector.open();
+        }
+
+        public void listen(ServerSocketChannel acceptor) throws IOException {
+            acceptor.register(selector, SelectionKey.OP_ACCEPT);
+        }
+
+        /**
+         * Gives this reactor ownership of a newly accepted connection,
+         * may be called from any thread
+         */
+        public void adopt(SocketChannel channel) {
+            adopted.add(channel);
+            if (Thread.currentThread() != this)
+                selector.wakeup();
+        }
+
+        public void requestFlush(Connection connection) {
+            pendingFlushes.add(connection);
+            selector.wakeup();
+        }
+
+        public void run() {
+            while (running) {
+                try {
+                    selector.select(SWEEP_INTERVAL);
+                } catch (IOException e) {
+                    SERVER_LOGGER.warning(getName() + " failed to select: " + e.getMessage());
+                    break;
+                }
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+
+                    if (!key.isValid())
+                        continue;
+
+                    if (key.isAcceptable()) {
+                        accept((ServerSocketChannel) key.channel());
+                        continue;
+                    }
+
+                    Connection connection = (Connection) key.attachment();
+                    if (key.isWritable())
+                        connection.flush();
+                    if (key.isValid() && key.isReadable())
+                        connection.onReadable();
+                }
+
+                // also picks up connections accepted during this iteration
+                registerAdopted();
+
+                Connection connection;
+                while ((connection = pendingFlushes.poll()) != null)
+                    connection.flush();
+
+                handOffLegacyConnections();
+                sweepIdleConnections();
+            }
+
+            for (Connection c : new ArrayList<>(connections))
+                c.close(true);
+            try {
+                selector.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        private void accept(ServerSocketChannel acceptor) {
+            try {
+                SocketChannel channel;
+                while ((channel = acceptor.accept()) != null) {
+                    channel.configureBlocking(false);
+                    channel.setOption(StandardSocketOptions.TCP_NODELAY, tcpNoDelay);
+
+                    // a shared acceptor spreads connections over all reactors
+                    if (acceptors.size() == 1)
+                        nextReactor().adopt(channel);
+                    else
+                        adopt(channel);
+                }
+            } catch (IOException e) {
+                if (running)
+                    SERVER_LOGGER.warning("Failed to accept connection: " + e.getMessage());
+            }
+        }
+
+        private void registerAdopted() {
+            SocketChannel channel;
+            while ((channel = adopted.poll()) != null) {
+                try {
+                    Connection connection = new Connection(this, channel);
+                    connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+                    connections.add(connection);
+                } catch (IOException e) {
+                    SERVER_LOGGER.warning("Failed to register connection: " + e.getMessage());
+                }
+            }
+        }
+
+        private void handOff(Connection connection) {
+            connection.key.cancel();
+            connections.remove(connection);
+            handOffs.add(connection);
+        }
+
+        /**
+         * Connections using the object stream protocol are moved to a
+         * blocking ClientHandler thread. Their keys were cancelled, so a
+         * selectNow() is needed to deregister them before they can block.
+         */
+        private void handOffLegacyConnections() {
+            if (handOffs.isEmpty())
+                return;
+
+            try {
+                selector.selectNow();
+            } catch (IOException e) {
+                SERVER_LOGGER.warning("Failed to deregister legacy connections: " + e.getMessage());
+            }
+
+            for (Connection connection : handOffs) {
+                try {
+                    ByteBuffer buffer = connection.readBuffer;
+                    buffer.flip();
+                    byte[] consumed = new byte[buffer.remaining()];
+                    buffer.get(consumed);
+
+                    connection.channel.configureBlocking(true);
+                    new Thread(new Server.ClientHandler(connection.channel.socket(), consumed)).start();
+                } catch (IOException e) {
+                    SERVER_LOGGER.warning("Failed to hand off legacy connection: " + e.getMessage());
+                    connection.closeChannel();
+                }
+                // counted from here on by the handler it was handed to
+                connection.handler.closed();
+            }
+            handOffs.clear();
+        }
+
+        private void sweepIdleConnections() {
+            long now = System.currentTimeMillis();
+            if (idleTimeout <= 0 || now - lastSweep < SWEEP_INTERVAL)
+                return;
+            lastSweep = now;
+
+            for (Connection connection : new ArrayList<>(connections)) {
+                if (now - connection.lastActivity > idleTimeout) {
+                    connection.handler.getLog().info("socket timeout, closing connection");
+                    connection.close(true);
+                }
+            }
+        }
+    }
+
+
+    /**
+     * One client connection, confined to its reactor thread except for
+     * send(), which may be called from anywhere, and the handling of its
+     * requests, which is left to one worker at a time.
+     */
+    private class Connection implements MessageSink {
+        private final Reactor reactor;
+        private final SocketChannel channel;
+        private final ConnectionHandler handler;
+        private final FrameCodec codec = new FrameCodec();
+        private final Queue<ByteBuffer> writeQueue = new ConcurrentLinkedQueue<>();
+        private final Queue<Message> requests = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean handling = new AtomicBoolean();    // a worker is draining requests
+        private final AtomicBoolean lost = new AtomicBoolean();        // closed, and the handler not yet told
+        private ByteBuffer writeBuffer;     // pooled, and only held while output is pending
+        private SelectionKey key;
+        private ByteBuffer readBuffer = ByteBuffer.allocate(INITIAL_READ_BUFFER);
+        private long lastActivity = System.currentTimeMillis();
+        private boolean protocolDetected = false;
+        private volatile boolean closeAfterFlush = false;
+        private volatile boolean lostAfterFlush = false;   // closing after a bad request
+        private volatile boolean closed = false;
+
+        public Connection(Reactor reactor, SocketChannel channel) throws IOException {
+            this.reactor = reactor;
+            this.channel = channel;
+            this.handler = new ConnectionHandler(this, channel.getRemoteAddress().toString());
+        }
+
+        @Override
+        public void send(Message msg) throws IOException {
+            writeQueue.add(ByteBuffer.wrap(codec.encode(msg)));
+
+            // responses written on the reactor are flushed after the read batch
+            if (Thread.currentThread() != reactor)
+                reactor.requestFlush(this);
+        }
+
+        public void onReadable() {
+            int read;
+            try {
+                read = channel.read(readBuffer);
+            } catch (IOException e) {
+                handler.getLog().warning("Failed to read from client: " + e.getMessage());
+                close(true);
+                return;
+            }
+
+            if (read < 0) {
+                handler.getLog().warning(
+                        "Got EOF while reading request from client. Maybe you forgot to call disconnect()?"
+                );
+                close(true);
+                return;
+            }
+            lastActivity = System.currentTimeMillis();
+            handler.bytesReceived(read);
+
+            readBuffer.flip();
+            if (!protocolDetected) {
+                if (readBuffer.remaining() < 2) {
+                    readBuffer.compact();
+                    return;
+                }
+                protocolDetected = true;
+                if ((readBuffer.get(0) & 0xFF) == FrameCodec.STREAM_MAGIC_HI
+                        && (readBuffer.get(1) & 0xFF) == FrameCodec.STREAM_MAGIC_LO) {
+                    readBuffer.compact();
+                    reactor.handOff(this);
+                    return;
+                }
+            }
+
+            try {
+                int needed = 0;
+                while (!closeAfterFlush && readBuffer.remaining() >= FrameCodec.HEADER_SIZE) {
+                    int length = readBuffer.getInt(readBuffer.position());
+                    FrameCodec.checkLength(length);
+
+                    if (readBuffer.remaining() < FrameCodec.HEADER_SIZE + length) {
+                        needed = FrameCodec.HEADER_SIZE + length;
+                        break;
+                    }
+
+                    Message request = codec.decode(
+                            readBuffer.array(),
+                            readBuffer.arrayOffset() + readBuffer.position() + FrameCodec.HEADER_SIZE,
+                            length
+                    );
+                    readBuffer.position(readBuffer.position() + FrameCodec.HEADER_SIZE + length);
+
+                    requests.add(request);
+                }
+                compactReadBuffer(needed);
+            } catch (IOException | ClassNotFoundException | RuntimeException e) {
+                handler.getLog().warning("Closing connection after bad request: " + e);
+                close(true);
+                return;
+            }
+
+            // a client that doesn't wait for its answers isn't read from until they catch up
+            if (requests.size() >= MAX_QUEUED_REQUESTS)
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+            dispatch();
+        }
+
+        private void dispatch() {
+            if (handling.compareAndSet(false, true))
+                workers.execute(this::handleRequests);
+        }
+
+        /**
+         * Handles the queued requests on a worker, and tells the handler of
+         * a lost connection once the request in progress is done
+         */
+        private void handleRequests() {
+            try {
+                Message request;
+                while (!closed && !closeAfterFlush && (request = requests.poll()) != null)
+                    handle(request);
+                if (closed) {
+                    requests.clear();
+                    if (lost.getAndSet(false))
+                        handler.connectionLost();
+                }
+            } finally {
+                handling.set(false);
+            }
+
+            // picks up anything queued while finishing
+            if (lost.get() || !closed && !closeAfterFlush && !requests.isEmpty())
+                dispatch();
+            if (!closed)
+                reactor.requestFlush(this);
+        }
+
+        private void handle(Message request) {
+            try {
+                if (!handler.handle(request))
+                    closeAfterFlush = true;
+            } catch (IOException | RuntimeException e) {
+                handler.getLog().warning("Closing connection after bad request: " + e);
+                lostAfterFlush = true;
+                closeAfterFlush = true;
+            }
+        }
+
+        /**
+         * Compacts the read buffer, growing it to fit a partially received
+         * frame, and shrinking it back once it is empty so that idle
+         * connections stay small.
+         */
+        private void compactReadBuffer(int needed) {
+            if (needed > readBuffer.capacity()) {
+                ByteBuffer bigger = ByteBuffer.allocate(needed);
+                bigger.put(readBuffer);
+                readBuffer = bigger;
+            } else if (!readBuffer.hasRemaining() && readBuffer.capacity() > INITIAL_READ_BUFFER) {
+                readBuffer = ByteBuffer.allocate(INITIAL_READ_BUFFER);
+            } else {
+                readBuffer.compact();
+            }
+        }
+
+        /**
+         * Writes out the queued frames, packing as many as fit into a pooled
+         * direct buffer for each write. Waits for OP_WRITE if the socket
+         * buffer fills up.
+         */
+        public void flush() {
+            if (closed)
+                return;
+
+            try {
+                while (writeBuffer != null || !writeQueue.isEmpty()) {
+                    if (writeBuffer == null)
+                        writeBuffer = reactor.writeBuffers.acquire();
+                    coalesceQueuedFrames();
+
+                    writeBuffer.flip();
+                    handler.bytesSent(channel.write(writeBuffer));
+                    if (writeBuffer.hasRemaining()) {
+                        writeBuffer.compact();
+                        key.interestOps(SelectionKey.OP_WRITE);
+                        return;
+                    }
+
+                    reactor.writeBuffers.release(writeBuffer);
+                    writeBuffer = null;
+                }
+            } catch (IOException e) {
+                handler.getLog().warning("Failed to write to client: " + e.getMessage());
+                close(true);
+                return;
+            }
+
+            // reading stays paused until the worker catches up, and asks for a flush
+            if (closeAfterFlush)
+                close(lostAfterFlush);
+            else
+                key.interestOps(requests.size() < MAX_QUEUED_REQUESTS ? SelectionKey.OP_READ : 0);
+        }
+
+        // frames larger than the space left are split over several writes
+        private void coalesceQueuedFrames() {
+            ByteBuffer frame;
+            while (writeBuffer.hasRemaining() && (frame = writeQueue.peek()) != null) {
+                if (frame.remaining() <= writeBuffer.remaining()) {
+                    writeBuffer.put(frame);
+                    writeQueue.poll();
+                } else {
+                    int limit = frame.limit();
+                    frame.limit(frame.position() + writeBuffer.remaining());
+                    writeBuffer.put(frame);
+                    frame.limit(limit);
+                }
+            }
+        }
+
+        /**
+         * @param lost boolean, true if the client did not disconnect cleanly
+         */
+        public void close(boolean lost) {
+            if (closed)
+                return;
+            closed = true;
+
+            handler.getLog().info("Closing server connection...");
+            if (writeBuffer != null) {
+                reactor.writeBuffers.release(writeBuffer);
+                writeBuffer = null;
+            }
+            key.cancel();
+            reactor.connections.remove(this);
+            closeChannel();
+            handler.closed();
+
+            // told on a worker, as it may wait on the game
+            if (lost) {
+                this.lost.set(true);
+                dispatch();
+            }
+        }
+
+        private void closeChannel() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
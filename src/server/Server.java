@@ -1,16 +1,17 @@
 package server;
 
-import common.*;
 import protocol.*;
-import server.exceptions.*;
+import server.bots.BotPlayer;
+import server.metrics.*;
 
 import java.io.*;
 import java.net.*;
-import java.time.Instant;
-import java.util.*;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.*;
-
-import static protocol.MessageType.*;
+import javax.management.JMException;
 
 
 public class Server {
@@ -38,290 +39,358 @@ public class Server {
         }
     }
 
+    /**
+     * How client connections are served
+     */
+    public enum Mode {
+        THREAD_PER_CONNECTION,  // one blocking thread per client
+        VIRTUAL_THREADS,        // one blocking virtual thread per client
+        REACTOR                 // non-blocking, a few selector threads in total
+    }
+
     private ServerSocket serverSocket;
+    private ReactorServer reactorServer;
+    private ProfanityFilterReloader profanityReloader;
+    private MetricsEndpoint metricsEndpoint;
+    private int metricsPort = 0;
+    private Path journalDirectory;
+    private GameJournal journal;
+    private final Mode mode;
+    private final int reactorThreads;
+    private final boolean reusePort;
+    private boolean tcpNoDelay = Protocol.TCP_NO_DELAY;
     public static final Logger SERVER_LOGGER = Logger.getLogger(
             Server.class.getName()
     );
 
-    public Server() {
+    // every server log record is written out from here, off the request threads
+    public static final AsyncLogHandler ASYNC_HANDLER = new AsyncLogHandler(8192, CONSOLE_HANDLER);
+
+    static {
         SERVER_LOGGER.setLevel(Level.INFO);
-        SERVER_LOGGER.addHandler(CONSOLE_HANDLER);
+        SERVER_LOGGER.addHandler(ASYNC_HANDLER);
         //SERVER_LOGGER.addHandler(FILE_HANDLER);
         SERVER_LOGGER.setUseParentHandlers(false);
     }
 
+    public Server() {
+        this(Mode.THREAD_PER_CONNECTION, 0, false);
+    }
+
+    /**
+     * @param mode Mode for serving client connections
+     * @param reactorThreads int number of reactor threads, or 0 for one per core
+     * @param reusePort boolean giving each reactor its own SO_REUSEPORT acceptor
+     */
+    public Server(Mode mode, int reactorThreads, boolean reusePort) {
+        this.mode = mode;
+        this.reactorThreads = reactorThreads > 0
+                ? reactorThreads
+                : Runtime.getRuntime().availableProcessors();
+        this.reusePort = reusePort;
+    }
+
+    /**
+     * @param tcpNoDelay boolean, false to leave Nagle's algorithm on for
+     *                   client sockets. Must be set before start().
+     */
+    public void setTcpNoDelay(boolean tcpNoDelay) {
+        this.tcpNoDelay = tcpNoDelay;
+    }
+
+    /**
+     * @param metricsPort int local port to serve metrics as plain text on,
+     *                    or 0 for JMX only. Must be set before start().
+     */
+    public void setMetricsPort(int metricsPort) {
+        this.metricsPort = metricsPort;
+    }
+
+    /**
+     * @param journalDirectory Path to journal the games to, and recover
+     *                         them from, or null to not journal them.
+     *                         Must be set before start().
+     */
+    public void setJournalDirectory(Path journalDirectory) {
+        this.journalDirectory = journalDirectory;
+    }
+
     public void start(int port) throws IOException {
-        SERVER_LOGGER.info("Daifugo server starting on port " + port + "...");
+        SERVER_LOGGER.info("Daifugo server starting on port " + port + " (" + mode + ")...");
+        ProfanityFilter.getDefault();    // loaded before the first client needs it
+        try {
+            profanityReloader = ProfanityFilterReloader.watchDefault().start();
+        } catch (IOException e) {
+            SERVER_LOGGER.warning("Not watching " + ProfanityFilter.DEFAULT_FILE + " for changes: " + e.getMessage());
+        }
+        try {
+            ServerMetrics.get().registerMBeans();
+        } catch (JMException e) {
+            SERVER_LOGGER.warning("Metrics not registered with JMX: " + e.getMessage());
+        }
+        if (metricsPort > 0) {
+            metricsEndpoint = new MetricsEndpoint(ServerMetrics.get(), metricsPort).start();
+            SERVER_LOGGER.info("Serving metrics on http://localhost:" + metricsPort + MetricsEndpoint.PATH);
+        }
+        if (journalDirectory != null) {
+            // games are recovered before anyone can connect to reclaim a seat
+            journal = GameJournal.open(journalDirectory)
+                    .startSnapshots(GameJournal.DEFAULT_SNAPSHOT_INTERVAL_MILLIS);
+            SERVER_LOGGER.info("Journaling games to " + journalDirectory);
+        }
+        if (mode == Mode.REACTOR) {
+            reactorServer = new ReactorServer(
+                    reactorThreads, reusePort, Protocol.SOCKET_TIMEOUT, tcpNoDelay
+            );
+            reactorServer.start(port);
+            return;
+        }
+
+        ThreadFactory threads = Thread::new;
+        if (mode == Mode.VIRTUAL_THREADS) {
+            ThreadFactory virtualThreads = virtualThreadFactory();
+            if (virtualThreads != null)
+                threads = virtualThreads;
+            else
+                SERVER_LOGGER.warning("Virtual threads not available, using platform threads");
+        }
+
         serverSocket = new ServerSocket(port);
-        while (true)
-            new Server.ClientHandler(serverSocket.accept()).start();
+        while (true) {
+            Socket socket = serverSocket.accept();
+            socket.setTcpNoDelay(tcpNoDelay);
+            threads.newThread(new Server.ClientHandler(socket)).start();
+        }
+    }
+
+    /**
+     * Looks up Thread.ofVirtual() reflectively, so that the server still
+     * builds and runs on JDKs without virtual threads
+     * @return ThreadFactory creating virtual threads, or null if not supported
+     */
+    static ThreadFactory virtualThreadFactory() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass
+                    .getMethod("name", String.class, long.class)
+                    .invoke(builder, "client-", 0L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
     }
 
     public void stop() throws IOException {
         SERVER_LOGGER.info("Stopping server...");
-        serverSocket.close();
+        if (profanityReloader != null)
+            profanityReloader.close();
+        if (metricsEndpoint != null)
+            metricsEndpoint.close();
+        if (reactorServer != null)
+            reactorServer.stop();
+        if (serverSocket != null)
+            serverSocket.close();
+        if (journal != null) {
+            journal.close();
+            journal = null;
+        }
 
         // ensures that subsequent server restarts during testing
         // doesn't continue counting from last user number
         UserSession._reset();
         Game._reset();
+        ASYNC_HANDLER.flush();
     }
 
+    /**
+     * Options:
+     *   --virtual-threads  serve each connection on a virtual thread (Java 21+)
+     *   --reactor          serve connections with non-blocking reactor threads
+     *   --reactors=N       number of reactor threads, defaults to one per core
+     *   --reuseport        one SO_REUSEPORT acceptor per reactor, where supported
+     *   --nagle            leave Nagle's algorithm on, i.e. don't set TCP_NODELAY
+     *   --bot-rollouts=N   rollouts per move of bots, i.e. how strong they play
+     *   --metrics-port=N   serve metrics as plain text on localhost:N/metrics
+     *   --journal=DIR      journal games to DIR, and recover them from it on start
+     */
     public static void main(String[] args) throws IOException {
-        Server server = new Server();
+        Mode mode = Mode.THREAD_PER_CONNECTION;
+        int reactors = 0;
+        boolean reusePort = false;
+        boolean tcpNoDelay = Protocol.TCP_NO_DELAY;
+        int metricsPort = 0;
+        Path journalDirectory = null;
+
+        for (String arg : args) {
+            if (arg.equals("--virtual-threads"))
+                mode = Mode.VIRTUAL_THREADS;
+            else if (arg.equals("--reactor"))
+                mode = Mode.REACTOR;
+            else if (arg.startsWith("--reactors="))
+                reactors = Integer.parseInt(arg.substring("--reactors=".length()));
+            else if (arg.equals("--reuseport"))
+                reusePort = true;
+            else if (arg.equals("--nagle"))
+                tcpNoDelay = false;
+            else if (arg.startsWith("--bot-rollouts="))
+                BotPlayer.setDefaultRollouts(Integer.parseInt(arg.substring("--bot-rollouts=".length())));
+            else if (arg.startsWith("--metrics-port="))
+                metricsPort = Integer.parseInt(arg.substring("--metrics-port=".length()));
+            else if (arg.startsWith("--journal="))
+                journalDirectory = Paths.get(arg.substring("--journal=".length()));
+            else
+                SERVER_LOGGER.warning("Ignoring unknown option: " + arg);
+        }
+
+        Server server = new Server(mode, reactors, reusePort);
+        server.setTcpNoDelay(tcpNoDelay);
+        server.setMetricsPort(metricsPort);
+        server.setJournalDirectory(journalDirectory);
         server.start(Protocol.PORT);
     }
 
-    private static class ClientHandler extends Thread {
-        private static Logger LOGGER;
+    /**
+     * Serves a single client connection on its own blocking thread,
+     * which may be a platform or a virtual thread
+     */
+    static class ClientHandler implements Runnable {
         private final Socket clientSocket;
-        private ObjectOutputStream out;
+        private final byte[] consumed;
+        private boolean framed;
+        private ManagedObjectOutputStream out;
         private ObjectInputStream in;
-        private UserSession currentSession = null;
-        private final ProfanityFilter profanityFilter = new ProfanityFilter();
+        private FrameCodec codec;
+        private DataOutputStream frameOut;
+        private DataInputStream frameIn;
+        private final ReentrantLock sendLock = new ReentrantLock();
 
         public ClientHandler(Socket socket) throws SocketException {
-            clientSocket = socket;
-            clientSocket.setSoTimeout(Protocol.SOCKET_TIMEOUT);
-            LOGGER = SERVER_LOGGER;
-            LOGGER.info("New connection from: " + clientSocket.getInetAddress().toString());
+            this(socket, new byte[0]);
         }
 
-        private void sendInvalidRequest() throws IOException {
-            sendError("Invalid request");
-        }
-
-        private void sendError(String msg) throws IOException {
-            out.writeObject(
-                    new ErrorMessage(msg)
-            );
-        }
-
-        private void sendHeartbeatResponse() throws IOException {
-            long receiveTime = Instant.now().toEpochMilli();
-            out.writeObject(
-                    new HeartbeatMessage(receiveTime)
-            );
+        /**
+         * @param socket Socket in blocking mode
+         * @param consumed byte[] already read from the socket by someone else,
+         *                 which will be read again before the socket input
+         */
+        public ClientHandler(Socket socket, byte[] consumed) throws SocketException {
+            clientSocket = socket;
+            this.consumed = consumed;
+            clientSocket.setSoTimeout(Protocol.SOCKET_TIMEOUT);
         }
 
-        //TODO: timeout problem
-/*        private boolean handleReconnection(Message request) throws IOException {
-            if (currentSession != null) {
-                sendInvalidRequest();
-                return false;
-            }
-
-            LOGGER.info("handling reconnect");
-            try {
-                ReconnectMessage tmp = (ReconnectMessage) request;
-                currentSession = UserSession.retrieveSessionFromToken(
-                        tmp.getToken()
+        /**
+         * Sets up the streams, using length-prefixed frames unless the
+         * client starts with an object stream header
+         */
+        private void openStreams(ConnectionHandler handler) throws IOException {
+            InputStream input = new CountingInputStream(clientSocket.getInputStream(), handler::bytesReceived);
+            OutputStream output = new CountingOutputStream(clientSocket.getOutputStream(), handler::bytesSent);
+            if (consumed.length > 0)
+                input = new SequenceInputStream(new ByteArrayInputStream(consumed), input);
+            BufferedInputStream buffered = new BufferedInputStream(input);
+
+            buffered.mark(2);
+            int hi = buffered.read();
+            int lo = buffered.read();
+            buffered.reset();
+            if (lo < 0)
+                throw new EOFException("Connection closed before first request");
+
+            framed = hi != FrameCodec.STREAM_MAGIC_HI || lo != FrameCodec.STREAM_MAGIC_LO;
+            if (framed) {
+                codec = new FrameCodec();
+                frameOut = new DataOutputStream(new BufferedOutputStream(output));
+                frameIn = new DataInputStream(buffered);
+            } else {
+                // buffered, so that each message leaves in a single flush
+                out = new ManagedObjectOutputStream(
+                        new BufferedOutputStream(output)
                 );
-            } catch (UserSessionError e) {
-                sendError(e.toString());
+                out.flush();    // the stream header, which the client waits for
+                in = new ObjectInputStream(buffered);
             }
-            return true;
-        }*/
-
-        private void createNewSession() throws IOException {
-            if (currentSession != null) {
-                out.writeObject(new ErrorMessage("Already connected"));
-                return;
-            }
-
-            currentSession = new UserSession();
-            out.writeObject(
-                    new IdentityResponse(
-                        currentSession.getToken(),
-                        currentSession.getNick()
-                    )
-            );
-
-            LOGGER = Logger.getLogger(
-                    "User: " + currentSession.getToken() + clientSocket.getInetAddress().toString()
-            );
-            LOGGER.addHandler(CONSOLE_HANDLER);
-            LOGGER.setLevel(Level.INFO);
-            // TODO: add file logging:
-            //LOGGER.addHandler(FILE_HANDLER);
-            LOGGER.setUseParentHandlers(false);
         }
 
-        private void updateNick(UpdateNickMessage request) throws IOException {
-            LOGGER.info("Received request to change nick from " + currentSession.getNick());
+        // pushed game events are written from other threads than responses
+        private void send(Message msg) throws IOException {
+            sendLock.lock();
             try {
-                String tmp = currentSession.getNick();
-                if(request.getNick().length() < 3) {
-                    out.writeObject(
-                            new ErrorMessage("Nick change unsuccessful, new nick is too short!")
-                    );
-                    return;
-                }
-                if(profanityFilter.checkForBadWords(request.getNick())){
-                    out.writeObject(
-                            new ErrorMessage("Nick change unsuccessful due to a bad word!")
-                    );
-                    return;
-                }
-
-                currentSession.setNick(request.getNick());
-                out.writeObject(
-                        new IdentityResponse(
-                                request.getToken(),
-                                currentSession.getNick()
-                        )
-                );
-                LOGGER.info("Successfully changed nick from " + tmp + " to " + currentSession.getNick());
-            }
-            catch (UserSessionError e) {
-                out.writeObject(
-                        new ErrorMessage(e.toString())
-                );
+                if (framed)
+                    codec.write(frameOut, msg);
+                else
+                    out.writeMessage(msg);
+            } finally {
+                sendLock.unlock();
             }
         }
 
-        private void sendGameList() throws IOException {
-            List<GameListing> list;
-
-            try {
-                list = Game.getGameList();
-            } catch (UserSessionError | GameException e) {
-                out.writeObject(new ErrorMessage(e.toString()));
-                return;
-            }
-
-            out.writeObject(
-                    new GameListResponse(list)
-            );
+        private Message receive() throws IOException, ClassNotFoundException {
+            if (framed)
+                return codec.read(frameIn);
+            return (Message) in.readObject();
         }
 
-        private void createNewGame(NewGameMessage request) throws IOException, GameDisconnect {
-            LOGGER.info("Creating new game");
-            if(request.getTitle().length() < 3) {
-                out.writeObject(
-                        new ErrorMessage("Could not create new game, game title is too short! Minimum 3 characters needed.")
-                );
+        // objects sent before entering or leaving a game won't be sent again
+        private void requestStreamReset() {
+            if (out == null)
                 return;
-            }
-            if(profanityFilter.checkForBadWords(request.getTitle())){
-                out.writeObject(
-                        new ErrorMessage("Could not create new game, game title includes a bad word!")
-                );
-                return;
-            }
-            Game game;
+            sendLock.lock();
             try {
-                game = new Game(
-                        currentSession.getID(),
-                        request.getTitle(),
-                        request.getPassword()
-                );
-                LOGGER.info(currentSession.getNick() + " created game: " + game.getTitle() + " " + game.getID().toString());
-            } catch (UserSessionError | GameException e) {
-                out.writeObject(new ErrorMessage(e.toString()));
-                return;
+                out.requestReset();
+            } finally {
+                sendLock.unlock();
             }
-            runGameMode();
-        }
-
-        private void joinExistingGame(JoinGameRequest request) throws IOException, GameDisconnect {
-            try {
-                Game game = Game.getGameByID(UUID.fromString(request.getGameID()));
-                game.joinGame(currentSession, request.getPassword());
-
-            } catch (GameException e) {
-                out.writeObject(new ErrorMessage(e.getMessage()));
-                return;
-            } catch (WrongPassword ignored) {
-                out.writeObject(new PasswordError());
-                return;
-            }
-
-            runGameMode();
-        }
-
-        /**
-         * Runs a separate game loop, thus entering a new mode of responding
-         * to client messages
-         */
-        private void runGameMode() throws IOException, GameDisconnect {
-            new GameRunner(currentSession, in, out).run();
         }
 
         public void run() {
+            ConnectionHandler handler = new ConnectionHandler(
+                    this::send,
+                    clientSocket.getInetAddress().toString()
+            );
 
             // setting up object channels
+            boolean connected = true;
             try {
-                out = new ObjectOutputStream(clientSocket.getOutputStream());
-                in = new ObjectInputStream(clientSocket.getInputStream());
+                openStreams(handler);
             } catch (IOException e) {
-                e.printStackTrace();
+                handler.getLog().warning("Failed to set up connection: " + e.getMessage());
+                connected = false;
             }
 
 
             // Starting communication loop
-            runLoop:
-            while (true) {
+            while (connected) {
                 try {
 
                     Message request;
                     try {
-                        request = (Message) in.readObject(); // EOF
+                        request = receive(); // EOF
                     } catch (SocketTimeoutException e) {
-                        LOGGER.info("socket exception, breaking runloop");
+                        handler.getLog().info("socket exception, breaking runloop");
+                        handler.connectionLost();
                         break;
                     } catch (EOFException e) {
-                        LOGGER.warning(
+                        handler.getLog().warning(
                                 "Got EOF while reading request from client. Maybe you forgot to call disconnect()?"
                                 //  maybe this happens because DISCONNECT not sent?
                                 // yup
                                 // no, it happens because unclean socket termination
                         );
-                        //LOGGER.warning("Disconnecting from client");
-                        //request = new Message(DISCONNECT);
+                        handler.connectionLost();
                         break;
                     }
 
-                    LOGGER.fine("past first try-catch");
-
-                    if (currentSession == null
-                            && request.getMessageType() != CONNECT
-                            //&& request.getMessageType() != RECONNECT
-                            && request.getMessageType() != DISCONNECT
-                    ) {
-                        sendInvalidRequest();
-
-                    } else {
-                        if (currentSession != null)
-                            LOGGER.fine("Awaiting request from: " + currentSession.getToken() + "|" + currentSession.getNick());
-                        switch (request.getMessageType()) {
-                            case CONNECT -> createNewSession();
-/*                            case RECONNECT -> { //TODO: timeout problem
-                                if (!handleReconnection(request))
-                                    break runLoop;
-                            }*/
-                            case HEARTBEAT -> sendHeartbeatResponse();
-                            case UPDATE_NICK -> updateNick((UpdateNickMessage) request);
-                            case GET_GAME_LIST -> sendGameList();
-                            case NEW_GAME -> createNewGame((NewGameMessage) request);
-                            case JOIN_GAME -> joinExistingGame((JoinGameRequest) request);
-                            case DISCONNECT -> {
-                                if (currentSession != null) {
-                                    currentSession.endSession();
-                                }
-                                out.writeObject(new Message(MessageType.OK));
-                                break runLoop;
-                            }
-                            default -> sendError("Non-implemented request type");
-                        }
-                    }
-
+                    boolean wasInGame = handler.isInGame();
+                    if (!handler.handle(request))
+                        break;
+                    if (handler.isInGame() != wasInGame)
+                        requestStreamReset();
 
                 } catch (IOException | ClassNotFoundException e) {
                     e.printStackTrace();
-                    break;
-                } catch (GameDisconnect ignored) {
-                    currentSession.endSession();
+                    handler.connectionLost();
                     break;
                 }
             }
@@ -329,13 +398,23 @@ public class Server {
 
             // Done with run loop, closing connection.
             try {
-                LOGGER.info("Closing server connection...");
-                in.close();
-                out.close();
+                handler.getLog().info("Closing server connection...");
+                if (in != null)
+                    in.close();
+                if (out != null) {
+                    handler.getLog().fine(() ->
+                            "Object stream reset " + out.getResets() + " times, peak of "
+                                    + out.getPeakRetainedHandles() + " retained handles"
+                    );
+                    out.close();
+                }
+                if (frameOut != null)
+                    frameOut.close();
                 clientSocket.close();
             } catch (IOException e) {
                 e.printStackTrace();
             }
+            handler.closed();
         }
     }
 }
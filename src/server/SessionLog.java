@@ -0,0 +1,80 @@
+package server;
+
+import java.util.function.Supplier;
+import java.util.logging.*;
+
+/**
+ * Logs for one client connection through the server's logger, with the
+ * connection's context fields put in front of every message.
+ *
+ * Replaces the logger each session used to get: LogManager keeps every
+ * named logger for good, so those leaked one per connection. Messages
+ * are given as suppliers, and only built if their level is logged.
+ */
+public class SessionLog {
+    private final Logger logger;
+    private final String remoteAddress;
+    private volatile UserSession session;
+
+    public SessionLog(Logger logger, String remoteAddress) {
+        this.logger = logger;
+        this.remoteAddress = remoteAddress;
+    }
+
+    /**
+     * @param session UserSession whose token and nick are logged from now on
+     */
+    public void setSession(UserSession session) {
+        this.session = session;
+    }
+
+    public boolean isLoggable(Level level) {
+        return logger.isLoggable(level);
+    }
+
+    public void info(Supplier<String> message) {
+        log(Level.INFO, message);
+    }
+
+    public void info(String message) {
+        log(Level.INFO, message);
+    }
+
+    public void warning(Supplier<String> message) {
+        log(Level.WARNING, message);
+    }
+
+    public void warning(String message) {
+        log(Level.WARNING, message);
+    }
+
+    public void fine(Supplier<String> message) {
+        log(Level.FINE, message);
+    }
+
+    public void fine(String message) {
+        log(Level.FINE, message);
+    }
+
+    public void log(Level level, Supplier<String> message) {
+        if (logger.isLoggable(level))
+            logger.log(level, context() + message.get());
+    }
+
+    public void log(Level level, String message) {
+        if (logger.isLoggable(level))
+            logger.log(level, context() + message);
+    }
+
+    /**
+     * @return String e.g. "[addr=/127.0.0.1 session=1f0e... nick=User3] "
+     */
+    private String context() {
+        StringBuilder builder = new StringBuilder(96).append("[addr=").append(remoteAddress);
+        UserSession current = session;
+        if (current != null)
+            builder.append(" session=").append(current.getToken(), 0, Math.min(8, current.getToken().length()))
+                    .append(" nick=").append(current.getNick());
+        return builder.append("] ").toString();
+    }
+}
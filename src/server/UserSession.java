@@ -4,49 +4,103 @@ import server.exceptions.*;
 
 import java.io.Serializable;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class UserSession implements Serializable {
-    private static Map<UUID, UserSession> sessions = new HashMap<>();
-    private static Set<String> nickList = new HashSet<>();
-    private static long userCount = 0L;
+    // Concurrent maps rather than one registry lock, as sessions are looked
+    // up on every game listing and state, and created on every connect
+    private static final Map<UUID, UserSession> sessions = new ConcurrentHashMap<>();
+    private static final Map<String, UUID> nicks = new ConcurrentHashMap<>();   // nick -> session holding it
+    private static final AtomicLong userCount = new AtomicLong();
 
     private final UUID token;
-    private String nick;
-    private Game currentGame;
+    private final AtomicReference<String> nick = new AtomicReference<>();
+    private volatile Game currentGame;  // set by the game, read by the session's runner
 
     public UserSession() {
-        synchronized (UserSession.class) {
-            token = UUID.randomUUID();
-            currentGame = null;
-            sessions.put(token, this);
-            userCount++;
-            nick = "User" + userCount;
-            nickList.add(nick);
-        }
+        token = UUID.randomUUID();
+        currentGame = null;
+        sessions.put(token, this);
+
+        // skips generated nicks a user has already taken
+        String generated;
+        do {
+            generated = "User" + userCount.incrementAndGet();
+        } while (nicks.putIfAbsent(generated, token) != null);
+        nick.set(generated);
     }
 
     public UserSession(String token) throws UserSessionError {
         this.token = UUID.fromString(token);
 
-        synchronized (UserSession.class) {
-            if (sessions.containsKey(this.token))
-                throw new UserSessionError("Trying to duplicate session");
-            sessions.put(this.token, this);
+        if (sessions.putIfAbsent(this.token, this) != null)
+            throw new UserSessionError("Trying to duplicate session");
+    }
+
+    /**
+     * Gets the session a recovered game seats a player with, making it
+     * again, by the player's ID and nick, if needed
+     */
+    static UserSession recover(UUID id, String nick) {
+        UserSession existing = sessions.get(id);
+        if (existing != null)
+            return existing;
+
+        UserSession session = new UserSession(id, nick);
+        UserSession raced = sessions.putIfAbsent(id, session);
+        if (raced != null)
+            return raced;
+        // the nick journaled at joining may have been taken since, after a rename
+        if (nicks.putIfAbsent(nick, id) != null) {
+            String generated;
+            do {
+                generated = "User" + userCount.incrementAndGet();
+            } while (nicks.putIfAbsent(generated, id) != null);
+            session.nick.set(generated);
         }
+        return session;
+    }
+
+    /**
+     * Opens a session under a nick of the server's choosing, such as a
+     * bot's, without using up a generated user nick
+     * @param nick String nick to take
+     * @throws UserSessionError if the nick is taken
+     */
+    public static UserSession withNick(String nick) throws UserSessionError {
+        UUID id = UUID.randomUUID();
+        if (nicks.putIfAbsent(nick, id) != null)
+            throw new UserSessionError("Nick already used");
+
+        UserSession session = new UserSession(id, nick);
+        sessions.put(id, session);
+        return session;
+    }
+
+    private UserSession(UUID token, String nick) {
+        this.token = token;
+        this.nick.set(nick);
     }
 
     public static UserSession retrieveSessionFromID(
             UUID id
     ) throws UserSessionError {
+        UserSession session = sessions.get(id);
+        if (session == null)
+            throw new UserSessionError(
+                    "Trying to retrieve non-existing session"
+            );
 
-        synchronized (UserSession.class) {
-            if (!sessions.containsKey(id))
-                throw new UserSessionError(
-                        "Trying to retrieve non-existing session"
-                );
+        return session;
+    }
 
-            return sessions.get(id);
-        }
+    /**
+     * @return int sessions open, including those of dropped players holding a seat
+     */
+    public static int getSessionCount() {
+        return sessions.size();
     }
 
     public static UserSession retrieveSessionFromToken(String token) throws UserSessionError {
@@ -54,9 +108,7 @@ public class UserSession implements Serializable {
     }
 
     public String getToken() {
-        synchronized (this) {
-            return token.toString();
-        }
+        return token.toString();
     }
 
     public UUID getID() {
@@ -64,30 +116,36 @@ public class UserSession implements Serializable {
     }
 
     public String getNick() {
-        synchronized (this) {
-            return nick;
-        }
+        return nick.get();
     }
 
+    /**
+     * Reserves the new nick, then swaps it in for the old one, which is
+     * released only once the swap succeeds
+     * @param nick String new nick
+     * @throws UserSessionError if the nick is taken, or the session was
+     *                          renamed at the same time
+     */
     public void setNick(String nick) throws UserSessionError {
-        synchronized (UserSession.class) {
-            if (nickList.contains(nick)) {
-                throw new UserSessionError("Nick already used");
-            }
+        if (nicks.putIfAbsent(nick, token) != null)
+            throw new UserSessionError("Nick already used");
 
-            nickList.remove(this.nick);
-            nickList.add(nick);
-        }
-        synchronized (this) {
-            this.nick = nick;
+        String old = this.nick.get();
+        if (!this.nick.compareAndSet(old, nick)) {
+            nicks.remove(nick, token);
+            throw new UserSessionError("Nick changed concurrently");
         }
+        if (old != null)
+            nicks.remove(old, token);
+
+        Game.ownerRenamed(token, nick);
     }
 
     public void endSession() {
-        synchronized (UserSession.class) {
-            sessions.remove(token);
-            nickList.remove(nick);
-        }
+        sessions.remove(token, this);
+        String current = nick.get();
+        if (current != null)
+            nicks.remove(current, token);
     }
 
 
@@ -102,8 +160,22 @@ public class UserSession implements Serializable {
         return currentGame;
     }
 
+    /**
+     * Leaves the current game, and waits for the game to let go of the player.
+     * Must not be called from the game's own commands.
+     */
     public void leaveCurrentGame() {
-            currentGame.leaveGame(getID());
+        Game game = currentGame;
+        currentGame = null;
+        if (game != null)
+            Game.await(game.leaveGame(getID()));
+    }
+
+    /**
+     * Called by a game that has removed the player itself
+     */
+    void leftGame(Game game) {
+        if (currentGame == game)
             currentGame = null;
     }
 
@@ -112,12 +184,8 @@ public class UserSession implements Serializable {
      * NOTE: Should not be used externally
      */
     public static void _reset() {
-        synchronized (UserSession.class) {
-            nickList = new HashSet<>();
-            sessions = new HashMap<>();
-            userCount = 0L;
-        }
+        sessions.clear();
+        nicks.clear();
+        userCount.set(0L);
     }
 }
-
-
@@ -0,0 +1,155 @@
+package server.benchmarks;
+
+import client.networking.ClientConnection;
+import protocol.*;
+import server.Server;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.logging.Level;
+
+/**
+ * Runs the same synthetic load against each server connection mode, and
+ * reports memory per connection and request latency percentiles.
+ *
+ * Usage: ConnectionModeBenchmark [connections] [requests] [client threads]
+ *
+ * The clients live in the same JVM as the server, so the memory figures
+ * include the client side of every connection as well. Thread stacks are
+ * outside the heap, which is why resident set size is reported too.
+ */
+public class ConnectionModeBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int connections = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int requests = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+        int clientThreads = args.length > 2 ? Integer.parseInt(args[2]) : 16;
+        if (connections < clientThreads)
+            throw new IllegalArgumentException("Need at least one connection per client thread");
+
+        Server.CONSOLE_HANDLER.setLevel(Level.WARNING);
+
+        System.out.printf(
+                "%d connections, %d requests from %d client threads%n%n",
+                connections, requests, clientThreads
+        );
+        System.out.printf(
+                "%-22s %12s %12s %8s %10s %10s %10s%n",
+                "mode", "heap/conn", "rss/conn", "threads", "p50 us", "p99 us", "req/s"
+        );
+
+        for (Server.Mode mode : Server.Mode.values())
+            run(mode, connections, requests, clientThreads);
+    }
+
+    private static void run(
+            Server.Mode mode,
+            int connectionCount,
+            int requestCount,
+            int clientThreads
+    ) throws Exception {
+        Server server = new Server(mode, 0, false);
+        Thread serverThread = new Thread(() -> {
+            try {
+                server.start(Protocol.PORT);
+            } catch (IOException ignored) {
+            }
+        });
+        serverThread.start();
+        Thread.sleep(500);
+
+        long heapBefore = usedHeap();
+        long rssBefore = residentSetSize();
+        int threadsBefore = Thread.activeCount();
+
+        boolean framed = mode == Server.Mode.REACTOR;
+        List<ClientConnection> connections = new ArrayList<>();
+        for (int i = 0; i < connectionCount; i++) {
+            ClientConnection conn = new ClientConnection("localhost", framed);
+            conn.sendMessage(MessageType.CONNECT);
+            connections.add(conn);
+        }
+
+        long heapPerConnection = (usedHeap() - heapBefore) / connectionCount;
+        long rssPerConnection = rssBefore < 0 ? -1 : (residentSetSize() - rssBefore) / connectionCount;
+        int serverThreads = Thread.activeCount() - threadsBefore;
+
+        // every client thread owns a disjoint slice of the connections
+        long[] latencies = new long[requestCount];
+        ExecutorService clients = Executors.newFixedThreadPool(clientThreads);
+        List<Future<?>> results = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int t = 0; t < clientThreads; t++) {
+            final int offset = t;
+            final int owned = (connectionCount - offset + clientThreads - 1) / clientThreads;
+            results.add(clients.submit(() -> {
+                for (int r = offset; r < requestCount; r += clientThreads) {
+                    int index = offset + clientThreads * ((r / clientThreads) % owned);
+                    ClientConnection conn = connections.get(index);
+                    Message request = r % 2 == 0
+                            ? new HeartbeatMessage(System.currentTimeMillis())
+                            : new Message(MessageType.GET_GAME_LIST);
+
+                    long sent = System.nanoTime();
+                    conn.sendMessage(request);
+                    latencies[r] = System.nanoTime() - sent;
+                }
+                return null;
+            }));
+        }
+        try {
+            for (Future<?> result : results)
+                result.get();
+        } finally {
+            clients.shutdown();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        // connections left idle for longer than the socket timeout are gone
+        for (ClientConnection conn : connections) {
+            try {
+                conn.disconnect();
+            } catch (IOException ignored) {
+            }
+        }
+        server.stop();
+        serverThread.join(5000);
+
+        Arrays.sort(latencies);
+        System.out.printf(
+                "%-22s %10d B %10s %8d %10.1f %10.1f %10.0f%n",
+                mode,
+                heapPerConnection,
+                rssPerConnection < 0 ? "n/a" : rssPerConnection + " B",
+                serverThreads,
+                latencies[requestCount / 2] / 1000.0,
+                latencies[(int) (requestCount * 0.99)] / 1000.0,
+                requestCount / (elapsed / 1e9)
+        );
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * @return long resident set size in bytes, or -1 where /proc is unavailable
+     */
+    private static long residentSetSize() {
+        try {
+            for (String line : Files.readAllLines(Paths.get("/proc/self/status"))) {
+                if (line.startsWith("VmRSS:"))
+                    return Long.parseLong(line.replaceAll("[^0-9]", "")) * 1024;
+            }
+        } catch (IOException | NumberFormatException ignored) {
+        }
+        return -1;
+    }
+}
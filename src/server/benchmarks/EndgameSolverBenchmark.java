@@ -0,0 +1,91 @@
+package server.benchmarks;
+
+import common.rules.Round;
+import server.bots.EndgameSolver;
+
+import java.util.SplittableRandom;
+
+/**
+ * Solves random endgames, and reports positions solved per second.
+ *
+ * Usage: EndgameSolverBenchmark [positions] [max cards per hand] [players] [budget ms]
+ *
+ * Each position has two seats still holding up to the given number of
+ * cards, the others having gone out, as a bot meets them once only one
+ * opponent is left. Positions are generated from a fixed seed, and the
+ * solver keeps its table from one position to the next, as a bot does
+ * from move to move.
+ */
+public class EndgameSolverBenchmark {
+
+    public static void main(String[] args) {
+        int positions = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int maxCards = args.length > 1 ? Integer.parseInt(args[1]) : 6;
+        int players = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+        long budget = args.length > 3 ? Long.parseLong(args[3]) : 1000;
+
+        Round[] rounds = new Round[positions];
+        SplittableRandom random = new SplittableRandom(42);
+        for (int i = 0; i < positions; i++)
+            rounds[i] = endgame(random, players, 1 + random.nextInt(maxCards));
+
+        // warm up on the same positions with a fresh table, then time a run
+        EndgameSolver warmup = new EndgameSolver(20);
+        for (Round round : rounds)
+            warmup.solve(round, budget);
+
+        EndgameSolver solver = new EndgameSolver(20);
+        long nodes = 0;
+        long hits = 0;
+        int exact = 0;
+        long start = System.nanoTime();
+        for (Round round : rounds) {
+            EndgameSolver.Result result = solver.solve(round, budget);
+            nodes += result.getNodes();
+            hits += result.getHits();
+            if (result.isExact())
+                exact++;
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf(
+                "%d positions, up to %d cards per hand, %d players, %d ms budget%n",
+                positions, maxCards, players, budget
+        );
+        System.out.printf(
+                "%.2f s, %.0f positions/s, %.0f nodes/s, %.0f nodes per position%n",
+                seconds, positions / seconds, nodes / seconds, nodes / (double) positions
+        );
+        System.out.printf(
+                "%.1f%% solved exactly, %.1f%% of nodes found in the table%n",
+                100.0 * exact / positions, 100.0 * hits / Math.max(1, nodes)
+        );
+    }
+
+    private static Round endgame(SplittableRandom random, int players, int cards) {
+        long deck = -1L >>> 12;
+        long[] hands = new long[players];
+        int[] places = new int[players];
+        int first = random.nextInt(players);
+        int second = (first + 1 + random.nextInt(players - 1)) % players;
+        for (int seat : new int[]{first, second}) {
+            for (int n = 0; n < cards; n++) {
+                long card;
+                do {
+                    card = 1L << random.nextInt(52);
+                } while ((deck & card) == 0);
+                deck &= ~card;
+                hands[seat] |= card;
+            }
+        }
+
+        int place = 0;
+        for (int seat = 0; seat < players; seat++)
+            if (hands[seat] == 0)
+                places[seat] = ++place;
+
+        Round round = new Round(players);
+        round.resume(hands, places, first, 0, 0, 0, 0);
+        return round;
+    }
+}
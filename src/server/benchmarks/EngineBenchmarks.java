@@ -0,0 +1,344 @@
+package server.benchmarks;
+
+import common.CardSet;
+import common.GameListing;
+import common.rules.InformationSet;
+import common.rules.Round;
+import common.rules.Rules;
+import server.Game;
+import server.ProfanityFilter;
+import server.Server;
+import server.UserSession;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.logging.Level;
+
+/**
+ * Throughput of the game engine, the state built for clients, the lobby
+ * listing and the profanity filter, as a baseline for performance work.
+ *
+ * Usage: EngineBenchmarks [result file] [warmup iterations] [iterations] [seconds per iteration]
+ *
+ * Runs like a single fork of JMH in throughput mode: each benchmark is
+ * called in a loop for a number of timed iterations, after untimed ones
+ * to warm up, and scored as the mean operations per second with a 99.9%
+ * confidence error. Results are written in JMH's JSON result format, so
+ * the usual tools can chart them from run to run.
+ *
+ * The profanity filter reads profanityfilter.txt from the working
+ * directory, e.g. examples/, and checks nothing without it.
+ */
+public class EngineBenchmarks {
+
+    /**
+     * One benchmark, set up once and then called for as long as an
+     * iteration lasts
+     */
+    private interface Benchmark {
+        /**
+         * @return long operations done by the call, usually 1
+         */
+        long run() throws Exception;
+
+        default void tearDown() throws Exception {
+        }
+    }
+
+    private interface Setup {
+        Benchmark create() throws Exception;
+    }
+
+    private static long sink;   // results go here, so that no call is optimized away
+
+    private final List<String> results = new ArrayList<>();
+    private final int warmups;
+    private final int iterations;
+    private final long iterationNanos;
+
+    private EngineBenchmarks(int warmups, int iterations, double seconds) {
+        this.warmups = warmups;
+        this.iterations = iterations;
+        this.iterationNanos = (long) (seconds * 1e9);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Path output = Paths.get(args.length > 0 ? args[0] : "engine-benchmarks.json");
+        int warmups = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        double seconds = args.length > 3 ? Double.parseDouble(args[3]) : 1;
+
+        Server.SERVER_LOGGER.setLevel(Level.OFF);
+        EngineBenchmarks benchmarks = new EngineBenchmarks(warmups, iterations, seconds);
+        System.out.printf("%-34s %-16s %16s %14s%n", "benchmark", "params", "ops/s", "error");
+
+        benchmarks.run("gameMove", "", EngineBenchmarks::gameMove);
+        benchmarks.run("gameDeal", "", EngineBenchmarks::gameDeal);
+        benchmarks.run("gameStateBuild", "", EngineBenchmarks::gameStateBuild);
+        for (int games : new int[]{1_000, 10_000}) {
+            benchmarks.run("lobbyGetGameList", "games=" + games, () -> lobbyGetGameList(games));
+            benchmarks.run("lobbyListingChange", "games=" + games, () -> lobbyListingChange(games));
+        }
+        for (int length : new int[]{6, 12, 24})
+            benchmarks.run("profanityCheck", "nickLength=" + length, () -> profanityCheck(length));
+
+        Files.write(
+                output,
+                ("[\n" + String.join(",\n", benchmarks.results) + "\n]\n").getBytes(StandardCharsets.UTF_8)
+        );
+        System.out.println("\nResults written to " + output.toAbsolutePath());
+    }
+
+
+    /**
+     * Benchmarks
+     ***********************/
+
+    /**
+     * A move at a four player table, finding whose turn it is as a client
+     * would, and playing the lowest play or passing. Rounds that end
+     * start the next, and the game is redealt when trading would begin.
+     */
+    private static Benchmark gameMove() throws Exception {
+        Table table = new Table(4);
+        Game game = table.game;
+        Game.await(game.start());
+        return new Benchmark() {
+            @Override
+            public long run() throws Exception {
+                int round = Game.await(game.stateFor(table.seats[0])).getRoundNo();
+                for (UserSession seat : table.seats) {
+                    InformationSet info = Game.await(game.informationSetFor(seat.getID()));
+                    if (info == null)
+                        continue;
+                    Round view = info.getRound();
+                    long play = Rules.lowestPlay(view.getHand(view.getCurrent()), view.getTopValue(), view.getTrickSize());
+                    if (play == 0)
+                        Game.await(game.pass(seat.getID()));
+                    else
+                        Game.await(game.playCards(seat.getID(), new CardSet(play)));
+                    break;
+                }
+                if (Game.await(game.stateFor(table.seats[0])).getRoundNo() != round) {
+                    Game.await(game.stop());
+                    Game.await(game.start());
+                }
+                return 1;
+            }
+
+            @Override
+            public void tearDown() {
+                table.close();
+            }
+        };
+    }
+
+    /**
+     * Dealing a new game: shuffling the turn order, preparing and dealing
+     * the deck, then stopping again
+     */
+    private static Benchmark gameDeal() throws Exception {
+        Table table = new Table(4);
+        return new Benchmark() {
+            @Override
+            public long run() {
+                Game.await(table.game.start());
+                Game.await(table.game.stop());
+                return 1;
+            }
+
+            @Override
+            public void tearDown() {
+                table.close();
+            }
+        };
+    }
+
+    /**
+     * The GameState a player is sent, at a six player table in progress
+     */
+    private static Benchmark gameStateBuild() throws Exception {
+        Table table = new Table(6);
+        Game.await(table.game.start());
+        return new Benchmark() {
+            @Override
+            public long run() {
+                sink += Game.await(table.game.stateFor(table.seats[1])).getVersion();
+                return 1;
+            }
+
+            @Override
+            public void tearDown() {
+                table.close();
+            }
+        };
+    }
+
+    private static Benchmark lobbyGetGameList(int games) throws Exception {
+        Lobby lobby = new Lobby(games);
+        return new Benchmark() {
+            @Override
+            public long run() throws Exception {
+                List<GameListing> list = Game.getGameList();
+                sink += list.size();
+                return 1;
+            }
+
+            @Override
+            public void tearDown() {
+                lobby.close();
+            }
+        };
+    }
+
+    /**
+     * A player joining and leaving one of the games, which republishes
+     * the listing twice
+     */
+    private static Benchmark lobbyListingChange(int games) throws Exception {
+        Lobby lobby = new Lobby(games);
+        Game game = lobby.games.get(games / 2);
+        UserSession player = new UserSession();
+        return new Benchmark() {
+            @Override
+            public long run() {
+                Game.await(game.joinGame(player, null));
+                Game.await(game.leaveGame(player.getID()));
+                return 2;
+            }
+
+            @Override
+            public void tearDown() {
+                lobby.close();
+            }
+        };
+    }
+
+    private static Benchmark profanityCheck(int length) {
+        ProfanityFilter filter = ProfanityFilter.getDefault();
+        String[] nicks = new String[1024];
+        Random random = new Random(length);
+        String letters = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789_";
+        for (int i = 0; i < nicks.length; i++) {
+            StringBuilder nick = new StringBuilder(length);
+            for (int c = 0; c < length; c++)
+                nick.append(letters.charAt(random.nextInt(letters.length())));
+            nicks[i] = nick.toString();
+        }
+        return new Benchmark() {
+            private int next;
+
+            @Override
+            public long run() {
+                if (filter.checkForBadWords(nicks[next++ & nicks.length - 1]))
+                    sink++;
+                return 1;
+            }
+        };
+    }
+
+
+    /**
+     * Fixtures
+     ***********************/
+
+    private static class Table {
+        final UserSession[] seats;
+        final Game game;
+
+        Table(int players) throws Exception {
+            seats = new UserSession[players];
+            for (int i = 0; i < players; i++)
+                seats[i] = new UserSession();
+            game = new Game(seats[0].getID(), "benchmark", null);
+            for (int i = 1; i < players; i++)
+                Game.await(game.joinGame(seats[i], null));
+        }
+
+        void close() {
+            UserSession._reset();
+            Game._reset();
+        }
+    }
+
+    private static class Lobby {
+        final List<Game> games = new ArrayList<>();
+
+        Lobby(int count) throws Exception {
+            for (int i = 0; i < count; i++)
+                games.add(new Game(new UserSession().getID(), "table " + i, null));
+        }
+
+        void close() {
+            UserSession._reset();
+            Game._reset();
+        }
+    }
+
+
+    /**
+     * Harness
+     ***********************/
+
+    private void run(String name, String params, Setup setup) throws Exception {
+        Benchmark benchmark = setup.create();
+        double[] scores = new double[iterations];
+        try {
+            for (int i = 0; i < warmups; i++)
+                iteration(benchmark);
+            for (int i = 0; i < iterations; i++)
+                scores[i] = iteration(benchmark);
+        } finally {
+            benchmark.tearDown();
+        }
+
+        double mean = 0;
+        for (double score : scores)
+            mean += score / iterations;
+        double variance = 0;
+        for (double score : scores)
+            variance += (score - mean) * (score - mean) / Math.max(1, iterations - 1);
+        // 99.9% confidence, as JMH reports, with the normal approximation
+        double error = 3.291 * Math.sqrt(variance / iterations);
+
+        System.out.printf("%-34s %-16s %16.1f %14.1f%n", name, params, mean, error);
+        results.add(json(name, params, mean, error, scores));
+    }
+
+    // ops/s over one iteration
+    private double iteration(Benchmark benchmark) throws Exception {
+        long ops = 0;
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+            ops += benchmark.run();
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < iterationNanos);
+        return ops / (elapsed / 1e9);
+    }
+
+    private String json(String name, String params, double score, double error, double[] raw) {
+        StringBuilder paramsJson = new StringBuilder();
+        if (!params.isEmpty()) {
+            String[] pair = params.split("=");
+            paramsJson.append(",\n    \"params\" : { \"").append(pair[0])
+                    .append("\" : \"").append(pair[1]).append("\" }");
+        }
+
+        StringJoiner rawJson = new StringJoiner(", ", "[ [ ", " ] ]");
+        for (double value : raw)
+            rawJson.add(String.format(Locale.ROOT, "%.3f", value));
+
+        return String.format(
+                Locale.ROOT,
+                "  {\n    \"benchmark\" : \"%s.%s\",\n    \"mode\" : \"thrpt\",\n    \"threads\" : 1,\n"
+                        + "    \"forks\" : 1,\n    \"warmupIterations\" : %d,\n    \"measurementIterations\" : %d%s,\n"
+                        + "    \"primaryMetric\" : {\n      \"score\" : %.3f,\n      \"scoreError\" : %.3f,\n"
+                        + "      \"scoreUnit\" : \"ops/s\",\n      \"rawData\" : %s\n    }\n  }",
+                EngineBenchmarks.class.getName(), name, warmups, iterations, paramsJson,
+                score, error, rawJson
+        );
+    }
+}
@@ -0,0 +1,103 @@
+package server.benchmarks;
+
+import client.networking.ClientConnection;
+import common.GameState;
+import protocol.*;
+import server.Server;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.logging.Level;
+
+/**
+ * Keeps one game going over legacy object stream connections, and samples
+ * the heap and the client's retained object stream handles, which should
+ * both stay flat however long the session runs.
+ *
+ * Usage: ObjectStreamSoak [minutes] [sample interval in seconds]
+ *
+ * Three clients sit at one table, passing the turn round and heartbeating,
+ * so every pass sends a full GameState to each of them.
+ */
+public class ObjectStreamSoak {
+
+    public static void main(String[] args) throws Exception {
+        long minutes = args.length > 0 ? Long.parseLong(args[0]) : 10;
+        long sampleInterval = (args.length > 1 ? Long.parseLong(args[1]) : 30) * 1000;
+
+        Server.CONSOLE_HANDLER.setLevel(Level.WARNING);
+        Server server = new Server();
+        Thread serverThread = new Thread(() -> {
+            try {
+                server.start(Protocol.PORT);
+            } catch (IOException ignored) {
+            }
+        });
+        serverThread.start();
+        Thread.sleep(500);
+
+        List<ClientConnection> players = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            ClientConnection conn = new ClientConnection("localhost");
+            conn.sendMessage(MessageType.CONNECT);
+            players.add(conn);
+        }
+        players.get(0).sendMessage(new NewGameMessage("soak", null));
+        String gameID = ((GameListResponse) players.get(1).sendMessage(MessageType.GET_GAME_LIST))
+                .getGameList().get(0).getID();
+        players.get(1).sendMessage(new JoinGameRequest(gameID, null));
+        players.get(2).sendMessage(new JoinGameRequest(gameID, null));
+        Message started = players.get(0).sendMessage(MessageType.START_GAME);
+        if (started.isError())
+            throw new IllegalStateException("Failed to start game: " + started.getErrorMessage());
+
+        System.out.printf("%10s %12s %14s %12s%n", "minutes", "messages", "heap", "handles");
+        long start = System.currentTimeMillis();
+        long end = start + minutes * 60 * 1000;
+        long nextSample = start;
+        long messages = 0;
+        GameState[] states = new GameState[players.size()];
+
+        while (System.currentTimeMillis() < end) {
+            for (int i = 0; i < players.size(); i++) {
+                ClientConnection conn = players.get(i);
+                Message response = conn.sendMessage(new HeartbeatMessage(System.currentTimeMillis()));
+                if (response.getMessageType() == MessageType.GAME_STATE)
+                    states[i] = ((GameStateResponse) response).getState();
+                messages++;
+
+                if (states[i] != null && states[i].isMyTurn()) {
+                    response = conn.sendMessage(new PassTurn());
+                    if (response.getMessageType() == MessageType.GAME_STATE)
+                        states[i] = ((GameStateResponse) response).getState();
+                    messages++;
+                }
+            }
+
+            if (System.currentTimeMillis() >= nextSample) {
+                System.out.printf(
+                        "%10.1f %12d %12d B %12d%n",
+                        (System.currentTimeMillis() - start) / 60000.0,
+                        messages,
+                        usedHeap(),
+                        players.get(0).getRetainedHandles()
+                );
+                nextSample += sampleInterval;
+            }
+        }
+
+        for (ClientConnection conn : players)
+            conn.disconnect();
+        server.stop();
+        serverThread.join(5000);
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
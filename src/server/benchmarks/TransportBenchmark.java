@@ -0,0 +1,201 @@
+package server.benchmarks;
+
+import common.GameListing;
+import protocol.*;
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Echoes messages over loopback with each transport configuration, and
+ * reports round trip latency and socket calls per message.
+ *
+ * Usage: TransportBenchmark [messages] [games listed per message]
+ *
+ * Socket calls are counted as the reads and writes reaching the socket
+ * streams at both ends, each of which is one system call. The first
+ * configuration is the transport as it was before buffering and
+ * TCP_NODELAY, the last ones are what client and server use now.
+ */
+public class TransportBenchmark {
+
+    private enum Transport {
+        OBJECT_STREAM_UNBUFFERED_NAGLE(false, false, false),
+        OBJECT_STREAM_UNBUFFERED(false, false, true),
+        OBJECT_STREAM_BUFFERED(false, true, true),
+        FRAMED_BUFFERED(true, true, true);
+
+        final boolean framed;
+        final boolean buffered;
+        final boolean tcpNoDelay;
+
+        Transport(boolean framed, boolean buffered, boolean tcpNoDelay) {
+            this.framed = framed;
+            this.buffered = buffered;
+            this.tcpNoDelay = tcpNoDelay;
+        }
+    }
+
+    private static final AtomicLong socketCalls = new AtomicLong();
+
+    public static void main(String[] args) throws Exception {
+        int messages = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int listed = args.length > 1 ? Integer.parseInt(args[1]) : 40;
+
+        // a full lobby is larger than the object stream's 1 KiB block buffer,
+        // so unbuffered streams send it in several writes. Built anew for
+        // every message, as object streams send repeated objects as handles.
+        Supplier<Message> message = () -> {
+            List<GameListing> games = new ArrayList<>();
+            for (int i = 0; i < listed; i++) {
+                games.add(new GameListing(
+                        UUID.randomUUID().toString(), "Table " + i, "User" + i, i % 4, i % 2 == 0, false
+                ));
+            }
+            return new GameListResponse(games);
+        };
+
+        System.out.printf("%d round trips per transport%n%n", messages);
+        System.out.printf(
+                "%-32s %10s %10s %14s%n",
+                "transport", "p50 us", "p99 us", "calls/message"
+        );
+        for (Transport transport : Transport.values())
+            run(transport, message, messages);
+    }
+
+    private static void run(Transport transport, Supplier<Message> message, int messages) throws Exception {
+        try (ServerSocket listener = new ServerSocket(0)) {
+            Thread echo = new Thread(() -> {
+                try (Socket socket = listener.accept()) {
+                    Endpoint server = new Endpoint(socket, transport);
+                    for (int i = 0; i < messages; i++) {
+                        server.read();
+                        server.write(message.get());
+                    }
+                } catch (IOException | ClassNotFoundException e) {
+                    e.printStackTrace();
+                }
+            });
+            echo.start();
+
+            try (Socket socket = new Socket("localhost", listener.getLocalPort())) {
+                Endpoint client = new Endpoint(socket, transport);
+
+                // warm up, then count from a clean slate
+                int warmup = messages / 10;
+                long[] latencies = new long[messages - warmup];
+                for (int i = 0; i < messages; i++) {
+                    if (i == warmup)
+                        socketCalls.set(0);
+                    Message request = message.get();
+                    long sent = System.nanoTime();
+                    client.write(request);
+                    client.read();
+                    if (i >= warmup)
+                        latencies[i - warmup] = System.nanoTime() - sent;
+                }
+                echo.join();
+
+                Arrays.sort(latencies);
+                System.out.printf(
+                        "%-32s %10.1f %10.1f %14.1f%n",
+                        transport,
+                        latencies[latencies.length / 2] / 1000.0,
+                        latencies[(int) (latencies.length * 0.99)] / 1000.0,
+                        socketCalls.get() / (double) latencies.length
+                );
+            }
+        }
+    }
+
+
+    /**
+     * One end of a connection, set up the way the transport dictates
+     */
+    private static class Endpoint {
+        private final Transport transport;
+        private ObjectOutputStream out;
+        private ObjectInputStream in;
+        private FrameCodec codec;
+        private DataOutputStream frameOut;
+        private DataInputStream frameIn;
+
+        Endpoint(Socket socket, Transport transport) throws IOException {
+            this.transport = transport;
+            socket.setTcpNoDelay(transport.tcpNoDelay);
+            OutputStream output = new CountingOutputStream(socket.getOutputStream());
+            InputStream input = new CountingInputStream(socket.getInputStream());
+            if (transport.buffered) {
+                output = new BufferedOutputStream(output);
+                input = new BufferedInputStream(input);
+            }
+
+            if (transport.framed) {
+                codec = new FrameCodec();
+                frameOut = new DataOutputStream(output);
+                frameIn = new DataInputStream(input);
+            } else {
+                out = transport.buffered
+                        ? new ManagedObjectOutputStream(output)
+                        : new ObjectOutputStream(output);
+                out.flush();
+                in = new ObjectInputStream(input);
+            }
+        }
+
+        void write(Message msg) throws IOException {
+            if (transport.framed)
+                codec.write(frameOut, msg);
+            else if (transport.buffered)
+                ((ManagedObjectOutputStream) out).writeMessage(msg);
+            else
+                out.writeObject(msg);
+        }
+
+        Message read() throws IOException, ClassNotFoundException {
+            if (transport.framed)
+                return codec.read(frameIn);
+            return (Message) in.readObject();
+        }
+    }
+
+    private static class CountingOutputStream extends FilterOutputStream {
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            socketCalls.incrementAndGet();
+            out.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            socketCalls.incrementAndGet();
+            out.write(b, off, len);
+        }
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            socketCalls.incrementAndGet();
+            return in.read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            socketCalls.incrementAndGet();
+            return in.read(b, off, len);
+        }
+    }
+}
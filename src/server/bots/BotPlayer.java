@@ -0,0 +1,240 @@
+package server.bots;
+
+import common.CardSet;
+import common.GameState;
+import common.Role;
+import common.rules.InformationSet;
+import common.rules.Rules;
+import server.Game;
+import server.PlayerObject;
+import server.UserSession;
+import server.exceptions.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static server.Server.SERVER_LOGGER;
+
+/**
+ * A computer player filling a seat at a game, as a session of its own.
+ * It follows the game's changes like a subscribed client, but plays by
+ * calling the game directly, choosing its moves with IsmctsStrategy.
+ *
+ * Bots leave when their game is cancelled, or when only bots are left.
+ */
+public class BotPlayer {
+
+    public static final int DEFAULT_ROLLOUTS = 2000;
+    public static final long MOVE_BUDGET_MILLIS = 1000;
+
+    // bots wait on their games, so they act from here rather than the game's mailbox;
+    // turns past the pool's size queue up, as their rollouts share THINKING anyway
+    private static final int TURN_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
+    private static final ThreadPoolExecutor TURNS = new ThreadPoolExecutor(
+            TURN_THREADS,
+            TURN_THREADS,
+            60, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(),
+            r -> {
+                Thread thread = new Thread(r, "BotPlayer");
+                thread.setDaemon(true);
+                return thread;
+            }
+    );
+
+    static {
+        TURNS.allowCoreThreadTimeOut(true);
+    }
+
+    // rollouts of every bot share half the cores, at low priority, so human tables never wait on them
+    private static final ForkJoinPool THINKING = new ForkJoinPool(
+            Math.max(1, Runtime.getRuntime().availableProcessors() / 2),
+            pool -> {
+                ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                thread.setName("BotThinker-" + thread.getPoolIndex());
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            },
+            null,
+            false
+    );
+
+    private static final Map<UUID, BotPlayer> bots = new ConcurrentHashMap<>();
+    private static final AtomicLong botCount = new AtomicLong();
+    private static volatile int defaultRollouts = DEFAULT_ROLLOUTS;
+
+    private final Game game;
+    private final UserSession session;
+    private final IsmctsStrategy strategy;
+    private final SplittableRandom random = new SplittableRandom();     // guarded by this
+    private final AtomicBoolean turnPending = new AtomicBoolean();
+    private volatile boolean seated;
+
+    private BotPlayer(Game game, UserSession session, int rollouts) {
+        this.game = game;
+        this.strategy = new IsmctsStrategy(rollouts, MOVE_BUDGET_MILLIS, THINKING);
+        this.session = session;
+    }
+
+    private BotPlayer(Game game, int rollouts) {
+        this(game, newSession(), rollouts);
+    }
+
+    // generated bot nicks skip those users have taken
+    private static UserSession newSession() {
+        while (true) {
+            try {
+                return UserSession.withNick("Bot" + botCount.incrementAndGet());
+            } catch (UserSessionError ignored) {
+            }
+        }
+    }
+
+    /**
+     * Seats a bot at a game that hasn't started
+     * @param rollouts int rollouts per move, more for a stronger bot
+     * @return BotPlayer seated
+     * @throws GameException if the game is full or in progress
+     */
+    public static BotPlayer join(Game game, int rollouts) throws GameException {
+        BotPlayer bot = new BotPlayer(game, rollouts);
+        try {
+            Game.await(game.joinAsBot(bot.session), GameException.class);
+        } catch (GameException e) {
+            bot.session.endSession();
+            throw e;
+        }
+
+        bot.seated = true;
+        bots.put(bot.getID(), bot);
+        PlayerObject po = game.getPlayers().get(bot.getID());
+        if (po != null)
+            po.setStateListener(bot::stateChanged);
+        SERVER_LOGGER.info(() -> bot.getNick() + " joined game: " + game.getTitle());
+        return bot;
+    }
+
+    public static BotPlayer join(Game game) throws GameException {
+        return join(game, defaultRollouts);
+    }
+
+    /**
+     * Plays on for a bot seated at a game recovered after a restart
+     * @param session UserSession the bot is seated with
+     * @return BotPlayer seated
+     */
+    public static BotPlayer rejoin(Game game, UserSession session) {
+        BotPlayer bot = new BotPlayer(game, session, defaultRollouts);
+        bot.seated = true;
+        bots.put(bot.getID(), bot);
+        PlayerObject po = game.getPlayers().get(bot.getID());
+        if (po != null)
+            po.setStateListener(bot::stateChanged);
+        bot.stateChanged();     // it may be the bot's turn already
+        return bot;
+    }
+
+    /**
+     * @param rollouts int rollouts per move of bots seated from now on
+     */
+    public static void setDefaultRollouts(int rollouts) {
+        if (rollouts < 1)
+            throw new IllegalArgumentException("Need at least one rollout");
+        defaultRollouts = rollouts;
+    }
+
+    public static boolean isBot(UUID id) {
+        return bots.containsKey(id);
+    }
+
+    public UUID getID() {
+        return session.getID();
+    }
+
+    public String getNick() {
+        return session.getNick();
+    }
+
+    public boolean isSeated() {
+        return seated;
+    }
+
+    // called from the game's mailbox, so only hands the turn over
+    private void stateChanged() {
+        if (seated && turnPending.compareAndSet(false, true))
+            TURNS.execute(this::act);
+    }
+
+    private synchronized void act() {
+        // changes made from here on schedule another turn
+        turnPending.set(false);
+        if (!seated)
+            return;
+
+        try {
+            if (game.isCancelled() || !game.getPlayers().containsKey(getID()) || onlyBotsLeft()) {
+                leave();
+                return;
+            }
+
+            GameState state = Game.await(game.stateFor(session), UserSessionError.class);
+            if (!state.isStarted())
+                return;
+            if (state.haveToTrade()) {
+                giveCards(state);
+                return;
+            }
+
+            InformationSet info = Game.await(game.informationSetFor(getID()));
+            if (info == null)
+                return;
+            long move = strategy.chooseMove(info, random);
+            if (move == 0)
+                Game.await(game.pass(getID()), RoundOver.class, GameException.class);
+            else
+                Game.await(game.playCards(getID(), new CardSet(move)), GameException.class);
+        } catch (RoundOver ignore) {
+            // a round cannot end by passing alone
+        } catch (GameException | UserSessionError e) {
+            // the game moved on while the bot thought, and will call it again
+            SERVER_LOGGER.fine(() -> getNick() + " could not play: " + e.getMessage());
+        } catch (RuntimeException e) {
+            SERVER_LOGGER.warning(() -> getNick() + " failed to take its turn: " + e);
+        }
+    }
+
+    private void giveCards(GameState state) throws GameException {
+        Role role = state.getRole();
+        long hand = CardSet.of(state.getHand()).getBits();
+        int count = Rules.tradeCount(role, state.getPlayers().size());
+        long given = role == Role.BUM || role == Role.VICE_BUM
+                ? Rules.highestCards(hand, count)
+                : strategy.give(hand, count);
+        Game.await(game.giveCards(getID(), new CardSet(given)), GameException.class);
+    }
+
+    private boolean onlyBotsLeft() {
+        for (UUID id : game.getPlayers().keySet())
+            if (!bots.containsKey(id))
+                return false;
+        return true;
+    }
+
+    /**
+     * Gets up from the table, and ends the bot's session
+     */
+    public void leave() {
+        if (!seated)
+            return;
+        seated = false;
+        bots.remove(getID());
+        PlayerObject po = game.getPlayers().get(getID());
+        if (po != null)
+            po.setStateListener(null);
+        Game.await(game.leaveGame(getID()));
+        session.endSession();
+        SERVER_LOGGER.info(() -> getNick() + " left game: " + game.getTitle());
+    }
+}
@@ -0,0 +1,333 @@
+package server.bots;
+
+import common.rules.Round;
+import common.rules.Rules;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Solves rounds with every hand known, by alpha-beta search over the turn
+ * order, for the player to move: that player maximizes their place, and
+ * everyone else is taken to play against them. With only two players
+ * still holding cards, that is exactly how the round plays out.
+ *
+ * Positions are looked up by Zobrist hash in a transposition table of
+ * primitive arrays, and searched by iterative deepening, so that a time
+ * budget still leaves the best move of the deepest search completed.
+ * Beyond the depth searched, positions are scored by hand sizes.
+ *
+ * Reuses its table and state from search to search, so each thread needs
+ * its own solver.
+ */
+public class EndgameSolver {
+
+    private static final int MAX_PLY = 256;
+    private static final int SCALE = 64;           // score of one place
+    private static final int PROBES = 4;           // slots tried per position
+    private static final long NO_MOVE = -1;        // 0 is a pass
+    private static final int EXACT = 0;
+    private static final int LOWER = 1;            // value is at least the one stored
+    private static final int UPPER = 2;            // value is at most the one stored
+
+    // fixed seed, so hashes and thus searches are repeatable
+    private static final long[][] CARD_KEYS = new long[8][52];
+    private static final long[] ROOT_KEYS = new long[8];     // values are from the root player's view
+    private static final long[] CURRENT_KEYS = new long[8];
+    private static final long[] PASSED_KEYS = new long[256];
+    private static final long[] GONE_OUT_KEYS = new long[9];
+    private static final long[] TRICK_KEYS = new long[(Rules.MAX_VALUE + 1) * 25];   // top value, run and trick size
+
+    static {
+        SplittableRandom random = new SplittableRandom(0x5EED);
+        for (long[] seat : CARD_KEYS)
+            for (int card = 0; card < 52; card++)
+                seat[card] = random.nextLong();
+        for (long[] keys : new long[][]{ROOT_KEYS, CURRENT_KEYS, PASSED_KEYS, GONE_OUT_KEYS, TRICK_KEYS})
+            for (int i = 0; i < keys.length; i++)
+                keys[i] = random.nextLong();
+    }
+
+    private final int mask;
+    private final long[] keys;
+    private final long[] bestMoves;
+    private final int[] values;
+    private final int[] bounds;         // depth searched << 2 | EXACT, LOWER or UPPER
+    private final Round[] stack = new Round[MAX_PLY + 1];
+    private final long[][] moves = new long[MAX_PLY][];
+
+    private int root;
+    private long rootMove;
+    private long deadline;
+    private long nodes;
+    private long hits;
+    private boolean aborted;
+    private boolean horizonReached;
+
+    /**
+     * @param tableBits int log2 of the transposition table's entries
+     */
+    public EndgameSolver(int tableBits) {
+        int size = 1 << tableBits;
+        mask = size - 1;
+        keys = new long[size];
+        bestMoves = new long[size];
+        values = new int[size];
+        bounds = new int[size];
+    }
+
+    /**
+     * The result of a search
+     */
+    public static class Result {
+        private final long move;
+        private final double place;
+        private final int depth;
+        private final boolean exact;
+        private final long nodes;
+        private final long hits;
+
+        Result(long move, double place, int depth, boolean exact, long nodes, long hits) {
+            this.move = move;
+            this.place = place;
+            this.depth = depth;
+            this.exact = exact;
+            this.nodes = nodes;
+            this.hits = hits;
+        }
+
+        /**
+         * @return long cards to play, or 0 to pass
+         */
+        public long getMove() {
+            return move;
+        }
+
+        /**
+         * @return double place the player goes out in, estimated unless exact
+         */
+        public double getPlace() {
+            return place;
+        }
+
+        public int getDepth() {
+            return depth;
+        }
+
+        /**
+         * @return boolean whether the search reached the end of the round
+         *         on every line, rather than scoring some by hand sizes
+         */
+        public boolean isExact() {
+            return exact;
+        }
+
+        public long getNodes() {
+            return nodes;
+        }
+
+        /**
+         * @return long positions found in the transposition table
+         */
+        public long getHits() {
+            return hits;
+        }
+    }
+
+    /**
+     * Searches ever deeper until the round is solved or time runs out
+     * @param round Round with every hand known, not modified
+     * @param budgetMillis long time allowed, though depth 1 is always finished
+     * @return Result for the player to move
+     */
+    public Result solve(Round round, long budgetMillis) {
+        if (round.isOver())
+            throw new IllegalArgumentException("Round is over");
+        int players = round.getPlayers();
+        for (int ply = 0; ply <= MAX_PLY; ply++)
+            if (stack[ply] == null || stack[ply].getPlayers() != players)
+                stack[ply] = new Round(players);
+        stack[0].copyFrom(round);
+        root = round.getCurrent();
+        deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(budgetMillis);
+        nodes = 0;
+        hits = 0;
+
+        long hands = ROOT_KEYS[root];
+        for (int seat = 0; seat < players; seat++)
+            hands ^= cardsKey(seat, round.getHand(seat));
+
+        long bestMove = NO_MOVE;
+        int bestValue = 0;
+        int depth = 0;
+        boolean exact = false;
+        for (int d = 1; d < MAX_PLY && !exact; d++) {
+            aborted = false;
+            horizonReached = false;
+            int value = search(0, d, Integer.MIN_VALUE, Integer.MAX_VALUE, hands, d > 1);
+            if (aborted)
+                break;
+            bestValue = value;
+            bestMove = rootMove;
+            depth = d;
+            exact = !horizonReached;
+        }
+
+        double place = players - bestValue / (double) SCALE;
+        return new Result(bestMove, place, depth, exact, nodes, hits);
+    }
+
+    private int search(int ply, int depth, int alpha, int beta, long hands, boolean abortable) {
+        Round round = stack[ply];
+        if ((++nodes & 1023) == 0 && abortable && System.nanoTime() > deadline) {
+            aborted = true;
+            return 0;
+        }
+        if (round.getPlace(root) != 0)
+            return (round.getPlayers() - round.getPlace(root)) * SCALE;
+        if (depth == 0) {
+            horizonReached = true;
+            return estimate(round);
+        }
+
+        long hash = hands ^ stateKey(round);
+        int slot = find(hash);
+        long tableMove = slot >= 0 ? bestMoves[slot] : NO_MOVE;
+        if (slot >= 0 && ply > 0) {
+            hits++;
+            int value = values[slot];
+            int bound = bounds[slot];
+            if (bound >> 2 >= depth) {
+                int kind = bound & 3;
+                if (kind == EXACT
+                        || kind == LOWER && value >= beta
+                        || kind == UPPER && value <= alpha)
+                    return value;
+            }
+        }
+
+        long[] list = moves[ply];
+        if (list == null)
+            list = moves[ply] = new long[Rules.MAX_MOVES + 1];
+        int count = round.legalMoves(list);
+        if (round.getTrickSize() != 0)
+            list[count++] = 0;      // passing
+        for (int i = 1; i < count; i++) {
+            if (list[i] == tableMove) {
+                list[i] = list[0];
+                list[0] = tableMove;
+                break;
+            }
+        }
+
+        int seat = round.getCurrent();
+        boolean maximizing = seat == root;
+        int best = maximizing ? Integer.MIN_VALUE : Integer.MAX_VALUE;
+        long bestMove = list[0];
+        int a = alpha;
+        int b = beta;
+        Round child = stack[ply + 1];
+        for (int i = 0; i < count; i++) {
+            long move = list[i];
+            child.copyFrom(round);
+            long childHands = hands;
+            if (move == 0) {
+                child.pass();
+            } else {
+                child.play(move);
+                childHands ^= cardsKey(seat, move);
+            }
+
+            int value = search(ply + 1, depth - 1, a, b, childHands, abortable);
+            if (aborted)
+                return 0;
+            if (maximizing ? value > best : value < best) {
+                best = value;
+                bestMove = move;
+            }
+            if (maximizing)
+                a = Math.max(a, best);
+            else
+                b = Math.min(b, best);
+            if (a >= b)
+                break;
+        }
+
+        int kind = best <= alpha ? UPPER : best >= beta ? LOWER : EXACT;
+        store(hash, bestMove, best, depth << 2 | kind);
+        if (ply == 0)
+            rootMove = bestMove;
+        return best;
+    }
+
+    /**
+     * Scores a position at the search horizon by the place the player to
+     * solve for would get if hands ran out smallest first
+     */
+    private int estimate(Round round) {
+        int players = round.getPlayers();
+        int own = Long.bitCount(round.getHand(root));
+        int halfPlaces = 2;     // in halves, going out after everyone out already
+        for (int seat = 0; seat < players; seat++) {
+            if (seat == root)
+                continue;
+            int cards = Long.bitCount(round.getHand(seat));
+            if (round.getPlace(seat) != 0 || cards < own)
+                halfPlaces += 2;
+            else if (cards == own)
+                halfPlaces += 1;
+        }
+        return players * SCALE - halfPlaces * SCALE / 2;
+    }
+
+    private static long cardsKey(int seat, long cards) {
+        long key = 0;
+        for (; cards != 0; cards &= cards - 1)
+            key ^= CARD_KEYS[seat][Long.numberOfTrailingZeros(cards)];
+        return key;
+    }
+
+    private static long stateKey(Round round) {
+        int passed = 0;
+        int goneOut = 0;
+        for (int seat = 0; seat < round.getPlayers(); seat++) {
+            if (round.hasPassed(seat))
+                passed |= 1 << seat;
+            if (round.getPlace(seat) != 0)
+                goneOut++;
+        }
+        int trick = (round.getTopValue() * 5 + Math.min(round.getTopRun(), 4)) * 5 + round.getTrickSize();
+        return CURRENT_KEYS[round.getCurrent()] ^ PASSED_KEYS[passed]
+                ^ GONE_OUT_KEYS[goneOut] ^ TRICK_KEYS[trick];
+    }
+
+    // slot holding the position, or -1
+    private int find(long hash) {
+        for (int i = 0; i < PROBES; i++) {
+            int slot = (int) (hash + i) & mask;
+            if (keys[slot] == hash)
+                return slot;
+            if (keys[slot] == 0)
+                return -1;
+        }
+        return -1;
+    }
+
+    // into the position's own slot, or else an empty or the shallowest one probed
+    private void store(long hash, long move, int value, int bound) {
+        int target = -1;
+        for (int i = 0; i < PROBES; i++) {
+            int slot = (int) (hash + i) & mask;
+            if (keys[slot] == hash || keys[slot] == 0) {
+                target = slot;
+                break;
+            }
+            if (target < 0 || bounds[slot] >> 2 < bounds[target] >> 2)
+                target = slot;
+        }
+        keys[target] = hash;
+        bestMoves[target] = move;
+        values[target] = value;
+        bounds[target] = bound;
+    }
+}
@@ -0,0 +1,251 @@
+package server.bots;
+
+import common.rules.InformationSet;
+import common.rules.Round;
+import common.rules.Rules;
+import server.simulation.BasicStrategy;
+import server.simulation.Strategy;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Chooses moves by information-set Monte Carlo tree search: every rollout
+ * deals the cards the player cannot see out afresh, then walks one tree of
+ * the player's moves and everyone else's, only ever choosing among the
+ * moves that are legal in that deal.
+ *
+ * The rollouts of a move are split among a few trees searched in parallel
+ * on a pool, whose visit counts are added up at the root. A search stops
+ * after its rollouts, or when its time budget runs out, whichever is first.
+ *
+ * Once only one opponent still holds cards, the player knows every hand,
+ * and the round is handed to the EndgameSolver instead.
+ */
+public class IsmctsStrategy implements Strategy {
+
+    private static final double EXPLORATION = 0.7;
+    private static final int RANDOM_ROLLOUT_MOVES = 8;  // one in this many rollout moves is random
+    private static final int SOLVER_TABLE_BITS = 16;
+
+    // solvers keep their tables between moves, and a strategy may play on many threads
+    private static final ThreadLocal<EndgameSolver> SOLVERS =
+            ThreadLocal.withInitial(() -> new EndgameSolver(SOLVER_TABLE_BITS));
+
+    private final int rollouts;
+    private final long budgetNanos;
+    private final ForkJoinPool pool;
+    private final int trees;
+
+    /**
+     * @param rollouts int rollouts per move, which sets how strong the bot plays
+     * @param budgetMillis long time allowed per move, in milliseconds
+     * @param pool ForkJoinPool to search on, or null to search on the calling thread
+     */
+    public IsmctsStrategy(int rollouts, long budgetMillis, ForkJoinPool pool) {
+        if (rollouts < 1)
+            throw new IllegalArgumentException("Need at least one rollout");
+        this.rollouts = rollouts;
+        this.budgetNanos = TimeUnit.MILLISECONDS.toNanos(budgetMillis);
+        this.pool = pool;
+        trees = pool == null ? 1 : Math.max(1, Math.min(pool.getParallelism(), rollouts / 64));
+    }
+
+    @Override
+    public long play(Round round, long[] moves, int count, SplittableRandom random) {
+        return chooseMove(InformationSet.of(round, round.getCurrent()), random.split());
+    }
+
+    /**
+     * @param info InformationSet of the player to move
+     * @return long cards to play, or 0 to pass
+     */
+    public long chooseMove(InformationSet info, SplittableRandom random) {
+        long deadline = System.nanoTime() + budgetNanos;
+        if (info.isFullyKnown()) {
+            Round round = new Round(info.getRound().getPlayers());
+            info.determinize(round, new byte[52], random);
+            EndgameSolver.Result solved = SOLVERS.get().solve(round, TimeUnit.NANOSECONDS.toMillis(budgetNanos) / 2);
+            if (solved.isExact())
+                return solved.getMove();
+        }
+
+        List<Search> searches = new ArrayList<>(trees);
+        for (int i = 0; i < trees; i++)
+            searches.add(new Search(info, random.split(), deadline, rollouts / trees + (i < rollouts % trees ? 1 : 0)));
+
+        if (pool == null) {
+            searches.get(0).run();
+        } else {
+            List<ForkJoinTask<?>> tasks = new ArrayList<>(trees);
+            for (Search search : searches)
+                tasks.add(pool.submit(search));
+            for (ForkJoinTask<?> task : tasks)
+                task.join();
+        }
+
+        // the most visited move, over all the trees
+        Map<Long, Integer> visits = new HashMap<>();
+        for (Search search : searches)
+            for (Node child : search.root.children)
+                visits.merge(child.move, child.visits, Integer::sum);
+
+        long best = 0;
+        int mostVisits = -1;
+        for (Map.Entry<Long, Integer> entry : visits.entrySet()) {
+            if (entry.getValue() > mostVisits) {
+                best = entry.getKey();
+                mostVisits = entry.getValue();
+            }
+        }
+        return best;
+    }
+
+    public int getRollouts() {
+        return rollouts;
+    }
+
+    @Override
+    public String toString() {
+        return "ISMCTS:" + rollouts;
+    }
+
+
+    private static final class Node {
+        final Node parent;
+        final long move;        // cards played to get here, 0 for a pass
+        final int player;       // seat that made the move
+        final List<Node> children = new ArrayList<>();
+        int visits;
+        int availability;       // rollouts in which the move was legal
+        double reward;          // summed over visits, for the player who moved
+
+        Node(Node parent, long move, int player) {
+            this.parent = parent;
+            this.move = move;
+            this.player = player;
+        }
+
+        double score() {
+            return reward / visits + EXPLORATION * Math.sqrt(Math.log(availability) / visits);
+        }
+    }
+
+    /**
+     * One tree, searched by one thread, with everything it needs reused
+     * from rollout to rollout
+     */
+    private static final class Search implements Runnable {
+        private final InformationSet info;
+        private final SplittableRandom random;
+        private final long deadline;
+        private final int rollouts;
+        private final Node root = new Node(null, 0, -1);
+        private final Round round;
+        private final long[] moves = new long[Rules.MAX_MOVES + 1];
+        private final long[] untried = new long[Rules.MAX_MOVES + 1];
+        private final byte[] scratch = new byte[52];
+
+        Search(InformationSet info, SplittableRandom random, long deadline, int rollouts) {
+            this.info = info;
+            this.random = random;
+            this.deadline = deadline;
+            this.rollouts = rollouts;
+            round = new Round(info.getRound().getPlayers());
+        }
+
+        @Override
+        public void run() {
+            // always at least one rollout, so that there is a move to choose
+            for (int i = 0; i < rollouts && (i == 0 || System.nanoTime() < deadline); i++)
+                rollout();
+        }
+
+        private void rollout() {
+            info.determinize(round, scratch, random);
+            Node node = select();
+            while (!round.isOver()) {
+                int count = round.legalMoves(moves);
+                BasicStrategy policy = random.nextInt(RANDOM_ROLLOUT_MOVES) == 0
+                        ? BasicStrategy.RANDOM
+                        : BasicStrategy.LOWEST_FIRST;
+                apply(policy.play(round, moves, count, random));
+            }
+
+            for (; node != root; node = node.parent) {
+                node.visits++;
+                node.reward += reward(node.player);
+            }
+            root.visits++;
+        }
+
+        /**
+         * Walks down the tree by the moves legal in this deal, until it
+         * adds a move not tried before
+         * @return Node reached, with the round played up to it
+         */
+        private Node select() {
+            Node node = root;
+            while (!round.isOver()) {
+                int count = listMoves();
+                int untriedCount = 0;
+                Node best = null;
+                double bestScore = Double.NEGATIVE_INFINITY;
+
+                for (int i = 0; i < count; i++) {
+                    Node child = childFor(node, moves[i]);
+                    if (child == null) {
+                        untried[untriedCount++] = moves[i];
+                        continue;
+                    }
+                    child.availability++;
+                    double score = child.score();
+                    if (score > bestScore) {
+                        best = child;
+                        bestScore = score;
+                    }
+                }
+
+                if (untriedCount > 0) {
+                    Node child = new Node(node, untried[random.nextInt(untriedCount)], round.getCurrent());
+                    child.availability = 1;
+                    node.children.add(child);
+                    apply(child.move);
+                    return child;
+                }
+                apply(best.move);
+                node = best;
+            }
+            return node;
+        }
+
+        // legal plays, and a pass unless leading
+        private int listMoves() {
+            int count = round.legalMoves(moves);
+            if (round.getTrickSize() != 0)
+                moves[count++] = 0;
+            return count;
+        }
+
+        private static Node childFor(Node node, long move) {
+            List<Node> children = node.children;
+            for (int i = 0, size = children.size(); i < size; i++)
+                if (children.get(i).move == move)
+                    return children.get(i);
+            return null;
+        }
+
+        private void apply(long move) {
+            if (move == 0)
+                round.pass();
+            else
+                round.play(move);
+        }
+
+        // 1 for going out first, down to 0 for last
+        private double reward(int seat) {
+            int players = round.getPlayers();
+            return (players - round.getPlace(seat)) / (double) (players - 1);
+        }
+    }
+}
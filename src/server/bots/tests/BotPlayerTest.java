@@ -0,0 +1,84 @@
+package server.bots.tests;
+
+import common.CardSet;
+import common.GameState;
+import common.Role;
+import common.rules.InformationSet;
+import common.rules.Round;
+import common.rules.Rules;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import server.Game;
+import server.UserSession;
+import server.bots.BotPlayer;
+import server.bots.IsmctsStrategy;
+import server.simulation.*;
+
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BotPlayerTest {
+
+    @AfterEach
+    public void tearDown() {
+        UserSession._reset();
+        Game._reset();
+    }
+
+    @Test
+    public void searchBeatsRandomPlay() {
+        Strategy bot = new IsmctsStrategy(300, 60_000, null);
+        SimulationStats stats = new Simulator(3, 1, 11, bot, BasicStrategy.RANDOM, BasicStrategy.RANDOM)
+                .run(40, new ForkJoinPool(1));
+
+        // random seats average second place
+        assertTrue(stats.getAveragePlace(0) < 1.7, "average place " + stats.getAveragePlace(0));
+    }
+
+    @Test
+    public void botsFillSeatsAndPlayARound() throws Exception {
+        UserSession owner = new UserSession();
+        Game game = new Game(owner.getID(), "bots", "secret".toCharArray());
+        BotPlayer first = BotPlayer.join(game, 50);
+        BotPlayer second = BotPlayer.join(game, 50);
+        assertTrue(BotPlayer.isBot(first.getID()));
+        assertEquals(3, game.getPlayers().size());
+
+        Game.await(game.start());
+        long deadline = System.currentTimeMillis() + 30_000;
+        GameState state = Game.await(game.stateFor(owner));
+        while (state.getRoundNo() < 2) {
+            assertTrue(System.currentTimeMillis() < deadline, "round did not finish");
+            InformationSet info = Game.await(game.informationSetFor(owner.getID()));
+            if (info != null) {
+                Round round = info.getRound();
+                long[] moves = new long[Rules.MAX_MOVES];
+                int count = round.legalMoves(moves);
+                long move = BasicStrategy.LOWEST_FIRST.play(round, moves, count, null);
+                if (move == 0)
+                    Game.await(game.pass(owner.getID()));
+                else
+                    Game.await(game.playCards(owner.getID(), new CardSet(move)));
+            } else {
+                Thread.sleep(5);
+            }
+            state = Game.await(game.stateFor(owner));
+        }
+
+        // the owner plays on without trading, so the bots' trades are all that's left
+        if (state.haveToTrade() && state.getRole() != Role.NEUTRAL) {
+            long hand = CardSet.of(state.getHand()).getBits();
+            int count = Rules.tradeCount(state.getRole(), 3);
+            Game.await(game.giveCards(owner.getID(), new CardSet(Rules.highestCards(hand, count))));
+        }
+
+        Game.await(game.cancelGame());
+        // a bot is unseated before the game has let it go
+        while (first.isSeated() || second.isSeated() || !game.getPlayers().isEmpty()) {
+            assertTrue(System.currentTimeMillis() < deadline, "bots did not leave");
+            Thread.sleep(5);
+        }
+        assertFalse(BotPlayer.isBot(first.getID()));
+    }
+}
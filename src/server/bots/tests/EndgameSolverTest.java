@@ -0,0 +1,101 @@
+package server.bots.tests;
+
+import common.rules.Round;
+import common.rules.Rules;
+import org.junit.jupiter.api.Test;
+import server.bots.EndgameSolver;
+
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EndgameSolverTest {
+
+    /**
+     * Deals a few cards to two seats of three, the third having gone out
+     */
+    private static Round endgame(SplittableRandom random, int cards) {
+        long deck = -1L >>> 12;
+        long[] hands = new long[3];
+        for (int seat = 1; seat < 3; seat++) {
+            for (int n = 0; n < cards; n++) {
+                int card;
+                do {
+                    card = random.nextInt(52);
+                } while ((deck & 1L << card) == 0);
+                deck &= ~(1L << card);
+                hands[seat] |= 1L << card;
+            }
+        }
+        Round round = new Round(3);
+        round.resume(hands, new int[]{1, 0, 0}, 1 + random.nextInt(2), 0, 0, 0, 0);
+        return round;
+    }
+
+    // the same search, without the table or pruning
+    private static int bestPlace(Round round, int root) {
+        if (round.getPlace(root) != 0)
+            return round.getPlace(root);
+        long[] moves = new long[Rules.MAX_MOVES + 1];
+        int count = round.legalMoves(moves);
+        if (round.getTrickSize() != 0)
+            moves[count++] = 0;
+
+        boolean own = round.getCurrent() == root;
+        int best = own ? Integer.MAX_VALUE : Integer.MIN_VALUE;
+        for (int i = 0; i < count; i++) {
+            Round child = new Round(round.getPlayers());
+            child.copyFrom(round);
+            if (moves[i] == 0)
+                child.pass();
+            else
+                child.play(moves[i]);
+            int place = bestPlace(child, root);
+            best = own ? Math.min(best, place) : Math.max(best, place);
+        }
+        return best;
+    }
+
+    @Test
+    public void solvesTwoHandedEndgamesExactly() {
+        SplittableRandom random = new SplittableRandom(19);
+        EndgameSolver solver = new EndgameSolver(12);
+        for (int i = 0; i < 100; i++) {
+            Round round = endgame(random, 1 + random.nextInt(4));
+            EndgameSolver.Result result = solver.solve(round, 10_000);
+            assertTrue(result.isExact());
+
+            int root = round.getCurrent();
+            assertEquals(bestPlace(round, root), result.getPlace(), 1e-9);
+
+            // the move chosen keeps that place
+            Round after = new Round(3);
+            after.copyFrom(round);
+            if (result.getMove() == 0)
+                after.pass();
+            else
+                after.play(result.getMove());
+            assertEquals(bestPlace(round, root), bestPlace(after, root));
+        }
+    }
+
+    @Test
+    public void timeBudgetStillLeavesAMove() {
+        Round round = new Round(4);
+        SplittableRandom random = new SplittableRandom(5);
+        long[] hands = new long[4];
+        for (int card = 0; card < 52; card++)
+            hands[random.nextInt(4)] |= 1L << card;
+        round.deal(hands, 0);
+
+        EndgameSolver.Result result = new EndgameSolver(16).solve(round, 20);
+        assertFalse(result.isExact());
+        assertTrue(result.getDepth() >= 1);
+        long[] moves = new long[Rules.MAX_MOVES];
+        int count = round.legalMoves(moves);
+        boolean legal = false;
+        for (int i = 0; i < count; i++)
+            legal |= moves[i] == result.getMove();
+        assertTrue(legal);
+    }
+}
@@ -0,0 +1,371 @@
+package server.journal;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * An append-only log of records, written to memory-mapped segment files
+ * of a fixed size in one directory, and numbered in the order written.
+ *
+ * Appending only copies the record into the mapping, under a short lock,
+ * so it costs about as much as writing to memory. A committer thread
+ * forces what was appended to disk every commit interval, all records at
+ * once. A crashed process loses nothing appended, as the mapping lives in
+ * the page cache, but a crashed machine may lose the last interval.
+ *
+ * Each record is its length, a CRC32C of its payload, and the payload.
+ * The length is written last, so a record cut short reads as the end of
+ * its segment.
+ */
+public class Journal implements Closeable {
+
+    public static final int DEFAULT_SEGMENT_SIZE = 64 << 20;
+    public static final long DEFAULT_COMMIT_MICROS = 2_000;
+
+    private static final int HEADER = 8;
+    private static final int END_OF_SEGMENT = -1;
+    private static final String SUFFIX = ".journal";
+
+    private final Path directory;
+    private final int segmentSize;
+    private final long commitNanos;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final CRC32C crc = new CRC32C();                    // guarded by lock
+    private final List<Segment> retired = new ArrayList<>();    // guarded by lock, forced and closed by the committer
+    private final Object commitLock = new Object();
+    private final Thread committer;
+    private Segment current;        // guarded by lock
+    private int recordStart;        // guarded by lock, of the record between begin() and end()
+    private int recordLength;       // guarded by lock
+    private volatile long appended; // records appended so far
+    private volatile long durable;  // records forced to disk so far
+    private volatile boolean closed;
+
+    private static class Segment {
+        final long number;
+        final FileChannel channel;
+        final MappedByteBuffer buffer;
+
+        Segment(long number, FileChannel channel, MappedByteBuffer buffer) {
+            this.number = number;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+    }
+
+    /**
+     * Opens the journal for appending, in a new segment after any that
+     * are there already, which are left for reading
+     * @param directory Path of the segment files, created if missing
+     * @param segmentSize int bytes per segment file
+     * @param commitMicros long between forcing appended records to disk
+     * @throws IOException if the first segment can't be created
+     */
+    public Journal(Path directory, int segmentSize, long commitMicros) throws IOException {
+        if (segmentSize < 1024)
+            throw new IllegalArgumentException("Segments must be at least 1 KiB");
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.commitNanos = TimeUnit.MICROSECONDS.toNanos(commitMicros);
+        Files.createDirectories(directory);
+
+        List<Long> existing = segments(directory);
+        current = createSegment(existing.isEmpty() ? 1 : existing.get(existing.size() - 1) + 1);
+
+        committer = new Thread(this::commitLoop, "JournalCommitter");
+        committer.setDaemon(true);
+        committer.start();
+    }
+
+    public Journal(Path directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_SIZE, DEFAULT_COMMIT_MICROS);
+    }
+
+    /**
+     * Starts a record, which the caller writes in full into the buffer
+     * returned, and then passes to end(). Other appends wait until then,
+     * so the caller must not block in between.
+     *
+     * Use as: buffer = begin(n); try { buffer.put... } finally { end(); }
+     * @param length int bytes of payload
+     * @return ByteBuffer to put exactly length bytes into, at its position
+     * @throws IOException if the journal is closed, or a new segment can't be created
+     */
+    public ByteBuffer begin(int length) throws IOException {
+        if (length <= 0 || length > segmentSize - HEADER - 4)
+            throw new IllegalArgumentException("Bad record length: " + length);
+
+        lock.lock();
+        try {
+            if (closed)
+                throw new IOException("Journal is closed");
+            if (current.buffer.remaining() < HEADER + length)
+                switchSegment();
+        } catch (IOException | RuntimeException e) {
+            lock.unlock();
+            throw e;
+        }
+
+        MappedByteBuffer buffer = current.buffer;
+        recordStart = buffer.position();
+        recordLength = length;
+        buffer.position(recordStart + HEADER);
+        return buffer;
+    }
+
+    /**
+     * Seals the record started by begin(). A record not written in full
+     * is dropped, as if never begun.
+     */
+    public void end() {
+        MappedByteBuffer buffer = current.buffer;
+        int payload = recordStart + HEADER;
+        try {
+            if (buffer.position() != payload + recordLength) {
+                buffer.position(recordStart);
+                return;
+            }
+
+            buffer.position(payload);
+            buffer.limit(payload + recordLength);
+            crc.reset();
+            crc.update(buffer);
+            buffer.limit(buffer.capacity());
+            buffer.putInt(recordStart + 4, (int) crc.getValue());
+            buffer.putInt(recordStart, recordLength);
+            appended++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Appends a record in one call
+     * @param payload ByteBuffer whose remaining bytes are the record
+     */
+    public void append(ByteBuffer payload) throws IOException {
+        ByteBuffer buffer = begin(payload.remaining());
+        try {
+            buffer.put(payload);
+        } finally {
+            end();
+        }
+    }
+
+    /**
+     * Continues in a new segment, so that the records before can be
+     * dropped once nothing needs them
+     * @return long number of the new segment
+     */
+    public long roll() throws IOException {
+        lock.lock();
+        try {
+            if (closed)
+                throw new IOException("Journal is closed");
+            switchSegment();
+            return current.number;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // must hold lock
+    private void switchSegment() throws IOException {
+        Segment next = createSegment(current.number + 1);
+        MappedByteBuffer buffer = current.buffer;
+        if (buffer.remaining() >= 4)
+            buffer.putInt(buffer.position(), END_OF_SEGMENT);
+        retired.add(current);
+        current = next;
+    }
+
+    private Segment createSegment(long number) throws IOException {
+        FileChannel channel = FileChannel.open(
+                directory.resolve(name(number)),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE
+        );
+        try {
+            return new Segment(number, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize));
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Forces every record appended so far to disk, without waiting for
+     * the committer
+     */
+    public void sync() throws IOException {
+        commit();
+    }
+
+    /**
+     * @return long records appended since the journal was opened
+     */
+    public long getAppended() {
+        return appended;
+    }
+
+    /**
+     * @return long records appended and forced to disk
+     */
+    public long getDurable() {
+        return durable;
+    }
+
+    private void commitLoop() {
+        while (!closed) {
+            LockSupport.parkNanos(this, commitNanos);
+            try {
+                commit();
+            } catch (IOException | RuntimeException e) {
+                if (!closed)
+                    e.printStackTrace();
+            }
+        }
+    }
+
+    private void commit() throws IOException {
+        synchronized (commitLock) {
+            long target;
+            Segment segment;
+            List<Segment> done;
+            lock.lock();
+            try {
+                target = appended;
+                segment = current;
+                done = retired.isEmpty() ? List.of() : new ArrayList<>(retired);
+                retired.clear();
+            } finally {
+                lock.unlock();
+            }
+
+            for (Segment old : done) {
+                old.buffer.force();
+                old.channel.close();
+            }
+            if (target > durable) {
+                segment.buffer.force();
+                durable = target;
+            }
+        }
+    }
+
+    /**
+     * Deletes the segments before the given one. Only the records of
+     * segments that are no longer appended to should be dropped.
+     */
+    public void deleteBefore(long segment) throws IOException {
+        for (long number : segments(directory))
+            if (number < segment)
+                Files.deleteIfExists(directory.resolve(name(number)));
+    }
+
+    /**
+     * Forces what was appended to disk, and stops appending
+     */
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (closed)
+                return;
+            closed = true;
+            retired.add(current);
+        } finally {
+            lock.unlock();
+        }
+        LockSupport.unpark(committer);
+        synchronized (commitLock) {
+            lock.lock();
+            try {
+                for (Segment segment : retired) {
+                    segment.buffer.force();
+                    segment.channel.close();
+                }
+                retired.clear();
+                durable = appended;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Reads the records of every segment from the given one on, in the
+     * order they were appended. Reading a segment stops at its first
+     * record cut short or corrupted, which can only be the last one
+     * written before a crash.
+     * @param directory Path of the segment files
+     * @param fromSegment long number of the first segment to read
+     * @param consumer Consumer of each record, given a buffer positioned
+     *                 at its payload and limited to its end. The buffer is
+     *                 reused, so it must not be kept.
+     * @return long records read
+     */
+    public static long read(Path directory, long fromSegment, Consumer<ByteBuffer> consumer) throws IOException {
+        CRC32C crc = new CRC32C();
+        long records = 0;
+        for (long number : segments(directory)) {
+            if (number < fromSegment)
+                continue;
+            try (FileChannel channel = FileChannel.open(directory.resolve(name(number)), StandardOpenOption.READ)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                int position = 0;
+                while (buffer.capacity() - position >= HEADER) {
+                    int length = buffer.getInt(position);
+                    int payload = position + HEADER;
+                    if (length <= 0 || length > buffer.capacity() - payload)
+                        break;
+
+                    buffer.limit(payload + length).position(payload);
+                    crc.reset();
+                    crc.update(buffer);
+                    if ((int) crc.getValue() != buffer.getInt(position + 4))
+                        break;
+
+                    buffer.position(payload);
+                    consumer.accept(buffer);
+                    buffer.limit(buffer.capacity());
+                    position = payload + length;
+                    records++;
+                }
+            }
+        }
+        return records;
+    }
+
+    /**
+     * @return List of the numbers of the segments in the directory, in order
+     */
+    public static List<Long> segments(Path directory) throws IOException {
+        if (!Files.isDirectory(directory))
+            return List.of();
+        try (Stream<Path> files = Files.list(directory)) {
+            return files
+                    .map(file -> file.getFileName().toString())
+                    .filter(name -> name.matches("\\d{16}" + SUFFIX.replace(".", "\\.")))
+                    .map(name -> Long.parseLong(name.substring(0, 16)))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static String name(long number) {
+        return String.format("%016d", number) + SUFFIX;
+    }
+}
@@ -0,0 +1,70 @@
+package server.journal.tests;
+
+import org.junit.jupiter.api.Test;
+import server.journal.Journal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JournalTest {
+
+    @Test
+    public void recordsAreReadBackInOrderAcrossSegments() throws IOException {
+        Path directory = Files.createTempDirectory("journal");
+        try (Journal journal = new Journal(directory, 1024, 1_000)) {
+            for (long i = 0; i < 200; i++)
+                journal.append(ByteBuffer.allocate(Long.BYTES).putLong(0, i));
+            journal.sync();
+            assertEquals(200, journal.getDurable());
+        }
+        assertTrue(Journal.segments(directory).size() > 1);
+
+        List<Long> read = new ArrayList<>();
+        assertEquals(200, Journal.read(directory, 0, record -> read.add(record.getLong())));
+        for (int i = 0; i < 200; i++)
+            assertEquals(i, read.get(i));
+
+        // a reopened journal appends after what is there
+        try (Journal journal = new Journal(directory, 1024, 1_000)) {
+            journal.append(ByteBuffer.allocate(Long.BYTES).putLong(0, 200));
+        }
+        read.clear();
+        Journal.read(directory, 0, record -> read.add(record.getLong()));
+        assertEquals(201, read.size());
+        assertEquals(200, read.get(200));
+    }
+
+    @Test
+    public void aCorruptRecordEndsItsSegment() throws IOException {
+        Path directory = Files.createTempDirectory("journal");
+        try (Journal journal = new Journal(directory, 1024, 1_000)) {
+            for (long i = 0; i < 3; i++)
+                journal.append(ByteBuffer.allocate(Long.BYTES).putLong(0, i));
+            ByteBuffer torn = journal.begin(Long.BYTES);
+            torn.putInt(7);     // cut short
+            journal.end();
+            journal.append(ByteBuffer.allocate(Long.BYTES).putLong(0, 3));
+        }
+        Path segment = Files.list(directory).findFirst().orElseThrow();
+
+        List<Long> read = new ArrayList<>();
+        Journal.read(directory, 0, record -> read.add(record.getLong()));
+        assertEquals(List.of(0L, 1L, 2L, 3L), read);
+
+        // flip a payload byte of the third record
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{42}), 2 * 16 + 8 + 7);
+        }
+        read.clear();
+        Journal.read(directory, 0, record -> read.add(record.getLong()));
+        assertEquals(List.of(0L, 1L), read);
+    }
+}
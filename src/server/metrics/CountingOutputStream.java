@@ -0,0 +1,31 @@
+package server.metrics;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.function.LongConsumer;
+
+/**
+ * Reports the bytes written through it, as they are written
+ */
+public class CountingOutputStream extends FilterOutputStream {
+    private final LongConsumer counter;
+
+    public CountingOutputStream(OutputStream out, LongConsumer counter) {
+        super(out);
+        this.counter = counter;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        out.write(b);
+        counter.accept(1);
+    }
+
+    // FilterOutputStream would write the array a byte at a time
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+        counter.accept(len);
+    }
+}
@@ -0,0 +1,95 @@
+package server.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts non-negative values, e.g. latencies in nanoseconds, in buckets
+ * that grow with the value the way an HDR histogram's do: every power of
+ * two is split into 16 buckets, so any value is known to within about 6%.
+ * Recording is lock-free and allocation-free, and the whole long range
+ * fits in under a thousand buckets.
+ */
+public class Histogram {
+
+    private static final int SUB_BITS = 5;
+    private static final int SUB = 1 << SUB_BITS;      // values below are counted exactly
+    private static final int HALF = SUB >>> 1;
+    private static final int BUCKETS = indexOf(Long.MAX_VALUE) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    static int indexOf(long value) {
+        if (value < SUB)
+            return (int) value;
+        int shift = 64 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        return shift * HALF + (int) (value >>> shift);
+    }
+
+    /**
+     * @return long the highest value counted in the bucket
+     */
+    static long highestIn(int index) {
+        if (index < SUB)
+            return index;
+        int shift = index / HALF - 1;
+        long top = index - (long) shift * HALF;
+        return ((top + 1) << shift) - 1;
+    }
+
+    /**
+     * @param value long, counted as 0 if negative
+     */
+    public void record(long value) {
+        if (value < 0)
+            value = 0;
+        counts.incrementAndGet(indexOf(value));
+        count.increment();
+        sum.add(value);
+        if (value > max.get())
+            max.accumulateAndGet(value, Math::max);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getSum() {
+        return sum.sum();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public double getMean() {
+        long n = count.sum();
+        return n == 0 ? 0 : sum.sum() / (double) n;
+    }
+
+    /**
+     * @param percentile double from 0 to 100
+     * @return long a value at least as high as that percentile of the
+     *         values counted, or 0 if there are none
+     */
+    public long getValueAtPercentile(double percentile) {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++)
+            total += counts.get(i);
+        if (total == 0)
+            return 0;
+
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank)
+                return Math.min(highestIn(i), max.get());
+        }
+        return max.get();
+    }
+}
@@ -0,0 +1,73 @@
+package server.metrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Serves the server metrics as plain text at /metrics, for Prometheus or
+ * curl to scrape. Only listens on the loopback address, so the figures
+ * stay on the machine unless something local forwards them.
+ */
+public class MetricsEndpoint implements Closeable {
+
+    public static final String PATH = "/metrics";
+
+    private final HttpServer http;
+    private final ExecutorService executor;
+
+    /**
+     * @param port int to listen on, or 0 for any free port
+     * @throws IOException if the port can't be bound
+     */
+    public MetricsEndpoint(ServerMetrics metrics, int port) throws IOException {
+        http = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        http.createContext(PATH, exchange -> scrape(exchange, metrics));
+        executor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "MetricsEndpoint");
+            thread.setDaemon(true);
+            return thread;
+        });
+        http.setExecutor(executor);
+    }
+
+    public MetricsEndpoint start() {
+        http.start();
+        return this;
+    }
+
+    public int getPort() {
+        return http.getAddress().getPort();
+    }
+
+    private static void scrape(HttpExchange exchange, ServerMetrics metrics) throws IOException {
+        try {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] body = metrics.toText().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    @Override
+    public void close() {
+        http.stop(0);
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,62 @@
+package server.metrics;
+
+import protocol.MessageType;
+
+/**
+ * Counts the requests of one MessageType, and how long they took to handle
+ */
+public class RequestMetrics implements RequestMetricsMBean {
+    private final MessageType type;
+    private final Histogram nanos = new Histogram();
+
+    RequestMetrics(MessageType type) {
+        this.type = type;
+    }
+
+    void record(long elapsedNanos) {
+        nanos.record(elapsedNanos);
+    }
+
+    public MessageType getType() {
+        return type;
+    }
+
+    public Histogram getHistogram() {
+        return nanos;
+    }
+
+    @Override
+    public long getCount() {
+        return nanos.getCount();
+    }
+
+    @Override
+    public double getMeanMicros() {
+        return nanos.getMean() / 1000;
+    }
+
+    @Override
+    public long getP50Micros() {
+        return nanos.getValueAtPercentile(50) / 1000;
+    }
+
+    @Override
+    public long getP90Micros() {
+        return nanos.getValueAtPercentile(90) / 1000;
+    }
+
+    @Override
+    public long getP99Micros() {
+        return nanos.getValueAtPercentile(99) / 1000;
+    }
+
+    @Override
+    public long getP999Micros() {
+        return nanos.getValueAtPercentile(99.9) / 1000;
+    }
+
+    @Override
+    public long getMaxMicros() {
+        return nanos.getMax() / 1000;
+    }
+}
@@ -0,0 +1,15 @@
+package server.metrics;
+
+/**
+ * Requests of one MessageType, with handling times in microseconds, as
+ * shown over JMX
+ */
+public interface RequestMetricsMBean {
+    long getCount();
+    double getMeanMicros();
+    long getP50Micros();
+    long getP90Micros();
+    long getP99Micros();
+    long getP999Micros();
+    long getMaxMicros();
+}
@@ -0,0 +1,241 @@
+package server.metrics;
+
+import protocol.MessageType;
+import server.Game;
+import server.Server;
+import server.UserSession;
+
+import javax.management.*;
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * What the server has been doing since it started: requests and their
+ * handling times by MessageType, connections and their traffic, and how
+ * many players each game state change is sent to. Everything is counted
+ * without locks, so it can be updated from any request thread.
+ *
+ * Read over JMX, under the "daifugo" domain, or as plain text in the
+ * Prometheus format, which MetricsEndpoint serves.
+ */
+public class ServerMetrics implements ServerMetricsMBean {
+
+    public static final String DOMAIN = "daifugo";
+
+    private static final ServerMetrics INSTANCE = new ServerMetrics();
+
+    private final RequestMetrics[] requests = new RequestMetrics[MessageType.values().length];
+    private final AtomicInteger connections = new AtomicInteger();
+    private final LongAdder bytesReceived = new LongAdder();
+    private final LongAdder bytesSent = new LongAdder();
+    private final Histogram connectionBytesReceived = new Histogram();
+    private final Histogram connectionBytesSent = new Histogram();
+    private final Histogram fanOut = new Histogram();
+
+    private ServerMetrics() {
+        for (MessageType type : MessageType.values())
+            requests[type.ordinal()] = new RequestMetrics(type);
+    }
+
+    public static ServerMetrics get() {
+        return INSTANCE;
+    }
+
+    /**
+     * @param type MessageType of the request handled
+     * @param elapsedNanos long from receiving the request to having answered it
+     */
+    public void request(MessageType type, long elapsedNanos) {
+        requests[type.ordinal()].record(elapsedNanos);
+    }
+
+    public RequestMetrics getRequestMetrics(MessageType type) {
+        return requests[type.ordinal()];
+    }
+
+    public void connectionOpened() {
+        connections.incrementAndGet();
+    }
+
+    /**
+     * @param received long bytes read from the connection over its life
+     * @param sent long bytes written to it
+     */
+    public void connectionClosed(long received, long sent) {
+        connections.decrementAndGet();
+        connectionBytesReceived.record(received);
+        connectionBytesSent.record(sent);
+    }
+
+    public void bytesReceived(long bytes) {
+        bytesReceived.add(bytes);
+    }
+
+    public void bytesSent(long bytes) {
+        bytesSent.add(bytes);
+    }
+
+    /**
+     * @param players int players told of a game state change
+     */
+    public void stateChanged(int players) {
+        fanOut.record(players);
+    }
+
+    /**
+     * Registers the server figures, and those of every MessageType, with
+     * the platform MBean server. Does nothing if already registered.
+     */
+    public void registerMBeans() throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(DOMAIN + ":type=Server");
+        if (server.isRegistered(name))
+            return;
+        server.registerMBean(this, name);
+        for (RequestMetrics metrics : requests)
+            server.registerMBean(
+                    metrics,
+                    new ObjectName(DOMAIN + ":type=Requests,name=" + metrics.getType())
+            );
+    }
+
+    /**
+     * Writes everything out in the Prometheus text format, with times in
+     * seconds. Request types that were never handled are left out.
+     */
+    public void writeText(StringBuilder out) {
+        gauge(out, "daifugo_connections", "Open client connections", getConnections());
+        gauge(out, "daifugo_sessions", "User sessions, connected or holding a seat", getActiveSessions());
+        gauge(out, "daifugo_games", "Games in the lobby", getGames());
+        gauge(out, "daifugo_games_started", "Games being played", getStartedGames());
+        counter(out, "daifugo_bytes_received_total", "Bytes read from clients", getBytesReceived());
+        counter(out, "daifugo_bytes_sent_total", "Bytes written to clients", getBytesSent());
+        counter(out, "daifugo_log_records_dropped_total", "Log records dropped by a full log buffer", getLogRecordsDropped());
+
+        header(out, "daifugo_requests_total", "counter", "Requests handled by type");
+        for (RequestMetrics metrics : requests)
+            if (metrics.getCount() > 0)
+                line(out, "daifugo_requests_total", "type=\"" + metrics.getType() + "\"", metrics.getCount());
+
+        header(out, "daifugo_request_seconds", "summary", "Time to handle a request by type");
+        for (RequestMetrics metrics : requests)
+            if (metrics.getCount() > 0)
+                summary(out, "daifugo_request_seconds", "type=\"" + metrics.getType() + "\",", metrics.getHistogram(), 1e-9);
+
+        header(out, "daifugo_connection_bytes_received", "summary", "Bytes read over the life of a closed connection");
+        summary(out, "daifugo_connection_bytes_received", "", connectionBytesReceived, 1);
+        header(out, "daifugo_connection_bytes_sent", "summary", "Bytes written over the life of a closed connection");
+        summary(out, "daifugo_connection_bytes_sent", "", connectionBytesSent, 1);
+        header(out, "daifugo_state_change_fanout", "summary", "Players told of each game state change");
+        summary(out, "daifugo_state_change_fanout", "", fanOut, 1);
+    }
+
+    public String toText() {
+        StringBuilder out = new StringBuilder(4096);
+        writeText(out);
+        return out.toString();
+    }
+
+    private static void header(StringBuilder out, String name, String type, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void gauge(StringBuilder out, String name, String help, long value) {
+        header(out, name, "gauge", help);
+        line(out, name, "", value);
+    }
+
+    private static void counter(StringBuilder out, String name, String help, long value) {
+        header(out, name, "counter", help);
+        line(out, name, "", value);
+    }
+
+    private static void line(StringBuilder out, String name, String labels, Object value) {
+        out.append(name);
+        if (!labels.isEmpty())
+            out.append('{').append(labels).append('}');
+        out.append(' ').append(value).append('\n');
+    }
+
+    /**
+     * @param labels String labels to put before the quantile, each followed by a comma
+     * @param scale double unit of the recorded values, in that of the metric
+     */
+    private static void summary(StringBuilder out, String name, String labels, Histogram histogram, double scale) {
+        for (double quantile : new double[]{0.5, 0.9, 0.99, 0.999})
+            line(
+                    out, name, labels + "quantile=\"" + quantile + "\"",
+                    format(histogram.getValueAtPercentile(quantile * 100) * scale)
+            );
+        String bare = labels.isEmpty() ? "" : labels.substring(0, labels.length() - 1);
+        line(out, name + "_sum", bare, format(histogram.getSum() * scale));
+        line(out, name + "_count", bare, histogram.getCount());
+    }
+
+    private static String format(double value) {
+        return value == Math.rint(value)
+                ? Long.toString((long) value)
+                : String.format(Locale.ROOT, "%.9g", value);
+    }
+
+    @Override
+    public int getConnections() {
+        return connections.get();
+    }
+
+    @Override
+    public int getActiveSessions() {
+        return UserSession.getSessionCount();
+    }
+
+    @Override
+    public int getGames() {
+        return Game.getGameCount();
+    }
+
+    @Override
+    public int getStartedGames() {
+        return Game.getStartedGameCount();
+    }
+
+    @Override
+    public long getRequests() {
+        long total = 0;
+        for (RequestMetrics metrics : requests)
+            total += metrics.getCount();
+        return total;
+    }
+
+    @Override
+    public long getBytesReceived() {
+        return bytesReceived.sum();
+    }
+
+    @Override
+    public long getBytesSent() {
+        return bytesSent.sum();
+    }
+
+    @Override
+    public long getStateChanges() {
+        return fanOut.getCount();
+    }
+
+    @Override
+    public double getMeanFanOut() {
+        return fanOut.getMean();
+    }
+
+    @Override
+    public long getMaxFanOut() {
+        return fanOut.getMax();
+    }
+
+    @Override
+    public long getLogRecordsDropped() {
+        return Server.ASYNC_HANDLER.getDropped();
+    }
+}
@@ -0,0 +1,18 @@
+package server.metrics;
+
+/**
+ * Server wide figures, as shown over JMX
+ */
+public interface ServerMetricsMBean {
+    int getConnections();
+    int getActiveSessions();
+    int getGames();
+    int getStartedGames();
+    long getRequests();
+    long getBytesReceived();
+    long getBytesSent();
+    long getStateChanges();
+    double getMeanFanOut();
+    long getMaxFanOut();
+    long getLogRecordsDropped();
+}
@@ -0,0 +1,84 @@
+package server.metrics.tests;
+
+import org.junit.jupiter.api.Test;
+import protocol.Message;
+import protocol.MessageType;
+import server.ConnectionHandler;
+import server.metrics.Histogram;
+import server.metrics.MetricsEndpoint;
+import server.metrics.ServerMetrics;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ServerMetricsTest {
+
+    @Test
+    public void percentilesAreWithinABucketOfTheTruth() {
+        Histogram histogram = new Histogram();
+        Random random = new Random(11);
+        long[] values = new long[10_000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (long) Math.exp(random.nextDouble() * 30);
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+
+        assertEquals(values.length, histogram.getCount());
+        assertEquals(values[values.length - 1], histogram.getMax());
+        for (double percentile : new double[]{1, 50, 90, 99, 99.9, 100}) {
+            long exact = values[(int) Math.ceil(percentile / 100 * values.length) - 1];
+            long estimate = histogram.getValueAtPercentile(percentile);
+            assertTrue(estimate >= exact, "never below the value");
+            assertTrue(estimate <= exact + exact / 16 + 1, percentile + ": " + estimate + " for " + exact);
+        }
+
+        Histogram small = new Histogram();
+        for (int i = 0; i < 10; i++)
+            small.record(i);
+        assertEquals(4, small.getValueAtPercentile(50));
+    }
+
+    @Test
+    public void requestsAndTrafficAreCountedAndScraped() throws IOException {
+        ServerMetrics metrics = ServerMetrics.get();
+        long connects = metrics.getRequestMetrics(MessageType.CONNECT).getCount();
+        long received = metrics.getBytesReceived();
+        int connections = metrics.getConnections();
+
+        List<Message> sent = new ArrayList<>();
+        ConnectionHandler handler = new ConnectionHandler(sent::add, "/127.0.0.1");
+        assertEquals(connections + 1, metrics.getConnections());
+        handler.handle(new Message(MessageType.CONNECT));
+        handler.bytesReceived(100);
+        handler.handle(new Message(MessageType.DISCONNECT));
+        handler.closed();
+        handler.closed();
+
+        assertEquals(connects + 1, metrics.getRequestMetrics(MessageType.CONNECT).getCount());
+        assertEquals(received + 100, metrics.getBytesReceived());
+        assertEquals(connections, metrics.getConnections());
+
+        MetricsEndpoint endpoint = new MetricsEndpoint(metrics, 0).start();
+        try {
+            URL url = new URL("http://localhost:" + endpoint.getPort() + MetricsEndpoint.PATH);
+            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+            assertEquals(200, connection.getResponseCode());
+            String text;
+            try (InputStream in = connection.getInputStream()) {
+                text = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            }
+            assertTrue(text.contains("daifugo_requests_total{type=\"CONNECT\"} " + (connects + 1)));
+            assertTrue(text.contains("daifugo_request_seconds_count{type=\"DISCONNECT\"}"));
+            assertTrue(text.contains("# TYPE daifugo_connections gauge"));
+        } finally {
+            endpoint.close();
+        }
+    }
+}
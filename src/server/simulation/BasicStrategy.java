@@ -0,0 +1,47 @@
+package server.simulation;
+
+import common.rules.Round;
+import common.rules.Rules;
+
+import java.util.SplittableRandom;
+
+/**
+ * Baseline players to measure bots against
+ */
+public enum BasicStrategy implements Strategy {
+
+    /**
+     * Plays a random legal move, passing as often as any one play,
+     * but always plays when leading
+     */
+    RANDOM {
+        @Override
+        public long play(Round round, long[] moves, int count, SplittableRandom random) {
+            if (count == 0)
+                return 0;
+            boolean leading = round.getTrickSize() == 0;
+            int choice = random.nextInt(leading ? count : count + 1);
+            return choice < count ? moves[choice] : 0;
+        }
+    },
+
+    /**
+     * Plays the lowest value it can, with as many cards as it can
+     */
+    LOWEST_FIRST {
+        @Override
+        public long play(Round round, long[] moves, int count, SplittableRandom random) {
+            long best = 0;
+            int bestValue = Integer.MAX_VALUE;
+            for (int i = 0; i < count; i++) {
+                int value = Rules.valueOf(moves[i]);
+                if (value < bestValue
+                        || value == bestValue && Long.bitCount(moves[i]) > Long.bitCount(best)) {
+                    best = moves[i];
+                    bestValue = value;
+                }
+            }
+            return best;
+        }
+    }
+}
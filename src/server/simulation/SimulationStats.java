@@ -0,0 +1,134 @@
+package server.simulation;
+
+import common.Role;
+import common.Trick;
+
+import java.io.PrintStream;
+
+/**
+ * Counts gathered from simulated games, per seat where it matters.
+ * Each simulation thread fills its own, and they are merged at the end.
+ */
+public class SimulationStats {
+    private final int players;
+    private long games;
+    private long rounds;
+    private long moves;
+    private long passes;
+    private final long[] tricks = new long[Trick.values().length];
+    private final long[][] places;      // seat -> place - 1 -> rounds
+    private final long[][] roles;       // seat -> role -> rounds started in it
+
+    public SimulationStats(int players) {
+        this.players = players;
+        places = new long[players][players];
+        roles = new long[players][Role.values().length];
+    }
+
+    void game() {
+        games++;
+    }
+
+    void round() {
+        rounds++;
+    }
+
+    void move(boolean pass) {
+        moves++;
+        if (pass)
+            passes++;
+    }
+
+    void trick(Trick trick) {
+        if (trick != Trick.NONE)
+            tricks[trick.ordinal()]++;
+    }
+
+    void place(int seat, int place) {
+        places[seat][place - 1]++;
+    }
+
+    void role(int seat, Role role) {
+        roles[seat][role.ordinal()]++;
+    }
+
+    SimulationStats merge(SimulationStats other) {
+        games += other.games;
+        rounds += other.rounds;
+        moves += other.moves;
+        passes += other.passes;
+        for (int i = 0; i < tricks.length; i++)
+            tricks[i] += other.tricks[i];
+        for (int seat = 0; seat < players; seat++) {
+            for (int i = 0; i < players; i++)
+                places[seat][i] += other.places[seat][i];
+            for (int i = 0; i < roles[seat].length; i++)
+                roles[seat][i] += other.roles[seat][i];
+        }
+        return this;
+    }
+
+    public long getGames() {
+        return games;
+    }
+
+    public long getRounds() {
+        return rounds;
+    }
+
+    public long getMoves() {
+        return moves;
+    }
+
+    public long getTricks(Trick trick) {
+        return tricks[trick.ordinal()];
+    }
+
+    /**
+     * @return long rounds the seat finished in the place, from 1
+     */
+    public long getPlaces(int seat, int place) {
+        return places[seat][place - 1];
+    }
+
+    /**
+     * @return long rounds the seat played in the role
+     */
+    public long getRoles(int seat, Role role) {
+        return roles[seat][role.ordinal()];
+    }
+
+    /**
+     * @return double average place the seat finished in
+     */
+    public double getAveragePlace(int seat) {
+        long sum = 0;
+        for (int i = 0; i < players; i++)
+            sum += (i + 1) * places[seat][i];
+        return rounds == 0 ? 0 : sum / (double) rounds;
+    }
+
+    public void print(PrintStream out, Strategy[] strategies) {
+        out.printf(
+                "%d games, %d rounds, %.1f moves per round, %.1f%% passes%n",
+                games, rounds, moves / (double) Math.max(1, rounds), 100.0 * passes / Math.max(1, moves)
+        );
+        out.printf(
+                "tricks per round: %.2f all pass, %.2f four same, %.2f three of clubs%n%n",
+                tricks[Trick.ALL_PASS.ordinal()] / (double) Math.max(1, rounds),
+                tricks[Trick.FOUR_SAME.ordinal()] / (double) Math.max(1, rounds),
+                tricks[Trick.THREE_CLUBS.ordinal()] / (double) Math.max(1, rounds)
+        );
+
+        out.printf("%-5s %-14s %10s", "seat", "strategy", "avg place");
+        for (Role role : Role.values())
+            out.printf(" %15s", role);
+        out.println();
+        for (int seat = 0; seat < players; seat++) {
+            out.printf("%-5d %-14s %10.2f", seat, strategies[seat], getAveragePlace(seat));
+            for (Role role : Role.values())
+                out.printf(" %14.1f%%", 100.0 * getRoles(seat, role) / Math.max(1, rounds));
+            out.println();
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package server.simulation;
+
+import common.PlayerData;
+import common.Role;
+import common.Trick;
+import common.rules.Round;
+import common.rules.Rules;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Plays whole games offline, with the rules the server plays by, on the
+ * compact Round state instead of Game objects and sessions.
+ *
+ * Usage: Simulator [games] [players] [rounds per game] [seed] [strategies]
+ *
+ * Strategies are BasicStrategy names, one per seat separated by commas,
+ * and repeated round the table if there are fewer than seats. Games are
+ * split into batches across a fork/join pool, and game i is always
+ * dealt from the same seed, so a run can be repeated exactly.
+ *
+ * A game is a number of rounds at a fixed table: the first round is led
+ * by the holder of the 3 of diamonds, and every later one starts with
+ * trading by the roles earned in the round before, and is led by the bum.
+ */
+public class Simulator {
+
+    private static final int GAMES_PER_BATCH = 512;
+    private static final int MAX_MOVES_PER_ROUND = 10_000;    // guards against strategies that never finish
+    private static final byte THREE_OF_DIAMONDS = 40;       // ordinal, as by CardData.toByte()
+
+    private final int players;
+    private final int roundsPerGame;
+    private final long seed;
+    private final Strategy[] strategies;
+
+    /**
+     * @param strategies Strategy of each seat, in turn order
+     */
+    public Simulator(int players, int roundsPerGame, long seed, Strategy... strategies) {
+        if (strategies.length != players)
+            throw new IllegalArgumentException("Need one strategy per seat");
+        this.players = players;
+        this.roundsPerGame = roundsPerGame;
+        this.seed = seed;
+        this.strategies = strategies.clone();
+    }
+
+    public SimulationStats run(long games, ForkJoinPool pool) {
+        return pool.invoke(new Batch(this, 0, games));
+    }
+
+    public static void main(String[] args) {
+        long games = args.length > 0 ? Long.parseLong(args[0]) : 1_000_000;
+        int players = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        long seed = args.length > 3 ? Long.parseLong(args[3]) : 1;
+        String[] names = (args.length > 4 ? args[4] : "LOWEST_FIRST,RANDOM").split(",");
+
+        Strategy[] strategies = new Strategy[players];
+        for (int seat = 0; seat < players; seat++)
+            strategies[seat] = BasicStrategy.valueOf(names[seat % names.length].trim());
+
+        Simulator simulator = new Simulator(players, rounds, seed, strategies);
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+
+        // warm up on a different seed, then time the run proper
+        new Simulator(players, rounds, seed + 1, strategies).run(Math.min(games, 100_000), pool);
+        long start = System.nanoTime();
+        SimulationStats stats = simulator.run(games, pool);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf(
+                "%d players, %d rounds per game, seed %d, %d threads%n",
+                players, rounds, seed, pool.getParallelism()
+        );
+        System.out.printf(
+                "%.2f s, %.0f games/s, %.0f rounds/s%n%n",
+                seconds, stats.getGames() / seconds, stats.getRounds() / seconds
+        );
+        stats.print(System.out, strategies);
+    }
+
+
+    private SimulationStats play(long from, long to) {
+        Table table = new Table();
+        for (long game = from; game < to; game++)
+            table.playGame(game);
+        return table.stats;
+    }
+
+    private static class Batch extends RecursiveTask<SimulationStats> {
+        private static final long serialVersionUID = 1L;
+
+        private final transient Simulator simulator;
+        private final long from;
+        private final long to;
+
+        Batch(Simulator simulator, long from, long to) {
+            this.simulator = simulator;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected SimulationStats compute() {
+            if (to - from <= GAMES_PER_BATCH)
+                return simulator.play(from, to);
+
+            long middle = (from + to) >>> 1;
+            Batch left = new Batch(simulator, from, middle);
+            left.fork();
+            SimulationStats right = new Batch(simulator, middle, to).compute();
+            return left.join().merge(right);
+        }
+    }
+
+    /**
+     * Everything one thread needs to play games, reused from game to game
+     */
+    private class Table {
+        private final SimulationStats stats = new SimulationStats(players);
+        private final Round round = new Round(players);
+        private final long[] dealt = new long[players];
+        private final long[] given = new long[players];
+        private final long[] moves = new long[Rules.MAX_MOVES];
+        private final byte[] deck = new byte[52];
+        private final Role[] roles = new Role[players];
+
+        void playGame(long game) {
+            SplittableRandom random = new SplittableRandom(seed ^ game * 0x9E3779B97F4A7C15L);
+            Arrays.fill(roles, Role.NEUTRAL);
+            for (int r = 0; r < roundsPerGame; r++)
+                playRound(random, r == 0);
+            stats.game();
+        }
+
+        private void playRound(SplittableRandom random, boolean first) {
+            // dealt round the table from seat 0, as Game.dealCards does
+            for (byte b = 0; b < 52; b++)
+                deck[b] = b;
+            for (int i = 51; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                byte tmp = deck[i];
+                deck[i] = deck[j];
+                deck[j] = tmp;
+            }
+            Arrays.fill(dealt, 0);
+            int starter = 0;
+            for (int i = 0; i < 52; i++) {
+                dealt[i % players] |= 1L << deck[i];
+                if (deck[i] == THREE_OF_DIAMONDS)
+                    starter = i % players;
+            }
+
+            for (int seat = 0; seat < players; seat++)
+                stats.role(seat, roles[seat]);
+            if (!first)
+                starter = trade();
+
+            round.deal(dealt, starter);
+            for (int moveCount = 0; !round.isOver(); moveCount++) {
+                if (moveCount == MAX_MOVES_PER_ROUND)
+                    throw new IllegalStateException("Round did not finish in " + moveCount + " moves");
+                int current = round.getCurrent();
+                int count = round.legalMoves(moves);
+                long move = strategies[current].play(round, moves, count, random);
+                stats.move(move == 0);
+                Trick trick = move == 0 ? round.pass() : round.play(move);
+                stats.trick(trick);
+            }
+
+            for (int seat = 0; seat < players; seat++) {
+                int place = round.getPlace(seat);
+                stats.place(seat, place);
+                roles[seat] = PlayerData.roleFor(place, players);
+            }
+            stats.round();
+        }
+
+        /**
+         * Swaps cards between the roles, all chosen from the hands as dealt
+         * @return int seat of the bum, who leads
+         */
+        private int trade() {
+            int bum = 0;
+            for (int seat = 0; seat < players; seat++) {
+                Role role = roles[seat];
+                int count = Rules.tradeCount(role, players);
+                if (role == Role.BUM || role == Role.VICE_BUM)
+                    given[seat] = Rules.highestCards(dealt[seat], count);
+                else if (count > 0)
+                    given[seat] = strategies[seat].give(dealt[seat], count) & ~Rules.cardsOfValue(Rules.THREE_OF_CLUBS_VALUE);
+                else
+                    given[seat] = 0;
+                if (role == Role.BUM)
+                    bum = seat;
+            }
+
+            for (int seat = 0; seat < players; seat++) {
+                if (given[seat] == 0)
+                    continue;
+                int partner = seatOf(Rules.tradePartner(roles[seat]));
+                dealt[seat] &= ~given[seat];
+                dealt[partner] |= given[seat];
+            }
+            return bum;
+        }
+
+        private int seatOf(Role role) {
+            for (int seat = 0; seat < players; seat++)
+                if (roles[seat] == role)
+                    return seat;
+            throw new IllegalStateException("No player is " + role);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package server.simulation;
+
+import common.rules.Round;
+import common.rules.Rules;
+
+import java.util.SplittableRandom;
+
+/**
+ * How a simulated player plays. Called from many simulation threads at
+ * once, so implementations must be stateless or thread confined.
+ */
+public interface Strategy {
+
+    /**
+     * Picks the current player's move
+     * @param round Round in progress, not to be modified
+     * @param moves long[] legal plays, as listed by Round.legalMoves()
+     * @param count int number of legal plays
+     * @param random SplittableRandom of the simulation thread
+     * @return long one of the plays, or 0 to pass
+     */
+    long play(Round round, long[] moves, int count, SplittableRandom random);
+
+    /**
+     * Picks the cards a president or vice president gives away. Bums
+     * have no choice, and give their highest cards.
+     * @param hand long cards held
+     * @param count int cards to give
+     * @return long cards to give, never the 3 of clubs
+     */
+    default long give(long hand, int count) {
+        return Rules.lowestCards(hand, count);
+    }
+}
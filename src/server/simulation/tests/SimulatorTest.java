@@ -0,0 +1,55 @@
+package server.simulation.tests;
+
+import common.Role;
+import common.Trick;
+import org.junit.jupiter.api.Test;
+import server.simulation.*;
+
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SimulatorTest {
+
+    private static SimulationStats simulate(int players, long seed, ForkJoinPool pool) {
+        Strategy[] strategies = new Strategy[players];
+        for (int seat = 0; seat < players; seat++)
+            strategies[seat] = seat % 2 == 0 ? BasicStrategy.LOWEST_FIRST : BasicStrategy.RANDOM;
+        return new Simulator(players, 4, seed, strategies).run(2000, pool);
+    }
+
+    @Test
+    public void runsAreRepeatableWhateverTheParallelism() {
+        SimulationStats parallel = simulate(5, 7, ForkJoinPool.commonPool());
+        SimulationStats single = simulate(5, 7, new ForkJoinPool(1));
+
+        assertEquals(parallel.getMoves(), single.getMoves());
+        for (int seat = 0; seat < 5; seat++)
+            for (int place = 1; place <= 5; place++)
+                assertEquals(parallel.getPlaces(seat, place), single.getPlaces(seat, place));
+    }
+
+    @Test
+    public void everyRoundHandsOutEachPlaceAndRoleOnce() {
+        for (int players = 3; players <= 8; players++) {
+            SimulationStats stats = simulate(players, 1, ForkJoinPool.commonPool());
+            assertEquals(2000, stats.getGames());
+            assertEquals(8000, stats.getRounds());
+            // the 3 of clubs ends a trick once a round, unless the last player holds it
+            assertTrue(stats.getTricks(Trick.THREE_CLUBS) <= stats.getRounds());
+
+            for (int place = 1; place <= players; place++) {
+                long rounds = 0;
+                for (int seat = 0; seat < players; seat++)
+                    rounds += stats.getPlaces(seat, place);
+                assertEquals(stats.getRounds(), rounds);
+            }
+
+            // first rounds are played without roles
+            long presidents = 0;
+            for (int seat = 0; seat < players; seat++)
+                presidents += stats.getRoles(seat, Role.PRESIDENT);
+            assertEquals(stats.getRounds() - stats.getGames(), presidents);
+        }
+    }
+}
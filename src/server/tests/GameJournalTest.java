@@ -0,0 +1,199 @@
+package server.tests;
+
+import common.CardSet;
+import common.rules.Round;
+import common.rules.Rules;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import server.Game;
+import server.GameJournal;
+import server.UserSession;
+import server.exceptions.GameException;
+import server.exceptions.WrongPassword;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GameJournalTest {
+
+    private GameJournal journal;
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        if (journal != null)
+            journal.close();
+        UserSession._reset();
+        Game._reset();
+    }
+
+    @Test
+    public void gamesAreRecoveredFromTheSnapshotAndTheJournalTail() throws Exception {
+        Path directory = Files.createTempDirectory("journal");
+        journal = GameJournal.open(directory, 1024);
+
+        UserSession owner = new UserSession();
+        owner.setNick("owner");
+        Game game = new Game(owner.getID(), "recovered", null);
+        Game.await(game.joinGame(new UserSession(), null));
+        Game.await(game.joinGame(new UserSession(), null));
+        Game.await(game.start());
+        play(game, 8);
+        journal.snapshot();
+        play(game, 8);
+
+        List<UUID> turns = new ArrayList<>(game.getTurnSequence());
+        Map<UUID, CardSet> hands = new HashMap<>();
+        for (UUID id : turns)
+            hands.put(id, game.getPlayerHand(id));
+        int current = game.getCurrentPlayer();
+        int onTable = game.getCardsOnTable().size();
+
+        // crash, without the final snapshot of close()
+        journal.getJournal().close();
+        UserSession._reset();
+        Game._reset();
+        journal = GameJournal.open(directory, 1024);
+
+        Game recovered = Game.getGameByID(game.getID());
+        assertNotSame(game, recovered);
+        assertEquals("recovered", recovered.getTitle());
+        assertEquals("owner", recovered.getOwnerNick());
+        assertTrue(recovered.hasStarted());
+        assertEquals(turns, recovered.getTurnSequence());
+        assertEquals(current, recovered.getCurrentPlayer());
+        assertEquals(onTable, recovered.getCardsOnTable().size());
+        for (UUID id : turns) {
+            assertEquals(hands.get(id), recovered.getPlayerHand(id));
+            assertTrue(Game.await(recovered.seatHeld(id)), "waiting for its player to reconnect");
+        }
+        assertTrue(Game.await(recovered.reclaimSeat(owner.getID())));
+    }
+
+    @Test
+    public void gamesCreatedDuringASnapshotAreRecovered() throws Exception {
+        Path directory = Files.createTempDirectory("journal");
+        journal = GameJournal.open(directory, 1024);
+
+        Map<UUID, UUID> owners = new ConcurrentHashMap<>();
+        List<Thread> creators = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread creator = new Thread(() -> {
+                try {
+                    for (int i = 0; i < 100; i++) {
+                        UserSession owner = new UserSession();
+                        owners.put(new Game(owner.getID(), "created", null).getID(), owner.getID());
+                    }
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            creator.start();
+            creators.add(creator);
+        }
+        for (Thread creator : creators) {
+            while (creator.isAlive())
+                journal.snapshot();
+            creator.join();
+        }
+        assertEquals(400, owners.size());
+
+        // started, so that their seats are held rather than left on recovery
+        for (UUID id : owners.keySet()) {
+            Game game = Game.getGameByID(id);
+            Game.await(game.joinGame(new UserSession(), null));
+            Game.await(game.joinGame(new UserSession(), null));
+            Game.await(game.start());
+        }
+
+        // crash, without the final snapshot of close()
+        journal.getJournal().close();
+        UserSession._reset();
+        Game._reset();
+        journal = GameJournal.open(directory, 1024);
+
+        for (Map.Entry<UUID, UUID> created : owners.entrySet()) {
+            Game recovered = Game.getGameByID(created.getKey());
+            assertTrue(Game.await(recovered.seatHeld(created.getValue())), "waiting for the owner to reconnect");
+        }
+    }
+
+    @Test
+    public void passwordsAreKeptOnlyAsHashes() throws Exception {
+        Path directory = Files.createTempDirectory("journal");
+        journal = GameJournal.open(directory, 1024);
+
+        UserSession owner = new UserSession();
+        Game game = new Game(owner.getID(), "private", "hunter2".toCharArray());
+        Game.await(game.joinGame(new UserSession(), "hunter2".toCharArray()));
+        assertNotWritten(directory, "hunter2");
+        journal.snapshot();
+        Game.await(game.joinGame(new UserSession(), "hunter2".toCharArray()));
+        Game.await(game.start());
+        List<UUID> seats = new ArrayList<>(game.getTurnSequence());
+
+        // crash, without the final snapshot of close()
+        journal.getJournal().close();
+        assertNotWritten(directory, "hunter2");
+        UserSession._reset();
+        Game._reset();
+        journal = GameJournal.open(directory, 1024);
+
+        // back to the table, to let others join again
+        Game recovered = Game.getGameByID(game.getID());
+        for (UUID seat : seats)
+            assertTrue(Game.await(recovered.reclaimSeat(seat)));
+        Game.await(recovered.stop());
+        assertThrows(WrongPassword.class, () -> Game.await(
+                recovered.joinGame(new UserSession(), "hunter3".toCharArray()), GameException.class, WrongPassword.class
+        ));
+        Game.await(recovered.joinGame(new UserSession(), "hunter2".toCharArray()));
+    }
+
+    @Test
+    public void passesOutOfTurnAreRejectedUnjournaled() throws Exception {
+        journal = GameJournal.open(Files.createTempDirectory("journal"), 1024);
+
+        UserSession owner = new UserSession();
+        Game game = new Game(owner.getID(), "turns", null);
+        Game.await(game.joinGame(new UserSession(), null));
+        Game.await(game.joinGame(new UserSession(), null));
+        Game.await(game.start());
+        List<UUID> turns = game.getTurnSequence();
+        UUID waiting = turns.get((game.getCurrentPlayer() + 1) % turns.size());
+
+        long appended = journal.getJournal().getAppended();
+        GameException e = assertThrows(
+                GameException.class,
+                () -> Game.await(game.pass(waiting), GameException.class)
+        );
+        assertEquals("Not your turn", e.getMessage());
+        assertThrows(GameException.class, () -> Game.await(game.pass(UUID.randomUUID()), GameException.class));
+        assertEquals(appended, journal.getJournal().getAppended());
+    }
+
+    private static void assertNotWritten(Path directory, String text) throws Exception {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.collect(Collectors.toList()))
+                assertFalse(new String(Files.readAllBytes(file), StandardCharsets.ISO_8859_1).contains(text), file.toString());
+        }
+    }
+
+    private static void play(Game game, int moves) throws Exception {
+        for (int i = 0; i < moves; i++) {
+            UUID player = game.getTurnSequence().get(game.getCurrentPlayer());
+            Round round = Game.await(game.informationSetFor(player)).getRound();
+            long play = Rules.lowestPlay(round.getHand(round.getCurrent()), round.getTopValue(), round.getTrickSize());
+            if (play == 0)
+                Game.await(game.pass(player));
+            else
+                Game.await(game.playCards(player, new CardSet(play)));
+        }
+    }
+}
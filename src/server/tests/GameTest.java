@@ -0,0 +1,290 @@
+package server.tests;
+
+import common.CardSet;
+import common.GameListing;
+import common.GameState;
+import common.PlayerData;
+import common.rules.InformationSet;
+import common.rules.Round;
+import common.rules.Rules;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import protocol.BinaryCodec;
+import protocol.GameStateDeltaResponse;
+import server.Game;
+import server.PlayerObject;
+import server.UserSession;
+import server.exceptions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GameTest {
+
+    @AfterEach
+    public void tearDown() {
+        UserSession._reset();
+        Game._reset();
+    }
+
+    @Test
+    public void listingIsSharedUntilSomethingChanges() throws Exception {
+        UserSession owner = new UserSession();
+        UserSession guest = new UserSession();
+        Game first = new Game(owner.getID(), "first", null);
+        new Game(guest.getID(), "second", null);
+
+        List<GameListing> list = Game.getGameList();
+        assertSame(list, Game.getGameList());
+        assertEquals("first", list.get(0).getTitle());
+        assertEquals("second", list.get(1).getTitle());
+        assertThrows(UnsupportedOperationException.class, () -> list.remove(0));
+
+        Game.await(first.joinGame(new UserSession(), null));
+        List<GameListing> updated = Game.getGameList();
+        assertNotSame(list, updated);
+        assertEquals(2, updated.get(0).getNumberOfPlayers());
+        assertEquals("second", updated.get(1).getTitle());
+        assertEquals(1, list.get(0).getNumberOfPlayers());
+
+        owner.setNick("renamed");
+        assertEquals("renamed", Game.getGameList().get(0).getOwner());
+    }
+
+    @Test
+    public void cancelledGamesLeaveTheListing() throws Exception {
+        UserSession owner = new UserSession();
+        Game game = new Game(owner.getID(), "cancelled", null);
+        assertSame(game, Game.getGameByID(game.getID()));
+
+        Game.await(game.cancelGame());
+        assertThrows(GameException.class, Game::getGameList);
+        assertThrows(GameException.class, () -> Game.getGameByID(game.getID()));
+    }
+
+    @Test
+    public void concurrentJoinsAreSerialized() throws Exception {
+        UserSession owner = new UserSession();
+        Game game = new Game(owner.getID(), "crowded", null);
+
+        List<CompletableFuture<Void>> joins = new ArrayList<>();
+        for (int i = 0; i < 32; i++)
+            joins.add(CompletableFuture.supplyAsync(UserSession::new)
+                    .thenCompose(session -> game.joinGame(session, null)));
+
+        int joined = 0;
+        for (CompletableFuture<Void> join : joins) {
+            try {
+                Game.await(join, GameException.class);
+                joined++;
+            } catch (GameException full) {
+                assertEquals("Game is full", full.getMessage());
+            }
+        }
+        assertEquals(7, joined);
+        assertEquals(8, Game.getGameList().get(0).getNumberOfPlayers());
+    }
+
+    @Test
+    public void playersTrackTheVersionsTheyHaveBeenSent() throws Exception {
+        UserSession owner = new UserSession();
+        Game game = new Game(owner.getID(), "versions", null);
+        PlayerObject po = game.getPlayers().get(owner.getID());
+        assertTrue(po.isStateUpdated());
+
+        po.stateHasBeenSent(game.getStateVersion());
+        assertFalse(po.isStateUpdated());
+        assertEquals(0, po.getVersionsBehind());
+
+        Game.await(game.registerGameStateChange());
+        Game.await(game.registerGameStateChange());
+        assertTrue(po.isStateUpdated());
+        assertEquals(2, po.getVersionsBehind());
+    }
+
+    @Test
+    public void onlyOwnedCardsCanBePlayed() throws Exception {
+        UserSession owner = new UserSession();
+        UserSession other = new UserSession();
+        UserSession third = new UserSession();
+        Game game = new Game(owner.getID(), "cheaters", null);
+        Game.await(game.joinGame(other, null));
+        Game.await(game.joinGame(third, null));
+        Game.await(game.start(), GameException.class);
+
+        // played by whoever's turn it is, with someone else's card
+        UserSession current = turnOf(game, owner, other, third);
+        UserSession notCurrent = current == owner ? other : owner;
+        CardSet othersCard = new CardSet();
+        othersCard.add(Game.await(game.stateFor(notCurrent)).getHand().get(0));
+        GameException e = assertThrows(
+                GameException.class,
+                () -> Game.await(game.playCards(current.getID(), othersCard), GameException.class)
+        );
+        assertEquals("You don't have those cards", e.getMessage());
+    }
+
+    @Test
+    public void cardsArePlayedOnlyInTurn() throws Exception {
+        UserSession owner = new UserSession();
+        UserSession other = new UserSession();
+        UserSession third = new UserSession();
+        Game game = new Game(owner.getID(), "turns", null);
+        Game.await(game.joinGame(other, null));
+        Game.await(game.joinGame(third, null));
+        Game.await(game.start(), GameException.class);
+
+        UserSession waiting = turnOf(game, owner, other, third) == owner ? other : owner;
+        CardSet own = new CardSet();
+        own.add(Game.await(game.stateFor(waiting)).getHand().get(0));
+        int cards = Game.await(game.stateFor(waiting)).getHand().size();
+        GameException e = assertThrows(
+                GameException.class,
+                () -> Game.await(game.playCards(waiting.getID(), own), GameException.class)
+        );
+        assertEquals("Not your turn", e.getMessage());
+        assertEquals(cards, Game.await(game.stateFor(waiting)).getHand().size());
+    }
+
+    @Test
+    public void noCardsArePlayedWhileTrading() throws Exception {
+        UserSession owner = new UserSession();
+        Game game = new Game(owner.getID(), "trading", null);
+        List<UserSession> seats = new ArrayList<>(List.of(owner, new UserSession(), new UserSession()));
+        Game.await(game.joinGame(seats.get(1), null));
+        Game.await(game.joinGame(seats.get(2), null));
+        Game.await(game.start(), GameException.class);
+
+        // everyone plays the round out, and nobody trades
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (Game.await(game.stateFor(owner)).getRoundNo() < 2) {
+            assertTrue(System.currentTimeMillis() < deadline, "round did not finish");
+            for (UserSession seat : seats) {
+                InformationSet info = Game.await(game.informationSetFor(seat.getID()));
+                if (info == null)
+                    continue;
+                Round round = info.getRound();
+                long play = Rules.lowestPlay(round.getHand(round.getCurrent()), round.getTopValue(), round.getTrickSize());
+                if (play == 0)
+                    Game.await(game.pass(seat.getID()), GameException.class);
+                else
+                    Game.await(game.playCards(seat.getID(), new CardSet(play)), GameException.class);
+            }
+        }
+        assertTrue(Game.await(game.stateFor(owner)).isTradingPhase());
+
+        for (UserSession seat : seats) {
+            CardSet card = new CardSet();
+            card.add(Game.await(game.stateFor(seat)).getHand().get(0));
+            GameException e = assertThrows(
+                    GameException.class,
+                    () -> Game.await(game.playCards(seat.getID(), card), GameException.class)
+            );
+            assertEquals("Not your turn", e.getMessage());
+        }
+    }
+
+    // whichever of the players is on turn
+    private static UserSession turnOf(Game game, UserSession... players) {
+        for (UserSession player : players)
+            if (Game.await(game.informationSetFor(player.getID())) != null)
+                return player;
+        throw new AssertionError("nobody is on turn");
+    }
+
+    @Test
+    public void heldSeatsArePlayedByTheAutopilot() throws Exception {
+        UserSession owner = new UserSession();
+        UserSession dropped = new UserSession();
+        UserSession alsoDropped = new UserSession();
+        Game game = new Game(owner.getID(), "autopilot", null);
+        Game.await(game.joinGame(dropped, null));
+        Game.await(game.joinGame(alsoDropped, null));
+        Game.await(game.start());
+        Game.await(game.holdSeat(dropped.getID(), 60_000));
+        Game.await(game.holdSeat(alsoDropped.getID(), 60_000));
+        assertTrue(Game.await(game.seatHeld(dropped.getID())));
+
+        // only the owner moves here, and the round still ends
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (Game.await(game.stateFor(owner)).getRoundNo() < 2) {
+            assertTrue(System.currentTimeMillis() < deadline, "round did not finish");
+            InformationSet info = Game.await(game.informationSetFor(owner.getID()));
+            if (info == null) {
+                Thread.sleep(1);
+                continue;
+            }
+            Round round = info.getRound();
+            long play = Rules.lowestPlay(round.getHand(round.getCurrent()), round.getTopValue(), round.getTrickSize());
+            if (play == 0)
+                Game.await(game.pass(owner.getID()));
+            else
+                Game.await(game.playCards(owner.getID(), new CardSet(play)));
+        }
+
+        assertTrue(Game.await(game.reclaimSeat(dropped.getID())));
+        assertFalse(Game.await(game.seatHeld(dropped.getID())));
+        assertFalse(Game.await(game.reclaimSeat(dropped.getID())));
+        assertTrue(game.hasStarted());
+    }
+
+    @Test
+    public void heldSeatsAreShownToTheOtherPlayers() throws Exception {
+        UserSession owner = new UserSession();
+        UserSession dropped = new UserSession();
+        Game game = new Game(owner.getID(), "away", null);
+        Game.await(game.joinGame(dropped, null));
+        Game.await(game.joinGame(new UserSession(), null));
+        Game.await(game.start());
+        GameState before = Game.await(game.stateFor(owner));
+        assertFalse(playerNamed(before, dropped.getNick()).isConnectionLost());
+
+        Game.await(game.holdSeat(dropped.getID(), 60_000));
+        GameState held = Game.await(game.stateFor(owner));
+        assertTrue(playerNamed(held, dropped.getNick()).isConnectionLost());
+
+        // and to clients that are only sent what changed
+        byte[] binary = BinaryCodec.encode(new GameStateDeltaResponse(held.diff(before)));
+        GameState applied = before.apply(
+                ((GameStateDeltaResponse) BinaryCodec.decode(binary, 0, binary.length)).getDelta()
+        );
+        assertTrue(playerNamed(applied, dropped.getNick()).isConnectionLost());
+
+        assertTrue(Game.await(game.reclaimSeat(dropped.getID())));
+        assertFalse(playerNamed(Game.await(game.stateFor(owner)), dropped.getNick()).isConnectionLost());
+    }
+
+    private static PlayerData playerNamed(GameState state, String nick) {
+        for (PlayerData player : state.getPlayers())
+            if (player.getNick().equals(nick))
+                return player;
+        throw new AssertionError("no player " + nick);
+    }
+
+    @Test
+    public void seatsAreGivenUpAfterTheGraceWindow() throws Exception {
+        UserSession owner = new UserSession();
+        UserSession dropped = new UserSession();
+        Game game = new Game(owner.getID(), "grace", null);
+        Game.await(game.joinGame(dropped, null));
+        Game.await(game.joinGame(new UserSession(), null));
+
+        // nothing to hold before the game starts
+        Game.await(game.holdSeat(dropped.getID(), 60_000));
+        assertFalse(game.getPlayers().containsKey(dropped.getID()));
+
+        UserSession late = new UserSession();
+        Game.await(game.joinGame(late, null));
+        Game.await(game.start());
+        Game.await(game.holdSeat(late.getID(), 10));
+        Thread.sleep(200);
+
+        // the autopilot plays the round out, but the player can't come back
+        assertFalse(Game.await(game.reclaimSeat(late.getID())));
+        assertTrue(Game.await(game.seatHeld(late.getID())));
+        assertThrows(UserSessionError.class, () -> UserSession.retrieveSessionFromID(late.getID()));
+    }
+}
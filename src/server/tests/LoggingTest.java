@@ -0,0 +1,101 @@
+package server.tests;
+
+import org.junit.jupiter.api.Test;
+import server.AsyncLogHandler;
+import server.SessionLog;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.logging.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LoggingTest {
+
+    private static class Recorder extends Handler {
+        final List<String> messages = Collections.synchronizedList(new ArrayList<>());
+        final CountDownLatch entered = new CountDownLatch(1);
+        volatile CountDownLatch gate = new CountDownLatch(0);
+
+        @Override
+        public void publish(LogRecord record) {
+            entered.countDown();
+            try {
+                gate.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            messages.add(record.getMessage());
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    @Test
+    public void everyRecordIsWrittenInOrderPerThread() throws Exception {
+        Recorder recorder = new Recorder();
+        AsyncLogHandler handler = new AsyncLogHandler(16384, recorder);
+        int threads = 4;
+        int records = 2000;
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            pool.execute(() -> {
+                for (int i = 0; i < records; i++)
+                    handler.publish(new LogRecord(Level.INFO, thread + ":" + i));
+            });
+        }
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+        handler.close();
+
+        assertEquals(0, handler.getDropped());
+        assertEquals(threads * records, recorder.messages.size());
+        int[] next = new int[threads];
+        for (String message : recorder.messages) {
+            String[] parts = message.split(":");
+            int thread = Integer.parseInt(parts[0]);
+            assertEquals(next[thread]++, Integer.parseInt(parts[1]));
+        }
+    }
+
+    @Test
+    public void recordsAreDroppedRatherThanWaitedFor() throws Exception {
+        Recorder recorder = new Recorder();
+        recorder.gate = new CountDownLatch(1);
+        AsyncLogHandler handler = new AsyncLogHandler(4, recorder);
+
+        // the writer holds the first record until the gate opens
+        handler.publish(new LogRecord(Level.INFO, "0"));
+        assertTrue(recorder.entered.await(5, TimeUnit.SECONDS));
+        for (int i = 1; i <= 10; i++)
+            handler.publish(new LogRecord(Level.INFO, String.valueOf(i)));
+        assertEquals(7, handler.getDropped());
+
+        recorder.gate.countDown();
+        handler.flush();
+        assertEquals(List.of("0", "1", "2", "3"), recorder.messages.subList(0, 4));
+        handler.close();
+    }
+
+    @Test
+    public void sessionMessagesCarryContextAndAreBuiltOnlyWhenLogged() {
+        Logger logger = Logger.getAnonymousLogger();
+        logger.setUseParentHandlers(false);
+        logger.setLevel(Level.INFO);
+        Recorder recorder = new Recorder();
+        logger.addHandler(recorder);
+
+        SessionLog log = new SessionLog(logger, "/127.0.0.1");
+        log.fine(() -> fail("built a message that is not logged"));
+        log.info(() -> "hello");
+        assertEquals(List.of("[addr=/127.0.0.1] hello"), recorder.messages);
+    }
+}
@@ -0,0 +1,83 @@
+package server.tests;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import server.ProfanityFilter;
+import server.ProfanityFilterReloader;
+
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProfanityFilterTest {
+
+    private static final List<String> WORDS = List.of("darn", "heck", "he", "she", "hers", "bum");
+
+    // the substring checks the filter used to make, for comparison
+    private static boolean naive(List<String> words, String input) {
+        String letters = input.toLowerCase().replaceAll("[^a-zA-Z]", "");
+        String leet = input.toLowerCase()
+                .replace('1', 'i').replace('!', 'i').replace('3', 'e')
+                .replace('4', 'a').replace('@', 'a').replace('5', 's')
+                .replace('$', 's').replace('7', 't').replace('0', 'o').replace('9', 'g');
+        for (String word : words)
+            if (letters.contains(word) || leet.contains(word))
+                return true;
+        return false;
+    }
+
+    @Test
+    public void findsWordsHoweverTheyAreWritten() {
+        ProfanityFilter filter = ProfanityFilter.compile(WORDS);
+        assertEquals(6, filter.getPatternCount());
+        assertTrue(filter.checkForBadWords("oh DaRn it"));
+        assertTrue(filter.checkForBadWords("d a r n"));
+        assertTrue(filter.checkForBadWords("d4rn"));
+        assertTrue(filter.checkForBadWords("xxbu_m"));
+        // a failure link from "she" to "he" mid-word
+        assertTrue(ProfanityFilter.compile(List.of("shy", "hex")).checkForBadWords("shex"));
+
+        assertFalse(filter.checkForBadWords("Player_12"));
+        assertFalse(filter.checkForBadWords(null));
+        assertFalse(ProfanityFilter.compile(List.of()).checkForBadWords("darn"));
+    }
+
+    @Test
+    public void agreesWithSubstringChecks() {
+        List<String> words = List.of("fig", "tag", "ga", "ssit", "eat", "oat");
+        ProfanityFilter filter = ProfanityFilter.compile(words);
+        String characters = "afgiostAEGT134579!@$0 _-";
+        Random random = new Random(21);
+        for (int i = 0; i < 20_000; i++) {
+            StringBuilder input = new StringBuilder();
+            for (int n = random.nextInt(12); n > 0; n--)
+                input.append(characters.charAt(random.nextInt(characters.length())));
+            String text = input.toString();
+            assertEquals(naive(words, text), filter.checkForBadWords(text), text);
+        }
+    }
+
+    @Test
+    public void reloadsTheWordListWhenItChanges(@TempDir Path directory) throws Exception {
+        Path file = directory.resolve("words.txt");
+        Files.write(file, List.of("darn"));
+        AtomicReference<ProfanityFilter> published = new AtomicReference<>(ProfanityFilter.load(file));
+        assertFalse(published.get().checkForBadWords("heck"));
+
+        ProfanityFilterReloader reloader = new ProfanityFilterReloader(file, published::set).start();
+        try {
+            Files.write(file, List.of("darn", "heck"));
+            long deadline = System.currentTimeMillis() + 20_000;
+            while (!published.get().checkForBadWords("heck")) {
+                assertTrue(System.currentTimeMillis() < deadline, "filter was not reloaded");
+                Thread.sleep(20);
+            }
+        } finally {
+            reloader.close();
+        }
+        assertEquals(2, published.get().getPatternCount());
+        assertTrue(published.get().getMemoryFootprint() > 0);
+    }
+}
@@ -0,0 +1,219 @@
+package server.tests;
+
+import client.networking.ClientConnection;
+import common.GameListing;
+import org.junit.jupiter.api.*;
+import protocol.*;
+import server.Game;
+import server.PlayerObject;
+import server.Server;
+import server.metrics.ServerMetrics;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReactorServerTest {
+
+    private static Server server;
+
+    @BeforeEach
+    void startLocalServer() throws InterruptedException {
+        startLocalServer(2);
+    }
+
+    private static void startLocalServer(int reactors) throws InterruptedException {
+        server = new Server(Server.Mode.REACTOR, reactors, false);
+        new Thread(() -> {
+            try {
+                server.start(Protocol.PORT);
+            } catch (Exception ignored) {
+            }
+        }).start();
+
+        Thread.sleep(1000);
+    }
+
+    @AfterEach
+    void stopLocalServer() throws IOException {
+        server.stop();
+    }
+
+    @Test
+    public void framedHeartbeatShouldReturnReceiveTime() throws IOException, ClassNotFoundException {
+        ClientConnection conn = new ClientConnection("localhost", true);
+        conn.sendMessage(new Message(MessageType.CONNECT));
+
+        long timestamp = Instant.now().toEpochMilli();
+        HeartbeatMessage response = (HeartbeatMessage) conn.sendMessage(
+                new HeartbeatMessage(timestamp)
+        );
+        conn.disconnect();
+
+        assertEquals(MessageType.HEARTBEAT, response.getMessageType());
+        assertTrue(timestamp <= response.getTime());
+    }
+
+    @Test
+    public void mustConnectBeforeRequesting() throws IOException, ClassNotFoundException {
+        ClientConnection conn = new ClientConnection("localhost", true);
+
+        Message response = conn.sendMessage(MessageType.GET_GAME_LIST);
+        assertTrue(response.isError());
+        assertEquals("Invalid request", response.getErrorMessage());
+
+        conn.disconnect();
+    }
+
+    @Test
+    public void clientsOnDifferentReactorsShareGames() throws IOException, ClassNotFoundException {
+        ClientConnection host = new ClientConnection("localhost", true);
+        host.sendMessage(MessageType.CONNECT);
+        Message response = host.sendMessage(new NewGameMessage("reactor game", null));
+        assertEquals(MessageType.GAME_STATE, response.getMessageType());
+
+        ClientConnection conn = new ClientConnection("localhost", true);
+        conn.sendMessage(MessageType.CONNECT);
+        response = conn.sendMessage(MessageType.GET_GAME_LIST);
+        assertFalse(response.isError());
+        List<GameListing> list = ((GameListResponse) response).getGameList();
+        assertEquals(1, list.size());
+
+        response = conn.sendMessage(new JoinGameRequest(list.get(0).getID(), null));
+        assertEquals(MessageType.GAME_STATE, response.getMessageType());
+
+        response = conn.sendMessage(MessageType.LEAVE_GAME);
+        assertEquals(MessageType.OK, response.getMessageType());
+
+        host.disconnect();
+        conn.disconnect();
+    }
+
+    @Test
+    public void binaryClientsGetBinaryGameList() throws IOException, ClassNotFoundException {
+        ClientConnection host = new ClientConnection("localhost", true, true);
+        host.sendMessage(MessageType.CONNECT);
+        host.sendMessage(new NewGameMessage("binary game", new char[]{'p', 'w'}));
+
+        ClientConnection conn = new ClientConnection("localhost", true, true);
+        conn.sendMessage(MessageType.CONNECT);
+        GameListResponse response = (GameListResponse) conn.sendMessage(MessageType.GET_GAME_LIST);
+        assertEquals("binary game", response.getGameList().get(0).getTitle());
+        assertTrue(response.getGameList().get(0).hasPassword());
+
+        host.disconnect();
+        conn.disconnect();
+    }
+
+    @Test
+    public void objectStreamClientsAreStillServed() throws IOException, ClassNotFoundException {
+        ClientConnection conn = new ClientConnection("localhost");
+
+        IdentityResponse response = (IdentityResponse) conn.sendMessage(
+                new Message(MessageType.CONNECT)
+        );
+        assertEquals("User1", response.getNick());
+
+        conn.disconnect();
+    }
+
+    @Test
+    public void aBusyGameDoesNotStallItsReactor() throws Exception {
+        // every connection on the one reactor
+        server.stop();
+        startLocalServer(1);
+
+        ClientConnection host = new ClientConnection("localhost", true);
+        host.sendMessage(MessageType.CONNECT);
+        host.sendMessage(new NewGameMessage("busy game", null));
+        Game game = Game.getGameByID(UUID.fromString(Game.getGameList().get(0).getID()));
+        CountDownLatch busy = new CountDownLatch(1);
+        for (PlayerObject po : game.getPlayers().values())
+            po.setStateListener(() -> {
+                try {
+                    busy.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        game.registerGameStateChange();
+
+        // waits on the game's mailbox, which is busy
+        CompletableFuture<Message> leaving = CompletableFuture.supplyAsync(() -> {
+            try {
+                return host.sendMessage(MessageType.LEAVE_GAME);
+            } catch (IOException | ClassNotFoundException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        Thread.sleep(200);
+
+        ClientConnection other = new ClientConnection("localhost", true);
+        long start = System.nanoTime();
+        other.sendMessage(MessageType.CONNECT);
+        other.sendMessage(new HeartbeatMessage(Instant.now().toEpochMilli()));
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5), "answered while the game was busy");
+        assertFalse(leaving.isDone());
+
+        busy.countDown();
+        assertEquals(MessageType.OK, leaving.get(10, TimeUnit.SECONDS).getMessageType());
+        other.disconnect();
+        host.disconnect();
+    }
+
+    @Test
+    public void aClientTooFarAheadIsNotReadFrom() throws Exception {
+        ClientConnection host = new ClientConnection("localhost", true, true);
+        host.sendMessage(MessageType.CONNECT);
+        host.sendMessage(new NewGameMessage("pipelined game", null));
+        Game game = Game.getGameByID(UUID.fromString(Game.getGameList().get(0).getID()));
+
+        // each state change holds up the game until the test lets it through
+        Semaphore changes = new Semaphore(0);
+        for (PlayerObject po : game.getPlayers().values())
+            po.setStateListener(() -> {
+                try {
+                    changes.tryAcquire(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        game.registerGameStateChange();
+
+        // resyncs wait on the game, so they queue up on the server
+        long before = ServerMetrics.get().getBytesReceived();
+        List<CompletableFuture<Message>> responses = new ArrayList<>();
+        for (int i = 0; i < 600; i++)
+            responses.add(host.sendAsync(new HeartbeatMessage(0, HeartbeatMessage.RESYNC)));
+        int sent = 600 * new FrameCodec(true).encode(new HeartbeatMessage(0, HeartbeatMessage.RESYNC)).length;
+        Thread.sleep(300);
+
+        long paused = ServerMetrics.get().getBytesReceived() - before;
+        assertTrue(paused < sent / 2, paused + " of " + sent + " bytes read");
+
+        // answers go out one at a time, with the game held up again in between;
+        // the queue dips under its limit once, and a single read refills it
+        for (int i = 0; i < 12; i++) {
+            game.registerGameStateChange();
+            changes.release();
+            assertNotNull(responses.get(i).get(10, TimeUnit.SECONDS));
+            Thread.sleep(50);   // for the worker to ask the game for the next state
+        }
+        long read = ServerMetrics.get().getBytesReceived() - before;
+        assertTrue(read - paused <= 1024, read + " bytes read, " + paused + " before any answer");
+
+        // and once the game moves on, everything is read and answered
+        changes.release(1000);
+        for (CompletableFuture<Message> response : responses)
+            assertNotNull(response.get(10, TimeUnit.SECONDS));
+        host.disconnect();
+    }
+}
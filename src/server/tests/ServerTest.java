@@ -2,6 +2,8 @@ package server.tests;
 
 import client.networking.ClientConnection;
 import common.GameListing;
+import common.GameState;
+import common.GameStateDelta;
 import protocol.*;
 import org.junit.jupiter.api.*;
 import server.Server;
@@ -9,6 +11,9 @@ import server.Server;
 import java.io.IOException;
 import java.time.Instant;
 import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -272,6 +277,108 @@ class ServerTest {
 
     }
 
+    @Test
+    public void framedBinaryClientIsServed() throws IOException, ClassNotFoundException {
+        ClientConnection conn = new ClientConnection("localhost", true, true);
+
+        IdentityResponse identity = (IdentityResponse) conn.sendMessage(
+                new Message(MessageType.CONNECT)
+        );
+        assertEquals("User1", identity.getNick());
+
+        Message response = conn.sendMessage(new NewGameMessage("binary game", null));
+        assertEquals(MessageType.GAME_STATE, response.getMessageType());
+        GameStateResponse stateResponse = (GameStateResponse) response;
+        assertEquals("binary game", stateResponse.getState().getGameTitle());
+
+        conn.disconnect();
+    }
+
+    @Test
+    public void acknowledgedStateIsUpdatedByDelta() throws IOException, ClassNotFoundException {
+        ClientConnection host = new ClientConnection("localhost", true, true);
+        host.sendMessage(MessageType.CONNECT);
+        GameState hostState = ((GameStateResponse) host.sendMessage(
+                new NewGameMessage("delta game", null)
+        )).getState();
+
+        // joining clients send no state versions, and keep getting full states
+        ClientConnection guest = new ClientConnection("localhost");
+        guest.sendMessage(MessageType.CONNECT);
+        String gameID = ((GameListResponse) guest.sendMessage(MessageType.GET_GAME_LIST))
+                .getGameList().get(0).getID();
+        assertFalse(guest.sendMessage(new JoinGameRequest(gameID, null)).isError());
+        ClientConnection guest2 = new ClientConnection("localhost");
+        guest2.sendMessage(MessageType.CONNECT);
+        assertFalse(guest2.sendMessage(new JoinGameRequest(gameID, null)).isError());
+        assertFalse(host.sendMessage(MessageType.START_GAME).isError());
+        Message response = guest.sendMessage(new HeartbeatMessage(Instant.now().toEpochMilli()));
+        assertEquals(MessageType.GAME_STATE, response.getMessageType());
+
+        response = host.sendMessage(new HeartbeatMessage(
+                Instant.now().toEpochMilli(), hostState.getVersion()
+        ));
+        assertEquals(MessageType.GAME_STATE_DELTA, response.getMessageType());
+        GameStateDelta delta = ((GameStateDeltaResponse) response).getDelta();
+        assertEquals(hostState.getVersion(), delta.getBaseVersion());
+
+        hostState = hostState.apply(delta);
+        assertEquals(3, hostState.getPlayers().size());
+        assertTrue(hostState.isStarted());
+        assertEquals(
+                52,
+                hostState.getPlayers().stream().mapToInt(p -> p.getNumberOfCards()).sum()
+        );
+
+        // a client that lost track asks for a full state
+        response = host.sendMessage(new HeartbeatMessage(
+                Instant.now().toEpochMilli(), HeartbeatMessage.RESYNC
+        ));
+        assertEquals(MessageType.GAME_STATE, response.getMessageType());
+        GameState fullState = ((GameStateResponse) response).getState();
+        assertEquals(fullState.getVersion(), hostState.getVersion());
+        assertEquals(fullState.getHand().size(), hostState.getHand().size());
+
+        host.disconnect();
+        guest.disconnect();
+        guest2.disconnect();
+    }
+
+    @Test
+    public void subscribedClientGetsChangesPushed() throws Exception {
+        ClientConnection host = new ClientConnection("localhost", true, true);
+        host.sendMessage(MessageType.CONNECT);
+        GameState hostState = ((GameStateResponse) host.sendMessage(
+                new NewGameMessage("pushed game", null)
+        )).getState();
+
+        BlockingQueue<Message> events = new LinkedBlockingQueue<>();
+        host.startEventReader(events::add);
+        assertEquals(MessageType.OK, host.sendMessage(MessageType.SUBSCRIBE).getMessageType());
+
+        ClientConnection guest = new ClientConnection("localhost");
+        guest.sendMessage(MessageType.CONNECT);
+        String gameID = ((GameListResponse) guest.sendMessage(MessageType.GET_GAME_LIST))
+                .getGameList().get(0).getID();
+        assertFalse(guest.sendMessage(new JoinGameRequest(gameID, null)).isError());
+
+        // the join arrives without the host asking for it
+        Message event = events.poll(5, TimeUnit.SECONDS);
+        assertNotNull(event, "No event pushed on join");
+        assertEquals(MessageType.GAME_STATE_DELTA, event.getMessageType());
+        hostState = hostState.apply(((GameStateDeltaResponse) event).getDelta());
+        assertEquals(2, hostState.getPlayers().size());
+
+        // requests are still answered in between
+        Message response = host.sendMessage(new HeartbeatMessage(
+                Instant.now().toEpochMilli(), hostState.getVersion()
+        ));
+        assertEquals(MessageType.HEARTBEAT, response.getMessageType());
+
+        guest.disconnect();
+        host.disconnect();
+    }
+
     // TODO: find out why this results in timeouts
 /*
     @Test
@@ -5,7 +5,10 @@ import org.junit.jupiter.api.Test;
 import server.UserSession;
 import server.exceptions.UserSessionError;
 
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -49,9 +52,58 @@ class UserSessionTest {
         assertEquals("User2", s2.getNick());
     }
 
+    @Test
+    public void namedSessionsShouldNotUseUpGeneratedNicks() throws UserSessionError {
+        UserSession bot = UserSession.withNick("Bot1");
+        assertEquals("Bot1", bot.getNick());
+        assertSame(bot, UserSession.retrieveSessionFromID(bot.getID()));
+        assertEquals("User1", new UserSession().getNick());
+        assertThrows(UserSessionError.class, () -> UserSession.withNick("User1"));
+    }
+
     @Test public void duplicateNickShouldThrowException() {
         UserSession s1 = new UserSession();
         UserSession s2 = new UserSession();
         assertThrows(UserSessionError.class, () -> s2.setNick(s1.getNick()));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void renamingReleasesTheOldNick() throws UserSessionError {
+        UserSession s1 = new UserSession();
+        UserSession s2 = new UserSession();
+        String old = s1.getNick();
+        assertThrows(UserSessionError.class, () -> s2.setNick(old));
+        s1.setNick("renamed");
+        s2.setNick(old);
+        assertEquals(old, s2.getNick());
+        assertThrows(UserSessionError.class, () -> s2.setNick("renamed"));
+    }
+
+    @Test
+    public void concurrentSessionsGetDistinctNicks() throws InterruptedException {
+        int threads = 8;
+        int perThread = 500;
+        Set<String> nicks = ConcurrentHashMap.newKeySet();
+        AtomicInteger claimed = new AtomicInteger();
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    UserSession session = new UserSession();
+                    nicks.add(session.getNick());
+                    try {
+                        session.setNick("contested");
+                        claimed.incrementAndGet();
+                    } catch (UserSessionError ignored) {
+                    }
+                }
+            });
+            workers[t].start();
+        }
+        for (Thread worker : workers)
+            worker.join();
+
+        assertEquals(threads * perThread, nicks.size());
+        assertEquals(1, claimed.get());
+    }
+}